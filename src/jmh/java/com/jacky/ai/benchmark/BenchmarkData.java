@@ -0,0 +1,107 @@
+package com.jacky.ai.benchmark;
+
+import com.jacky.ai.repository.HybridVectorStore;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 21:10
+ * @description： 基准测试的合成数据
+ * 向量按固定种子生成（高斯分布后归一化），同一组参数每次运行的数据完全相同，结果可以跨版本比较。
+ * 向量库通过预先生成的向量写入，不调用任何向量接口。
+ */
+public final class BenchmarkData {
+
+    // 与线上text-embedding-v3的维度一致
+    public static final int DIMENSIONS = 1024;
+
+    private static final long SEED = 20261019L;
+
+    private BenchmarkData() {}
+
+    /**
+     * @param count 向量数量
+     * @param dimensions 维度
+     * @param seed 随机种子
+     * @return 单位长度的随机向量
+     */
+    public static float[][] randomVectors(int count, int dimensions, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] vectors = new float[count][dimensions];
+        for (float[] vector : vectors) {
+            double norm = 0;
+            for (int i = 0; i < dimensions; i++) {
+                // Box-Muller，各分量独立同分布，方向在球面上均匀
+                double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+                vector[i] = (float) gaussian;
+                norm += gaussian * gaussian;
+            }
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vectors;
+    }
+
+    public static float[][] randomVectors(int count) {
+        return randomVectors(count, DIMENSIONS, SEED);
+    }
+
+    /**
+     * 构建包含count个文档的向量库，文档id为序号，分属10个文件
+     * @param vectors 文档向量
+     * @return 向量库
+     */
+    public static HybridVectorStore vectorStore(float[][] vectors) {
+        HybridVectorStore vectorStore = new HybridVectorStore(new PrecomputedEmbeddingModel(vectors));
+        // 分批写入，避免一次性构建过大的文档列表
+        int batchSize = 10_000;
+        for (int start = 0; start < vectors.length; start += batchSize) {
+            int end = Math.min(vectors.length, start + batchSize);
+            List<Document> documents = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                documents.add(new Document(String.valueOf(i), "第" + i + "页 chunk" + i,
+                        Map.of("file_name", "file" + (i % 10) + ".pdf")));
+            }
+            vectorStore.add(documents);
+        }
+        return vectorStore;
+    }
+
+    /**
+     * 按文档id（即序号）返回预先生成的向量
+     */
+    private record PrecomputedEmbeddingModel(float[][] vectors) implements EmbeddingModel {
+
+        @Override
+        public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+            return documents.stream().map(this::embed).toList();
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return vectors[Integer.parseInt(document.getId())];
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            throw new UnsupportedOperationException("Benchmark vectors are precomputed");
+        }
+
+        @Override
+        public int dimensions() {
+            return vectors.length == 0 ? DIMENSIONS : vectors[0].length;
+        }
+    }
+}
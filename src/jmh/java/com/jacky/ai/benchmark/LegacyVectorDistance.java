@@ -0,0 +1,61 @@
+package com.jacky.ai.benchmark;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 21:15
+ * @description： VectorDistanceUtils改用VectorKernels之前的实现，原样保留作为基准测试的对照组：
+ * 逐元素转double累加，余弦一次循环同时累加点积与两个范数。不要修改，否则与历史结果不可比。
+ */
+final class LegacyVectorDistance {
+
+    private static final double EPSILON = 1e-12;
+
+    private LegacyVectorDistance() {}
+
+    static double euclideanDistance(float[] vectorA, float[] vectorB) {
+        validateVectors(vectorA, vectorB);
+
+        double sum = 0.0;
+        for (int i = 0; i < vectorA.length; i++) {
+            double diff = vectorA[i] - vectorB[i];
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum);
+    }
+
+    static double cosineDistance(float[] vectorA, float[] vectorB) {
+        validateVectors(vectorA, vectorB);
+
+        double dotProduct = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+
+        for (int i = 0; i < vectorA.length; i++) {
+            dotProduct += vectorA[i] * vectorB[i];
+            normA += vectorA[i] * vectorA[i];
+            normB += vectorB[i] * vectorB[i];
+        }
+
+        normA = Math.sqrt(normA);
+        normB = Math.sqrt(normB);
+
+        if (normA < EPSILON || normB < EPSILON) {
+            throw new IllegalArgumentException("Vectors cannot be zero vectors");
+        }
+
+        double similarity = dotProduct / (normA * normB);
+        return Math.max(Math.min(similarity, 1.0), -1.0);
+    }
+
+    private static void validateVectors(float[] a, float[] b) {
+        if (a == null || b == null) {
+            throw new IllegalArgumentException("Vectors cannot be null");
+        }
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Vectors must have same dimension");
+        }
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Vectors cannot be empty");
+        }
+    }
+}
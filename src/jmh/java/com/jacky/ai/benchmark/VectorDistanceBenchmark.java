@@ -0,0 +1,87 @@
+package com.jacky.ai.benchmark;
+
+import com.jacky.ai.util.VectorDistanceUtils;
+import com.jacky.ai.util.VectorKernels;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 21:15
+ * @description： 距离计算的基准测试：单次余弦、欧氏距离、点积，以及一个查询向量对一批归一化向量的批量打分
+ * kernel=auto时使用Vector API实现（需要 --add-modules jdk.incubator.vector），kernel=scalar时强制标量实现；
+ * 每组参数单独fork一个JVM，实现在VectorKernels类加载时确定。
+ * legacy*为改造前的double累加实现（LegacyVectorDistance），不受kernel参数影响，作为对照组。
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Djmh.args="VectorDistanceBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class VectorDistanceBenchmark {
+
+    // dotBatch每次打分的向量数量
+    private static final int BATCH_SIZE = 256;
+
+    @Param({"384", "1024", "1536"})
+    public int dimensions;
+
+    @Param({"auto", "scalar"})
+    public String kernel;
+
+    private float[] vectorA;
+
+    private float[] vectorB;
+
+    private float[][] batch;
+
+    private float[] scores;
+
+    @Setup
+    public void setup() {
+        System.setProperty("ai.vector.kernel", kernel);
+        float[][] vectors = BenchmarkData.randomVectors(BATCH_SIZE + 2, dimensions, 42);
+        vectorA = vectors[0];
+        vectorB = vectors[1];
+        batch = new float[BATCH_SIZE][];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch[i] = VectorKernels.normalize(vectors[i + 2]);
+        }
+        scores = new float[BATCH_SIZE];
+    }
+
+    @Benchmark
+    public double cosine() {
+        return VectorDistanceUtils.cosineDistance(vectorA, vectorB);
+    }
+
+    @Benchmark
+    public double euclidean() {
+        return VectorDistanceUtils.euclideanDistance(vectorA, vectorB);
+    }
+
+    @Benchmark
+    public double legacyCosine() {
+        return LegacyVectorDistance.cosineDistance(vectorA, vectorB);
+    }
+
+    @Benchmark
+    public double legacyEuclidean() {
+        return LegacyVectorDistance.euclideanDistance(vectorA, vectorB);
+    }
+
+    @Benchmark
+    public float dot() {
+        return VectorKernels.dot(vectorA, vectorB);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public float[] dotBatch() {
+        VectorKernels.dotBatch(vectorA, batch, 0, BATCH_SIZE, scores);
+        return scores;
+    }
+}
@@ -0,0 +1,69 @@
+package com.jacky.ai.benchmark;
+
+import com.jacky.ai.repository.HybridVectorStore;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 21:20
+ * @description： 向量检索的基准测试：在1k~1M个1024维向量上取topK
+ * - search：全库检索
+ * - searchWithFilter：带 file_name == 'xxx.pdf' 过滤（PDF问答的实际用法，只有1/10的文档满足条件）
+ * 1M个1024维向量约占4GB堆内存，fork的JVM使用-Xmx8g；内存不足时用 -p corpusSize=1000,10000,100000 跳过。
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Djmh.args="VectorSearchBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g", "--add-modules=jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class VectorSearchBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int corpusSize;
+
+    @Param({"10", "50"})
+    public int topK;
+
+    private HybridVectorStore vectorStore;
+
+    private float[][] queries;
+
+    private SearchRequest request;
+
+    private SearchRequest filteredRequest;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        vectorStore = BenchmarkData.vectorStore(BenchmarkData.randomVectors(corpusSize));
+        queries = BenchmarkData.randomVectors(64, BenchmarkData.DIMENSIONS, 7);
+        request = SearchRequest.builder().topK(topK).similarityThreshold(0).build();
+        filteredRequest = SearchRequest.builder().topK(topK).similarityThreshold(0)
+                .filterExpression(new FilterExpressionBuilder().eq("file_name", "file3.pdf").build())
+                .build();
+    }
+
+    @Benchmark
+    public List<Document> search() {
+        return vectorStore.vectorSearch(nextQuery(), request);
+    }
+
+    @Benchmark
+    public List<Document> searchWithFilter() {
+        return vectorStore.vectorSearch(nextQuery(), filteredRequest);
+    }
+
+    private float[] nextQuery() {
+        next = (next + 1) & (queries.length - 1);
+        return queries[next];
+    }
+}
@@ -0,0 +1,65 @@
+package com.jacky.ai.benchmark;
+
+import com.jacky.ai.repository.HybridVectorStore;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 21:25
+ * @description： 向量库快照（chat-pdf.json）写出与加载的基准测试
+ * 加载包含JSON解析与BM25倒排索引重建，对应应用启动时的预热耗时。
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Djmh.args="VectorSnapshotBenchmark"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class VectorSnapshotBenchmark {
+
+    @Param({"1000", "10000"})
+    public int corpusSize;
+
+    private HybridVectorStore vectorStore;
+
+    private HybridVectorStore emptyStore;
+
+    private File snapshot;
+
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        float[][] vectors = BenchmarkData.randomVectors(corpusSize);
+        vectorStore = BenchmarkData.vectorStore(vectors);
+        emptyStore = BenchmarkData.vectorStore(new float[0][]);
+        snapshot = Files.createTempFile("vector-snapshot", ".json").toFile();
+        output = Files.createTempFile("vector-snapshot-out", ".json").toFile();
+        vectorStore.save(snapshot);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        snapshot.delete();
+        output.delete();
+    }
+
+    @Benchmark
+    public File save() {
+        vectorStore.save(output);
+        return output;
+    }
+
+    @Benchmark
+    public HybridVectorStore load() {
+        emptyStore.load(new FileSystemResource(snapshot));
+        return emptyStore;
+    }
+}
@@ -0,0 +1,91 @@
+package com.jacky.ai.model;
+
+import com.jacky.ai.constants.SystemConstants;
+import com.jacky.ai.tools.CourseTools;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.SimpleApiKey;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbacks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 03:00
+ * @description： 客服对话每次请求生成ChatCompletionRequest的开销：合并选项 + 工具定义 + 转换消息
+ * - legacy：每次请求经过ModelOptionsUtils合并选项、解析工具的JSON Schema（LegacyChatRequests）
+ * - compiled：AlibabaOpenAiChatModel使用预编译的选项与请求模板，只转换消息
+ * 参数history为会话历史的消息数，legacy的Map往返转换带着全部消息，历史越长差距越大。
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Djmh.args="ChatRequestBenchmark -prof gc"
+ * 每次请求的内存分配见gc.alloc.rate.norm（B/op）。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatRequestBenchmark {
+
+    @Param({"2", "20"})
+    public int history;
+
+    private OpenAiChatOptions defaultOptions;
+
+    private ToolCallingManager toolCallingManager;
+
+    private AlibabaOpenAiChatModel model;
+
+    private List<ToolCallback> toolCallbacks;
+
+    private List<Message> messages;
+
+    @Setup
+    public void setup() {
+        defaultOptions = OpenAiChatOptions.builder().model("qwen-max-latest").temperature(0.7).streamUsage(true).build();
+        toolCallingManager = ToolCallingManager.builder().build();
+        model = AlibabaOpenAiChatModel.builder()
+                .openAiApi(new DashScopeOpenAiApi("http://localhost", new SimpleApiKey("stub")))
+                .defaultOptions(defaultOptions)
+                .toolCallingManager(toolCallingManager)
+                .build();
+        toolCallbacks = List.of(ToolCallbacks.from(new CourseTools(null, null, null)));
+        messages = new ArrayList<>();
+        messages.add(new SystemMessage(SystemConstants.CUSTOMER_SERVICE_SYSTEM));
+        for (int i = 0; i < history / 2; i++) {
+            messages.add(new UserMessage("我想了解一下编程类的课程，第" + i + "轮"));
+            messages.add(new AssistantMessage("好的，我们有Java、前端、Python等课程，请问您的学历是？"));
+        }
+        messages.add(new UserMessage("本科，想学Java"));
+    }
+
+    @Benchmark
+    public OpenAiApi.ChatCompletionRequest legacy() {
+        return LegacyChatRequests.createRequest(model, defaultOptions, toolCallingManager,
+                new Prompt(messages, runtimeOptions()), true);
+    }
+
+    @Benchmark
+    public OpenAiApi.ChatCompletionRequest compiled() {
+        return model.createRequest(model.buildRequestPrompt(new Prompt(messages, runtimeOptions())), true);
+    }
+
+    /**
+     * 与ChatClient一样，每次请求传入默认选项的副本加上固定的工具回调
+     */
+    private OpenAiChatOptions runtimeOptions() {
+        OpenAiChatOptions options = (OpenAiChatOptions) model.getDefaultOptions();
+        options.setToolCallbacks(List.copyOf(toolCallbacks));
+        return options;
+    }
+}
@@ -0,0 +1,183 @@
+package com.jacky.ai.advisor;
+
+import com.jacky.ai.util.TokenUsageUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.client.advisor.api.*;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.core.Ordered;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 19:55
+ * @description： 大模型调用指标的Advisor，放在Advisor链最外层，统计用户实际感受到的耗时（含会话记忆、检索）
+ * 指标按ChatClient（client）与实际响应的模型（model）打标签，通过 /actuator/prometheus 暴露：
+ * - ai.chat.ttft：流式输出首个token的耗时
+ * - ai.chat.duration：整次对话耗时，mode=call|stream，outcome=ok|error|cancel
+ * - ai.chat.tokens：prompt、completion token数量，优先取模型返回的usage，没有usage时按流式分片数估算completion
+ * - ai.chat.tokens{type=cached}：prompt中命中服务端提示词缓存的token数量，与type=prompt相除即为缓存命中率
+ * - ai.chat.tokens.per.second：生成速度，流式按首个token之后的时间计算
+ * 检索、向量、工具调用的耗时分别由HybridRetrievalAdvisor、CachingEmbeddingModel、TimedToolCallingManager记录。
+ */
+public class ChatMetricsAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
+
+    private final String clientName;
+
+    private final MeterRegistry meterRegistry;
+
+    public ChatMetricsAdvisor(String clientName, MeterRegistry meterRegistry) {
+        this.clientName = clientName;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        long start = System.nanoTime();
+        try {
+            AdvisedResponse advisedResponse = chain.nextAroundCall(advisedRequest);
+            ChatResponse response = advisedResponse.response();
+            Usage usage = response != null && response.getMetadata() != null ? response.getMetadata().getUsage() : null;
+            record("call", "ok", modelOf(response, advisedRequest), System.nanoTime() - start, -1, usage, 0);
+            return advisedResponse;
+        } catch (RuntimeException e) {
+            record("call", "error", modelOf(null, advisedRequest), System.nanoTime() - start, -1, null, 0);
+            throw e;
+        }
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
+        // 每次订阅单独计时
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            StreamStats stats = new StreamStats();
+            return chain.nextAroundStream(advisedRequest)
+                    .doOnNext(advisedResponse -> stats.onChunk(advisedResponse.response(), start))
+                    .doFinally(signal -> record("stream", outcomeOf(signal),
+                            stats.model != null ? stats.model : modelOf(null, advisedRequest),
+                            System.nanoTime() - start, stats.firstTokenNanos, stats.usage, stats.chunks));
+        });
+    }
+
+    private void record(String mode, String outcome, String model, long durationNanos, long firstTokenNanos,
+                        Usage usage, int chunks) {
+        Timer.builder("ai.chat.duration")
+                .description("对话总耗时")
+                .tags("client", clientName, "model", model, "mode", mode, "outcome", outcome)
+                .register(meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        if (firstTokenNanos >= 0) {
+            Timer.builder("ai.chat.ttft")
+                    .description("流式输出首个token的耗时")
+                    .tags("client", clientName, "model", model)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(firstTokenNanos, TimeUnit.NANOSECONDS);
+        }
+
+        int promptTokens = usage != null && usage.getPromptTokens() != null ? usage.getPromptTokens() : 0;
+        int completionTokens = usage != null && usage.getCompletionTokens() != null && usage.getCompletionTokens() > 0
+                ? usage.getCompletionTokens() : chunks;
+        if (promptTokens > 0) {
+            tokenCounter(model, "prompt").increment(promptTokens);
+            tokenCounter(model, "cached").increment(TokenUsageUtils.cachedTokens(usage));
+        }
+        if (completionTokens > 0) {
+            tokenCounter(model, "completion").increment(completionTokens);
+            long generationNanos = firstTokenNanos >= 0 ? durationNanos - firstTokenNanos : durationNanos;
+            if (generationNanos > 0 && "ok".equals(outcome)) {
+                DistributionSummary.builder("ai.chat.tokens.per.second")
+                        .description("completion token生成速度")
+                        .tags("client", clientName, "model", model)
+                        .register(meterRegistry)
+                        .record(completionTokens * 1e9 / generationNanos);
+            }
+        }
+    }
+
+    private Counter tokenCounter(String model, String type) {
+        return Counter.builder("ai.chat.tokens")
+                .description("prompt、completion、命中缓存的prompt token数量")
+                .tags("client", clientName, "model", model, "type", type)
+                .register(meterRegistry);
+    }
+
+    private static String modelOf(ChatResponse response, AdvisedRequest request) {
+        if (response != null && response.getMetadata() != null && StringUtils.hasText(response.getMetadata().getModel())) {
+            return response.getMetadata().getModel();
+        }
+        ChatOptions options = request.chatOptions();
+        if (options != null && StringUtils.hasText(options.getModel())) {
+            return options.getModel();
+        }
+        ChatOptions defaultOptions = request.chatModel() != null ? request.chatModel().getDefaultOptions() : null;
+        if (defaultOptions != null && StringUtils.hasText(defaultOptions.getModel())) {
+            return defaultOptions.getModel();
+        }
+        return "unknown";
+    }
+
+    private static String outcomeOf(SignalType signal) {
+        return switch (signal) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancel";
+            default -> "ok";
+        };
+    }
+
+    @Override
+    public String getName() {
+        return "ChatMetricsAdvisor";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    /**
+     * 一次流式输出的统计
+     */
+    private static final class StreamStats {
+
+        private long firstTokenNanos = -1;
+
+        private int chunks;
+
+        private Usage usage;
+
+        private String model;
+
+        void onChunk(ChatResponse response, long start) {
+            if (response == null) {
+                return;
+            }
+            if (response.getMetadata() != null) {
+                Usage chunkUsage = response.getMetadata().getUsage();
+                // 开启stream-usage时usage在最后一个分片返回，其余分片为空
+                if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0) {
+                    usage = chunkUsage;
+                }
+                if (model == null && StringUtils.hasText(response.getMetadata().getModel())) {
+                    model = response.getMetadata().getModel();
+                }
+            }
+            if (response.getResult() != null && response.getResult().getOutput() != null
+                    && StringUtils.hasLength(response.getResult().getOutput().getText())) {
+                if (firstTokenNanos < 0) {
+                    firstTokenNanos = System.nanoTime() - start;
+                }
+                chunks++;
+            }
+        }
+    }
+}
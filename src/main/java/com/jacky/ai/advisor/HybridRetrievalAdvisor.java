@@ -0,0 +1,293 @@
+package com.jacky.ai.advisor;
+
+import com.jacky.ai.repository.HybridSearchStore;
+import com.jacky.ai.util.TenantContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.client.advisor.api.*;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 17:00
+ * @description： 混合检索的RAG Advisor，替代QuestionAnswerAdvisor
+ * 向量检索擅长语义相近的问题，但java手册中的类名、方法名、错误码等标识符经常召回不到；
+ * BM25按关键词精确匹配正好互补。两路检索各取若干候选，用RRF（Reciprocal Rank Fusion）按排名融合：
+ * score(d) = Σ 1 / (k + rank(d))，只依赖排名，不需要把余弦相似度与BM25分数归一化到同一尺度。
+ * 融合后的候选再经LocalReranker本地重排（原始向量余弦 + 词面重合度），按token预算装入上下文：
+ * 召回阶段多取（默认每路50个）以免漏掉好的片段，提示词长度仍由预算控制。
+ * 上下文参数与QuestionAnswerAdvisor保持一致（FILTER_EXPRESSION、RETRIEVED_DOCUMENTS），调用方无需修改。
+ * 多租户时向量库按租户分片，调用方通过参数TENANT_ID指定检索哪个租户的数据，未指定时为默认租户。
+ */
+@Slf4j
+public class HybridRetrievalAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
+
+    private static final String DEFAULT_USER_TEXT_ADVISE = """
+
+            Context information is below, surrounded by ---------------------
+
+            ---------------------
+            {question_answer_context}
+            ---------------------
+
+            Given the context and provided history information and not prior knowledge,
+            reply to the user comment. If the answer is not in the context, inform
+            the user that you can't answer the question.
+            """;
+
+    // Advisor参数：检索的租户id
+    public static final String TENANT_ID = "tenant_id";
+
+    private final Function<String, HybridSearchStore> vectorStores;
+
+    private final SearchRequest searchRequest;
+
+    private final int candidates;
+
+    private final int rrfK;
+
+    private final LocalReranker reranker;
+
+    private final int tokenBudget;
+
+    // 检索各阶段耗时：embedding、vector、keyword、rerank（融合+重排+装箱）、total
+    private final Map<String, Timer> stageTimers = new HashMap<>();
+
+    private HybridRetrievalAdvisor(Builder builder) {
+        this.vectorStores = builder.vectorStores;
+        this.searchRequest = builder.searchRequest;
+        this.candidates = Math.max(builder.candidates, builder.searchRequest.getTopK());
+        this.rrfK = builder.rrfK;
+        this.reranker = new LocalReranker(builder.cosineWeight);
+        this.tokenBudget = builder.tokenBudget;
+        for (String stage : List.of("embedding", "vector", "keyword", "rerank", "total")) {
+            stageTimers.put(stage, Timer.builder("ai.rag.retrieval")
+                    .description("混合检索各阶段耗时")
+                    .tag("stage", stage)
+                    .register(builder.meterRegistry));
+        }
+    }
+
+    public static Builder builder(HybridSearchStore vectorStore) {
+        return new Builder(tenant -> vectorStore);
+    }
+
+    /**
+     * @param vectorStores 租户id 到 该租户向量库的映射
+     */
+    public static Builder builder(Function<String, HybridSearchStore> vectorStores) {
+        return new Builder(vectorStores);
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        return after(chain.nextAroundCall(before(advisedRequest)));
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
+        // 检索包含向量模型的同步调用，放到boundedElastic线程执行，避免阻塞响应式线程
+        return Mono.just(advisedRequest)
+                .publishOn(Schedulers.boundedElastic())
+                .map(this::before)
+                .flatMapMany(chain::nextAroundStream)
+                .map(advisedResponse -> isFinished(advisedResponse) ? after(advisedResponse) : advisedResponse);
+    }
+
+    private AdvisedRequest before(AdvisedRequest request) {
+        Map<String, Object> context = new HashMap<>(request.adviseContext());
+        String query = new PromptTemplate(request.userText(), request.userParams()).render();
+        SearchRequest candidateRequest = SearchRequest.from(searchRequest)
+                .query(query)
+                .topK(candidates)
+                .filterExpression(filterExpressionOf(context))
+                .build();
+
+        // 1.向量检索与关键词检索，各自多取候选；查询向量只计算一次，重排时复用
+        HybridSearchStore vectorStore = vectorStores.apply(tenantOf(context));
+        long start = System.nanoTime();
+        float[] queryEmbedding = vectorStore.embedQuery(query);
+        long embeddingNanos = System.nanoTime() - start;
+        List<Document> vectorResults = vectorStore.vectorSearch(queryEmbedding, candidateRequest);
+        long vectorNanos = System.nanoTime() - start - embeddingNanos;
+        List<Document> keywordResults = vectorStore.keywordSearch(candidateRequest);
+        long keywordNanos = System.nanoTime() - start - embeddingNanos - vectorNanos;
+
+        // 2.RRF融合，再本地重排，按token预算装箱
+        List<Document> fused = fuse(List.of(vectorResults, keywordResults), rrfK, candidates);
+        List<Document> reranked = reranker.rerank(query, queryEmbedding, fused, vectorStore::getEmbedding);
+        List<Document> documents = LocalReranker.pack(reranked, searchRequest.getTopK(), tokenBudget);
+        long totalNanos = System.nanoTime() - start;
+        stageTimers.get("embedding").record(embeddingNanos, TimeUnit.NANOSECONDS);
+        stageTimers.get("vector").record(vectorNanos, TimeUnit.NANOSECONDS);
+        stageTimers.get("keyword").record(keywordNanos, TimeUnit.NANOSECONDS);
+        stageTimers.get("rerank").record(totalNanos - embeddingNanos - vectorNanos - keywordNanos, TimeUnit.NANOSECONDS);
+        stageTimers.get("total").record(totalNanos, TimeUnit.NANOSECONDS);
+        log.debug("混合检索, 查询向量: {}ms, 向量召回: {}({}ms), 关键词召回: {}({}μs), 融合后: {}, 放入上下文: {}, 总耗时: {}ms",
+                embeddingNanos / 1_000_000, vectorResults.size(), vectorNanos / 1_000_000, keywordResults.size(), keywordNanos / 1_000,
+                fused.size(), documents.size(), totalNanos / 1_000_000);
+        context.put(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, documents);
+
+        // 3.把检索到的文档拼接到用户问题后面
+        String documentContext = documents.stream().map(Document::getText).collect(Collectors.joining(System.lineSeparator()));
+        Map<String, Object> advisedUserParams = new HashMap<>(request.userParams());
+        advisedUserParams.put("question_answer_context", documentContext);
+        return AdvisedRequest.from(request)
+                .userText(request.userText() + System.lineSeparator() + DEFAULT_USER_TEXT_ADVISE)
+                .userParams(advisedUserParams)
+                .adviseContext(context)
+                .build();
+    }
+
+    /**
+     * RRF融合多路检索结果
+     * @param rankings 每一路检索的结果，按相关度降序
+     * @param k RRF融合常数
+     * @param topK 返回的文档数量
+     * @return 按融合分数降序的文档，score为融合分数
+     */
+    static List<Document> fuse(List<List<Document>> rankings, int k, int topK) {
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, Document> documents = new LinkedHashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                scores.merge(document.getId(), 1.0 / (k + rank + 1), Double::sum);
+                documents.putIfAbsent(document.getId(), document);
+            }
+        }
+        return documents.values().stream()
+                .sorted(Comparator.comparingDouble((Document document) -> scores.get(document.getId())).reversed())
+                .limit(topK)
+                .map(document -> document.mutate().score(scores.get(document.getId())).build())
+                .toList();
+    }
+
+    private AdvisedResponse after(AdvisedResponse advisedResponse) {
+        ChatResponse chatResponse = ChatResponse.builder()
+                .from(advisedResponse.response())
+                .metadata(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, advisedResponse.adviseContext().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS))
+                .build();
+        return new AdvisedResponse(chatResponse, advisedResponse.adviseContext());
+    }
+
+    private Filter.Expression filterExpressionOf(Map<String, Object> context) {
+        Object filterExpression = context.get(QuestionAnswerAdvisor.FILTER_EXPRESSION);
+        if (filterExpression == null || !StringUtils.hasText(filterExpression.toString())) {
+            return searchRequest.getFilterExpression();
+        }
+        return new FilterExpressionTextParser().parse(filterExpression.toString());
+    }
+
+    private static String tenantOf(Map<String, Object> context) {
+        Object tenant = context.get(TENANT_ID);
+        return tenant == null ? TenantContext.DEFAULT_TENANT : tenant.toString();
+    }
+
+    private static boolean isFinished(AdvisedResponse advisedResponse) {
+        ChatResponse response = advisedResponse.response();
+        return response != null && response.getResults().stream()
+                .anyMatch(result -> result != null && result.getMetadata() != null
+                        && StringUtils.hasText(result.getMetadata().getFinishReason()));
+    }
+
+    @Override
+    public String getName() {
+        return "HybridRetrievalAdvisor";
+    }
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    public static class Builder {
+
+        private final Function<String, HybridSearchStore> vectorStores;
+
+        private SearchRequest searchRequest = SearchRequest.builder().build();
+
+        private int candidates = 50;
+
+        private int rrfK = 60;
+
+        private double cosineWeight = 0.7;
+
+        private int tokenBudget = 1500;
+
+        private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+        private Builder(Function<String, HybridSearchStore> vectorStores) {
+            this.vectorStores = vectorStores;
+        }
+
+        /**
+         * @param searchRequest 默认检索参数，topK为最多放入上下文的文档数量
+         */
+        public Builder searchRequest(SearchRequest searchRequest) {
+            this.searchRequest = searchRequest;
+            return this;
+        }
+
+        /**
+         * @param candidates 两路检索各自召回的候选数量
+         */
+        public Builder candidates(int candidates) {
+            this.candidates = candidates;
+            return this;
+        }
+
+        /**
+         * @param rrfK RRF融合常数
+         */
+        public Builder rrfK(int rrfK) {
+            this.rrfK = rrfK;
+            return this;
+        }
+
+        /**
+         * @param cosineWeight 重排时语义分的权重，其余为词面分
+         */
+        public Builder cosineWeight(double cosineWeight) {
+            this.cosineWeight = cosineWeight;
+            return this;
+        }
+
+        /**
+         * @param tokenBudget 放入上下文的文档token预算
+         */
+        public Builder tokenBudget(int tokenBudget) {
+            this.tokenBudget = tokenBudget;
+            return this;
+        }
+
+        /**
+         * @param meterRegistry 指标注册中心，记录检索各阶段耗时
+         */
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public HybridRetrievalAdvisor build() {
+            return new HybridRetrievalAdvisor(this);
+        }
+    }
+}
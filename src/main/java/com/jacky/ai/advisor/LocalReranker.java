@@ -0,0 +1,87 @@
+package com.jacky.ai.advisor;
+
+import com.jacky.ai.util.CjkBigramTokenizer;
+import com.jacky.ai.util.TokenCountUtils;
+import com.jacky.ai.util.VectorKernels;
+import org.springframework.ai.document.Document;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 17:40
+ * @description： 本地重排：不调用任何远程模型，对召回的候选文档重新打分
+ * - 语义分：查询向量与文档原始向量的余弦相似度（关键词召回的文档没有向量分，这里统一补齐）
+ * - 词面分：查询词在文档中出现的比例，标识符、专有名词完全命中时加分
+ * 最终分数 = cosineWeight * 语义分 + (1 - cosineWeight) * 词面分。
+ * 重排后按token预算装箱，只把最相关的若干片段放进提示词，召回可以多取而提示词不变长。
+ */
+public class LocalReranker {
+
+    private final double cosineWeight;
+
+    /**
+     * @param cosineWeight 语义分的权重，取值[0, 1]
+     */
+    public LocalReranker(double cosineWeight) {
+        this.cosineWeight = Math.max(0, Math.min(1, cosineWeight));
+    }
+
+    /**
+     * 重排
+     * @param query 查询语句
+     * @param queryEmbedding 查询向量
+     * @param candidates 候选文档
+     * @param embeddings 根据文档id获取文档向量，没有向量时返回null
+     * @return 按重排分数降序的文档，score为重排分数
+     */
+    public List<Document> rerank(String query, float[] queryEmbedding, List<Document> candidates,
+                                 Function<String, float[]> embeddings) {
+        Set<String> queryTerms = new HashSet<>(CjkBigramTokenizer.tokenize(query));
+        List<Document> reranked = new ArrayList<>(candidates.size());
+        for (Document candidate : candidates) {
+            float[] embedding = embeddings.apply(candidate.getId());
+            double cosine = embedding == null ? 0 : VectorKernels.cosine(queryEmbedding, embedding);
+            double lexical = lexicalOverlap(queryTerms, candidate.getText());
+            double score = cosineWeight * cosine + (1 - cosineWeight) * lexical;
+            reranked.add(candidate.mutate().score(score).build());
+        }
+        reranked.sort(Comparator.comparingDouble(Document::getScore).reversed());
+        return reranked;
+    }
+
+    /**
+     * 按顺序装箱：在token预算内放入尽量多的文档，放不下的跳过并继续尝试后面较短的文档
+     * 排名第一的文档总是保留，避免预算过小时上下文为空
+     * @param ranked 按相关度降序的文档
+     * @param maxDocuments 最多放入的文档数量
+     * @param tokenBudget token预算
+     * @return 放入上下文的文档
+     */
+    public static List<Document> pack(List<Document> ranked, int maxDocuments, int tokenBudget) {
+        List<Document> packed = new ArrayList<>(Math.min(ranked.size(), maxDocuments));
+        int used = 0;
+        for (Document document : ranked) {
+            if (packed.size() >= maxDocuments) {
+                break;
+            }
+            int tokens = TokenCountUtils.estimate(document.getText());
+            if (!packed.isEmpty() && used + tokens > tokenBudget) {
+                continue;
+            }
+            packed.add(document);
+            used += tokens;
+        }
+        return packed;
+    }
+
+    private static double lexicalOverlap(Set<String> queryTerms, String text) {
+        if (queryTerms.isEmpty()) {
+            return 0;
+        }
+        Set<String> documentTerms = new HashSet<>(CjkBigramTokenizer.tokenize(text));
+        long matched = queryTerms.stream().filter(documentTerms::contains).count();
+        return (double) matched / queryTerms.size();
+    }
+}
@@ -0,0 +1,70 @@
+package com.jacky.ai.advisor;
+
+import org.springframework.ai.chat.client.advisor.api.*;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.core.Ordered;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 02:25
+ * @description： 固定提示词前缀的Advisor，让服务端的提示词缓存（KV cache）能命中
+ * 百炼、OpenAI等接口按请求的前缀匹配缓存，前缀逐字节相同的部分不再重新计算，首token耗时和prompt费用都会下降。
+ * SpringAI组装提示词时把系统提示词放在会话记忆之后（AdvisedRequest.toPrompt：记忆消息、系统消息、用户消息），
+ * 每轮对话的系统提示词都跟在不断变长的历史后面，无法与其他会话、其他轮次共享前缀。
+ * 本Advisor在所有修改消息的Advisor之后执行，把系统提示词作为第一条消息，提示词的顺序变为：
+ * 系统提示词（静态） -> 工具定义（按名称排序，见AlibabaOpenAiChatModel） -> 会话历史（只追加） -> 本轮用户消息（含检索到的上下文）
+ * 命中缓存的token数见指标 ai.chat.tokens{type=cached}。
+ */
+public class PromptPrefixAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
+
+    // 在会话记忆、检索等Advisor之后，模型调用之前
+    private static final int ORDER = Ordered.LOWEST_PRECEDENCE - 100;
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        return chain.nextAroundCall(systemFirst(advisedRequest));
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
+        return chain.nextAroundStream(systemFirst(advisedRequest));
+    }
+
+    /**
+     * 把系统提示词移到消息列表最前面，渲染方式与AdvisedRequest.toPrompt一致（有参数时才按模板渲染）
+     */
+    static AdvisedRequest systemFirst(AdvisedRequest request) {
+        if (!StringUtils.hasText(request.systemText())) {
+            return request;
+        }
+        String systemText = CollectionUtils.isEmpty(request.systemParams()) ? request.systemText()
+                : new PromptTemplate(request.systemText(), request.systemParams()).render();
+        List<Message> messages = new ArrayList<>(request.messages().size() + 1);
+        messages.add(new SystemMessage(systemText));
+        messages.addAll(request.messages());
+        return AdvisedRequest.from(request)
+                .systemText(null)
+                .systemParams(Map.of())
+                .messages(messages)
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return "PromptPrefixAdvisor";
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
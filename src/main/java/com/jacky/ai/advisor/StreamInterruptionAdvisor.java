@@ -0,0 +1,153 @@
+package com.jacky.ai.advisor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.client.advisor.api.StreamAroundAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAroundAdvisorChain;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.DEFAULT_CHAT_MEMORY_CONVERSATION_ID;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 10:12
+ * @description： 流式输出中断处理的Advisor
+ * 客户端断开连接（关闭页面）时，Spring MVC在下一次写响应失败后会取消对Flux的订阅，
+ * 取消信号沿着Advisor链一路传到模型的WebClient，从而关闭与Ollama/DashScope的HTTP连接，上游停止生成。
+ * MessageChatMemoryAdvisor只会在流正常结束时保存回答，被取消的流不会落库，
+ * 因此由本Advisor把已经输出的部分内容作为一条"interrupted"的助手消息写入会话记忆。
+ * 节省的completion token（ai.stream.tokens.saved）由usage估算：正常结束的流从最后一个分片的usage中得到completion token数，
+ * 学习平均回答token数与每个字符对应的token数；中断时按已输出字符数换算已输出token，二者之差即为节省值。
+ * 模型不返回usage（例如未开启stream-usage）时无法估算，只记录中断次数。
+ */
+@Slf4j
+public class StreamInterruptionAdvisor implements StreamAroundAdvisor {
+
+    // 助手消息metadata中标记被中断的key
+    public static final String INTERRUPTED_METADATA_KEY = "interrupted";
+
+    // 紧跟在MessageChatMemoryAdvisor之后，保证先保存用户消息再保存中断的回答
+    private static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 1001;
+
+    // 估算平均回答token数与每字符token数的EWMA平滑系数
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final String clientName;
+
+    private final ChatMemory chatMemory;
+
+    private final Counter interruptedCounter;
+
+    private final Counter tokensSavedCounter;
+
+    // 正常结束的回答平均completion token数，来自usage，0表示还没有样本
+    private volatile double avgCompletionTokens = 0;
+
+    // 正常结束的回答中每个字符对应的completion token数，来自usage
+    private volatile double avgTokensPerChar = 0;
+
+    public StreamInterruptionAdvisor(String clientName, ChatMemory chatMemory, MeterRegistry meterRegistry) {
+        this.clientName = clientName;
+        this.chatMemory = chatMemory;
+        this.interruptedCounter = Counter.builder("ai.stream.interrupted")
+                .description("客户端断开导致取消的流式对话次数")
+                .tag("client", clientName)
+                .register(meterRegistry);
+        this.tokensSavedCounter = Counter.builder("ai.stream.tokens.saved")
+                .description("因提前取消上游生成而节省的completion token估算值，按usage换算")
+                .tag("client", clientName)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
+        // 每次订阅单独记录已输出的内容
+        return Flux.defer(() -> {
+            StringBuilder partial = new StringBuilder();
+            AtomicInteger completionTokens = new AtomicInteger();
+            return chain.nextAroundStream(advisedRequest)
+                    .doOnNext(advisedResponse -> {
+                        String text = textOf(advisedResponse.response());
+                        if (text != null && !text.isEmpty()) {
+                            partial.append(text);
+                        }
+                        // 开启stream-usage时usage在最后一个分片返回，其余分片为空
+                        Integer tokens = completionTokensOf(advisedResponse.response());
+                        if (tokens != null && tokens > 0) {
+                            completionTokens.set(tokens);
+                        }
+                    })
+                    .doOnComplete(() -> recordCompletion(completionTokens.get(), partial.length()))
+                    .doOnCancel(() -> onInterrupted(advisedRequest.adviseContext(), partial.toString()));
+        });
+    }
+
+    private void onInterrupted(Map<String, Object> context, String partialText) {
+        String conversationId = String.valueOf(context.getOrDefault(CHAT_MEMORY_CONVERSATION_ID_KEY, DEFAULT_CHAT_MEMORY_CONVERSATION_ID));
+        chatMemory.add(conversationId, List.of(new AssistantMessage(partialText, Map.of(INTERRUPTED_METADATA_KEY, true))));
+        interruptedCounter.increment();
+
+        // 还没有带usage的样本时无法估算
+        if (avgCompletionTokens == 0) {
+            log.info("[{}] 客户端已断开，取消上游生成, chatId: {}, 已输出字符: {}",
+                    clientName, conversationId, partialText.length());
+            return;
+        }
+        long emittedTokens = Math.round(partialText.length() * avgTokensPerChar);
+        long saved = Math.max(0, Math.round(avgCompletionTokens) - emittedTokens);
+        tokensSavedCounter.increment(saved);
+        log.info("[{}] 客户端已断开，取消上游生成, chatId: {}, 估算已输出token: {}, 估算节省token: {}",
+                clientName, conversationId, emittedTokens, saved);
+    }
+
+    private synchronized void recordCompletion(int completionTokens, int chars) {
+        // 没有usage或没有文本的回答不参与估算
+        if (completionTokens <= 0 || chars == 0) {
+            return;
+        }
+        double tokensPerChar = (double) completionTokens / chars;
+        if (avgCompletionTokens == 0) {
+            avgCompletionTokens = completionTokens;
+            avgTokensPerChar = tokensPerChar;
+        } else {
+            avgCompletionTokens = EWMA_ALPHA * completionTokens + (1 - EWMA_ALPHA) * avgCompletionTokens;
+            avgTokensPerChar = EWMA_ALPHA * tokensPerChar + (1 - EWMA_ALPHA) * avgTokensPerChar;
+        }
+    }
+
+    private static Integer completionTokensOf(ChatResponse response) {
+        if (response == null || response.getMetadata() == null || response.getMetadata().getUsage() == null) {
+            return null;
+        }
+        return response.getMetadata().getUsage().getCompletionTokens();
+    }
+
+    private static String textOf(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
+        }
+        return response.getResult().getOutput().getText();
+    }
+
+    @Override
+    public String getName() {
+        return "StreamInterruptionAdvisor";
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
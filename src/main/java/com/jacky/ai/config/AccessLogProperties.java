@@ -0,0 +1,36 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 19:30
+ * @description： 接口访问日志配置，对应application.yaml中的 ai.access-log
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.access-log")
+public class AccessLogProperties {
+
+    // 是否记录访问日志
+    private boolean enabled = true;
+
+    // 正常请求的采样比例，取值[0, 1]；失败和慢请求不受采样限制
+    private double sampleRate = 1.0;
+
+    // 超过该耗时的请求总是记录（流式请求按流结束时计算）
+    private Duration slowThreshold = Duration.ofSeconds(10);
+
+    // 是否记录请求参数
+    private boolean logParams = true;
+
+    // 是否记录非流式接口的返回值，集合只记录元素数量
+    private boolean logResponse = true;
+
+    // 单个参数、返回值的最大字符数，超出部分截断
+    private int maxPayloadLength = 256;
+}
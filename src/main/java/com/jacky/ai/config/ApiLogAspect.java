@@ -1,36 +1,44 @@
 package com.jacky.ai.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacky.ai.util.LogFormatUtils;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.reflect.MethodSignature;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
-import org.springframework.web.multipart.MultipartFile;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
  * @author: Jacky.Zhang
  * @date: 2025/6/21 10:04
  * @description： API日志切面
+ * 每个请求结束时输出一行key=value格式的访问日志（logger名ACCESS_LOG，由logback-spring.xml中的异步appender输出）：
+ * - 按ai.access-log.sample-rate采样，失败和超过slow-threshold的请求总是记录
+ * - 参数、返回值按最大长度截断，集合只记录元素数量，不做JSON序列化；未采样的请求不格式化任何内容
+ * - 流式接口（Flux）在流结束、出错或被取消时记录首个分片耗时、总耗时、分片数和字节数
  */
-@Slf4j
+@Slf4j(topic = "ACCESS_LOG")
 @Aspect
 @Component
 @RequiredArgsConstructor
 public class ApiLogAspect {
 
-    private final ObjectMapper objectMapper;
+    private final AccessLogProperties properties;
 
     @Pointcut("execution(* com.jacky.ai.controller..*.*(..))")
     public void controllerPointcut() {
@@ -38,83 +46,136 @@ public class ApiLogAspect {
 
     @Around("controllerPointcut()")
     public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
-        long startTime = System.currentTimeMillis();
+        if (!properties.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        long startTime = System.nanoTime();
+        boolean sampled = properties.getSampleRate() >= 1
+                || ThreadLocalRandom.current().nextDouble() < properties.getSampleRate();
         ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
         HttpServletRequest request = attributes != null ? attributes.getRequest() : null;
 
-        String url = request != null ? request.getRequestURL().toString() : "unknown";
-        String method = request != null ? request.getMethod() : "unknown";
-        String ip = request != null ? getIpAddress(request) : "unknown";
-        String className = joinPoint.getSignature().getDeclaringTypeName();
-        String methodName = joinPoint.getSignature().getName();
-
-        String params = formatParams(joinPoint);
-        String simpleClassName = className.substring(className.lastIndexOf('.') + 1);
-
-        log.info("[API-REQ] {} {} | {}.{} | IP: {} | Params: {}", method, url, simpleClassName, methodName, ip, params);
-
-        Object result = null;
+        Object result;
         try {
             result = joinPoint.proceed();
-            long endTime = System.currentTimeMillis();
-            long duration = endTime - startTime;
-
-            String response = formatResponse(result);
-            log.info("[API-RES] {} {} | {}.{} | Cost: {}ms | Response: {}", method, url, simpleClassName, methodName, duration, response);
-            return result;
-        } catch (Exception e) {
-            long endTime = System.currentTimeMillis();
-            long duration = endTime - startTime;
-            log.error("[API-ERR] {} {} | {}.{} | Cost: {}ms | Error: {}", method, url, simpleClassName, methodName, duration, e.getMessage(), e);
+        } catch (Throwable e) {
+            long duration = System.nanoTime() - startTime;
+            log.error(accessLine(joinPoint, request, "error", duration).append(" error=")
+                    .append(e.getClass().getSimpleName()).append(": ").append(e.getMessage()).toString(), e);
             throw e;
         }
-    }
 
-    private String formatParams(ProceedingJoinPoint joinPoint) {
-        Object[] args = joinPoint.getArgs();
-        if (args == null || args.length == 0) {
-            return "{}";
+        // 流式响应：此时流还没有被订阅，等流结束时再记录
+        if (result instanceof Flux<?> flux) {
+            return logOnTermination(flux, joinPoint, request, startTime, sampled);
         }
+        long duration = System.nanoTime() - startTime;
+        if (shouldLog(sampled, duration)) {
+            StringBuilder line = accessLine(joinPoint, request, "ok", duration);
+            if (properties.isLogResponse()) {
+                line.append(" response=");
+                LogFormatUtils.appendTruncated(line, result, properties.getMaxPayloadLength());
+            }
+            log.info(line.toString());
+        }
+        return result;
+    }
 
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        String[] paramNames = signature.getParameterNames();
-        Map<String, Object> paramMap = new LinkedHashMap<>();
+    private Flux<?> logOnTermination(Flux<?> flux, ProceedingJoinPoint joinPoint, HttpServletRequest request,
+                                     long startTime, boolean sampled) {
+        // 请求对象在异步阶段可能被容器回收，提前取出需要的字段
+        String method = request != null ? request.getMethod() : "unknown";
+        String uri = request != null ? request.getRequestURI() : "unknown";
+        String ip = request != null ? getIpAddress(request) : "unknown";
+        AtomicLong items = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong firstItemNanos = new AtomicLong(-1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        return flux
+                .doOnNext(item -> {
+                    if (items.getAndIncrement() == 0) {
+                        firstItemNanos.set(System.nanoTime() - startTime);
+                    }
+                    if (item instanceof CharSequence text) {
+                        bytes.addAndGet(LogFormatUtils.utf8Length(text));
+                    }
+                })
+                .doOnError(error::set)
+                .doFinally(signal -> {
+                    long duration = System.nanoTime() - startTime;
+                    boolean failed = signal == SignalType.ON_ERROR;
+                    if (!failed && !shouldLog(sampled, duration)) {
+                        return;
+                    }
+                    StringBuilder line = accessLine(joinPoint, method, uri, ip,
+                            failed ? "error" : signal == SignalType.CANCEL ? "cancel" : "ok", duration);
+                    line.append(" ttfb=");
+                    if (firstItemNanos.get() >= 0) {
+                        line.append(TimeUnit.NANOSECONDS.toMillis(firstItemNanos.get())).append("ms");
+                    } else {
+                        line.append('-');
+                    }
+                    line.append(" items=").append(items.get()).append(" bytes=").append(bytes.get());
+                    if (failed) {
+                        Throwable e = error.get();
+                        line.append(" error=").append(e.getClass().getSimpleName()).append(": ").append(e.getMessage());
+                        log.error(line.toString(), e);
+                    } else {
+                        log.info(line.toString());
+                    }
+                });
+    }
 
-        for (int i = 0; i < args.length; i++) {
-            String paramName = paramNames != null && i < paramNames.length ? paramNames[i] : "arg" + i;
-            Object arg = args[i];
+    private boolean shouldLog(boolean sampled, long durationNanos) {
+        return sampled || durationNanos >= properties.getSlowThreshold().toNanos();
+    }
 
-            if (arg instanceof MultipartFile) {
-                paramMap.put(paramName, "[MultipartFile: " + ((MultipartFile) arg).getOriginalFilename() + "]");
-            } else if (arg instanceof MultipartFile[]) {
-                MultipartFile[] files = (MultipartFile[]) arg;
-                List<String> fileNames = new ArrayList<>();
-                for (MultipartFile file : files) {
-                    fileNames.add(file.getOriginalFilename());
-                }
-                paramMap.put(paramName, "[MultipartFile[]: " + fileNames + "]");
-            } else {
-                paramMap.put(paramName, arg);
-            }
-        }
+    private StringBuilder accessLine(ProceedingJoinPoint joinPoint, HttpServletRequest request, String outcome, long durationNanos) {
+        return accessLine(joinPoint,
+                request != null ? request.getMethod() : "unknown",
+                request != null ? request.getRequestURI() : "unknown",
+                request != null ? getIpAddress(request) : "unknown",
+                outcome, durationNanos);
+    }
 
-        try {
-            return objectMapper.writeValueAsString(paramMap);
-        } catch (Exception e) {
-            return paramMap.toString();
+    private StringBuilder accessLine(ProceedingJoinPoint joinPoint, String method, String uri, String ip,
+                                     String outcome, long durationNanos) {
+        StringBuilder line = new StringBuilder(128);
+        String className = joinPoint.getSignature().getDeclaringType().getSimpleName();
+        line.append("method=").append(method)
+                .append(" uri=").append(uri)
+                .append(" handler=").append(className).append('.').append(joinPoint.getSignature().getName())
+                .append(" ip=").append(ip)
+                .append(" outcome=").append(outcome)
+                .append(" cost=").append(TimeUnit.NANOSECONDS.toMillis(durationNanos)).append("ms");
+        if (properties.isLogParams()) {
+            appendParams(line, joinPoint);
         }
+        return line;
     }
 
-    private String formatResponse(Object result) {
-        if (result == null) {
-            return "null";
+    private void appendParams(StringBuilder line, ProceedingJoinPoint joinPoint) {
+        Object[] args = joinPoint.getArgs();
+        if (args == null || args.length == 0) {
+            return;
         }
-
-        try {
-            return objectMapper.writeValueAsString(result);
-        } catch (Exception e) {
-            return result.toString();
+        String[] paramNames = ((MethodSignature) joinPoint.getSignature()).getParameterNames();
+        line.append(" params={");
+        boolean first = true;
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg instanceof ServletRequest || arg instanceof ServletResponse) {
+                // 请求、响应对象不记录
+                continue;
+            }
+            if (!first) {
+                line.append(", ");
+            }
+            first = false;
+            line.append(paramNames != null && i < paramNames.length ? paramNames[i] : "arg" + i).append('=');
+            LogFormatUtils.appendTruncated(line, arg, properties.getMaxPayloadLength());
         }
+        line.append('}');
     }
 
     private String getIpAddress(HttpServletRequest request) {
@@ -136,4 +197,4 @@ public class ApiLogAspect {
         }
         return ip;
     }
-}
\ No newline at end of file
+}
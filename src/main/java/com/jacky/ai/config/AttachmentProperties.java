@@ -0,0 +1,28 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 01:50
+ * @description： 多模态附件预处理配置，对应application.yaml中的 ai.attachment
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.attachment")
+public class AttachmentProperties {
+
+    // 图片长边的最大像素，超过时等比缩小
+    private int maxDimension = 1568;
+
+    // 重新编码JPEG的质量（0~1）
+    private float jpegQuality = 0.85f;
+
+    // 尺寸未超限的图片超过该字节数时也重新编码
+    private long recompressAboveBytes = 512 * 1024;
+
+    // 并行处理附件的线程数
+    private int threads = 4;
+}
@@ -1,22 +1,70 @@
 package com.jacky.ai.config;
 
+import com.jacky.ai.advisor.ChatMetricsAdvisor;
+import com.jacky.ai.advisor.HybridRetrievalAdvisor;
+import com.jacky.ai.advisor.PromptPrefixAdvisor;
+import com.jacky.ai.advisor.StreamInterruptionAdvisor;
 import com.jacky.ai.constants.SystemConstants;
+import com.jacky.ai.model.AlibabaOpenAiChatModel;
+import com.jacky.ai.model.CachingEmbeddingModel;
+import com.jacky.ai.model.DashScopeOpenAiApi;
+import com.jacky.ai.model.RoutingChatModel;
+import com.jacky.ai.repository.ChatHistoryRepository;
+import com.jacky.ai.repository.HybridSearchStore;
+import com.jacky.ai.repository.HybridVectorStore;
+import com.jacky.ai.repository.LocalVectorNode;
+import com.jacky.ai.repository.RedisSessionStore;
+import com.jacky.ai.repository.SessionStore;
+import com.jacky.ai.repository.ShardedVectorStore;
+import com.jacky.ai.repository.SharedChatHistoryRepository;
+import com.jacky.ai.repository.SharedChatMemory;
+import com.jacky.ai.repository.TenantChatMemory;
+import com.jacky.ai.repository.TenantVectorStores;
 import com.jacky.ai.tools.CourseTools;
+import com.jacky.ai.tools.ParallelToolCallingManager;
+import com.jacky.ai.tools.TimedToolCallingManager;
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.autoconfigure.openai.OpenAiChatProperties;
+import org.springframework.ai.autoconfigure.openai.OpenAiConnectionProperties;
+import org.springframework.ai.autoconfigure.openai.OpenAiEmbeddingProperties;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
-import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import org.springframework.ai.chat.observation.ChatModelObservationConvention;
 import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.model.SimpleApiKey;
+import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import static com.jacky.ai.constants.SystemConstants.CUSTOMER_SERVICE_SYSTEM;
 
@@ -27,24 +75,57 @@ import static com.jacky.ai.constants.SystemConstants.CUSTOMER_SERVICE_SYSTEM;
  * SpringAI基于AOP机制实现与大模型对话过程的增强、拦截、修改等功能。所有的增强通知都需要实现Advisor接口。
  * - SimpleLoggerAdvisor：日志记录的Advisor
  * - MessageChatMemoryAdvisor：会话记忆的Advisor
- * - QuestionAnswerAdvisor：实现RAG的Advisor
+ * - QuestionAnswerAdvisor：实现RAG的Advisor（PDF问答改用HybridRetrievalAdvisor：向量检索 + BM25关键词检索）
+ * - StreamInterruptionAdvisor：客户端断开时取消上游生成，并记录被中断的回答
+ * - ChatMetricsAdvisor：首token耗时、生成速度、token用量等指标，按ChatClient与模型区分
+ * - PromptPrefixAdvisor：系统提示词放在会话历史之前，提示词前缀逐字节固定，命中服务端的提示词缓存
  */
 @Configuration
 public class CommonConfiguration {
 
     /**
-     * 本地Ollama聊天客户端
-     * @param model      Ollama聊天模型，本地部署：deepseek-r1:1.5b
+     * 文本聊天的路由模型：本地Ollama优先，饱和或变慢时按延迟对冲/回退到云端OpenAI兼容接口
+     * @param ollamaChatModel Ollama聊天模型，本地部署：deepseek-r1:1.5b
+     * @param openAiChatModel OpenAI聊天模型，云端部署：qwen-max-latest
+     * @param properties 路由配置
+     * @return 路由模型
+     */
+    @Bean
+    public RoutingChatModel routingChatModel(OllamaChatModel ollamaChatModel, OpenAiChatModel openAiChatModel,
+                                             ModelRouterProperties properties) {
+        return RoutingChatModel.builder()
+                .backend("ollama", ollamaChatModel, properties.getOllamaCost())
+                .backend("openAi", openAiChatModel, properties.getOpenAiCost())
+                .policy(properties.getPolicy())
+                .hedgeEnabled(properties.isHedgeEnabled())
+                .hedgeMinDelay(properties.getHedgeMinDelay())
+                .hedgeInitialDelay(properties.getHedgeInitialDelay())
+                .maxErrorRate(properties.getMaxErrorRate())
+                .errorDecayHalfLife(properties.getErrorDecayHalfLife())
+                .maxInFlight(properties.getMaxInFlight())
+                .build();
+    }
+
+    /**
+     * 本地Ollama聊天客户端（经由路由模型，Ollama饱和时可切换到云端）
+     * @param model      路由模型，默认走本地Ollama：deepseek-r1:1.5b
      * @param chatMemory 聊天内存存储
+     * @param sessionProperties 会话配置，取会话记忆的窗口大小
+     * @param meterRegistry 指标注册中心
+     * @param observationRegistry 观测注册中心，ChatClient与各Advisor的调用会创建span
      * @return 本地Ollama聊天客户端
      */
     @Bean
-    public ChatClient ollamaChatClient(OllamaChatModel model, ChatMemory chatMemory) {
+    public ChatClient ollamaChatClient(RoutingChatModel model, ChatMemory chatMemory, SessionProperties sessionProperties, MeterRegistry meterRegistry,
+                                       ObservationRegistry observationRegistry) {
         //会得到一个ChatClient.Builder工厂对象，利用它可以自由选择模型、添加各种自定义配置
-        return ChatClient.builder(model)
+        return ChatClient.builder(model, observationRegistry, null)
                 .defaultSystem("你是一个热心、可爱的星巴克客服智能助手，你的名字叫小星星，请以小星星的身份和语气回答问题。")// 设置默认的系统提示语
                 .defaultAdvisors(new SimpleLoggerAdvisor()) // 添加默认的日志记录的Advisor
-                .defaultAdvisors(new MessageChatMemoryAdvisor(chatMemory)) // 会话记忆的Advisor
+                .defaultAdvisors(memoryAdvisor(chatMemory, sessionProperties)) // 会话记忆的Advisor
+                .defaultAdvisors(new StreamInterruptionAdvisor("ollama", chatMemory, meterRegistry)) // 客户端断开时取消生成
+                .defaultAdvisors(new ChatMetricsAdvisor("ollama", meterRegistry)) // 首token耗时、token用量等指标
+                .defaultAdvisors(new PromptPrefixAdvisor()) // 系统提示词放在最前面，命中提示词缓存
                 .build();
     }
 
@@ -52,26 +133,73 @@ public class CommonConfiguration {
      * 云端OpenAI聊天客户端（多模态）
      * @param model      OpenAI聊天模型，云端部署：qwen-omni-turbo
      * @param chatMemory 聊天内存存储
+     * @param sessionProperties 会话配置，取会话记忆的窗口大小
+     * @param meterRegistry 指标注册中心
+     * @param observationRegistry 观测注册中心
      * @return 云端OpenAI聊天客户端
      */
     @Bean
-    public ChatClient openAiChatClient(OpenAiChatModel model, ChatMemory chatMemory) {
-        return ChatClient.builder(model) // 创建ChatClient工厂实例
+    public ChatClient openAiChatClient(OpenAiChatModel model, ChatMemory chatMemory, SessionProperties sessionProperties, MeterRegistry meterRegistry,
+                                       ObservationRegistry observationRegistry) {
+        return ChatClient.builder(model, observationRegistry, null) // 创建ChatClient工厂实例
                 .defaultOptions(ChatOptions.builder().model("qwen-omni-turbo").build())// 多模态
                 .defaultSystem("你是一个热心、可爱的星巴克客服智能助手，你的名字叫小星星，请以小星星的身份和语气回答问题。")
                 .defaultAdvisors(new SimpleLoggerAdvisor()) // 添加默认的Advisor,记录日志
-                .defaultAdvisors(new MessageChatMemoryAdvisor(chatMemory))
+                .defaultAdvisors(memoryAdvisor(chatMemory, sessionProperties))
+                .defaultAdvisors(new StreamInterruptionAdvisor("openAi", chatMemory, meterRegistry))
+                .defaultAdvisors(new ChatMetricsAdvisor("openAi", meterRegistry))
+                .defaultAdvisors(new PromptPrefixAdvisor())
                 .build(); // 构建ChatClient实例
 
     }
 
     /**
-     * TODO 创建内存存储，这里用的是InMemoryChatMemory，可以根据需要替换成其他的实现
+     * TODO 创建内存存储，这里用的是按租户分片的内存实现TenantChatMemory，可以根据需要替换成其他的实现
      * 例如：`CassandraChatMemory`：会话保存在Cassandra数据库中（需要引入额外依赖，并且绑定了向量数据库，不够灵活）
+     * 会话id为 租户id:chatId，冷租户的会话记忆写入 {storageDir}/swap/chat-memory
+     * 配置了共享存储（ai.session.store=redis）时改用SharedChatMemory，多个实例共享会话记忆
+     * @param tenantProperties 多租户配置（配额、冷租户判定时间）
+     * @param retrievalProperties 数据根目录
+     * @param sessionProperties 会话存储配置（近端缓存大小）
+     * @param sessionStore 共享存储，未配置时为空
+     * @param meterRegistry 指标注册中心
      */
     @Bean
-    public ChatMemory chatMemory() {
-        return new InMemoryChatMemory();
+    public ChatMemory chatMemory(TenantProperties tenantProperties, RetrievalProperties retrievalProperties,
+                                 SessionProperties sessionProperties, ObjectProvider<SessionStore> sessionStore,
+                                 MeterRegistry meterRegistry) {
+        SessionStore store = sessionStore.getIfAvailable();
+        if (store != null) {
+            return new SharedChatMemory(store, tenantProperties.getMaxConversations(),
+                    tenantProperties.getMaxMessagesPerConversation(), sessionProperties.getNearCacheSize(), meterRegistry);
+        }
+        return new TenantChatMemory(Path.of(retrievalProperties.getStorageDir(), "swap", "chat-memory"),
+                tenantProperties.getMaxConversations(), tenantProperties.getMaxMessagesPerConversation(),
+                tenantProperties.getIdleTimeout(), tenantProperties.getEvictInterval());
+    }
+
+    /**
+     * 多个实例共享的会话存储（Redis协议），会话记忆与会话历史保存在这里
+     * @param properties 会话存储配置
+     * @return 共享存储
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.session", name = "store", havingValue = "redis")
+    public RedisSessionStore sessionStore(SessionProperties properties) {
+        return new RedisSessionStore(properties.getRedisHost(), properties.getRedisPort(), properties.getRedisPassword(),
+                properties.getRedisDatabase(), properties.getKeyPrefix(), properties.getPoolSize(), properties.getTimeout());
+    }
+
+    /**
+     * 保存在共享存储中的会话历史，替代InMemoryChatHistoryRepository
+     * @param sessionStore 共享存储
+     * @param tenantProperties 多租户配置（会话数量配额）
+     * @return 会话历史
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.session", name = "store", havingValue = "redis")
+    public ChatHistoryRepository sharedChatHistoryRepository(SessionStore sessionStore, TenantProperties tenantProperties) {
+        return new SharedChatHistoryRepository(sessionStore, tenantProperties.getMaxConversations());
     }
 
     /**
@@ -79,94 +207,173 @@ public class CommonConfiguration {
      *
      * @param model      openAI聊天模型
      * @param chatMemory 聊天内存存储
+     * @param sessionProperties 会话配置，取会话记忆的窗口大小
+     * @param meterRegistry 指标注册中心
+     * @param observationRegistry 观测注册中心
      * @return 游戏聊天客户端
      */
     @Bean
-    public ChatClient gameOpenAiChatClient(OpenAiChatModel model, ChatMemory chatMemory) {
+    public ChatClient gameOpenAiChatClient(OpenAiChatModel model, ChatMemory chatMemory, SessionProperties sessionProperties, MeterRegistry meterRegistry,
+                                           ObservationRegistry observationRegistry) {
         return ChatClient
-                .builder(model)
+                .builder(model, observationRegistry, null)
                 .defaultSystem(SystemConstants.GAME_SYSTEM_PROMPT)// 设置默认的系统提示语
                 .defaultAdvisors(new SimpleLoggerAdvisor()) // 添加默认的Advisor,记录Agent日志
-                .defaultAdvisors(new MessageChatMemoryAdvisor(chatMemory)) // 设置内存存储
+                .defaultAdvisors(memoryAdvisor(chatMemory, sessionProperties)) // 设置内存存储
+                .defaultAdvisors(new StreamInterruptionAdvisor("game", chatMemory, meterRegistry)) // 客户端断开时取消生成
+                .defaultAdvisors(new ChatMetricsAdvisor("game", meterRegistry))
+                .defaultAdvisors(new PromptPrefixAdvisor())
                 .build();
     }
 
 
     /**
      * 创建客服聊天客户端，这里用的是OpenAIChatModel，可以根据需要替换成其他的实现
-     * @param model      openAI聊天模型（这里用的是AlibabaOpenAiChatModel）
+     * @param model      兼容百炼的聊天模型AlibabaOpenAiChatModel，支持流式工具调用
      * @param chatMemory 聊天内存存储
+     * @param sessionProperties 会话配置，取会话记忆的窗口大小
      * @param courseTools 课程工具类
+     * @param meterRegistry 指标注册中心
+     * @param observationRegistry 观测注册中心
      * @return 客服聊天客户端
      */
     @Bean
-    public ChatClient serviceOpenAiChatClient(OpenAiChatModel model, ChatMemory chatMemory, CourseTools courseTools) {
-        return ChatClient.builder(model)
+    public ChatClient serviceOpenAiChatClient(AlibabaOpenAiChatModel model, ChatMemory chatMemory, SessionProperties sessionProperties, CourseTools courseTools,
+                                              MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        return ChatClient.builder(model, observationRegistry, null)
                 .defaultSystem(CUSTOMER_SERVICE_SYSTEM)// 设置默认的系统提示语
                 .defaultAdvisors(new SimpleLoggerAdvisor()) // 添加默认的Advisor,记录Agent日志
-                .defaultAdvisors(new MessageChatMemoryAdvisor(chatMemory)) // 设置内存存储
+                .defaultAdvisors(memoryAdvisor(chatMemory, sessionProperties)) // 设置内存存储
+                .defaultAdvisors(new ChatMetricsAdvisor("service", meterRegistry))
+                .defaultAdvisors(new PromptPrefixAdvisor())
                 .defaultTools(courseTools) // 添加自定的工具类
                 .build();
     }
 
-// TODO: 兼容 阿里云百炼 无法使用stream API的问题
-//    @Bean
-//    public AlibabaOpenAiChatModel alibabaOpenAiChatModel(OpenAiConnectionProperties commonProperties, OpenAiChatProperties chatProperties, ObjectProvider<RestClient.Builder> restClientBuilderProvider, ObjectProvider<WebClient.Builder> webClientBuilderProvider, ToolCallingManager toolCallingManager, RetryTemplate retryTemplate, ResponseErrorHandler responseErrorHandler, ObjectProvider<ObservationRegistry> observationRegistry, ObjectProvider<ChatModelObservationConvention> observationConvention) {
-//        String baseUrl = StringUtils.hasText(chatProperties.getBaseUrl()) ? chatProperties.getBaseUrl() : commonProperties.getBaseUrl();
-//        String apiKey = StringUtils.hasText(chatProperties.getApiKey()) ? chatProperties.getApiKey() : commonProperties.getApiKey();
-//        String projectId = StringUtils.hasText(chatProperties.getProjectId()) ? chatProperties.getProjectId() : commonProperties.getProjectId();
-//        String organizationId = StringUtils.hasText(chatProperties.getOrganizationId()) ? chatProperties.getOrganizationId() : commonProperties.getOrganizationId();
-//        Map<String, List<String>> connectionHeaders = new HashMap<>();
-//        if (StringUtils.hasText(projectId)) {
-//            connectionHeaders.put("OpenAI-Project", List.of(projectId));
-//        }
-//
-//        if (StringUtils.hasText(organizationId)) {
-//            connectionHeaders.put("OpenAI-Organization", List.of(organizationId));
-//        }
-//        RestClient.Builder restClientBuilder = restClientBuilderProvider.getIfAvailable(RestClient::builder);
-//        WebClient.Builder webClientBuilder = webClientBuilderProvider.getIfAvailable(WebClient::builder);
-//        OpenAiApi openAiApi = OpenAiApi.builder().baseUrl(baseUrl).apiKey(new SimpleApiKey(apiKey)).headers(CollectionUtils.toMultiValueMap(connectionHeaders)).completionsPath(chatProperties.getCompletionsPath()).embeddingsPath("/v1/embeddings").restClientBuilder(restClientBuilder).webClientBuilder(webClientBuilder).responseErrorHandler(responseErrorHandler).build();
-//        AlibabaOpenAiChatModel chatModel = AlibabaOpenAiChatModel.builder().openAiApi(openAiApi).defaultOptions(chatProperties.getOptions()).toolCallingManager(toolCallingManager).retryTemplate(retryTemplate).observationRegistry((ObservationRegistry)observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP)).build();
-//        Objects.requireNonNull(chatModel);
-//        observationConvention.ifAvailable(chatModel::setObservationConvention);
-//        return chatModel;
-//    }
+    /**
+     * 兼容阿里云百炼的聊天模型：支持流式输出时的工具调用（tool call分片增量合并）与includeUsage
+     * 连接配置复用 spring.ai.openai.* ，与OpenAiChatModel一致；工具执行方式见 ai.tools，每个工具的耗时记录在ai.tool.duration
+     */
+    @Bean
+    public AlibabaOpenAiChatModel alibabaOpenAiChatModel(OpenAiConnectionProperties commonProperties, OpenAiChatProperties chatProperties, ObjectProvider<RestClient.Builder> restClientBuilderProvider, ObjectProvider<WebClient.Builder> webClientBuilderProvider, ToolCallingManager toolCallingManager, ToolExecutionProperties toolProperties, MeterRegistry meterRegistry, RetryTemplate retryTemplate, ResponseErrorHandler responseErrorHandler, ObjectProvider<ObservationRegistry> observationRegistry, ObjectProvider<ChatModelObservationConvention> observationConvention) {
+        String baseUrl = StringUtils.hasText(chatProperties.getBaseUrl()) ? chatProperties.getBaseUrl() : commonProperties.getBaseUrl();
+        String apiKey = StringUtils.hasText(chatProperties.getApiKey()) ? chatProperties.getApiKey() : commonProperties.getApiKey();
+        String projectId = StringUtils.hasText(chatProperties.getProjectId()) ? chatProperties.getProjectId() : commonProperties.getProjectId();
+        String organizationId = StringUtils.hasText(chatProperties.getOrganizationId()) ? chatProperties.getOrganizationId() : commonProperties.getOrganizationId();
+        Map<String, List<String>> connectionHeaders = new HashMap<>();
+        if (StringUtils.hasText(projectId)) {
+            connectionHeaders.put("OpenAI-Project", List.of(projectId));
+        }
+
+        if (StringUtils.hasText(organizationId)) {
+            connectionHeaders.put("OpenAI-Organization", List.of(organizationId));
+        }
+        RestClient.Builder restClientBuilder = restClientBuilderProvider.getIfAvailable(RestClient::builder);
+        WebClient.Builder webClientBuilder = webClientBuilderProvider.getIfAvailable(WebClient::builder);
+        // 流式接口原样返回tool call分片，由AlibabaOpenAiChatModel按index合并
+        OpenAiApi openAiApi = new DashScopeOpenAiApi(baseUrl, new SimpleApiKey(apiKey), CollectionUtils.toMultiValueMap(connectionHeaders), chatProperties.getCompletionsPath(), "/v1/embeddings", restClientBuilder, webClientBuilder, responseErrorHandler);
+        // 开启并行模式时，同一轮的多个工具调用在有界线程池中并发执行
+        ToolCallingManager timedToolCallingManager = new TimedToolCallingManager(toolCallingManager, meterRegistry,
+                observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP));
+        ToolCallingManager modelToolCallingManager = toolProperties.isParallel()
+                ? new ParallelToolCallingManager(timedToolCallingManager, toolProperties.getMaxThreads(), toolProperties.getQueueCapacity(), toolProperties.getTimeout())
+                : timedToolCallingManager;
+        AlibabaOpenAiChatModel chatModel = AlibabaOpenAiChatModel.builder().openAiApi(openAiApi).defaultOptions(chatProperties.getOptions()).toolCallingManager(modelToolCallingManager).retryTemplate(retryTemplate).observationRegistry(observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP)).build();
+        observationConvention.ifAvailable(chatModel::setObservationConvention);
+        return chatModel;
+    }
 
 
     /**
      * 创建OpenAI Embedding模型，这里用的是SimpleVectorStore，可以根据需要替换成其他的实现
+     * 在SimpleVectorStore基础上同步维护BM25关键词索引，支持混合检索；查询向量经过缓存与合并请求
+     * 每个租户一个独立的向量库，共用同一个带缓存的向量模型
      * @param embeddingModel openAI Embedding模型
-     * @return
+     * @param embeddingProperties openAI Embedding配置，取模型名作为缓存key的一部分
+     * @param properties 查询向量缓存配置
+     * @param retrievalProperties 数据根目录与预热方式
+     * @param tenantProperties 多租户配置（向量配额、冷租户判定时间）
+     * @param shardingProperties 分片配置，启用时每个租户的向量库按文件摘要分片到多个节点
+     * @param meterRegistry 指标注册中心
+     * @param observationRegistry 观测注册中心，向量库的写入与检索会创建span
+     * @return 按租户分片的向量库
      */
     @Bean
-    public VectorStore vectorStore(OpenAiEmbeddingModel embeddingModel) {
-        return SimpleVectorStore.builder(embeddingModel).build();
+    public TenantVectorStores vectorStores(OpenAiEmbeddingModel embeddingModel, OpenAiEmbeddingProperties embeddingProperties,
+                                           EmbeddingCacheProperties properties, RetrievalProperties retrievalProperties,
+                                           TenantProperties tenantProperties, ShardingProperties shardingProperties,
+                                           MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        OpenAiEmbeddingOptions options = embeddingProperties.getOptions();
+        String modelName = options.getModel() + "/" + options.getDimensions();
+        CachingEmbeddingModel cachingEmbeddingModel = new CachingEmbeddingModel(embeddingModel, modelName,
+                properties.getCacheSize(), properties.getBatchWindowMillis(), properties.getMaxBatchSize(), meterRegistry);
+        Supplier<HybridSearchStore> factory = () -> new HybridVectorStore(cachingEmbeddingModel, observationRegistry);
+        if (shardingProperties.isEnabled()) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(shardingProperties.getSearchThreads(), r -> {
+                Thread thread = new Thread(r, "vector-shard-search-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            // 分片检索在线程池中执行时恢复请求的trace上下文，各分片的检索span仍挂在本次请求下
+            ExecutorService searchExecutor = ContextExecutorService.wrap(pool, ContextSnapshotFactory.builder().build());
+            factory = () -> ShardedVectorStore.builder(cachingEmbeddingModel)
+                    .nodes(IntStream.range(0, shardingProperties.getNodes())
+                            .mapToObj(i -> new LocalVectorNode("node-" + i, cachingEmbeddingModel, observationRegistry))
+                            .toList())
+                    .shardCount(shardingProperties.getShards())
+                    .replicas(shardingProperties.getReplicas())
+                    .searchExecutor(searchExecutor)
+                    .build();
+        }
+        return new TenantVectorStores(factory,
+                Path.of(retrievalProperties.getStorageDir()), tenantProperties.getMaxDocuments(),
+                tenantProperties.getIdleTimeout(), tenantProperties.getEvictInterval(), retrievalProperties.isBackgroundWarmup());
     }
 
     /**
      * 创建PDF聊天客户端，这里用的是OpenAIChatModel，可以根据需要替换成其他的实现
      * @param model      openAI聊天模型（这里用的是AlibabaOpenAiChatModel）
      * @param chatMemory 聊天内存存储
-     * @param vectorStore 向量库
+     * @param sessionProperties 会话配置，取会话记忆的窗口大小
+     * @param vectorStores 按租户分片的向量库，检索的租户由Advisor参数HybridRetrievalAdvisor.TENANT_ID指定
+     * @param properties 检索配置
+     * @param meterRegistry 指标注册中心
+     * @param observationRegistry 观测注册中心
      * @return PDF聊天客户端
      */
     @Bean
-    public ChatClient pdfOpenAiChatClient(OpenAiChatModel model, ChatMemory chatMemory, VectorStore vectorStore) {
-        return ChatClient.builder(model)
+    public ChatClient pdfOpenAiChatClient(OpenAiChatModel model, ChatMemory chatMemory, SessionProperties sessionProperties, TenantVectorStores vectorStores,
+                                          RetrievalProperties properties, MeterRegistry meterRegistry,
+                                          ObservationRegistry observationRegistry) {
+        return ChatClient.builder(model, observationRegistry, null)
                 .defaultSystem("请根据提供的上下文回答问题，不要自己猜测。")
                 .defaultAdvisors(
-                        new MessageChatMemoryAdvisor(chatMemory), // CHAT MEMORY
+                        new ChatMetricsAdvisor("pdf", meterRegistry),
+                        new PromptPrefixAdvisor(), // 系统提示词在前，检索到的上下文在本轮用户消息中
+                        memoryAdvisor(chatMemory, sessionProperties), // CHAT MEMORY
                         new SimpleLoggerAdvisor(),
-                        new QuestionAnswerAdvisor(
-                                vectorStore, // 向量库
-                                SearchRequest.builder() // 向量检索的请求参数
-                                        .similarityThreshold(0.5d) // 相似度阈值
-                                        .topK(2) // 返回的文档片段数量
-                                        .build()
-                        )
+                        HybridRetrievalAdvisor.builder(vectorStores::get) // 向量检索 + BM25关键词检索，本地重排
+                                .searchRequest(SearchRequest.builder() // 向量检索的请求参数
+                                        .similarityThreshold(properties.getSimilarityThreshold()) // 相似度阈值
+                                        .topK(properties.getTopK()) // 最多放入上下文的文档片段数量
+                                        .build())
+                                .candidates(properties.getCandidates())
+                                .rrfK(properties.getRrfK())
+                                .cosineWeight(properties.getCosineWeight())
+                                .tokenBudget(properties.getTokenBudget())
+                                .meterRegistry(meterRegistry)
+                                .build()
                 )
                 .build();
     }
 
-}
\ No newline at end of file
+    /**
+     * 会话记忆的Advisor，每次请求带上最近ai.session.memory-window条消息；附件去重（AttachmentServiceImpl）使用同一个窗口
+     */
+    private static MessageChatMemoryAdvisor memoryAdvisor(ChatMemory chatMemory, SessionProperties sessionProperties) {
+        return new MessageChatMemoryAdvisor(chatMemory, AbstractChatMemoryAdvisor.DEFAULT_CHAT_MEMORY_CONVERSATION_ID,
+                sessionProperties.getMemoryWindow());
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 03:20
+ * @description： 课程查询工具的分页配置，对应application.yaml中的 ai.course-query
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.course-query")
+public class CourseQueryProperties {
+
+    // 未指定每页数量时的默认值
+    private int defaultPageSize = 10;
+
+    // 每页数量上限，工具结果会放入提示词，过多的课程只会浪费token
+    private int maxPageSize = 20;
+
+    // 偏移量上限，超过时拒绝查询（深分页需要扫描并丢弃前面的全部记录）
+    private int maxOffset = 200;
+}
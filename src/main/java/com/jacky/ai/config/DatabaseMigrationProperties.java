@@ -0,0 +1,27 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 03:30
+ * @description： 启动时数据库迁移的配置，对应application.yaml中的 ai.db
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.db")
+public class DatabaseMigrationProperties {
+
+    // 启动时执行迁移脚本，关闭后由DBA手动执行
+    private boolean migrate = true;
+
+    // 执行迁移的租约：执行中的实例每 lease/3 续约一次，超过该时间未续约视为已退出，由其他实例接手重新执行
+    private Duration lease = Duration.ofMinutes(2);
+
+    // 其他实例正在执行时，等待并检查执行结果的间隔
+    private Duration pollInterval = Duration.ofSeconds(2);
+}
@@ -0,0 +1,25 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 18:20
+ * @description： 查询向量缓存与合并请求配置，对应application.yaml中的 ai.embedding
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.embedding")
+public class EmbeddingCacheProperties {
+
+    // 缓存的查询向量数量上限，1024维约4KB一条
+    private int cacheSize = 2000;
+
+    // 合并请求的时间窗，单位毫秒
+    private long batchWindowMillis = 5;
+
+    // 一批最多合并的文本数量
+    private int maxBatchSize = 16;
+}
@@ -0,0 +1,90 @@
+package com.jacky.ai.config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import org.springframework.boot.web.client.RestClientCustomizer;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 15:20
+ * @description： 模型HTTP客户端配置
+ * SpringAI的OpenAiChatModel、OpenAiEmbeddingModel、OllamaChatModel、AlibabaOpenAiChatModel都通过容器中的
+ * RestClient.Builder（同步调用）和WebClient.Builder（流式调用）创建HTTP客户端，
+ * 这里用Customizer让它们共用同一个Reactor Netty连接池：长连接复用、HTTPS上通过ALPN使用HTTP/2多路复用，
+ * 避免在请求关键路径上反复建连和TLS握手。连接池指标以 reactor.netty.connection.provider.* 注册到Micrometer。
+ * 注意：Customizer作用于容器中所有的RestClient.Builder、WebClient.Builder，不只是模型客户端；
+ * 目前项目中只有模型调用使用这两个Builder，新增其他HTTP调用时应自行创建Builder，或确认共用连接池与超时配置是合适的。
+ */
+@Configuration
+public class ModelHttpClientConfiguration {
+
+    // 请求指标的uri标签统一取值，避免不同路径产生过多时间序列
+    private static final String METRICS_URI_TAG = "/model";
+
+    // 每个请求在连接上安装的读超时handler名称
+    private static final String READ_TIMEOUT_HANDLER = "ai.readTimeout";
+
+    // 请求发送完成到收到响应头之间安装的首字节超时handler名称
+    private static final String FIRST_BYTE_TIMEOUT_HANDLER = "ai.firstByteTimeout";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider modelConnectionProvider(ModelHttpClientProperties properties) {
+        return ConnectionProvider.builder("ai-model")
+                .maxConnections(properties.getMaxConnections())
+                .pendingAcquireTimeout(properties.getPendingAcquireTimeout())
+                .pendingAcquireMaxCount(properties.getPendingAcquireMaxCount())
+                .maxIdleTime(properties.getMaxIdleTime())
+                .maxLifeTime(properties.getMaxLifeTime())
+                .evictInBackground(properties.getEvictInterval())
+                .metrics(properties.isMetricsEnabled())
+                .build();
+    }
+
+    @Bean
+    public HttpClient modelHttpClient(ConnectionProvider modelConnectionProvider, ModelHttpClientProperties properties) {
+        HttpClient httpClient = HttpClient.create(modelConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                // 读超时按请求安装、请求结束时移除：连接在池中空闲时不计时，复用连接的请求拥有完整的读超时
+                // 请求失败时连接被关闭或归还连接池，通过addHandlerLast添加的handler在归还时也会被移除
+                .doOnRequest((request, connection) -> connection.addHandlerLast(READ_TIMEOUT_HANDLER,
+                        new ReadTimeoutHandler(properties.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS)))
+                // 首字节超时从请求发送完成开始计时，收到响应头后移除
+                .doAfterRequest((request, connection) -> connection.addHandlerLast(FIRST_BYTE_TIMEOUT_HANDLER,
+                        new ReadTimeoutHandler(properties.getFirstByteTimeout().toMillis(), TimeUnit.MILLISECONDS)))
+                .doOnResponse((response, connection) -> connection.removeHandler(FIRST_BYTE_TIMEOUT_HANDLER))
+                .doAfterResponseSuccess((response, connection) -> connection.removeHandler(READ_TIMEOUT_HANDLER))
+                .metrics(properties.isMetricsEnabled(), uri -> METRICS_URI_TAG);
+        if (properties.isHttp2()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        return httpClient;
+    }
+
+    /**
+     * 同步调用（call、embedding）使用的RestClient
+     */
+    @Bean
+    public RestClientCustomizer modelRestClientCustomizer(HttpClient modelHttpClient) {
+        return builder -> builder.requestFactory(new ReactorClientHttpRequestFactory(modelHttpClient));
+    }
+
+    /**
+     * 流式调用（stream）使用的WebClient
+     */
+    @Bean
+    public WebClientCustomizer modelWebClientCustomizer(HttpClient modelHttpClient) {
+        return builder -> builder.clientConnector(new ReactorClientHttpConnector(modelHttpClient));
+    }
+}
@@ -0,0 +1,51 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 15:10
+ * @description： 模型HTTP客户端配置（Ollama、OpenAI兼容聊天/向量接口共用），对应application.yaml中的 ai.http
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.http")
+public class ModelHttpClientProperties {
+
+    // 连接池最大连接数
+    private int maxConnections = 200;
+
+    // 连接池耗尽时获取连接的最长等待时间
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+
+    // 连接池耗尽时等待获取连接的请求数上限，超过后立即失败；-1表示不限制，只受pendingAcquireTimeout约束
+    private int pendingAcquireMaxCount = -1;
+
+    // 空闲连接保留时间，超过后被回收
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+
+    // 连接最长存活时间，避免长期使用同一条连接导致负载不均
+    private Duration maxLifeTime = Duration.ofMinutes(5);
+
+    // 后台回收空闲连接的间隔
+    private Duration evictInterval = Duration.ofSeconds(30);
+
+    // 建立TCP连接超时
+    private Duration connectTimeout = Duration.ofSeconds(3);
+
+    // 首字节超时：请求发送完成到收到响应头的最长时间。非流式调用在模型生成完之后才返回响应头，需覆盖整个生成过程
+    private Duration firstByteTimeout = Duration.ofSeconds(60);
+
+    // 读超时：请求期间连接上两次读到数据之间的最长间隔（流式输出时即token间隔），每个请求重新计时
+    private Duration readTimeout = Duration.ofSeconds(60);
+
+    // 是否开启HTTP/2（仅HTTPS连接通过ALPN协商，明文连接仍使用HTTP/1.1）
+    private boolean http2 = true;
+
+    // 是否向Micrometer注册连接池与请求指标
+    private boolean metricsEnabled = true;
+}
@@ -0,0 +1,46 @@
+package com.jacky.ai.config;
+
+import com.jacky.ai.model.RoutingChatModel;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 11:05
+ * @description： 模型路由配置，对应application.yaml中的 ai.router
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.router")
+public class ModelRouterProperties {
+
+    // 路由策略：CHEAPEST_HEALTHY（本地优先）、FASTEST（延迟最低）
+    private RoutingChatModel.RoutingPolicy policy = RoutingChatModel.RoutingPolicy.CHEAPEST_HEALTHY;
+
+    // 是否开启对冲请求
+    private boolean hedgeEnabled = true;
+
+    // 对冲延迟下限，实际延迟取 max(主后端p95, 下限)
+    private Duration hedgeMinDelay = Duration.ofMillis(200);
+
+    // 采样不足时的对冲延迟
+    private Duration hedgeInitialDelay = Duration.ofSeconds(3);
+
+    // EWMA错误率超过该值视为不健康
+    private double maxErrorRate = 0.5;
+
+    // 错误率衰减的半衰期，不健康的后端没有流量时也会随时间恢复
+    private Duration errorDecayHalfLife = Duration.ofSeconds(30);
+
+    // 单个后端最大在途请求数，超过视为饱和
+    private int maxInFlight = 4;
+
+    // 本地Ollama的相对成本
+    private int ollamaCost = 0;
+
+    // 云端OpenAI兼容接口的相对成本
+    private int openAiCost = 10;
+}
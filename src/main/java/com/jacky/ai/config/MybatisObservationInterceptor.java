@@ -0,0 +1,59 @@
+package com.jacky.ai.config;
+
+import io.micrometer.common.KeyValues;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.RequiredArgsConstructor;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 20:40
+ * @description： MyBatis执行SQL的观测拦截器
+ * 每次Mapper方法执行SQL时创建一个观测（span：mybatis <Mapper>.<方法>），挂在当前请求的trace下，
+ * 客服对话中CourseTools的查询耗时因此能与模型调用、会话记忆区分开。标签只记录语句id和类型，不记录SQL参数。
+ * MyBatis-Plus自动配置会把容器中的Interceptor注册到SqlSessionFactory。
+ */
+@Component
+@RequiredArgsConstructor
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})
+})
+public class MybatisObservationInterceptor implements Interceptor {
+
+    private final ObservationRegistry observationRegistry;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        String statementId = statement.getId();
+        // com.jacky.ai.mapper.CourseMapper.selectList -> CourseMapper.selectList
+        int mapperStart = statementId.lastIndexOf('.', statementId.lastIndexOf('.') - 1) + 1;
+        Observation observation = Observation.createNotStarted("mybatis.execute", observationRegistry)
+                .contextualName("mybatis " + statementId.substring(mapperStart))
+                .lowCardinalityKeyValues(KeyValues.of(
+                        "mybatis.statement", statementId,
+                        "mybatis.command", statement.getSqlCommandType().name()))
+                .start();
+        try (Observation.Scope ignored = observation.openScope()) {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+}
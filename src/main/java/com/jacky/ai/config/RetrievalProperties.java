@@ -0,0 +1,40 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 16:50
+ * @description： PDF问答检索配置，对应application.yaml中的 ai.rag
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.rag")
+public class RetrievalProperties {
+
+    // 最多放入上下文的文档片段数量
+    private int topK = 4;
+
+    // 向量检索的相似度阈值
+    private double similarityThreshold = 0.5;
+
+    // 向量检索、关键词检索各自召回的候选数量
+    private int candidates = 50;
+
+    // RRF融合常数，越大排名靠后的文档权重下降越慢
+    private int rrfK = 60;
+
+    // 本地重排时语义分（余弦相似度）的权重，其余为词面重合度
+    private double cosineWeight = 0.7;
+
+    // 放入上下文的文档token预算
+    private int tokenBudget = 1500;
+
+    // 启动后立即在后台加载向量快照；false时在首次检索、写入时加载
+    private boolean backgroundWarmup = true;
+
+    // PDF文件（storage/pdf）与快照（chat-pdf.json、chat-pdf.properties）所在的根目录，默认为工作目录
+    private String storageDir = ".";
+}
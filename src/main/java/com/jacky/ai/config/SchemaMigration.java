@@ -0,0 +1,320 @@
+package com.jacky.ai.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 03:30
+ * @description： 启动时执行数据库迁移脚本 classpath:db/migration/V{版本}__{描述}.sql
+ * 执行记录保存在schema_migration表中，按版本号从小到大执行，每个版本执行成功一次。
+ * 多个实例同时启动时，先插入版本记录（PENDING）的实例执行脚本，成功后改为SUCCESS；其他实例等待直到SUCCESS，
+ * 保证启动完成时所有版本都已执行。执行的实例每 ai.db.lease/3 续约一次claimed_on，执行再久也不会被接手；
+ * 实例退出导致claimed_on超过 ai.db.lease 未续约时，由其他实例接手重新执行，原实例之后发现记录被接手会停止执行。
+ * 脚本失败时删除自己持有的记录并终止启动，修复后重新执行。
+ * MySQL的DDL不在事务中，脚本可能只执行了一部分，因此重新执行时跳过已存在的表、列和索引。
+ * 脚本只包含以分号分隔的语句，语句中不能出现分号。由 ai.db.migrate 控制，关闭后由DBA手动执行脚本。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@DependsOnDatabaseInitialization
+@ConditionalOnProperty(prefix = "ai.db", name = "migrate", havingValue = "true", matchIfMissing = true)
+public class SchemaMigration {
+
+    private static final String LOCATION = "classpath*:db/migration/V*__*.sql";
+
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+    private static final String PENDING = "PENDING";
+
+    private static final String SUCCESS = "SUCCESS";
+
+    /**
+     * 对象已存在的错误码：MySQL 1050表、1060列、1061索引；H2 42101表、42121列、42111索引
+     */
+    private static final Set<Integer> ALREADY_EXISTS = Set.of(1050, 1060, 1061, 42101, 42121, 42111);
+
+    private final DataSource dataSource;
+
+    private final DatabaseMigrationProperties properties;
+
+    @PostConstruct
+    public void migrate() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS schema_migration (" +
+                "version INT PRIMARY KEY, " +
+                "description VARCHAR(200) NOT NULL, " +
+                "status VARCHAR(16) NOT NULL, " +
+                "claimed_on TIMESTAMP NOT NULL, " +
+                "installed_on TIMESTAMP NULL)");
+        scripts().forEach((version, script) -> migrate(jdbcTemplate, version, script));
+    }
+
+    /**
+     * 执行一个版本，返回时该版本已执行成功
+     */
+    private void migrate(JdbcTemplate jdbcTemplate, int version, Resource script) {
+        String description = description(script);
+        boolean waiting = false;
+        while (true) {
+            if (insert(jdbcTemplate, version, description)) {
+                apply(jdbcTemplate, version, description, script);
+                return;
+            }
+            List<Claim> claims = jdbcTemplate.query(
+                    "SELECT status, claimed_on, CURRENT_TIMESTAMP FROM schema_migration WHERE version = ?",
+                    (rs, rowNum) -> new Claim(rs.getString(1), rs.getTimestamp(2), rs.getTimestamp(3)), version);
+            if (claims.isEmpty()) {
+                // 执行的实例失败后删除了记录，重新抢占
+                continue;
+            }
+            Claim claim = claims.get(0);
+            if (SUCCESS.equals(claim.status())) {
+                return;
+            }
+            if (claim.expired(properties.getLease()) && takeOver(jdbcTemplate, version, claim)) {
+                log.warn("Schema migration V{} has been pending since {}, running it again.", version, claim.claimedOn());
+                apply(jdbcTemplate, version, description, script);
+                return;
+            }
+            if (!waiting) {
+                log.info("Schema migration V{} is running on another instance, waiting for it to finish.", version);
+                waiting = true;
+            }
+            sleep(properties.getPollInterval());
+        }
+    }
+
+    private static boolean insert(JdbcTemplate jdbcTemplate, int version, String description) {
+        try {
+            jdbcTemplate.update("INSERT INTO schema_migration (version, description, status, claimed_on) " +
+                    "VALUES (?, ?, ?, CURRENT_TIMESTAMP)", version, description, PENDING);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 接手超时的PENDING记录，claimed_on未变说明没有被其他实例抢先接手
+     */
+    private static boolean takeOver(JdbcTemplate jdbcTemplate, int version, Claim claim) {
+        return jdbcTemplate.update("UPDATE schema_migration SET claimed_on = CURRENT_TIMESTAMP " +
+                "WHERE version = ? AND status = ? AND claimed_on = ?", version, PENDING, claim.claimedOn()) == 1;
+    }
+
+    private void apply(JdbcTemplate jdbcTemplate, int version, String description, Resource script) {
+        try (Heartbeat heartbeat = new Heartbeat(jdbcTemplate, version, properties.getLease().dividedBy(3))) {
+            try {
+                for (String statement : statements(script)) {
+                    heartbeat.check();
+                    execute(jdbcTemplate, version, statement);
+                }
+            } catch (RuntimeException e) {
+                heartbeat.release();
+                throw new IllegalStateException("Schema migration V" + version + " (" + description + ") failed.", e);
+            }
+        }
+        jdbcTemplate.update("UPDATE schema_migration SET status = ?, installed_on = CURRENT_TIMESTAMP WHERE version = ?",
+                SUCCESS, version);
+        log.info("Applied schema migration V{}: {}", version, description);
+    }
+
+    /**
+     * 执行一条语句，对象已存在说明上次执行到一半退出，跳过该语句
+     */
+    private static void execute(JdbcTemplate jdbcTemplate, int version, String statement) {
+        try {
+            jdbcTemplate.execute(statement);
+        } catch (DataAccessException e) {
+            if (e.getMostSpecificCause() instanceof SQLException sqlException
+                    && ALREADY_EXISTS.contains(sqlException.getErrorCode())) {
+                log.warn("Schema migration V{} skipped an existing object: {}", version, sqlException.getMessage());
+                return;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 去掉 -- 开头的注释行后按分号拆分语句
+     */
+    private static List<String> statements(Resource script) {
+        String content;
+        try {
+            content = script.getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String sql = content.lines()
+                .filter(line -> !line.trim().startsWith("--"))
+                .collect(Collectors.joining("\n"));
+        return Arrays.stream(sql.split(";"))
+                .map(String::trim)
+                .filter(statement -> !statement.isEmpty())
+                .toList();
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for schema migration.", e);
+        }
+    }
+
+    private static Timestamp claimedOn(JdbcTemplate jdbcTemplate, int version) {
+        return jdbcTemplate.queryForObject("SELECT claimed_on FROM schema_migration WHERE version = ?", Timestamp.class, version);
+    }
+
+    /**
+     * 执行期间在后台线程定期续约claimed_on
+     * 续约按上次的claimed_on比较后更新，只续自己持有的记录；更新不到说明已被其他实例接手，执行线程在下一条语句前停止
+     * 数据库暂时不可用时等下次续约，连续失败超过租约才会被接手
+     */
+    private static final class Heartbeat implements AutoCloseable {
+
+        private final JdbcTemplate jdbcTemplate;
+
+        private final int version;
+
+        private final ScheduledExecutorService executor;
+
+        private volatile Timestamp claimedOn;
+
+        private volatile boolean lost;
+
+        Heartbeat(JdbcTemplate jdbcTemplate, int version, Duration interval) {
+            this.jdbcTemplate = jdbcTemplate;
+            this.version = version;
+            this.claimedOn = claimedOn(jdbcTemplate, version);
+            this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "schema-migration-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long millis = Math.max(1000, interval.toMillis());
+            executor.scheduleWithFixedDelay(this::renew, millis, millis, TimeUnit.MILLISECONDS);
+        }
+
+        private void renew() {
+            try {
+                if (jdbcTemplate.update("UPDATE schema_migration SET claimed_on = CURRENT_TIMESTAMP " +
+                        "WHERE version = ? AND status = ? AND claimed_on = ?", version, PENDING, claimedOn) == 1) {
+                    claimedOn = claimedOn(jdbcTemplate, version);
+                } else {
+                    lost = true;
+                    executor.shutdown();
+                    log.error("Schema migration V{} has been taken over by another instance.", version);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to renew the claim of schema migration V{}: {}", version, e.getMessage());
+            }
+        }
+
+        /**
+         * @throws IllegalStateException 记录已被其他实例接手时抛出
+         */
+        void check() {
+            if (lost) {
+                throw new IllegalStateException("Schema migration V" + version + " has been taken over by another instance.");
+            }
+        }
+
+        /**
+         * 停止续约并删除自己持有的记录，已被其他实例接手时不删除
+         */
+        void release() {
+            close();
+            jdbcTemplate.update("DELETE FROM schema_migration WHERE version = ? AND status = ? AND claimed_on = ?",
+                    version, PENDING, claimedOn);
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+            try {
+                // 等正在进行的续约结束，之后claimed_on不再变化
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 版本记录的状态，now取数据库时间，避免各实例时钟不一致
+     */
+    private record Claim(String status, Timestamp claimedOn, Timestamp now) {
+
+        boolean expired(Duration lease) {
+            return now.getTime() - claimedOn.getTime() >= lease.toMillis();
+        }
+    }
+
+    /**
+     * 按版本号排序的迁移脚本
+     */
+    private static TreeMap<Integer, Resource> scripts() {
+        Resource[] resources;
+        try {
+            resources = new PathMatchingResourcePatternResolver().getResources(LOCATION);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        TreeMap<Integer, Resource> scripts = new TreeMap<>();
+        for (Resource resource : resources) {
+            Resource previous = scripts.put(version(resource), resource);
+            if (previous != null) {
+                throw new IllegalStateException("Duplicate schema migration version: "
+                        + previous.getFilename() + ", " + resource.getFilename());
+            }
+        }
+        return scripts;
+    }
+
+    private static int version(Resource resource) {
+        return Integer.parseInt(matcher(resource).group(1));
+    }
+
+    private static String description(Resource resource) {
+        return matcher(resource).group(2).replace('_', ' ');
+    }
+
+    private static Matcher matcher(Resource resource) {
+        Matcher matcher = FILE_NAME.matcher(String.valueOf(resource.getFilename()));
+        if (!matcher.matches()) {
+            throw new IllegalStateException("Invalid schema migration file name: " + resource.getFilename());
+        }
+        return matcher;
+    }
+}
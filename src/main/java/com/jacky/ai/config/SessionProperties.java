@@ -0,0 +1,46 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 01:35
+ * @description： 会话记忆与会话历史的存储配置，对应application.yaml中的 ai.session
+ * store为local时保存在进程内（单实例部署）；为redis时保存在Redis中，多个实例之间共享，负载均衡不需要会话粘滞。
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.session")
+public class SessionProperties {
+
+    // 每次请求从会话记忆中取出、发给模型的最近消息数（MessageChatMemoryAdvisor），附件去重也在这些消息中查找
+    private int memoryWindow = 100;
+
+    // 存储方式：local（进程内）、redis（多个实例共享）
+    private String store = "local";
+
+    private String redisHost = "localhost";
+
+    private int redisPort = 6379;
+
+    // Redis密码，为空时不认证
+    private String redisPassword;
+
+    private int redisDatabase = 0;
+
+    // key前缀，多个应用共用一个Redis时区分
+    private String keyPrefix = "ai:";
+
+    // 连接数上限
+    private int poolSize = 16;
+
+    // 连接、读取、等待连接的超时时间
+    private Duration timeout = Duration.ofSeconds(2);
+
+    // 每个实例近端缓存的会话数量上限，版本号未变时直接使用缓存
+    private int nearCacheSize = 10_000;
+}
@@ -0,0 +1,31 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 00:50
+ * @description： 向量库分片配置，对应application.yaml中的 ai.rag.sharding
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.rag.sharding")
+public class ShardingProperties {
+
+    // 是否启用分片；关闭时每个租户一个单机的HybridVectorStore
+    private boolean enabled = false;
+
+    // 节点数量（进程内节点）
+    private int nodes = 3;
+
+    // 分片数量，应明显多于节点数；修改后重启即按新的分片数加载快照
+    private int shards = 12;
+
+    // 每个分片的副本数，检索在副本间轮询
+    private int replicas = 2;
+
+    // 并行检索各分片的线程数，所有租户共用
+    private int searchThreads = 8;
+}
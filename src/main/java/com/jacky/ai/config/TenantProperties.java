@@ -0,0 +1,37 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 23:40
+ * @description： 多租户配置，对应application.yaml中的 ai.tenant
+ * 租户id取自请求头，未携带时为默认租户；向量库、会话记忆、会话历史按租户隔离，配额按租户分别计算。
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.tenant")
+public class TenantProperties {
+
+    // 携带租户id的请求头，租户id只能包含字母、数字、下划线和短横线，最长64个字符
+    private String header = "X-Tenant-Id";
+
+    // 单个租户的向量数量上限（PDF按页切分，一页一个向量）
+    private int maxDocuments = 100_000;
+
+    // 单个租户的会话数量上限，超出后新会话返回429
+    private int maxConversations = 1000;
+
+    // 单个会话保留的消息数量上限，超出后丢弃最早的消息
+    private int maxMessagesPerConversation = 100;
+
+    // 超过该时间没有访问的租户，向量库与会话记忆写入磁盘后从内存中移除，再次访问时重新加载
+    private Duration idleTimeout = Duration.ofMinutes(30);
+
+    // 检查冷租户的间隔
+    private Duration evictInterval = Duration.ofMinutes(1);
+}
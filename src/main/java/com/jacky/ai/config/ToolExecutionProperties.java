@@ -0,0 +1,30 @@
+package com.jacky.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 14:35
+ * @description： 工具调用执行配置，对应application.yaml中的 ai.tools
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.tools")
+public class ToolExecutionProperties {
+
+    // 是否并行执行同一轮中的多个工具调用
+    private boolean parallel = true;
+
+    // 并行执行工具的最大线程数
+    private int maxThreads = 8;
+
+    // 等待队列长度，队列满时新的工具调用直接返回繁忙
+    private int queueCapacity = 64;
+
+    // 单个工具调用的超时时间，从开始执行时起计算，排队等待也不超过该时间；只在parallel为true时生效
+    private Duration timeout = Duration.ofSeconds(10);
+}
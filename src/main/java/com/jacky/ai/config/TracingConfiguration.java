@@ -0,0 +1,30 @@
+package com.jacky.ai.config;
+
+import io.opentelemetry.exporter.logging.otlp.OtlpJsonLoggingSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 20:50
+ * @description： 链路追踪配置
+ * Micrometer Observation桥接到OpenTelemetry，span覆盖：HTTP请求 -> ChatClient -> 各Advisor -> 模型调用、
+ * 向量检索、向量接口 -> 工具调用 -> MyBatis SQL。Reactor线程间的上下文传递由 spring.reactor.context-propagation=auto 开启。
+ * span的导出方式：
+ * - OTLP：management.otlp.tracing.endpoint，本地可用Jaeger等支持OTLP的服务接收
+ * - 日志：ai.tracing.log-exporter=true时，每个span以OTLP JSON格式写入logs/traces.jsonl，不依赖外部服务，便于离线分析
+ */
+@Configuration
+public class TracingConfiguration {
+
+    /**
+     * Spring Boot会把容器中的SpanExporter都注册到OpenTelemetry的批量span处理器
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.tracing", name = "log-exporter", havingValue = "true")
+    public SpanExporter otlpJsonLoggingSpanExporter() {
+        return OtlpJsonLoggingSpanExporter.create();
+    }
+}
@@ -0,0 +1,37 @@
+package com.jacky.ai.config;
+
+import com.jacky.ai.repository.HybridVectorStore;
+import com.jacky.ai.repository.TenantVectorStores;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 19:10
+ * @description： 向量库状态的actuator端点：GET /actuator/vectorstore
+ * 返回快照预热进度（状态、已加载文档数、字节数、百分比、耗时）以及有效文档数、待压缩的墓碑数。
+ * 预热期间应用已经就绪，非PDF接口正常服务，PDF检索会等待加载完成。
+ * 向量库按租户分片，返回内存中各租户的状态；GET /actuator/vectorstore/{tenant} 查询单个租户（不在内存中时会加载）。
+ */
+@Component
+@Endpoint(id = "vectorstore")
+@RequiredArgsConstructor
+public class VectorStoreEndpoint {
+
+    private final TenantVectorStores vectorStores;
+
+    @ReadOperation
+    public Map<String, HybridVectorStore.WarmupProgress> warmup() {
+        return vectorStores.progress();
+    }
+
+    @ReadOperation
+    public HybridVectorStore.WarmupProgress tenant(@Selector String tenant) {
+        return vectorStores.get(tenant).getWarmupProgress();
+    }
+}
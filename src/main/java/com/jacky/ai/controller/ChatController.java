@@ -2,10 +2,11 @@ package com.jacky.ai.controller;
 
 
 import com.jacky.ai.repository.ChatHistoryRepository;
+import com.jacky.ai.service.IAttachmentService;
+import com.jacky.ai.util.TenantContext;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.model.Media;
-import org.springframework.util.MimeType;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -13,7 +14,6 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
 import java.util.List;
-import java.util.Objects;
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
 
 /**
@@ -33,6 +33,8 @@ public class ChatController {
 
     private final ChatHistoryRepository chatHistoryRepository;
 
+    private final IAttachmentService attachmentService;
+
     @RequestMapping(value = "/chat", produces = "text/html;charset=UTF-8")
     public Flux<String> chat(@RequestParam("prompt") String prompt,
                              @RequestParam("chatId") String chatId,
@@ -60,16 +62,13 @@ public class ChatController {
      * @return 响应流chatId
      */
     private Flux<String> multiModalChat(String prompt, String chatId, List<MultipartFile> files) {
-        // 1.解析多媒体
-        List<Media> medias = files.stream()
-                .map(file -> new Media(
-                                MimeType.valueOf(Objects.requireNonNull(file.getContentType())),
-                                file.getResource()))
-                .toList();
+        // 1.预处理附件：并行压缩图片，会话中已发送过的附件只引用不重复发送
+        String conversationId = TenantContext.conversationId(chatId);
+        IAttachmentService.PreparedAttachments attachments = attachmentService.prepare(conversationId, files);
         // 2.请求模型
         return openAiChatClient.prompt()
-                .user(p -> p.text(prompt).media(medias.toArray(Media[]::new)))
-                .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
+                .user(p -> p.text(attachments.annotate(prompt)).media(attachments.media().toArray(Media[]::new)))
+                .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, conversationId))
                 .stream()
                 .content();
     }
@@ -79,7 +78,7 @@ public class ChatController {
     //2、MessageChatMemoryAdvisor自动管理：
     //  请求前：从ChatMemory.get(chatId)获取历史消息
     //  请求后：通过ChatMemory.add(chatId, newMessages)追加新消息
-    //3、InMemoryChatMemory内部使用Map：Map<String, List<Message>>，key是chatId，value是消息列表
+    //3、TenantChatMemory按租户分片，每个租户内部使用Map：Map<String, List<Message>>，key是 租户id:chatId，value是消息列表
     //4、消息列表不断追加：每次对话都会将新的user消息和assistant消息追加到列表末尾
     //这种设计使得AI能够"记住"之前的对话内容，实现多轮对话的上下文连贯性。
 
@@ -92,7 +91,7 @@ public class ChatController {
     private Flux<String> textChat(String prompt, String chatId) {
         return ollamaChatClient.prompt()
                 .user(prompt)
-                .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)) // 传递chatId给Advisor的方式是通过AdvisorContext，也就是以key-value形式存入上下文
+                .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, TenantContext.conversationId(chatId))) // 传递chatId给Advisor的方式是通过AdvisorContext，也就是以key-value形式存入上下文
                 .stream()
                 .content();
     }
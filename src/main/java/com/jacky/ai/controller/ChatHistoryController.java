@@ -2,6 +2,7 @@ package com.jacky.ai.controller;
 
 import com.jacky.ai.entity.MessageVO;
 import com.jacky.ai.repository.ChatHistoryRepository;
+import com.jacky.ai.util.TenantContext;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,7 +51,7 @@ public class ChatHistoryController {
     @GetMapping("/{type}/{chatId}")
     public List<MessageVO> getChatHistory(@PathVariable("type") String type, @PathVariable("chatId") String chatId) {
         logger.info("查询会话历史，业务类型：{}, 会话id：{}", type, chatId);
-        List<Message> messages = chatMemory.get(chatId,Integer.MAX_VALUE);
+        List<Message> messages = chatMemory.get(TenantContext.conversationId(chatId),Integer.MAX_VALUE);
         if(messages == null) {
             return List.of();
         }
@@ -1,6 +1,7 @@
 package com.jacky.ai.controller;
 
 import com.jacky.ai.repository.ChatHistoryRepository;
+import com.jacky.ai.util.TenantContext;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -25,14 +26,14 @@ public class CustomerServiceController {
      * @return 响应流chatId
      */
     @RequestMapping(value = "/service", produces = "text/html;charset=utf-8")
-    public String service(String prompt, String chatId) {
+    public Flux<String> service(String prompt, String chatId) {
         // 1.保存会话id
         chatHistoryRepository.save("service", chatId);
         // 2.请求模型
         return serviceOpenAiChatClient.prompt()
                 .user(prompt)
-                .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
-                .call()
+                .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, TenantContext.conversationId(chatId)))
+                .stream()
                 .content();
     }
 }
\ No newline at end of file
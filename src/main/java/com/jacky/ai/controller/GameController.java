@@ -1,5 +1,6 @@
 package com.jacky.ai.controller;
 
+import com.jacky.ai.util.TenantContext;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -25,7 +26,7 @@ public class GameController {
     public Flux<String> chat(String prompt, String chatId) {
         return gameOpenAiChatClient.prompt()
                 .user(prompt)
-                .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
+                .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, TenantContext.conversationId(chatId)))
                 .stream()
                 .content();
     }
@@ -1,26 +1,35 @@
 package com.jacky.ai.controller;
 
+import com.jacky.ai.advisor.HybridRetrievalAdvisor;
 import com.jacky.ai.entity.vo.Result;
 import com.jacky.ai.repository.ChatHistoryRepository;
 import com.jacky.ai.repository.FileRepository;
+import com.jacky.ai.repository.ShardedVectorStore;
+import com.jacky.ai.repository.TenantQuotaExceededException;
+import com.jacky.ai.repository.TenantVectorStores;
+import com.jacky.ai.util.FileTransferUtils;
+import com.jacky.ai.util.TenantContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.ExtractedTextFormatter;
 import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
 import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -36,12 +45,17 @@ public class PdfController {
 
     private final FileRepository fileRepository;
 
-    private final VectorStore vectorStore;
+    private final TenantVectorStores vectorStores;
 
     private final ChatHistoryRepository chatHistoryRepository;
 
     private final ChatClient pdfOpenAiChatClient;
 
+    private final ChatMemory chatMemory;
+
+    // 上传文件的大小上限与multipart一致：spring.servlet.multipart.max-file-size
+    private final MultipartProperties multipartProperties;
+
     /**
      * 1、PDF聊天
      * @param prompt 提示词
@@ -54,8 +68,9 @@ public class PdfController {
         Resource file = fileRepository.getFile(chatId);
         return pdfOpenAiChatClient
                 .prompt(prompt)
-                .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
+                .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, TenantContext.conversationId(chatId)))
                 .advisors(a -> a.param(QuestionAnswerAdvisor.FILTER_EXPRESSION, "file_name == '"+ file.getFilename() +"'"))
+                .advisors(a -> a.param(HybridRetrievalAdvisor.TENANT_ID, TenantContext.current())) // 只检索当前租户的向量库
                 .stream()
                 .content();
     }
@@ -63,29 +78,39 @@ public class PdfController {
 
     /**
      * 2、文件上传
+     * multipart/form-data方式，Tomcat已把文件部分写入磁盘临时文件，这里以流的方式转存
      * @param chatId 会话id
      * @param file 文件
      * @return 结果
      */
-    @RequestMapping("/upload/{chatId}")
+    @RequestMapping(value = "/upload/{chatId}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public Result uploadPdf(@PathVariable String chatId, @RequestParam("file") MultipartFile file) {
-        try {
-            // 1. 校验文件是否为PDF格式
-            if (!Objects.equals(file.getContentType(), "application/pdf")) {
-                return Result.fail("只能上传PDF文件！");
-            }
-            // 2.保存文件
-            boolean success = fileRepository.save(chatId, file.getResource());
-            if(! success) {
-                return Result.fail("保存文件失败！");
-            }
-            // 3.写入向量库
-            Resource savedResource = fileRepository.getFile(chatId);
-            if (!savedResource.exists()) {
-                return Result.fail("保存文件失败！");
-            }
-            this.writeToVectorStore(savedResource);
-            return Result.ok();
+        try (InputStream inputStream = file.getInputStream()) {
+            return saveAndIndex(chatId, file.getOriginalFilename(), inputStream);
+        } catch (Exception e) {
+            log.error("Failed to upload PDF.", e);
+            return Result.fail("上传文件失败！");
+        }
+    }
+
+    /**
+     * 2.1、文件上传（请求体即文件内容）
+     * 不经过multipart解析，请求体直接流式写入storage/pdf，每个上传只占用固定大小的缓冲区
+     * multipart的大小限制对这里不生效，按同一个上限校验：Content-Length超过上限时不读取请求体，边读边计数，超过时中止并删除已写入的内容
+     * @param chatId 会话id
+     * @param filename 原始文件名
+     * @param request 请求，请求体为PDF文件内容
+     * @return 结果
+     */
+    @PostMapping(value = "/upload/{chatId}", consumes = {MediaType.APPLICATION_PDF_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public Result uploadPdfStream(@PathVariable String chatId,
+                                  @RequestParam(value = "filename", required = false) String filename,
+                                  HttpServletRequest request) {
+        if (request.getContentLengthLong() > maxFileSize()) {
+            return Result.fail("文件大小超过上限！");
+        }
+        try (InputStream inputStream = request.getInputStream()) {
+            return saveAndIndex(chatId, filename, inputStream);
         } catch (Exception e) {
             log.error("Failed to upload PDF.", e);
             return Result.fail("上传文件失败！");
@@ -94,55 +119,73 @@ public class PdfController {
 
     /**
      * 3、文件下载
+     * 支持Range分段下载与ETag缓存校验，PDF阅读器可以按需分段获取，重复请求返回304
      * @param chatId 会话id
-     * @return 文件流
+     * @param request 请求
+     * @param response 响应，文件内容以零拷贝方式写出
      */
     @GetMapping("/file/{chatId}")
-    public ResponseEntity<Resource> download(@PathVariable("chatId") String chatId) throws IOException {
+    public void download(@PathVariable("chatId") String chatId, HttpServletRequest request, HttpServletResponse response) throws IOException {
         // 1.读取文件
         Resource resource = fileRepository.getFile(chatId);
-
-
-        System.out.println("=== PDF下载调试信息 ===");
-        System.out.println("chatId: " + chatId);
-        System.out.println("Resource: " + resource);
-        System.out.println("Resource exists: " + resource.exists());
-        System.out.println("Resource filename: " + resource.getFilename());
-
         if (!resource.exists()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        // 2.尝试获取文件大小
-        try {
-            long fileSize = resource.contentLength();
-            System.out.println("文件大小: " + fileSize + " bytes");
-
-            if (fileSize == 0) {
-                System.err.println("警告：文件大小为0！");
-
-                // 尝试通过File对象获取大小
-                File file = resource.getFile();
-                System.out.println("File对象路径: " + file.getAbsolutePath());
-                System.out.println("File对象大小: " + file.length() + " bytes");
-                System.out.println("File对象是否存在: " + file.exists());
-                System.out.println("File对象可读: " + file.canRead());
-            }
-        } catch (Exception e) {
-            System.err.println("获取文件大小失败: " + e.getMessage());
-            e.printStackTrace();
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
-
         // 2.文件名编码，写入响应头
         String filename = URLEncoder.encode(Objects.requireNonNull(resource.getFilename()), StandardCharsets.UTF_8);
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
         // 3.返回文件
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
-                .body(resource);
+        FileTransferUtils.send(resource.getFile().toPath(), fileRepository.getDigest(chatId),
+                MediaType.APPLICATION_PDF_VALUE, request, response);
     }
 
-    private void writeToVectorStore(Resource resource) {
+    /**
+     * 4、删除文件
+     * 文件的向量立即从检索中移除，向量库与快照（chat-pdf.json、chat-pdf.properties）在后台压缩重写；
+     * 文件删除后会话无法继续问答，同时删除会话记录与会话记忆
+     * @param chatId 会话id
+     * @return 结果
+     */
+    @DeleteMapping("/file/{chatId}")
+    public Result deletePdf(@PathVariable("chatId") String chatId) {
+        if (!fileRepository.delete(chatId)) {
+            return Result.fail("文件不存在！");
+        }
+        chatHistoryRepository.delete("pdf", chatId);
+        chatMemory.clear(TenantContext.conversationId(chatId));
+        return Result.ok();
+    }
+
+    private Result saveAndIndex(String chatId, String filename, InputStream inputStream) {
+        // 1.保存文件，按文件头校验是否为PDF格式，不依赖客户端声明的Content-Type
+        boolean success;
+        try {
+            success = fileRepository.save(chatId, filename, inputStream, maxFileSize());
+        } catch (IllegalArgumentException e) {
+            return Result.fail("只能上传PDF文件！");
+        } catch (MaxUploadSizeExceededException e) {
+            return Result.fail("文件大小超过上限！");
+        }
+        if (!success) {
+            return Result.fail("保存文件失败！");
+        }
+        // 2.写入向量库
+        Resource savedResource = fileRepository.getFile(chatId);
+        if (!savedResource.exists()) {
+            return Result.fail("保存文件失败！");
+        }
+        try {
+            this.writeToVectorStore(savedResource, fileRepository.getDigest(chatId));
+        } catch (TenantQuotaExceededException e) {
+            log.warn("{}", e.getMessage());
+            fileRepository.delete(chatId);
+            return Result.fail("超出租户的向量数量上限！");
+        }
+        return Result.ok();
+    }
+
+    private void writeToVectorStore(Resource resource, String digest) {
         // 1.创建PDF的读取器
         PagePdfDocumentReader reader = new PagePdfDocumentReader(
                 resource, // 文件源
@@ -153,8 +196,20 @@ public class PdfController {
         );
         // 2.读取PDF文档，拆分为Document
         List<Document> documents = reader.read();
-        // 3.写入向量库 TODO 量库是基于内存实现，是一个专门用来测试、教学用的库，每个企业用的向量库都不一样，后续需要安装向量库
-        vectorStore.add(documents);
+        // 文件摘要作为分片键，启用分片时同一个文件的所有页写入同一个分片
+        if (digest != null) {
+            documents.forEach(document -> document.getMetadata().put(ShardedVectorStore.PARTITION_KEY, digest));
+        }
+        // 3.在租户配额内写入当前租户的向量库 TODO 量库是基于内存实现，是一个专门用来测试、教学用的库，每个企业用的向量库都不一样，后续需要安装向量库
+        vectorStores.add(TenantContext.current(), documents);
+    }
+
+    /**
+     * @return 上传文件的大小上限（字节），未限制（负数）时为Long.MAX_VALUE
+     */
+    private long maxFileSize() {
+        long maxFileSize = multipartProperties.getMaxFileSize().toBytes();
+        return maxFileSize < 0 ? Long.MAX_VALUE : maxFileSize;
     }
 
 }
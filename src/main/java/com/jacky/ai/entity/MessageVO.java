@@ -1,5 +1,6 @@
 package com.jacky.ai.entity;
 
+import com.jacky.ai.advisor.StreamInterruptionAdvisor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.ai.chat.messages.Message;
@@ -15,6 +16,8 @@ public class MessageVO {
 
     private String role;
     private String content;
+    // 回答是否因客户端断开而被中断
+    private boolean interrupted;
 
     public MessageVO(Message message) {
         this.role = switch (message.getMessageType()) {
@@ -24,6 +27,7 @@ public class MessageVO {
             default -> "";
         };
         this.content = message.getText();
+        this.interrupted = Boolean.TRUE.equals(message.getMetadata().get(StreamInterruptionAdvisor.INTERRUPTED_METADATA_KEY));
     }
 
 }
@@ -12,12 +12,16 @@ public class CourseQuery {
     private Integer edu;
     @ToolParam(required = false, description = "排序方式")
     private List<Sort> sorts;
+    @ToolParam(required = false, description = "页码，从1开始，默认1")
+    private Integer page;
+    @ToolParam(required = false, description = "每页数量，默认10，超过上限时按上限返回")
+    private Integer size;
 
     @Data
     public static class Sort {
         @ToolParam(required = false, description = "排序字段: price或duration")
         private String field;
-        @ToolParam(required = false, description = "是否是升序: true/false")
+        @ToolParam(required = false, description = "是否是升序: true/false，默认升序")
         private Boolean asc;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+package com.jacky.ai.entity.query;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 03:15
+ * @description： 课程查询计划：校验并规范化大模型传入的查询条件，只有合法的计划才会发到数据库
+ * - 过滤：type等值、edu范围（课程学历要求不高于学员学历），对应索引 (type, edu, price)、(type, edu, duration)
+ * - 排序：字段只能是CourseSortField中的字段，同一字段不能重复；最后按id排序，翻页时结果稳定
+ * - 分页：每页数量超过上限时按上限返回，偏移量超过上限（深分页）直接拒绝
+ * 不合法的条件抛出IllegalArgumentException；工具调用中异常信息会作为工具结果返回给大模型，由它修正参数后重试。
+ * @param type 课程类型，null表示不限
+ * @param edu 学员学历，null表示不限
+ * @param orders 排序，不含最后的id
+ * @param page 页码，从1开始
+ * @param size 每页数量
+ */
+public record CourseQueryPlan(String type, Integer edu, List<Order> orders, int page, int size) {
+
+    // course.type 的长度
+    private static final int MAX_TYPE_LENGTH = 50;
+
+    // 学历：0-无、1-初中、2-高中、3-大专、4-本科及本科以上
+    private static final int MAX_EDU = 4;
+
+    /**
+     * 生成查询计划
+     * @param query 大模型传入的查询条件，可以为null
+     * @param defaultSize 未指定每页数量时的默认值
+     * @param maxSize 每页数量上限
+     * @param maxOffset 偏移量上限
+     * @throws IllegalArgumentException 查询条件不合法
+     */
+    public static CourseQueryPlan of(CourseQuery query, int defaultSize, int maxSize, int maxOffset) {
+        if (query == null) {
+            query = new CourseQuery();
+        }
+        String type = StringUtils.hasText(query.getType()) ? query.getType().trim() : null;
+        if (type != null && type.length() > MAX_TYPE_LENGTH) {
+            throw new IllegalArgumentException("课程类型过长：" + type.length() + "个字符，最多" + MAX_TYPE_LENGTH + "个");
+        }
+        Integer edu = query.getEdu();
+        if (edu != null && (edu < 0 || edu > MAX_EDU)) {
+            throw new IllegalArgumentException("学历要求必须是0~" + MAX_EDU + "：" + edu);
+        }
+
+        List<Order> orders = new ArrayList<>();
+        if (query.getSorts() != null) {
+            Set<CourseSortField> seen = EnumSet.noneOf(CourseSortField.class);
+            for (CourseQuery.Sort sort : query.getSorts()) {
+                if (sort == null) {
+                    continue;
+                }
+                CourseSortField field = CourseSortField.of(sort.getField()).orElseThrow(() ->
+                        new IllegalArgumentException("不支持按" + sort.getField() + "排序，排序字段只能是price或duration"));
+                if (!seen.add(field)) {
+                    throw new IllegalArgumentException("排序字段重复：" + sort.getField());
+                }
+                orders.add(new Order(field, sort.getAsc() == null || sort.getAsc()));
+            }
+        }
+
+        int page = query.getPage() != null ? query.getPage() : 1;
+        if (page < 1) {
+            throw new IllegalArgumentException("页码从1开始：" + page);
+        }
+        int size = query.getSize() != null ? query.getSize() : defaultSize;
+        if (size < 1) {
+            throw new IllegalArgumentException("每页数量至少为1：" + size);
+        }
+        size = Math.min(size, maxSize);
+        if ((long) (page - 1) * size > maxOffset) {
+            throw new IllegalArgumentException("页码过大：最多查询前" + maxOffset + "条之后的一页，请缩小查询条件");
+        }
+        return new CourseQueryPlan(type, edu, List.copyOf(orders), page, size);
+    }
+
+    /**
+     * @return 跳过的记录数
+     */
+    public long offset() {
+        return (long) (page - 1) * size;
+    }
+
+    /**
+     * 排序
+     * @param field 排序字段
+     * @param asc 是否升序
+     */
+    public record Order(CourseSortField field, boolean asc) {
+    }
+}
@@ -0,0 +1,47 @@
+package com.jacky.ai.entity.query;
+
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
+import com.jacky.ai.entity.po.Course;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 03:10
+ * @description： 课程查询允许的排序字段（白名单）
+ * 大模型传入的字段名只用来查找枚举，排序列由实体属性生成，不会拼接到SQL中；每个字段都有对应的复合索引。
+ */
+@Getter
+public enum CourseSortField {
+
+    PRICE(Course::getPrice, "price", "价格"),
+
+    DURATION(Course::getDuration, "duration", "时长", "学习时长");
+
+    // 实体属性，由MyBatis-Plus解析为列名
+    private final SFunction<Course, ?> column;
+
+    // 可以识别的字段名（小写）
+    private final Set<String> names;
+
+    CourseSortField(SFunction<Course, ?> column, String... names) {
+        this.column = column;
+        this.names = Set.of(names);
+    }
+
+    /**
+     * @param name 字段名，忽略大小写与首尾空格
+     * @return 排序字段，不在白名单中时为空
+     */
+    public static Optional<CourseSortField> of(String name) {
+        if (name == null) {
+            return Optional.empty();
+        }
+        String normalized = name.trim().toLowerCase(Locale.ROOT);
+        return Arrays.stream(values()).filter(field -> field.names.contains(normalized)).findFirst();
+    }
+}
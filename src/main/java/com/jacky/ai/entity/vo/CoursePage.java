@@ -0,0 +1,17 @@
+package com.jacky.ai.entity.vo;
+
+import com.jacky.ai.entity.po.Course;
+
+import java.util.List;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 03:25
+ * @description： 课程查询工具返回的一页课程
+ * @param courses 本页课程
+ * @param page 页码，从1开始
+ * @param size 每页数量（超过上限时为上限）
+ * @param hasMore 是否还有下一页
+ */
+public record CoursePage(List<Course> courses, int page, int size, boolean hasMore) {
+}
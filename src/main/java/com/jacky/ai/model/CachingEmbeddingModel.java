@@ -0,0 +1,233 @@
+package com.jacky.ai.model;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 18:10
+ * @description： 查询向量的缓存与合并请求
+ * 每次PDF问答都要先把问题向量化，重复的问题、同时到达的问题各自调用一次向量接口。这里对单条文本的embed(String)做两件事：
+ * - LRU缓存：key为 模型名 + 文本，命中时不再调用接口；相同文本正在计算时直接等待同一个结果
+ * - 合并请求：已有向量请求在途时，新到达的文本在一个很短的时间窗内攒成一批，用一次embed(List)调用完成；
+ *   没有在途请求时立即调用，低负载下不增加延迟
+ * 文档写入向量库走call(EmbeddingRequest)，原样交给被包装的模型，不进入缓存。
+ * 调用向量接口的耗时记录在ai.embedding.duration，operation=query|document。
+ * 缓存与在途结果中的数组只在本类内部持有，embed(String)每次返回一个副本，调用方原地归一化、缩放不会影响缓存。
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+
+    private final String modelName;
+
+    private final long batchWindowNanos;
+
+    private final int maxBatchSize;
+
+    // 访问顺序的LinkedHashMap实现LRU，读写都在synchronized(cache)中
+    private final LinkedHashMap<String, float[]> cache;
+
+    private final Object lock = new Object();
+
+    // 正在计算的文本，相同文本共享同一个结果
+    private final Map<String, CompletableFuture<float[]>> inFlight = new HashMap<>();
+
+    // 当前正在攒的一批，null表示没有
+    private List<PendingEmbedding> openBatch;
+
+    // 正在调用向量接口的批次数量
+    private int activeBatches;
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    private final DistributionSummary batchSizeSummary;
+
+    private final Timer queryTimer;
+
+    private final Timer documentTimer;
+
+    /**
+     * @param delegate 实际调用接口的向量模型
+     * @param modelName 模型名（含维度等影响结果的参数），作为缓存key的一部分
+     * @param cacheSize 缓存的查询向量数量上限
+     * @param batchWindowMillis 合并请求的时间窗，单位毫秒
+     * @param maxBatchSize 一批最多合并的文本数量
+     * @param meterRegistry 指标注册中心
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, String modelName, int cacheSize, long batchWindowMillis,
+                                 int maxBatchSize, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.modelName = modelName;
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.hitCounter = Counter.builder("ai.embedding.query.cache")
+                .description("查询向量缓存命中次数")
+                .tag("model", modelName)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("ai.embedding.query.cache")
+                .description("查询向量缓存未命中次数")
+                .tag("model", modelName)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("ai.embedding.query.batch.size")
+                .description("合并后每次调用向量接口的文本数量")
+                .tag("model", modelName)
+                .register(meterRegistry);
+        this.queryTimer = Timer.builder("ai.embedding.duration")
+                .description("调用向量接口的耗时")
+                .tag("model", modelName)
+                .tag("operation", "query")
+                .register(meterRegistry);
+        this.documentTimer = Timer.builder("ai.embedding.duration")
+                .description("调用向量接口的耗时")
+                .tag("model", modelName)
+                .tag("operation", "document")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        String key = modelName + '\n' + text;
+        // 1.查缓存
+        float[] cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            hitCounter.increment();
+            return cached.clone();
+        }
+        missCounter.increment();
+
+        // 2.加入当前批次，相同文本正在计算时直接复用
+        CompletableFuture<float[]> future;
+        List<PendingEmbedding> leaderBatch = null;
+        synchronized (lock) {
+            future = inFlight.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                inFlight.put(key, future);
+                if (openBatch == null) {
+                    openBatch = new ArrayList<>();
+                    leaderBatch = openBatch;
+                }
+                openBatch.add(new PendingEmbedding(key, text, future));
+                // 攒满一批后关闭，唤醒负责这一批的线程
+                if (openBatch.size() >= maxBatchSize) {
+                    openBatch = null;
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        // 3.批次中第一个到达的线程负责发起调用
+        if (leaderBatch != null) {
+            awaitBatch(leaderBatch);
+            flush(leaderBatch);
+        }
+        // 同一文本的等待者共享同一个结果，各自拿一个副本
+        return await(future).clone();
+    }
+
+    private void awaitBatch(List<PendingEmbedding> batch) {
+        synchronized (lock) {
+            // 没有在途请求时立即发起，否则在时间窗内等待更多文本
+            if (activeBatches > 0) {
+                long deadline = System.nanoTime() + batchWindowNanos;
+                long remaining;
+                while (openBatch == batch && (remaining = deadline - System.nanoTime()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            if (openBatch == batch) {
+                openBatch = null;
+            }
+            activeBatches++;
+        }
+    }
+
+    private void flush(List<PendingEmbedding> batch) {
+        try {
+            batchSizeSummary.record(batch.size());
+            List<float[]> embeddings = queryTimer.record(() -> delegate.embed(batch.stream().map(PendingEmbedding::text).toList()));
+            synchronized (cache) {
+                for (int i = 0; i < batch.size(); i++) {
+                    cache.put(batch.get(i).key(), embeddings.get(i));
+                }
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(embeddings.get(i));
+            }
+            if (batch.size() > 1) {
+                log.debug("合并查询向量请求, model: {}, size: {}", modelName, batch.size());
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+        } finally {
+            synchronized (lock) {
+                batch.forEach(pending -> inFlight.remove(pending.key()));
+                activeBatches--;
+            }
+        }
+    }
+
+    private static float[] await(CompletableFuture<float[]> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return documentTimer.record(() -> delegate.call(request));
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return documentTimer.record(() -> delegate.embed(document));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * 等待计算的文本
+     */
+    private record PendingEmbedding(String key, String text, CompletableFuture<float[]> future) {
+    }
+}
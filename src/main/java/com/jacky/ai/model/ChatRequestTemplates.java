@@ -0,0 +1,104 @@
+package com.jacky.ai.model;
+
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 02:45
+ * @description： 预编译的请求选项与请求模板，AlibabaOpenAiChatModel的每次请求复用
+ * SpringAI合并选项（ModelOptionsUtils.copyToTarget、merge）时把对象转成Map再转回来，
+ * 生成请求时还要再合并两次（选项、工具定义），每次都带着全部消息做Jackson转换，工具的JSON Schema也要重新解析成Map。
+ * 同一个ChatClient每次请求的运行时选项都相同（默认选项的副本加上固定的工具回调），这里按运行时选项缓存：
+ * - 合并后的请求选项：运行时选项 -> 与默认选项合并的结果
+ * - 请求模板：请求选项 + 是否流式 -> 除消息以外的全部请求参数（模型参数、排好序的工具定义及解析后的Schema、stream_options）
+ * 每次请求只转换消息，再用模板拷贝出请求。
+ * 缓存的选项与模板只读：选项每次返回副本，模板中的集合与工具定义被所有请求共享，只用于序列化。
+ */
+final class ChatRequestTemplates {
+
+    // 运行时选项的组合很少（每个ChatClient一种），上限只是防止每次请求选项都不同时无限增长
+    private static final int MAX_SIZE = 64;
+
+    // 访问顺序的LinkedHashMap实现LRU，读写都在synchronized中
+    private final Map<OpenAiChatOptions, OpenAiChatOptions> options = lru();
+
+    private final Map<TemplateKey, OpenAiApi.ChatCompletionRequest> requests = lru();
+
+    /**
+     * 合并后的请求选项
+     * @param runtimeOptions 运行时选项，作为缓存key时使用副本
+     * @param merger 未命中时与默认选项合并
+     * @return 合并结果的副本，调用方可以修改
+     */
+    OpenAiChatOptions options(OpenAiChatOptions runtimeOptions, Function<OpenAiChatOptions, OpenAiChatOptions> merger) {
+        OpenAiChatOptions merged;
+        synchronized (options) {
+            merged = options.get(runtimeOptions);
+        }
+        if (merged == null) {
+            OpenAiChatOptions key = runtimeOptions.copy();
+            merged = merger.apply(runtimeOptions);
+            synchronized (options) {
+                options.put(key, merged);
+            }
+        }
+        return merged.copy();
+    }
+
+    /**
+     * 请求模板，消息为空
+     * @param requestOptions 合并后的请求选项
+     * @param stream 是否流式
+     * @param compiler 未命中时生成模板
+     */
+    OpenAiApi.ChatCompletionRequest request(OpenAiChatOptions requestOptions, boolean stream,
+                                            Supplier<OpenAiApi.ChatCompletionRequest> compiler) {
+        TemplateKey key = new TemplateKey(requestOptions, stream);
+        OpenAiApi.ChatCompletionRequest template;
+        synchronized (requests) {
+            template = requests.get(key);
+        }
+        if (template == null) {
+            template = compiler.get();
+            synchronized (requests) {
+                requests.put(new TemplateKey(requestOptions.copy(), stream), template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * 用模板拷贝出请求，只替换消息
+     * @param maxTokens 取自生成模板的请求选项（OpenAiChatOptions.getMaxTokens），与模板中的值相同；
+     *                  ChatCompletionRequest.maxTokens()已废弃，不从模板读取
+     */
+    static OpenAiApi.ChatCompletionRequest withMessages(OpenAiApi.ChatCompletionRequest template, Integer maxTokens,
+                                                        List<OpenAiApi.ChatCompletionMessage> messages) {
+        return new OpenAiApi.ChatCompletionRequest(messages, template.model(), template.store(), template.metadata(),
+                template.frequencyPenalty(), template.logitBias(), template.logprobs(), template.topLogprobs(),
+                maxTokens, template.maxCompletionTokens(), template.n(), template.outputModalities(),
+                template.audioParameters(), template.presencePenalty(), template.responseFormat(), template.seed(),
+                template.serviceTier(), template.stop(), template.stream(), template.streamOptions(),
+                template.temperature(), template.topP(), template.tools(), template.toolChoice(),
+                template.parallelToolCalls(), template.user(), template.reasoningEffort());
+    }
+
+    private static <K, V> Map<K, V> lru() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > MAX_SIZE;
+            }
+        };
+    }
+
+    private record TemplateKey(OpenAiChatOptions options, boolean stream) {
+    }
+}
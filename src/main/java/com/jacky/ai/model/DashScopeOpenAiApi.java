@@ -0,0 +1,76 @@
+package com.jacky.ai.model;
+
+import org.springframework.ai.model.ApiKey;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.NoopApiKey;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 13:50
+ * @description： AlibabaOpenAiChatModel使用的OpenAiApi，流式接口原样返回每个分片
+ * OpenAiApi.chatCompletionStream在遇到tool call分片时，把整段tool call分片归并成一个分片再返回，
+ * 归并时只按id区分调用：后续分片不带id时一律追加到最后一个调用上，同一轮并行返回的多个调用交错到达时参数会串到别的调用里。
+ * 这里不做归并，由AlibabaOpenAiChatModel按分片的index增量合并。非流式接口与向量接口沿用OpenAiApi。
+ */
+public class DashScopeOpenAiApi extends OpenAiApi {
+
+    private static final String SSE_DONE = "[DONE]";
+
+    private final String completionsPath;
+
+    private final WebClient webClient;
+
+    /**
+     * 使用默认的RestClient、WebClient与错误处理，测试中使用
+     */
+    public DashScopeOpenAiApi(String baseUrl, ApiKey apiKey) {
+        this(baseUrl, apiKey, new LinkedMultiValueMap<>(), "/v1/chat/completions", "/v1/embeddings",
+                RestClient.builder(), WebClient.builder(), RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER);
+    }
+
+    public DashScopeOpenAiApi(String baseUrl, ApiKey apiKey, MultiValueMap<String, String> headers, String completionsPath,
+                              String embeddingsPath, RestClient.Builder restClientBuilder, WebClient.Builder webClientBuilder,
+                              ResponseErrorHandler responseErrorHandler) {
+        // 父类会修改传入的Builder，各自使用一个副本
+        super(baseUrl, apiKey, headers, completionsPath, embeddingsPath, restClientBuilder, webClientBuilder.clone(),
+                responseErrorHandler);
+        this.completionsPath = completionsPath;
+        this.webClient = webClientBuilder.clone()
+                .baseUrl(baseUrl)
+                .defaultHeaders(h -> {
+                    if (!(apiKey instanceof NoopApiKey)) {
+                        h.setBearerAuth(apiKey.getValue());
+                    }
+                    h.setContentType(MediaType.APPLICATION_JSON);
+                    h.addAll(headers);
+                })
+                .build();
+    }
+
+    @Override
+    public Flux<ChatCompletionChunk> chatCompletionStream(ChatCompletionRequest chatRequest,
+                                                          MultiValueMap<String, String> additionalHttpHeader) {
+        Assert.notNull(chatRequest, "The request body can not be null.");
+        Assert.isTrue(Boolean.TRUE.equals(chatRequest.stream()), "Request must set the stream property to true.");
+        return this.webClient.post()
+                .uri(this.completionsPath)
+                .headers(headers -> headers.addAll(additionalHttpHeader))
+                .body(Mono.just(chatRequest), ChatCompletionRequest.class)
+                .retrieve()
+                .bodyToFlux(String.class)
+                .takeUntil(SSE_DONE::equals)
+                .filter(content -> !SSE_DONE.equals(content))
+                .map(content -> ModelOptionsUtils.jsonToObject(content, ChatCompletionChunk.class));
+    }
+}
@@ -0,0 +1,398 @@
+package com.jacky.ai.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 11:00
+ * @description： 按延迟感知路由的ChatModel，包装多个后端模型（如本地Ollama与云端OpenAI兼容接口）。
+ * - 每个后端记录EWMA延迟、EWMA错误率和在途请求数；错误率随时间按半衰期衰减，
+ *   被判为不健康、不再分到流量的后端经过几个半衰期后自动恢复，不依赖对冲流量
+ * - 按策略选择后端：CHEAPEST_HEALTHY（健康的后端中成本最低）或 FASTEST（预估排队后延迟最低）
+ * - 对冲请求：主后端超过其p95延迟仍未返回（流式为首个token）时，向备选后端再发一次请求，取先返回者，取消另一个
+ * 注意：各后端的模型名等参数使用各自的默认配置，因此本模型的默认选项为空，调用方不应指定具体模型名。
+ */
+public class RoutingChatModel implements ChatModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoutingChatModel.class);
+
+    private final List<Backend> backends;
+
+    private final RoutingPolicy policy;
+
+    private final boolean hedgeEnabled;
+
+    private final Duration hedgeMinDelay;
+
+    private final Duration hedgeInitialDelay;
+
+    private final double maxErrorRate;
+
+    private final int maxInFlight;
+
+    private RoutingChatModel(Builder builder) {
+        Assert.notEmpty(builder.backends, "backends cannot be empty");
+        Assert.isTrue(!builder.errorDecayHalfLife.isNegative() && !builder.errorDecayHalfLife.isZero(),
+                "errorDecayHalfLife must be positive");
+        long halfLifeNanos = builder.errorDecayHalfLife.toNanos();
+        this.backends = builder.backends.stream()
+                .map(spec -> new Backend(spec.name(), spec.model(), spec.cost(), halfLifeNanos))
+                .toList();
+        this.policy = builder.policy;
+        this.hedgeEnabled = builder.hedgeEnabled;
+        this.hedgeMinDelay = builder.hedgeMinDelay;
+        this.hedgeInitialDelay = builder.hedgeInitialDelay;
+        this.maxErrorRate = builder.maxErrorRate;
+        this.maxInFlight = builder.maxInFlight;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        List<Backend> ranked = rank();
+        Backend primary = ranked.get(0);
+        if (ranked.size() == 1) {
+            return callMono(primary, prompt).block();
+        }
+        Backend secondary = ranked.get(1);
+        if (!hedgeEnabled) {
+            return callMono(primary, prompt)
+                    .onErrorResume(e -> {
+                        logger.warn("后端[{}]调用失败，回退到[{}]: {}", primary.name, secondary.name, e.getMessage());
+                        return callMono(secondary, prompt);
+                    })
+                    .block();
+        }
+        return hedge(callMono(primary, prompt), callMono(secondary, prompt), primary.callLatency).block();
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            List<Backend> ranked = rank();
+            Backend primary = ranked.get(0);
+            if (ranked.size() == 1) {
+                return streamFlux(primary, prompt);
+            }
+            Backend secondary = ranked.get(1);
+            if (!hedgeEnabled) {
+                // 只有在首个token之前失败才回退，已输出部分内容后无法无缝切换
+                AtomicBoolean started = new AtomicBoolean();
+                return streamFlux(primary, prompt)
+                        .doOnNext(r -> started.set(true))
+                        .onErrorResume(e -> !started.get(), e -> {
+                            logger.warn("后端[{}]流式调用失败，回退到[{}]: {}", primary.name, secondary.name, e.getMessage());
+                            return streamFlux(secondary, prompt);
+                        });
+            }
+            return hedge(streamFlux(primary, prompt), streamFlux(secondary, prompt), primary.firstTokenLatency);
+        });
+    }
+
+    /**
+     * 对冲：主请求立即发出；主请求超过p95延迟未出结果或直接失败时，发出备选请求。
+     * 以先产生数据的一方为准，另一方会被取消。
+     */
+    private <T> Flux<T> hedge(Flux<T> primary, Flux<T> secondary, LatencyStats primaryLatency) {
+        Duration delay = hedgeDelay(primaryLatency);
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+        Flux<T> first = primary.doOnError(e -> primaryFailed.tryEmitEmpty());
+        Flux<T> second = Mono.firstWithSignal(Mono.delay(delay).then(), primaryFailed.asMono())
+                .thenMany(secondary);
+        return Flux.firstWithValue(first, second);
+    }
+
+    private <T> Mono<T> hedge(Mono<T> primary, Mono<T> secondary, LatencyStats primaryLatency) {
+        return hedge(primary.flux(), secondary.flux(), primaryLatency).next();
+    }
+
+    private Duration hedgeDelay(LatencyStats latency) {
+        long p95 = latency.p95Millis();
+        if (p95 < 0) {
+            return hedgeInitialDelay;
+        }
+        return Duration.ofMillis(Math.max(p95, hedgeMinDelay.toMillis()));
+    }
+
+    private Mono<ChatResponse> callMono(Backend backend, Prompt prompt) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            backend.inFlight.incrementAndGet();
+            return Mono.fromCallable(() -> backend.model.call(prompt))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .doOnSuccess(r -> {
+                        backend.callLatency.record(elapsedMillis(start));
+                        backend.recordSuccess();
+                    })
+                    .doOnError(e -> backend.recordError())
+                    .doFinally(s -> backend.inFlight.decrementAndGet());
+        });
+    }
+
+    private Flux<ChatResponse> streamFlux(Backend backend, Prompt prompt) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean firstToken = new AtomicBoolean(true);
+            backend.inFlight.incrementAndGet();
+            return backend.model.stream(prompt)
+                    .doOnNext(r -> {
+                        if (firstToken.compareAndSet(true, false)) {
+                            backend.firstTokenLatency.record(elapsedMillis(start));
+                        }
+                    })
+                    .doOnComplete(backend::recordSuccess)
+                    .doOnError(e -> backend.recordError())
+                    .doFinally(s -> backend.inFlight.decrementAndGet());
+        });
+    }
+
+    /**
+     * 按策略对后端排序，第一个为主后端，第二个为对冲/回退后端
+     */
+    List<Backend> rank() {
+        List<Backend> ranked = new ArrayList<>(backends);
+        Comparator<Backend> byHealth = Comparator.comparing(b -> !b.isHealthy(maxErrorRate, maxInFlight));
+        Comparator<Backend> comparator = switch (policy) {
+            case CHEAPEST_HEALTHY -> byHealth
+                    .thenComparingInt((Backend b) -> b.cost)
+                    .thenComparingDouble(Backend::getErrorRate);
+            case FASTEST -> byHealth.thenComparingDouble(Backend::expectedLatency);
+        };
+        ranked.sort(comparator);
+        return ranked;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return ChatOptions.builder().build();
+    }
+
+    public List<Backend> getBackends() {
+        return backends;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 路由策略
+     */
+    public enum RoutingPolicy {
+        // 健康的后端中成本最低（本地优先）
+        CHEAPEST_HEALTHY,
+        // 预估延迟最低：EWMA延迟 * (1 + 在途请求数)
+        FASTEST
+    }
+
+    /**
+     * 单个后端及其运行时统计
+     */
+    public static final class Backend {
+
+        // EWMA平滑系数
+        private static final double ALPHA = 0.2;
+
+        private final String name;
+
+        private final ChatModel model;
+
+        private final int cost;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final LatencyStats callLatency = new LatencyStats();
+
+        private final LatencyStats firstTokenLatency = new LatencyStats();
+
+        // 错误率的衰减半衰期
+        private final long errorHalfLifeNanos;
+
+        // 最近一次更新时的错误率，读取时按经过的时间衰减
+        private double errorRate = 0;
+
+        private long errorUpdatedNanos = System.nanoTime();
+
+        Backend(String name, ChatModel model, int cost, long errorHalfLifeNanos) {
+            this.name = name;
+            this.model = model;
+            this.cost = cost;
+            this.errorHalfLifeNanos = errorHalfLifeNanos;
+        }
+
+        private synchronized void recordSuccess() {
+            errorRate = (1 - ALPHA) * decayedErrorRate();
+            errorUpdatedNanos = System.nanoTime();
+        }
+
+        private synchronized void recordError() {
+            errorRate = ALPHA + (1 - ALPHA) * decayedErrorRate();
+            errorUpdatedNanos = System.nanoTime();
+        }
+
+        private double decayedErrorRate() {
+            long elapsed = System.nanoTime() - errorUpdatedNanos;
+            return errorRate * Math.pow(0.5, (double) elapsed / errorHalfLifeNanos);
+        }
+
+        boolean isHealthy(double maxErrorRate, int maxInFlight) {
+            return getErrorRate() < maxErrorRate && inFlight.get() < maxInFlight;
+        }
+
+        double expectedLatency() {
+            double latency = firstTokenLatency.ewmaMillis() > 0 ? firstTokenLatency.ewmaMillis() : callLatency.ewmaMillis();
+            return latency * (1 + inFlight.get());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public synchronized double getErrorRate() {
+            return decayedErrorRate();
+        }
+
+        public double getEwmaLatencyMillis() {
+            return firstTokenLatency.ewmaMillis() > 0 ? firstTokenLatency.ewmaMillis() : callLatency.ewmaMillis();
+        }
+    }
+
+    /**
+     * 延迟统计：EWMA + 最近N次采样的p95
+     */
+    static final class LatencyStats {
+
+        private static final double ALPHA = 0.2;
+
+        // p95至少需要的采样数，不足时使用初始对冲延迟
+        private static final int MIN_SAMPLES = 20;
+
+        private final long[] samples = new long[128];
+
+        private int count;
+
+        private int next;
+
+        private double ewma;
+
+        synchronized void record(long millis) {
+            ewma = count == 0 ? millis : ALPHA * millis + (1 - ALPHA) * ewma;
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        synchronized double ewmaMillis() {
+            return ewma;
+        }
+
+        synchronized long p95Millis() {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(count * 0.95) - 1];
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<BackendSpec> backends = new ArrayList<>();
+
+        private RoutingPolicy policy = RoutingPolicy.CHEAPEST_HEALTHY;
+
+        private boolean hedgeEnabled = true;
+
+        private Duration hedgeMinDelay = Duration.ofMillis(200);
+
+        private Duration hedgeInitialDelay = Duration.ofSeconds(3);
+
+        private double maxErrorRate = 0.5;
+
+        private int maxInFlight = Integer.MAX_VALUE;
+
+        private Duration errorDecayHalfLife = Duration.ofSeconds(30);
+
+        private Builder() {
+        }
+
+        /**
+         * 添加后端，cost越小越优先（CHEAPEST_HEALTHY策略）
+         */
+        public Builder backend(String name, ChatModel model, int cost) {
+            this.backends.add(new BackendSpec(name, model, cost));
+            return this;
+        }
+
+        public Builder policy(RoutingPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        public Builder hedgeEnabled(boolean hedgeEnabled) {
+            this.hedgeEnabled = hedgeEnabled;
+            return this;
+        }
+
+        public Builder hedgeMinDelay(Duration hedgeMinDelay) {
+            this.hedgeMinDelay = hedgeMinDelay;
+            return this;
+        }
+
+        public Builder hedgeInitialDelay(Duration hedgeInitialDelay) {
+            this.hedgeInitialDelay = hedgeInitialDelay;
+            return this;
+        }
+
+        public Builder maxErrorRate(double maxErrorRate) {
+            this.maxErrorRate = maxErrorRate;
+            return this;
+        }
+
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * 错误率衰减的半衰期，没有新请求时错误率每经过一个半衰期减半
+         */
+        public Builder errorDecayHalfLife(Duration errorDecayHalfLife) {
+            this.errorDecayHalfLife = errorDecayHalfLife;
+            return this;
+        }
+
+        public RoutingChatModel build() {
+            return new RoutingChatModel(this);
+        }
+
+        private record BackendSpec(String name, ChatModel model, int cost) {
+        }
+    }
+}
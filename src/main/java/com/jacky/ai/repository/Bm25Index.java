@@ -0,0 +1,245 @@
+package com.jacky.ai.repository;
+
+import com.jacky.ai.util.CjkBigramTokenizer;
+import org.springframework.ai.document.Document;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 16:25
+ * @description： 基于BM25的内存倒排索引
+ * 与向量库保存同一批Document（id一致），向量检索按语义召回，BM25按关键词精确召回，两者在检索Advisor中融合。
+ * 倒排表用int数组保存文档序号和词频，查询时只遍历查询词对应的倒排表，文档数在数万以内时单次查询在亚毫秒级。
+ * 删除的文档先标记，已删除文档多于有效文档或调用compact()时重建索引。
+ */
+public class Bm25Index {
+
+    // BM25参数：k1控制词频饱和速度，b控制文档长度归一化程度
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 文档序号 -> 文档，已删除的位置为null
+    private final List<Document> documents = new ArrayList<>();
+
+    // 文档序号 -> 文档长度（词数）
+    private int[] documentLengths = new int[64];
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    private long totalLength;
+
+    private int deletedCount;
+
+    /**
+     * 添加文档，id已存在时先删除旧文档
+     * @param newDocuments 文档
+     */
+    public void add(List<Document> newDocuments) {
+        lock.writeLock().lock();
+        try {
+            for (Document document : newDocuments) {
+                removeInternal(document.getId());
+                addInternal(document);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除文档
+     * @param ids 文档id
+     */
+    public void remove(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            ids.forEach(this::removeInternal);
+            if (deletedCount > ordinals.size()) {
+                rebuild(liveDocuments());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 存在已删除文档时重建索引，回收倒排表中的无效条目
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            if (deletedCount > 0) {
+                rebuild(liveDocuments());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清空后重新构建索引，例如启动时从向量库快照恢复
+     * @param allDocuments 全部文档
+     */
+    public void reset(Collection<Document> allDocuments) {
+        lock.writeLock().lock();
+        try {
+            rebuild(allDocuments);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 关键词检索
+     * @param query 查询语句
+     * @param topK 返回的文档数量
+     * @param filter 文档过滤条件，例如只检索某个文件
+     * @return 按BM25分数降序的文档，score为BM25分数
+     */
+    public List<Document> search(String query, int topK, Predicate<Document> filter) {
+        Set<String> terms = new LinkedHashSet<>(CjkBigramTokenizer.tokenize(query));
+        if (terms.isEmpty() || topK <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            int liveCount = ordinals.size();
+            if (liveCount == 0) {
+                return List.of();
+            }
+            // 1.累加每个查询词在各文档上的得分
+            double avgLength = (double) totalLength / liveCount;
+            double[] scores = new double[documents.size()];
+            List<Integer> touched = new ArrayList<>();
+            for (String term : terms) {
+                Postings termPostings = postings.get(term);
+                if (termPostings == null) {
+                    continue;
+                }
+                // 文档频率只计有效文档，已删除但尚未压缩的条目不影响idf
+                double idf = Math.log(1 + (liveCount - termPostings.live + 0.5) / (termPostings.live + 0.5));
+                for (int i = 0; i < termPostings.size; i++) {
+                    int ordinal = termPostings.documents[i];
+                    if (documents.get(ordinal) == null) {
+                        continue;
+                    }
+                    int frequency = termPostings.frequencies[i];
+                    double norm = K1 * (1 - B + B * documentLengths[ordinal] / avgLength);
+                    if (scores[ordinal] == 0) {
+                        touched.add(ordinal);
+                    }
+                    scores[ordinal] += idf * frequency * (K1 + 1) / (frequency + norm);
+                }
+            }
+            // 2.小顶堆取前topK
+            PriorityQueue<Integer> heap = new PriorityQueue<>(topK + 1, Comparator.comparingDouble(ordinal -> scores[ordinal]));
+            for (int ordinal : touched) {
+                if (!filter.test(documents.get(ordinal))) {
+                    continue;
+                }
+                heap.offer(ordinal);
+                if (heap.size() > topK) {
+                    heap.poll();
+                }
+            }
+            List<Document> results = new ArrayList<>(heap.size());
+            while (!heap.isEmpty()) {
+                int ordinal = heap.poll();
+                results.add(documents.get(ordinal).mutate().score(scores[ordinal]).build());
+            }
+            Collections.reverse(results);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return 有效文档数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addInternal(Document document) {
+        List<String> tokens = CjkBigramTokenizer.tokenize(document.getText());
+        int ordinal = documents.size();
+        documents.add(document);
+        ordinals.put(document.getId(), ordinal);
+        if (ordinal == documentLengths.length) {
+            documentLengths = Arrays.copyOf(documentLengths, ordinal * 2);
+        }
+        documentLengths[ordinal] = tokens.size();
+        totalLength += tokens.size();
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        tokens.forEach(token -> frequencies.merge(token, 1, Integer::sum));
+        frequencies.forEach((term, frequency) -> postings.computeIfAbsent(term, t -> new Postings()).add(ordinal, frequency));
+    }
+
+    private void removeInternal(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return;
+        }
+        // 删除时重新分词，更新各词的有效文档数
+        new HashSet<>(CjkBigramTokenizer.tokenize(documents.get(ordinal).getText()))
+                .forEach(term -> postings.get(term).live--);
+        documents.set(ordinal, null);
+        totalLength -= documentLengths[ordinal];
+        deletedCount++;
+    }
+
+    private void rebuild(Collection<Document> allDocuments) {
+        documents.clear();
+        ordinals.clear();
+        postings.clear();
+        documentLengths = new int[Math.max(64, allDocuments.size())];
+        totalLength = 0;
+        deletedCount = 0;
+        allDocuments.forEach(this::addInternal);
+    }
+
+    private List<Document> liveDocuments() {
+        return documents.stream().filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * 一个词的倒排表：文档序号与词频，已删除的文档在重建前仍占位
+     */
+    private static final class Postings {
+
+        private int[] documents = new int[4];
+
+        private int[] frequencies = new int[4];
+
+        private int size;
+
+        // 有效文档数（文档频率）
+        private int live;
+
+        void add(int ordinal, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = ordinal;
+            frequencies[size] = frequency;
+            size++;
+            live++;
+        }
+    }
+}
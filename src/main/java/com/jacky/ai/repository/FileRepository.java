@@ -2,6 +2,8 @@ package com.jacky.ai.repository;
 
 import org.springframework.core.io.Resource;
 
+import java.io.InputStream;
+
 public interface FileRepository {
     /**
      * 保存文件,还要记录chatId与文件的映射关系
@@ -11,10 +13,36 @@ public interface FileRepository {
      */
     boolean save(String chatId, Resource resource);
 
+    /**
+     * 以流的方式保存文件：边读边写入临时文件并计算摘要，写完后原子重命名到目标位置
+     * @param chatId 会话id
+     * @param filename 原始文件名
+     * @param inputStream 文件内容，例如请求体
+     * @param maxBytes 文件大小上限（字节）
+     * @return 上传成功，返回true； 否则返回false
+     * @throws IllegalArgumentException 文件内容不是PDF时抛出
+     * @throws org.springframework.web.multipart.MaxUploadSizeExceededException 文件超过maxBytes时抛出，已写入的内容被删除
+     */
+    boolean save(String chatId, String filename, InputStream inputStream, long maxBytes);
+
+    /**
+     * 删除会话的文件及其向量，向量先标记删除，随后在后台压缩
+     * @param chatId 会话id
+     * @return 删除成功返回true，会话没有文件时返回false
+     */
+    boolean delete(String chatId);
+
     /**
      * 根据chatId获取文件
      * @param chatId 会话id
      * @return 找到的文件
      */
     Resource getFile(String chatId);
+
+    /**
+     * 根据chatId获取文件内容的SHA-256摘要（十六进制），用作下载时的ETag
+     * @param chatId 会话id
+     * @return 文件摘要，文件不存在时返回null
+     */
+    String getDigest(String chatId);
 }
\ No newline at end of file
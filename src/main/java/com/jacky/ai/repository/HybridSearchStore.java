@@ -0,0 +1,80 @@
+package com.jacky.ai.repository;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.core.io.Resource;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 00:30
+ * @description： 混合检索所需的向量库操作：HybridRetrievalAdvisor、TenantVectorStores只依赖这个接口
+ * - HybridVectorStore：单机实现
+ * - ShardedVectorStore：按文件摘要分片到多个节点，检索时分散到各分片再合并
+ */
+public interface HybridSearchStore extends VectorStore {
+
+    /**
+     * 计算查询语句的向量
+     */
+    float[] embedQuery(String query);
+
+    /**
+     * 使用已计算好的查询向量做向量检索
+     * @return 按余弦相似度降序的文档，score为余弦相似度
+     */
+    List<Document> vectorSearch(float[] queryEmbedding, SearchRequest request);
+
+    /**
+     * BM25关键词检索
+     * @return 按BM25分数降序的文档
+     */
+    List<Document> keywordSearch(SearchRequest request);
+
+    /**
+     * @return 归一化后的文档向量（只读），文档不存在时返回null
+     */
+    float[] getEmbedding(String id);
+
+    /**
+     * 标记删除，满足条件的文档立即从检索结果中消失
+     * @return 新标记的文档数量
+     */
+    int tombstone(Filter.Expression filterExpression);
+
+    /**
+     * 移除已标记删除的文档
+     * @return 移除的文档数量
+     */
+    int compact();
+
+    /**
+     * 保存快照（SimpleVectorStore的JSON格式）
+     */
+    void save(File file);
+
+    /**
+     * 登记待加载的快照
+     * @param background true：立即在后台线程加载；false：首次读写时加载
+     */
+    void warmUp(Resource snapshot, boolean background);
+
+    /**
+     * 等待快照加载完成
+     */
+    void awaitWarmup();
+
+    /**
+     * @return 快照是否已加载完成（或无需加载）
+     */
+    boolean isReady();
+
+    /**
+     * @return 预热进度与文档数
+     */
+    HybridVectorStore.WarmupProgress getWarmupProgress();
+}
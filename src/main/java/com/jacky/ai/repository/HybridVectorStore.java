@@ -0,0 +1,480 @@
+package com.jacky.ai.repository;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.jacky.ai.util.VectorKernels;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionConverter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 16:40
+ * @description： 同时支持向量检索和BM25关键词检索的SimpleVectorStore
+ * - 写入（PDF上传后向量化）时同步写入BM25倒排索引，删除时同步删除
+ * - 从chat-pdf.json加载快照后，用快照中的文档重建倒排索引
+ * - 关键词检索与向量检索使用同样的过滤表达式（如 file_name == 'xxx.pdf'）
+ * - 向量检索可以传入已计算好的查询向量，同一个问题的召回、重排只调用一次向量模型
+ * - 删除文件时先给文档打墓碑标记（检索时跳过），再由后台压缩真正移除向量、重建倒排索引
+ * - 快照可以在后台线程或首次访问时加载（warmUp），加载前的读写会等待加载完成；加载失败时距上次失败超过
+ *   WARMUP_RETRY_INTERVAL_NANOS后，下一次读写重新加载，期间的读写直接失败，失败原因见/actuator/vectorstore；
+ *   快照用Jackson流式解析逐条放入store，记录已加载的文档数与字节数，不需要一次性构建整棵JSON树
+ * - 向量检索走VectorIndex：写入时归一化，检索时批量点积打分（JDK Vector API，不可用时为标量实现），
+ *   只有进入前topK的候选才做过滤和构建Document
+ */
+@Slf4j
+public class HybridVectorStore extends SimpleVectorStore implements HybridSearchStore {
+
+    static {
+        log.info("向量距离计算实现: {}", VectorKernels.implementation());
+    }
+
+    private final Bm25Index keywordIndex = new Bm25Index();
+
+    private final VectorIndex vectorIndex = new VectorIndex();
+
+    // 已标记删除、尚未压缩的文档id
+    private final Set<String> tombstones = ConcurrentHashMap.newKeySet();
+
+    // 与SimpleVectorStore相同的过滤方式：过滤表达式转为SpEL，在文档metadata上求值
+    private final FilterExpressionConverter filterExpressionConverter = new SimpleVectorStoreFilterExpressionConverter();
+
+    private final ExpressionParser expressionParser = new SpelExpressionParser();
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+
+    // 预热失败后，距上次失败超过该间隔才在下一次读写时重新加载，避免每个请求都重新解析一遍快照
+    static final long WARMUP_RETRY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    // 预热：待加载的快照与加载状态
+    private final Object warmupLock = new Object();
+
+    private volatile Resource pendingSnapshot;
+
+    private volatile WarmupState warmupState = WarmupState.READY;
+
+    private volatile String warmupError;
+
+    private final AtomicLong loadedDocuments = new AtomicLong();
+
+    private final AtomicLong loadedBytes = new AtomicLong();
+
+    private volatile long snapshotBytes;
+
+    private volatile long warmupStartNanos;
+
+    private volatile long warmupEndNanos;
+
+    private final ObservationRegistry observationRegistry;
+
+    public HybridVectorStore(EmbeddingModel embeddingModel) {
+        this(embeddingModel, ObservationRegistry.NOOP);
+    }
+
+    /**
+     * @param embeddingModel 向量模型
+     * @param observationRegistry 观测注册中心，写入、similaritySearch以及混合检索的两路召回都会创建span
+     */
+    public HybridVectorStore(EmbeddingModel embeddingModel, ObservationRegistry observationRegistry) {
+        super(SimpleVectorStore.builder(embeddingModel).observationRegistry(observationRegistry));
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Override
+    public void doAdd(List<Document> documents) {
+        awaitWarmup();
+        super.doAdd(documents);
+        vectorIndex.add(documents.stream()
+                .map(document -> store.get(document.getId()))
+                .filter(Objects::nonNull)
+                .toList());
+        keywordIndex.add(documents);
+    }
+
+    /**
+     * 写入已有向量的文档，不调用向量模型（分片副本之间复制、按分片加载快照时使用）
+     * @param contents 文档与原始向量
+     */
+    public void addContents(List<SimpleVectorStoreContent> contents) {
+        awaitWarmup();
+        contents.forEach(content -> store.put(content.getId(), content));
+        vectorIndex.add(contents);
+        keywordIndex.add(contents.stream().map(HybridVectorStore::toDocument).toList());
+    }
+
+    /**
+     * @return 有效文档（不含已标记删除的）与原始向量
+     */
+    public List<SimpleVectorStoreContent> contents() {
+        awaitWarmup();
+        return store.values().stream()
+                .filter(content -> !tombstones.contains(content.getId()))
+                .toList();
+    }
+
+    @Override
+    public void doDelete(List<String> idList) {
+        super.doDelete(idList);
+        vectorIndex.remove(idList);
+        keywordIndex.remove(idList);
+    }
+
+    @Override
+    public void load(File file) {
+        load(new FileSystemResource(file));
+    }
+
+    /**
+     * 同步加载快照，替换当前全部数据
+     * SimpleVectorStore.load会把store整体替换为HashMap，这里改为逐条放入原有的ConcurrentHashMap，加载后仍可并发读写
+     * @param resource 快照，即SimpleVectorStore.save写出的JSON
+     */
+    @Override
+    public void load(Resource resource) {
+        loadedDocuments.set(0);
+        loadedBytes.set(0);
+        try {
+            snapshotBytes = resource.contentLength();
+        } catch (IOException e) {
+            snapshotBytes = -1;
+        }
+        store.clear();
+        vectorIndex.reset(List.of());
+        tombstones.clear();
+        try (InputStream inputStream = resource.getInputStream();
+             JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Invalid vector store snapshot: " + resource.getDescription());
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                parser.nextToken();
+                SimpleVectorStoreContent content = objectMapper.readValue(parser, SimpleVectorStoreContent.class);
+                store.put(content.getId(), content);
+                loadedDocuments.incrementAndGet();
+                loadedBytes.set(parser.currentLocation().getByteOffset());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        vectorIndex.reset(store.values());
+        rebuildKeywordIndex();
+    }
+
+    @Override
+    public void save(File file) {
+        awaitWarmup();
+        super.save(file);
+    }
+
+    /**
+     * 预热：登记待加载的快照，后台加载或在首次读写时加载
+     * @param snapshot 快照
+     * @param background true：立即在后台线程加载；false：首次读写时加载
+     */
+    public void warmUp(Resource snapshot, boolean background) {
+        synchronized (warmupLock) {
+            pendingSnapshot = snapshot;
+            warmupState = WarmupState.PENDING;
+        }
+        if (background) {
+            Thread thread = new Thread(this::awaitWarmup, "vector-store-warmup");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 等待快照加载完成，尚未开始加载、或上次加载失败且已超过重试间隔时由当前线程加载
+     * @throws IllegalStateException 快照加载失败时抛出
+     */
+    public void awaitWarmup() {
+        if (warmupState == WarmupState.READY) {
+            return;
+        }
+        synchronized (warmupLock) {
+            if (warmupState == WarmupState.PENDING || retryDue()) {
+                if (warmupState == WarmupState.FAILED) {
+                    log.info("重新加载向量库快照, 上次失败原因: {}", warmupError);
+                }
+                warmupState = WarmupState.LOADING;
+                warmupStartNanos = System.nanoTime();
+                try {
+                    load(pendingSnapshot);
+                    warmupState = WarmupState.READY;
+                    warmupError = null;
+                    pendingSnapshot = null;
+                    log.info("向量库加载完成, 文档: {}, 耗时: {}ms", loadedDocuments.get(),
+                            (System.nanoTime() - warmupStartNanos) / 1_000_000);
+                } catch (RuntimeException e) {
+                    // 保留pendingSnapshot，重试时重新加载；load开头会清空已加载的部分
+                    warmupError = e.getMessage();
+                    warmupState = WarmupState.FAILED;
+                    log.error("Failed to load vector store snapshot.", e);
+                } finally {
+                    warmupEndNanos = System.nanoTime();
+                }
+            }
+            if (warmupState == WarmupState.FAILED) {
+                throw new IllegalStateException("Vector store snapshot failed to load: " + warmupError);
+            }
+        }
+    }
+
+    private boolean retryDue() {
+        return warmupState == WarmupState.FAILED && System.nanoTime() - warmupEndNanos >= WARMUP_RETRY_INTERVAL_NANOS;
+    }
+
+    /**
+     * @return 快照是否已加载完成（或无需加载）
+     */
+    public boolean isReady() {
+        return warmupState == WarmupState.READY;
+    }
+
+    /**
+     * @return 预热进度
+     */
+    public WarmupProgress getWarmupProgress() {
+        WarmupState state = warmupState;
+        long total = snapshotBytes;
+        long bytes = state == WarmupState.READY ? Math.max(total, loadedBytes.get()) : loadedBytes.get();
+        double percent = state == WarmupState.READY ? 100 : total > 0 ? Math.min(100, bytes * 100.0 / total) : 0;
+        long elapsedMillis = switch (state) {
+            case PENDING -> 0;
+            case LOADING -> (System.nanoTime() - warmupStartNanos) / 1_000_000;
+            default -> warmupStartNanos == 0 ? 0 : (warmupEndNanos - warmupStartNanos) / 1_000_000;
+        };
+        return new WarmupProgress(state, loadedDocuments.get(), bytes, total, Math.round(percent * 10) / 10.0,
+                elapsedMillis, store.size() - tombstones.size(), tombstones.size(), warmupError);
+    }
+
+    @Override
+    public List<Document> doSimilaritySearch(SearchRequest request) {
+        return vectorSearch(embedQuery(request.getQuery()), request);
+    }
+
+    /**
+     * 计算查询语句的向量
+     * @param query 查询语句
+     * @return 查询向量
+     */
+    public float[] embedQuery(String query) {
+        return embeddingModel.embed(query);
+    }
+
+    /**
+     * 使用已计算好的查询向量做向量检索，只保留前topK个，不对全部文档排序
+     * @param queryEmbedding 查询向量
+     * @param request 检索请求，使用其中的topK、相似度阈值和过滤表达式
+     * @return 按余弦相似度降序的文档，score为余弦相似度
+     */
+    public List<Document> vectorSearch(float[] queryEmbedding, SearchRequest request) {
+        return observe("vector", () -> doVectorSearch(queryEmbedding, request));
+    }
+
+    private List<Document> doVectorSearch(float[] queryEmbedding, SearchRequest request) {
+        awaitWarmup();
+        Predicate<Map<String, Object>> filter = metadataPredicate(request.getFilterExpression());
+        return vectorIndex.search(queryEmbedding, request.getTopK(), request.getSimilarityThreshold(),
+                content -> !tombstones.contains(content.getId()) && filter.test(content.getMetadata()));
+    }
+
+    /**
+     * 获取文档的向量
+     * @param id 文档id
+     * @return 归一化后的文档向量（只读，调用方不要修改），文档不存在时返回null
+     */
+    public float[] getEmbedding(String id) {
+        return vectorIndex.vector(id);
+    }
+
+    /**
+     * BM25关键词检索
+     * @param request 检索请求，使用其中的query、topK和过滤表达式，不使用相似度阈值
+     * @return 按BM25分数降序的文档
+     */
+    public List<Document> keywordSearch(SearchRequest request) {
+        return observe("keyword", () -> {
+            awaitWarmup();
+            Predicate<Document> filter = filterPredicate(request.getFilterExpression());
+            return keywordIndex.search(request.getQuery(), request.getTopK(),
+                    document -> !tombstones.contains(document.getId()) && filter.test(document));
+        });
+    }
+
+    // 混合检索绕过了similaritySearch，单独创建观测（span：vector_store hybrid <type>_search）
+    private List<Document> observe(String searchType, Supplier<List<Document>> search) {
+        return Observation.createNotStarted("ai.vectorstore.search", observationRegistry)
+                .contextualName("vector_store hybrid " + searchType + "_search")
+                .lowCardinalityKeyValue("search.type", searchType)
+                .observe(search);
+    }
+
+    /**
+     * 标记删除：满足条件的文档立即从检索结果中消失，向量和索引在compact()时才真正移除
+     * @param filterExpression 删除条件，如 file_name == 'xxx.pdf'
+     * @return 新标记的文档数量
+     */
+    public int tombstone(Filter.Expression filterExpression) {
+        awaitWarmup();
+        Predicate<Document> filter = filterPredicate(filterExpression);
+        int count = 0;
+        for (SimpleVectorStoreContent content : store.values()) {
+            if (!tombstones.contains(content.getId()) && filter.test(toDocument(content)) && tombstones.add(content.getId())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 压缩：移除已标记删除的向量，并按剩余文档重建倒排索引，内存与检索耗时只与有效数据相关
+     * @return 移除的文档数量
+     */
+    public int compact() {
+        awaitWarmup();
+        List<String> ids = new ArrayList<>(tombstones);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        doDelete(ids);
+        keywordIndex.compact();
+        ids.forEach(tombstones::remove);
+        return ids.size();
+    }
+
+    /**
+     * @return 已标记删除、尚未压缩的文档数量
+     */
+    public int tombstoneCount() {
+        return tombstones.size();
+    }
+
+    private Predicate<Document> filterPredicate(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> predicate = metadataPredicate(filterExpression);
+        return document -> predicate.test(document.getMetadata());
+    }
+
+    /**
+     * 把过滤表达式编译为元数据的判断条件，每次检索调用一次，返回的条件只在本次检索的线程中使用
+     * 常用的等值条件（如 file_name == 'xxx.pdf'，以及它们的AND组合）直接查Map；其余表达式转为SpEL，
+     * 本次检索的所有候选文档共用一个只读的SimpleEvaluationContext
+     */
+    private Predicate<Map<String, Object>> metadataPredicate(Filter.Expression filterExpression) {
+        if (filterExpression == null) {
+            return metadata -> true;
+        }
+        Predicate<Map<String, Object>> compiled = compileEquality(filterExpression);
+        if (compiled != null) {
+            return compiled;
+        }
+        Expression expression = expressionParser.parseExpression(filterExpressionConverter.convertExpression(filterExpression));
+        SimpleEvaluationContext context = SimpleEvaluationContext.forReadOnlyDataBinding().withInstanceMethods().build();
+        return metadata -> {
+            context.setVariable("metadata", metadata);
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        };
+    }
+
+    /**
+     * @return 字符串等值条件及其AND组合的判断条件，其他表达式返回null
+     */
+    private static Predicate<Map<String, Object>> compileEquality(Filter.Expression expression) {
+        if (expression.type() == Filter.ExpressionType.EQ
+                && expression.left() instanceof Filter.Key key
+                && expression.right() instanceof Filter.Value value
+                && value.value() instanceof String expected) {
+            String name = unquote(key.key());
+            return metadata -> expected.equals(metadata.get(name));
+        }
+        if (expression.type() == Filter.ExpressionType.AND
+                && expression.left() instanceof Filter.Expression left
+                && expression.right() instanceof Filter.Expression right) {
+            Predicate<Map<String, Object>> leftPredicate = compileEquality(left);
+            Predicate<Map<String, Object>> rightPredicate = compileEquality(right);
+            if (leftPredicate != null && rightPredicate != null) {
+                return leftPredicate.and(rightPredicate);
+            }
+        }
+        return null;
+    }
+
+    // 含特殊字符的key在过滤表达式中带引号，与SimpleVectorStoreFilterExpressionConverter一致去掉外层引号
+    private static String unquote(String key) {
+        if (key.length() >= 2 && (key.startsWith("'") && key.endsWith("'") || key.startsWith("\"") && key.endsWith("\""))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    private void rebuildKeywordIndex() {
+        keywordIndex.reset(store.values().stream()
+                .map(HybridVectorStore::toDocument)
+                .toList());
+    }
+
+    private static Document toDocument(SimpleVectorStoreContent content) {
+        return new Document(content.getId(), content.getText(), content.getMetadata());
+    }
+
+    /**
+     * 预热状态
+     */
+    public enum WarmupState {
+        // 已登记快照，等待加载
+        PENDING,
+        // 正在加载
+        LOADING,
+        // 加载完成，或没有需要加载的快照
+        READY,
+        // 加载失败，PDF检索不可用，快照不会被覆盖；超过重试间隔后下一次读写重新加载
+        FAILED
+    }
+
+    /**
+     * 预热进度
+     * @param state 状态
+     * @param documents 已加载的文档数
+     * @param bytesRead 已读取的快照字节数
+     * @param totalBytes 快照总字节数，未知时为-1
+     * @param percent 完成百分比
+     * @param elapsedMillis 加载耗时
+     * @param liveDocuments 有效文档数
+     * @param tombstones 已标记删除、尚未压缩的文档数
+     * @param error 加载失败的原因
+     */
+    public record WarmupProgress(WarmupState state, long documents, long bytesRead, long totalBytes, double percent,
+                                 long elapsedMillis, long liveDocuments, long tombstones, String error) {
+    }
+}
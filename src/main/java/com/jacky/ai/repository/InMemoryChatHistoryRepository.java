@@ -1,39 +1,74 @@
 package com.jacky.ai.repository;
 
+import com.jacky.ai.config.TenantProperties;
+import com.jacky.ai.util.TenantContext;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author: Jacky.Z
  * @date: 2025/6/21 10:04
- * @description： 会话历史-内存中存储
+ * @description： 会话历史-内存中存储，按当前请求的租户隔离；ai.session.store为redis时改用SharedChatHistoryRepository
  */
 @RequiredArgsConstructor
 @Component
+@ConditionalOnProperty(prefix = "ai.session", name = "store", havingValue = "local", matchIfMissing = true)
 public class InMemoryChatHistoryRepository implements ChatHistoryRepository {
 
+    private final TenantProperties tenantProperties;
+
     // 会话历史-内存中存储
-    // key: 业务类型（如 "chat", "service", "pdf"） value: 该业务类型的所有会话ID列表
-    Map<String, List<String>> chatHistory = new HashMap<>();
+    // key: 租户id value: 该租户的会话历史（key: 业务类型（如 "chat", "service", "pdf"） value: 该业务类型的所有会话ID列表）
+    private final Map<String, Map<String, List<String>>> chatHistory = new ConcurrentHashMap<>();
 
     @Override
     public void save(String type, String chatId) {
-        // 目前我们业务比较简单，没有用户概念，但是将来会有不同业务，因此简单采用内存保存type与chatId关系。
-        // TODO 将来也可以根据业务需要把会话id持久化保存到Redis、MongoDB、MySQL等数据库。
-        // TODO 如果业务中有user的概念，还需要记录userId、chatId、time等关联关系
-        List<String> chatIds = chatHistory.computeIfAbsent(type, k -> new ArrayList<>());
-        if (!chatIds.contains(chatId)) {
+        // 会话按租户隔离（租户id取自请求头，见TenantFilter），单实例时保存在内存中；
+        // 需要持久化或多实例共享时配置 ai.session.store=redis，改用SharedChatHistoryRepository。
+        // 目前没有用户的概念，以后有了用户时，用户id可以与租户id一样作为会话的一级分组
+        String tenant = TenantContext.current();
+        Map<String, List<String>> tenantHistory = chatHistory.computeIfAbsent(tenant, k -> new HashMap<>());
+        synchronized (tenantHistory) {
+            List<String> chatIds = tenantHistory.computeIfAbsent(type, k -> new ArrayList<>());
+            if (chatIds.contains(chatId)) {
+                return;
+            }
+            // 新会话在请求模型之前检查租户的会话数量上限
+            int conversations = tenantHistory.values().stream().mapToInt(List::size).sum();
+            if (conversations >= tenantProperties.getMaxConversations()) {
+                throw new TenantQuotaExceededException("Tenant " + tenant + " exceeds conversation quota: "
+                        + tenantProperties.getMaxConversations());
+            }
             chatIds.add(chatId);
         }
     }
 
     @Override
     public List<String> getChatIds(String type) {
-        return chatHistory.getOrDefault(type, List.of());
+        Map<String, List<String>> tenantHistory = chatHistory.getOrDefault(TenantContext.current(), Map.of());
+        synchronized (tenantHistory) {
+            return List.copyOf(tenantHistory.getOrDefault(type, List.of()));
+        }
+    }
+
+    @Override
+    public void delete(String type, String chatId) {
+        Map<String, List<String>> tenantHistory = chatHistory.get(TenantContext.current());
+        if (tenantHistory == null) {
+            return;
+        }
+        synchronized (tenantHistory) {
+            List<String> chatIds = tenantHistory.get(type);
+            if (chatIds != null) {
+                chatIds.remove(chatId);
+            }
+        }
     }
 }
@@ -3,88 +3,289 @@ package com.jacky.ai.repository;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import com.jacky.ai.config.RetrievalProperties;
+import com.jacky.ai.util.FileTransferUtils;
+import com.jacky.ai.util.TenantContext;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class LocalPdfFileRepository implements FileRepository {
 
-    private static final Path STORAGE_DIR = Path.of("storage", "pdf");
+    // PDF文件头
+    private static final byte[] PDF_MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
 
-    private final VectorStore vectorStore;
+    // 删除文件后延迟压缩，连续删除多个文件时只压缩一次
+    private static final long COMPACTION_DELAY_SECONDS = 5;
 
-    // 会话id 与 文件名的对应关系，方便查询会话历史时重新加载文件
-    private final Properties chatFiles = new Properties();
+    private static final String CHAT_FILES_SNAPSHOT = "chat-pdf.properties";
+
+    // 按租户分片的向量库，各租户的数据目录见 TenantVectorStores.tenantDir
+    private final TenantVectorStores vectorStores;
+
+    private final RetrievalProperties retrievalProperties;
+
+    // 租户id 与 该租户的会话文件
+    private final Map<String, TenantFiles> tenantFiles = new ConcurrentHashMap<>();
+
+    // 后台压缩向量库并重写快照
+    private final ScheduledExecutorService compactionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "vector-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 等待压缩的租户，同一租户连续删除多个文件时只压缩一次
+    private final Set<String> compactionScheduled = ConcurrentHashMap.newKeySet();
 
     @Override
     public boolean save(String chatId, Resource resource) {
-        String originalFilename = Objects.requireNonNullElse(resource.getFilename(), "uploaded.pdf");
+        try (InputStream inputStream = resource.getInputStream()) {
+            // 已在本地的资源大小已知，不再限制
+            return save(chatId, resource.getFilename(), inputStream, Long.MAX_VALUE);
+        } catch (IOException e) {
+            log.error("Failed to save PDF resource.", e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean save(String chatId, String filename, InputStream inputStream, long maxBytes) {
+        String tenant = TenantContext.current();
+        TenantFiles files = tenantFiles(tenant);
+        String originalFilename = Objects.requireNonNullElse(filename, "uploaded.pdf");
         String safeFilename = chatId + "_" + sanitizeFilename(originalFilename);
-        Path target = STORAGE_DIR.resolve(safeFilename);
+        Path target = files.pdfDir.resolve(safeFilename);
+        Path temp = null;
         try {
-            Files.createDirectories(STORAGE_DIR);
-            try (InputStream inputStream = resource.getInputStream()) {
-                Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
-            }
+            Files.createDirectories(files.pdfDir);
+            // 1.先写入同目录下的临时文件，写入过程中计算摘要、校验PDF文件头与大小
+            temp = Files.createTempFile(files.pdfDir, ".upload-", ".tmp");
+            MessageDigest digest = newSha256();
+            FileTransferUtils.receive(inputStream, temp, digest, PDF_MAGIC, maxBytes);
+            // 2.写完后原子重命名，下载和读取时不会看到写了一半的文件
+            moveIntoPlace(temp, target);
             // 保存绝对路径，避免工作目录变化导致读取错误
-            chatFiles.put(chatId, target.toAbsolutePath().toString());
+            String previous = (String) files.chatFiles.put(chatId, target.toAbsolutePath().toString());
+            files.fileDigests.put(chatId, HexFormat.of().formatHex(digest.digest()));
+            // 3.同一会话重新上传时，旧文件的向量作废（新文件的向量在之后写入，不受影响）
+            if (previous != null) {
+                discard(tenant, Path.of(previous), !Path.of(previous).equals(target.toAbsolutePath()));
+            }
             return true;
         } catch (IOException e) {
             log.error("Failed to save PDF resource.", e);
             return false;
+        } finally {
+            deleteQuietly(temp);
         }
     }
 
     @Override
     public Resource getFile(String chatId) {
-        String filepath = chatFiles.getProperty(chatId, "");
+        String filepath = tenantFiles(TenantContext.current()).chatFiles.getProperty(chatId, "");
         return new FileSystemResource(filepath);
     }
 
+    @Override
+    public String getDigest(String chatId) {
+        Resource resource = getFile(chatId);
+        if (!resource.exists()) {
+            return null;
+        }
+        return tenantFiles(TenantContext.current()).fileDigests.computeIfAbsent(chatId, id -> {
+            MessageDigest digest = newSha256();
+            try (InputStream inputStream = new DigestInputStream(resource.getInputStream(), digest)) {
+                inputStream.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        });
+    }
+
+    @Override
+    public boolean delete(String chatId) {
+        String tenant = TenantContext.current();
+        TenantFiles files = tenantFiles(tenant);
+        String filepath = (String) files.chatFiles.remove(chatId);
+        if (filepath == null) {
+            return false;
+        }
+        files.fileDigests.remove(chatId);
+        discard(tenant, Path.of(filepath), true);
+        return true;
+    }
+
+    /**
+     * 作废一个文件：向量打墓碑标记后立即不可检索，安排后台压缩
+     * @param tenant 租户id
+     * @param file 文件路径
+     * @param deleteFile 是否删除磁盘上的文件
+     */
+    private void discard(String tenant, Path file, boolean deleteFile) {
+        String fileName = file.getFileName().toString();
+        int count = vectorStores.get(tenant).tombstone(new FilterExpressionBuilder().eq("file_name", fileName).build());
+        log.info("文件已作废, tenant: {}, file: {}, 标记删除的向量: {}", tenant, fileName, count);
+        if (deleteFile) {
+            deleteQuietly(file);
+        }
+        scheduleCompaction(tenant);
+    }
+
+    private void scheduleCompaction(String tenant) {
+        if (compactionScheduled.add(tenant)) {
+            compactionExecutor.schedule(() -> {
+                compactionScheduled.remove(tenant);
+                try {
+                    compact(tenant);
+                } catch (Exception e) {
+                    log.error("Failed to compact vector store of tenant {}.", tenant, e);
+                }
+            }, COMPACTION_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 压缩租户的向量库并重写快照（见TenantVectorStores.persist），同时重写会话文件映射
+     * @param tenant 租户id
+     */
+    private synchronized void compact(String tenant) throws IOException {
+        long start = System.currentTimeMillis();
+        writeChatFilesSnapshot(tenantFiles(tenant));
+        int removed = vectorStores.persist(tenant);
+        log.info("向量库压缩完成, tenant: {}, 移除向量: {}, 耗时: {}ms", tenant, removed, System.currentTimeMillis() - start);
+    }
+
+    private void writeChatFilesSnapshot(TenantFiles files) throws IOException {
+        Files.createDirectories(files.chatFilesSnapshot.getParent());
+        Path temp = Files.createTempFile(files.chatFilesSnapshot.getParent(), CHAT_FILES_SNAPSHOT, ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            files.chatFiles.store(writer, LocalDateTime.now().toString());
+        }
+        moveIntoPlace(temp, files.chatFilesSnapshot);
+    }
+
+    /**
+     * 租户的会话文件映射很小，首次访问时直接加载
+     */
+    private TenantFiles tenantFiles(String tenant) {
+        return tenantFiles.computeIfAbsent(tenant, key -> {
+            Path dir = vectorStores.tenantDir(key);
+            TenantFiles files = new TenantFiles(dir.resolve("storage").resolve("pdf"), dir.resolve(CHAT_FILES_SNAPSHOT));
+            if (Files.exists(files.chatFilesSnapshot)) {
+                try (Reader reader = Files.newBufferedReader(files.chatFilesSnapshot, StandardCharsets.UTF_8)) {
+                    files.chatFiles.load(reader);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return files;
+        });
+    }
+
+    /**
+     * 默认租户的会话文件映射在启动时加载；向量快照随知识库增大，交给向量库在后台或首次访问时加载，启动不等待
+     * 其他租户在首次访问时加载
+     */
     @PostConstruct
     private void init() {
-        FileSystemResource pdfResource = new FileSystemResource("chat-pdf.properties");
-        if (pdfResource.exists()) {
+        try {
+            Files.createDirectories(Path.of(retrievalProperties.getStorageDir()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        tenantFiles(TenantContext.DEFAULT_TENANT);
+        vectorStores.get(TenantContext.DEFAULT_TENANT);
+    }
+
+    @PreDestroy
+    private void persistent() {
+        compactionExecutor.shutdownNow();
+        // 未压缩的墓碑在保存前清理，避免已删除的向量写入快照
+        for (String tenant : tenantFiles.keySet()) {
             try {
-                chatFiles.load(new BufferedReader(new InputStreamReader(pdfResource.getInputStream(), StandardCharsets.UTF_8)));
+                compact(tenant);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                log.error("Failed to persist vector store of tenant {}.", tenant, e);
             }
         }
-        FileSystemResource vectorResource = new FileSystemResource("chat-pdf.json");
-        if (vectorResource.exists()) {
-            SimpleVectorStore simpleVectorStore = (SimpleVectorStore) vectorStore;
-            simpleVectorStore.load(vectorResource);
+    }
+
+    private static void moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
-    @PreDestroy
-    private void persistent() {
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
         try {
-            chatFiles.store(new FileWriter("chat-pdf.properties"), LocalDateTime.now().toString());
-            SimpleVectorStore simpleVectorStore = (SimpleVectorStore) vectorStore;
-            simpleVectorStore.save(new File("chat-pdf.json"));
+            Files.deleteIfExists(path);
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            log.warn("Failed to delete temp file: {}", path, e);
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 
     private String sanitizeFilename(String filename) {
         return filename.replaceAll("[\\\\/:*?\"<>|]", "_");
     }
+
+    /**
+     * 一个租户的会话文件
+     */
+    private static final class TenantFiles {
+
+        // 会话id 与 文件名的对应关系，方便查询会话历史时重新加载文件
+        private final Properties chatFiles = new Properties();
+
+        // 会话id 与 文件SHA-256摘要的对应关系，上传时计算，历史文件在首次下载时计算
+        private final Map<String, String> fileDigests = new ConcurrentHashMap<>();
+
+        private final Path pdfDir;
+
+        private final Path chatFilesSnapshot;
+
+        private TenantFiles(Path pdfDir, Path chatFilesSnapshot) {
+            this.pdfDir = pdfDir;
+            this.chatFilesSnapshot = chatFilesSnapshot;
+        }
+    }
 }
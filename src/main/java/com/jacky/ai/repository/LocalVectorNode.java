@@ -0,0 +1,138 @@
+package com.jacky.ai.repository;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 00:40
+ * @description： 进程内的节点：每个分片副本是一个独立的HybridVectorStore（向量索引 + BM25索引）
+ * 用于单机上模拟多节点部署，以及测试副本切换（setAvailable(false)模拟节点宕机）。
+ */
+public class LocalVectorNode implements VectorNode {
+
+    private final String id;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final ObservationRegistry observationRegistry;
+
+    private final Map<Integer, HybridVectorStore> shards = new ConcurrentHashMap<>();
+
+    private volatile boolean available = true;
+
+    /**
+     * @param id 节点id
+     * @param embeddingModel 只用于构造HybridVectorStore，节点上不计算向量
+     * @param observationRegistry 观测注册中心，各分片的检索会创建span
+     */
+    public LocalVectorNode(String id, EmbeddingModel embeddingModel, ObservationRegistry observationRegistry) {
+        this.id = id;
+        this.embeddingModel = embeddingModel;
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    @Override
+    public void add(int shard, List<SimpleVectorStoreContent> contents) {
+        shard(shard).addContents(contents);
+    }
+
+    @Override
+    public void delete(int shard, List<String> ids) {
+        HybridVectorStore store = existing(shard);
+        if (store != null) {
+            store.doDelete(ids);
+        }
+    }
+
+    @Override
+    public List<Document> vectorSearch(int shard, float[] queryEmbedding, SearchRequest request) {
+        HybridVectorStore store = existing(shard);
+        return store == null ? List.of() : store.vectorSearch(queryEmbedding, request);
+    }
+
+    @Override
+    public List<Document> keywordSearch(int shard, SearchRequest request) {
+        HybridVectorStore store = existing(shard);
+        return store == null ? List.of() : store.keywordSearch(request);
+    }
+
+    @Override
+    public float[] getEmbedding(int shard, String id) {
+        HybridVectorStore store = existing(shard);
+        return store == null ? null : store.getEmbedding(id);
+    }
+
+    @Override
+    public int tombstone(int shard, Filter.Expression filterExpression) {
+        HybridVectorStore store = existing(shard);
+        return store == null ? 0 : store.tombstone(filterExpression);
+    }
+
+    @Override
+    public int compact(int shard) {
+        HybridVectorStore store = existing(shard);
+        return store == null ? 0 : store.compact();
+    }
+
+    @Override
+    public List<SimpleVectorStoreContent> export(int shard) {
+        HybridVectorStore store = existing(shard);
+        return store == null ? List.of() : store.contents();
+    }
+
+    @Override
+    public void drop(int shard) {
+        checkAvailable();
+        shards.remove(shard);
+    }
+
+    @Override
+    public HybridVectorStore.WarmupProgress progress(int shard) {
+        HybridVectorStore store = existing(shard);
+        return store == null ? null : store.getWarmupProgress();
+    }
+
+    private HybridVectorStore shard(int shard) {
+        checkAvailable();
+        return shards.computeIfAbsent(shard, key -> new HybridVectorStore(embeddingModel, observationRegistry));
+    }
+
+    private HybridVectorStore existing(int shard) {
+        checkAvailable();
+        return shards.get(shard);
+    }
+
+    private void checkAvailable() {
+        if (!available) {
+            throw new IllegalStateException("Vector node " + id + " is unavailable");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
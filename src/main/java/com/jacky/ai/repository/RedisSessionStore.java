@@ -0,0 +1,373 @@
+package com.jacky.ai.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StringUtils;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 01:15
+ * @description： 基于Redis协议（RESP2）的共享会话存储，直接使用Socket通信，不引入客户端依赖
+ * - 列表、集合的key为 {prefix}{名称}，列表的版本号在 {prefix}{名称}:version；名称用花括号包起来（hash tag），Redis Cluster下两个key落在同一个slot
+ * - 修改列表与版本号在同一个MULTI/EXEC事务中执行，读取列表时同时读取版本号，保证列表与版本号一致
+ * - 连接池：最多poolSize个连接，借不到连接时等待timeout；读写出错的连接直接关闭，不放回池中
+ * 只用到了GET、INCR、DEL、RPUSH、LTRIM、LRANGE、LREM、SADD、SREM、SCARD、MULTI、EXEC，兼容Redis、Valkey、KeyDB等。
+ */
+@Slf4j
+public class RedisSessionStore implements SessionStore, AutoCloseable {
+
+    private final String host;
+
+    private final int port;
+
+    private final String password;
+
+    private final int database;
+
+    private final String keyPrefix;
+
+    private final int timeoutMillis;
+
+    private final BlockingQueue<Connection> idle;
+
+    // 可以再创建的连接数
+    private final Semaphore permits;
+
+    private volatile boolean closed;
+
+    /**
+     * @param host Redis地址
+     * @param port Redis端口
+     * @param password 密码，为空时不认证
+     * @param database 数据库编号
+     * @param keyPrefix key前缀，多个应用共用一个Redis时区分
+     * @param poolSize 连接数上限
+     * @param timeout 连接、读取、等待连接的超时时间
+     */
+    public RedisSessionStore(String host, int port, String password, int database, String keyPrefix, int poolSize,
+                             Duration timeout) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.database = database;
+        this.keyPrefix = keyPrefix;
+        this.timeoutMillis = (int) timeout.toMillis();
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+        this.permits = new Semaphore(poolSize);
+    }
+
+    @Override
+    public long version(String key) {
+        Object reply = call("GET", versionKey(key));
+        return reply == null ? 0 : Long.parseLong((String) reply);
+    }
+
+    @Override
+    public Versioned range(String key) {
+        List<Object> replies = transaction(List.of(
+                command("GET", versionKey(key)),
+                command("LRANGE", dataKey(key), "0", "-1")));
+        long version = replies.get(0) == null ? 0 : Long.parseLong((String) replies.get(0));
+        @SuppressWarnings("unchecked")
+        List<String> values = (List<String>) (List<?>) replies.get(1);
+        return new Versioned(version, values);
+    }
+
+    @Override
+    public long append(String key, List<String> values, int maxSize) {
+        List<String> push = new ArrayList<>(values.size() + 2);
+        push.add("RPUSH");
+        push.add(dataKey(key));
+        push.addAll(values);
+        List<Object> replies = transaction(List.of(
+                push.toArray(String[]::new),
+                command("LTRIM", dataKey(key), String.valueOf(-maxSize), "-1"),
+                command("INCR", versionKey(key))));
+        return (Long) replies.get(2);
+    }
+
+    @Override
+    public void remove(String key, String value) {
+        transaction(List.of(
+                command("LREM", dataKey(key), "0", value),
+                command("INCR", versionKey(key))));
+    }
+
+    @Override
+    public void delete(String key) {
+        transaction(List.of(
+                command("DEL", dataKey(key)),
+                command("INCR", versionKey(key))));
+    }
+
+    @Override
+    public boolean addMember(String key, String member, int maxMembers) {
+        List<Object> replies = transaction(List.of(
+                command("SADD", dataKey(key), member),
+                command("SCARD", dataKey(key))));
+        if ((Long) replies.get(0) == 1 && (Long) replies.get(1) > maxMembers) {
+            removeMember(key, member);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void removeMember(String key, String member) {
+        call("SREM", dataKey(key), member);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private String dataKey(String key) {
+        return keyPrefix + "{" + key + "}";
+    }
+
+    private String versionKey(String key) {
+        return keyPrefix + "{" + key + "}:version";
+    }
+
+    private static String[] command(String... args) {
+        return args;
+    }
+
+    /**
+     * 执行单个命令
+     * @return 返回值
+     */
+    private Object call(String... command) {
+        return execute(List.<String[]>of(command)).get(0);
+    }
+
+    /**
+     * 在MULTI/EXEC事务中执行，一次往返
+     * @return 各命令的返回值
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> transaction(List<String[]> commands) {
+        List<String[]> pipeline = new ArrayList<>(commands.size() + 2);
+        pipeline.add(command("MULTI"));
+        pipeline.addAll(commands);
+        pipeline.add(command("EXEC"));
+        List<Object> replies = execute(pipeline);
+        Object exec = replies.get(replies.size() - 1);
+        if (exec == null) {
+            throw new IllegalStateException("Redis transaction aborted");
+        }
+        List<Object> results = (List<Object>) exec;
+        results.forEach(RedisSessionStore::checkReply);
+        return results;
+    }
+
+    private static void checkReply(Object reply) {
+        if (reply instanceof ErrorReply error) {
+            throw new IllegalStateException("Redis error: " + error.message());
+        }
+    }
+
+    /**
+     * 批量发送命令后依次读取返回值（pipeline）
+     * @throws IllegalStateException Redis返回错误
+     * @throws UncheckedIOException 网络错误
+     */
+    private List<Object> execute(List<String[]> commands) {
+        Connection connection = borrow();
+        boolean healthy = false;
+        try {
+            for (String[] command : commands) {
+                connection.write(command);
+            }
+            connection.flush();
+            // 读完全部返回值后再检查错误，连接仍可复用
+            List<Object> replies = new ArrayList<>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                replies.add(connection.read());
+            }
+            healthy = true;
+            replies.forEach(RedisSessionStore::checkReply);
+            return replies;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Redis " + host + ":" + port + " failed", e);
+        } finally {
+            release(connection, healthy);
+        }
+    }
+
+    private Connection borrow() {
+        if (closed) {
+            throw new IllegalStateException("Session store is closed");
+        }
+        Connection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        try {
+            if (permits.tryAcquire()) {
+                try {
+                    return connect();
+                } catch (IOException e) {
+                    permits.release();
+                    throw new UncheckedIOException("Failed to connect to Redis " + host + ":" + port, e);
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+            connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (connection == null) {
+            throw new IllegalStateException("Timed out waiting for a Redis connection");
+        }
+        return connection;
+    }
+
+    private void release(Connection connection, boolean healthy) {
+        if (healthy && !closed && idle.offer(connection)) {
+            return;
+        }
+        connection.close();
+        permits.release();
+    }
+
+    private Connection connect() throws IOException {
+        Connection connection = new Connection(host, port, timeoutMillis);
+        try {
+            if (StringUtils.hasText(password)) {
+                connection.write(command("AUTH", password));
+                connection.flush();
+                checkReply(connection.read());
+            }
+            if (database != 0) {
+                connection.write(command("SELECT", String.valueOf(database)));
+                connection.flush();
+                checkReply(connection.read());
+            }
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        log.info("已连接共享会话存储, redis: {}:{}/{}", host, port, database);
+        return connection;
+    }
+
+    /**
+     * Redis返回的错误（-ERR ...），连接本身正常；事务中单条命令的错误出现在EXEC的返回数组里
+     */
+    private record ErrorReply(String message) {
+    }
+
+    /**
+     * 一个RESP连接：命令以bulk string数组发送，返回值解析为String、Long、List、ErrorReply或null
+     */
+    private static final class Connection {
+
+        private final Socket socket;
+
+        private final DataOutputStream output;
+
+        private final DataInputStream input;
+
+        Connection(String host, int port, int timeoutMillis) throws IOException {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        void write(String[] command) throws IOException {
+            output.write(("*" + command.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (String arg : command) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                output.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                output.write(bytes);
+                output.write('\r');
+                output.write('\n');
+            }
+        }
+
+        void flush() throws IOException {
+            output.flush();
+        }
+
+        Object read() throws IOException {
+            int type = input.read();
+            String line = readLine();
+            switch (type) {
+                case '+':
+                    return line;
+                case '-':
+                    return new ErrorReply(line);
+                case ':':
+                    return Long.parseLong(line);
+                case '$': {
+                    int length = Integer.parseInt(line);
+                    if (length < 0) {
+                        return null;
+                    }
+                    byte[] bytes = new byte[length];
+                    input.readFully(bytes);
+                    readLine();
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+                case '*': {
+                    int count = Integer.parseInt(line);
+                    if (count < 0) {
+                        return null;
+                    }
+                    List<Object> values = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        values.add(read());
+                    }
+                    return values;
+                }
+                case -1:
+                    throw new EOFException("Redis connection closed");
+                default:
+                    throw new IOException("Unexpected RESP type: " + (char) type);
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = input.read()) != '\r') {
+                if (b == -1) {
+                    throw new EOFException("Redis connection closed");
+                }
+                line.append((char) b);
+            }
+            input.read(); // \n
+            return line.toString();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 关闭失败不影响后续使用其他连接
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.jacky.ai.repository;
+
+import java.util.List;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 01:10
+ * @description： 多个实例共享的会话存储：会话记忆（SharedChatMemory）与会话历史（SharedChatHistoryRepository）保存在这里，
+ * 负载均衡把同一个会话的下一轮请求转发到任何实例都能读到之前的消息，不需要会话粘滞。
+ * 列表带有版本号，每次修改加1，实例本地的近端缓存按版本号判断是否过期。
+ * 实现：RedisSessionStore（Redis协议）；其他共享存储实现同样的接口即可。
+ */
+public interface SessionStore {
+
+    /**
+     * @return 列表的版本号，不存在时为0
+     */
+    long version(String key);
+
+    /**
+     * 读取整个列表与版本号（同一时刻的快照）
+     */
+    Versioned range(String key);
+
+    /**
+     * 追加到列表末尾，只保留最后maxSize个元素，版本号加1
+     * @return 追加后的版本号
+     */
+    long append(String key, List<String> values, int maxSize);
+
+    /**
+     * 从列表中移除值，版本号加1
+     */
+    void remove(String key, String value);
+
+    /**
+     * 删除列表，版本号加1（不删除版本号，其他实例缓存的旧列表因此失效）
+     */
+    void delete(String key);
+
+    /**
+     * 加入集合，新成员使集合超过maxMembers个成员时撤销
+     * @return 成员是否在集合中（已存在或加入成功）；false表示集合已满
+     */
+    boolean addMember(String key, String member, int maxMembers);
+
+    /**
+     * 从集合中移除
+     */
+    void removeMember(String key, String member);
+
+    /**
+     * 带版本号的列表
+     * @param version 版本号，列表不存在时为0
+     * @param values 列表元素
+     */
+    record Versioned(long version, List<String> values) {
+    }
+}
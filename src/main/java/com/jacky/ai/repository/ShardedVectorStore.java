@@ -0,0 +1,611 @@
+package com.jacky.ai.repository;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.IntSupplier;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 00:45
+ * @description： 分片向量库：文档按文件摘要（metadata.file_digest）哈希到固定数量的分片，每个分片在replicas个节点上各有一个副本
+ * - 写入：协调方计算一次向量，写入分片的全部副本；同一个文件的所有页落在同一个分片
+ * - 检索：每个分片选一个可用副本（轮询，分摊读压力），各分片并行检索topK后按分数合并；副本失败时换下一个副本
+ * - 放置：分片到节点用rendezvous hashing，增减节点时只有少量分片需要移动
+ * - 再平衡：rebalance(节点列表)先把分片复制到新的副本节点，再切换放置表，最后删除旧副本；期间检索不受影响，写入等待
+ * - 快照：格式与SimpleVectorStore相同（合并各分片的数据），开启或关闭分片、调整分片数后可直接加载旧快照
+ * 关键词检索的BM25统计量（IDF、平均长度）按分片计算，分片数据量相近时各分片分数可比；向量分数是余弦相似度，可直接合并。
+ */
+@Slf4j
+public class ShardedVectorStore implements HybridSearchStore {
+
+    // 分片键：文件的SHA-256摘要，没有时依次使用file_name、文档id
+    public static final String PARTITION_KEY = "file_digest";
+
+    // 加载快照时每个分片攒够这么多文档再写入副本
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final int shardCount;
+
+    private final int replicas;
+
+    private final Executor searchExecutor;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+
+    // 再平衡持有写锁，写入、删除持有读锁；检索不加锁，使用当时的放置表
+    private final ReadWriteLock topologyLock = new ReentrantReadWriteLock();
+
+    private volatile Placement placement;
+
+    // 每个分片的读副本轮询位置
+    private final AtomicInteger[] readCursors;
+
+    // 预热：待加载的快照与加载状态，与HybridVectorStore一致
+    private final Object warmupLock = new Object();
+
+    private volatile Resource pendingSnapshot;
+
+    private volatile HybridVectorStore.WarmupState warmupState = HybridVectorStore.WarmupState.READY;
+
+    private volatile String warmupError;
+
+    private final AtomicLong loadedDocuments = new AtomicLong();
+
+    private final AtomicLong loadedBytes = new AtomicLong();
+
+    private volatile long snapshotBytes;
+
+    private volatile long warmupStartNanos;
+
+    private volatile long warmupEndNanos;
+
+    private ShardedVectorStore(Builder builder) {
+        Assert.notEmpty(builder.nodes, "nodes cannot be empty");
+        Assert.isTrue(builder.shardCount > 0, "shardCount must be positive");
+        Assert.isTrue(builder.replicas > 0, "replicas must be positive");
+        this.embeddingModel = builder.embeddingModel;
+        this.shardCount = builder.shardCount;
+        this.replicas = builder.replicas;
+        this.searchExecutor = builder.searchExecutor;
+        this.readCursors = new AtomicInteger[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            readCursors[i] = new AtomicInteger();
+        }
+        this.placement = Placement.of(builder.nodes, shardCount, replicas);
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel) {
+        return new Builder(embeddingModel);
+    }
+
+    @Override
+    public String getName() {
+        return "ShardedVectorStore";
+    }
+
+    // ------------------------------------------------------------------ 写入与删除
+
+    @Override
+    public void add(List<Document> documents) {
+        Assert.notNull(documents, "Documents list cannot be null");
+        awaitWarmup();
+        Map<Integer, List<SimpleVectorStoreContent>> byShard = new HashMap<>();
+        for (Document document : documents) {
+            // 与SimpleVectorStore相同，逐个文档计算向量；每个文档只计算一次，与副本数无关
+            float[] embedding = embeddingModel.embed(document);
+            SimpleVectorStoreContent content = new SimpleVectorStoreContent(document.getId(), document.getText(),
+                    document.getMetadata(), embedding);
+            byShard.computeIfAbsent(shardOf(content.getMetadata(), content.getId()), k -> new ArrayList<>()).add(content);
+        }
+        withTopologyReadLock(() -> byShard.forEach(this::writeToReplicas));
+    }
+
+    /**
+     * 写入分片的全部副本；有副本不可用时写入失败，需先通过rebalance把不可用的节点移出
+     */
+    private void writeToReplicas(int shard, List<SimpleVectorStoreContent> contents) {
+        for (VectorNode node : placement.replicas(shard)) {
+            node.add(shard, contents);
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        withTopologyReadLock(() -> forEachReplica((node, shard) -> {
+            node.delete(shard, idList);
+            return 0;
+        }));
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        tombstone(filterExpression);
+        compact();
+    }
+
+    @Override
+    public int tombstone(Filter.Expression filterExpression) {
+        awaitWarmup();
+        return withTopologyReadLock(() -> forEachReplica((node, shard) -> node.tombstone(shard, filterExpression)));
+    }
+
+    @Override
+    public int compact() {
+        awaitWarmup();
+        return withTopologyReadLock(() -> forEachReplica(VectorNode::compact));
+    }
+
+    /**
+     * 在每个分片的全部副本上执行操作
+     * @return 各分片第一个副本的返回值之和（各副本的数据相同）
+     */
+    private int forEachReplica(BiFunction<VectorNode, Integer, Integer> operation) {
+        Placement current = placement;
+        int total = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            List<VectorNode> nodes = current.replicas(shard);
+            for (int i = 0; i < nodes.size(); i++) {
+                int result = operation.apply(nodes.get(i), shard);
+                if (i == 0) {
+                    total += result;
+                }
+            }
+        }
+        return total;
+    }
+
+    // ------------------------------------------------------------------ 检索
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return vectorSearch(embedQuery(request.getQuery()), request);
+    }
+
+    @Override
+    public float[] embedQuery(String query) {
+        return embeddingModel.embed(query);
+    }
+
+    @Override
+    public List<Document> vectorSearch(float[] queryEmbedding, SearchRequest request) {
+        awaitWarmup();
+        return gather(request.getTopK(), (node, shard) -> node.vectorSearch(shard, queryEmbedding, request));
+    }
+
+    @Override
+    public List<Document> keywordSearch(SearchRequest request) {
+        awaitWarmup();
+        return gather(request.getTopK(), (node, shard) -> node.keywordSearch(shard, request));
+    }
+
+    /**
+     * 文档id不带分片信息，依次在各分片查找；进程内节点只是一次哈希表查询
+     */
+    @Override
+    public float[] getEmbedding(String id) {
+        Placement current = placement;
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            float[] embedding = read(current, shard, (node, s) -> node.getEmbedding(target, id));
+            if (embedding != null) {
+                return embedding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 分散到各分片并行检索，合并后取前topK
+     */
+    private List<Document> gather(int topK, BiFunction<VectorNode, Integer, List<Document>> search) {
+        Placement current = placement;
+        List<CompletableFuture<List<Document>>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            futures.add(CompletableFuture.supplyAsync(() -> read(current, target, search), searchExecutor));
+        }
+        List<Document> merged = new ArrayList<>();
+        try {
+            futures.forEach(future -> merged.addAll(future.join()));
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        merged.sort(Comparator.comparingDouble(ShardedVectorStore::scoreOf).reversed());
+        return merged.size() > topK ? List.copyOf(merged.subList(0, topK)) : merged;
+    }
+
+    /**
+     * 从分片的一个副本读取：从轮询位置开始，跳过不可用或失败的副本
+     * @throws IllegalStateException 全部副本都不可用
+     */
+    private <T> T read(Placement current, int shard, BiFunction<VectorNode, Integer, T> operation) {
+        List<VectorNode> nodes = current.replicas(shard);
+        int start = Math.floorMod(readCursors[shard].getAndIncrement(), nodes.size());
+        RuntimeException lastError = null;
+        for (int i = 0; i < nodes.size(); i++) {
+            VectorNode node = nodes.get((start + i) % nodes.size());
+            if (!node.isAvailable()) {
+                continue;
+            }
+            try {
+                return operation.apply(node, shard);
+            } catch (RuntimeException e) {
+                lastError = e;
+                log.warn("分片读取失败，切换副本, shard: {}, node: {}, error: {}", shard, node.id(), e.getMessage());
+            }
+        }
+        throw new IllegalStateException("No available replica for shard " + shard, lastError);
+    }
+
+    private static double scoreOf(Document document) {
+        return document.getScore() == null ? 0 : document.getScore();
+    }
+
+    // ------------------------------------------------------------------ 分片与再平衡
+
+    /**
+     * @param metadata 文档metadata
+     * @param id 文档id
+     * @return 文档所在的分片
+     */
+    int shardOf(Map<String, Object> metadata, String id) {
+        Object key = metadata.get(PARTITION_KEY);
+        if (key == null) {
+            key = metadata.getOrDefault("file_name", id);
+        }
+        return Math.floorMod(mix(key.toString().hashCode()), shardCount);
+    }
+
+    /**
+     * 按新的节点列表重新放置分片：先复制，再切换放置表，最后删除旧副本
+     * 复制时从旧副本中选一个可用的导出；再平衡期间写入等待，检索继续使用旧放置表
+     * @param nodes 新的节点列表，可以增加节点，也可以移除（包括不可用的）节点
+     * @return 复制的分片副本数量
+     */
+    public int rebalance(List<VectorNode> nodes) {
+        Assert.notEmpty(nodes, "nodes cannot be empty");
+        awaitWarmup();
+        topologyLock.writeLock().lock();
+        try {
+            Placement current = placement;
+            Placement target = Placement.of(nodes, shardCount, replicas);
+            int copied = 0;
+            long start = System.currentTimeMillis();
+            for (int shard = 0; shard < shardCount; shard++) {
+                List<VectorNode> added = new ArrayList<>(target.replicas(shard));
+                added.removeAll(current.replicas(shard));
+                if (added.isEmpty()) {
+                    continue;
+                }
+                List<SimpleVectorStoreContent> contents = read(current, shard, VectorNode::export);
+                for (VectorNode node : added) {
+                    node.add(shard, contents);
+                    copied++;
+                }
+            }
+            placement = target;
+            for (int shard = 0; shard < shardCount; shard++) {
+                for (VectorNode node : current.replicas(shard)) {
+                    if (!target.replicas(shard).contains(node) && node.isAvailable()) {
+                        node.drop(shard);
+                    }
+                }
+            }
+            log.info("分片再平衡完成, 节点: {} -> {}, 复制的分片副本: {}, 耗时: {}ms", current.nodes(), target.nodes(),
+                    copied, System.currentTimeMillis() - start);
+            return copied;
+        } finally {
+            topologyLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return 分片 -> 副本所在节点id
+     */
+    public Map<Integer, List<String>> placement() {
+        Placement current = placement;
+        Map<Integer, List<String>> result = new TreeMap<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            result.put(shard, current.replicas(shard).stream().map(VectorNode::id).toList());
+        }
+        return result;
+    }
+
+    private void withTopologyReadLock(Runnable action) {
+        withTopologyReadLock(() -> {
+            action.run();
+            return 0;
+        });
+    }
+
+    private int withTopologyReadLock(IntSupplier action) {
+        topologyLock.readLock().lock();
+        try {
+            return action.getAsInt();
+        } finally {
+            topologyLock.readLock().unlock();
+        }
+    }
+
+    // murmur3的fmix32，String.hashCode的低位分布不均匀，取模前先打散
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    // ------------------------------------------------------------------ 快照
+
+    /**
+     * 保存快照：依次导出各分片的有效文档，写成SimpleVectorStore的JSON格式
+     */
+    @Override
+    public void save(File file) {
+        awaitWarmup();
+        Placement current = placement;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            for (int shard = 0; shard < shardCount; shard++) {
+                for (SimpleVectorStoreContent content : read(current, shard, VectorNode::export)) {
+                    generator.writeFieldName(content.getId());
+                    objectMapper.writeValue(generator, content);
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void warmUp(Resource snapshot, boolean background) {
+        synchronized (warmupLock) {
+            pendingSnapshot = snapshot;
+            warmupState = HybridVectorStore.WarmupState.PENDING;
+        }
+        if (background) {
+            Thread thread = new Thread(this::awaitWarmup, "vector-store-warmup");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public void awaitWarmup() {
+        if (warmupState == HybridVectorStore.WarmupState.READY) {
+            return;
+        }
+        synchronized (warmupLock) {
+            if (warmupState == HybridVectorStore.WarmupState.PENDING || retryDue()) {
+                if (warmupState == HybridVectorStore.WarmupState.FAILED) {
+                    log.info("重新加载分片向量库快照, 上次失败原因: {}", warmupError);
+                }
+                warmupState = HybridVectorStore.WarmupState.LOADING;
+                warmupStartNanos = System.nanoTime();
+                try {
+                    load(pendingSnapshot);
+                    warmupState = HybridVectorStore.WarmupState.READY;
+                    warmupError = null;
+                    pendingSnapshot = null;
+                    log.info("分片向量库加载完成, 文档: {}, 分片: {}, 耗时: {}ms", loadedDocuments.get(), shardCount,
+                            (System.nanoTime() - warmupStartNanos) / 1_000_000);
+                } catch (RuntimeException e) {
+                    // 保留pendingSnapshot，重试时重新加载；按id写入副本，已写入的部分会被覆盖
+                    warmupError = e.getMessage();
+                    warmupState = HybridVectorStore.WarmupState.FAILED;
+                    log.error("Failed to load vector store snapshot.", e);
+                } finally {
+                    warmupEndNanos = System.nanoTime();
+                }
+            }
+            if (warmupState == HybridVectorStore.WarmupState.FAILED) {
+                throw new IllegalStateException("Vector store snapshot failed to load: " + warmupError);
+            }
+        }
+    }
+
+    private boolean retryDue() {
+        return warmupState == HybridVectorStore.WarmupState.FAILED
+                && System.nanoTime() - warmupEndNanos >= HybridVectorStore.WARMUP_RETRY_INTERVAL_NANOS;
+    }
+
+    /**
+     * 流式解析快照，按分片攒批写入各副本；分片数变化后加载旧快照即完成重新分片
+     */
+    private void load(Resource resource) {
+        loadedDocuments.set(0);
+        loadedBytes.set(0);
+        try {
+            snapshotBytes = resource.contentLength();
+        } catch (IOException e) {
+            snapshotBytes = -1;
+        }
+        Map<Integer, List<SimpleVectorStoreContent>> batches = new HashMap<>();
+        try (InputStream inputStream = resource.getInputStream();
+             JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Invalid vector store snapshot: " + resource.getDescription());
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                parser.nextToken();
+                SimpleVectorStoreContent content = objectMapper.readValue(parser, SimpleVectorStoreContent.class);
+                int shard = shardOf(content.getMetadata(), content.getId());
+                List<SimpleVectorStoreContent> batch = batches.computeIfAbsent(shard, k -> new ArrayList<>());
+                batch.add(content);
+                if (batch.size() >= LOAD_BATCH_SIZE) {
+                    writeToReplicas(shard, batch);
+                    batches.remove(shard);
+                }
+                loadedDocuments.incrementAndGet();
+                loadedBytes.set(parser.currentLocation().getByteOffset());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        batches.forEach(this::writeToReplicas);
+    }
+
+    @Override
+    public boolean isReady() {
+        return warmupState == HybridVectorStore.WarmupState.READY;
+    }
+
+    /**
+     * @return 预热进度；有效文档数与墓碑数为各分片之和
+     */
+    @Override
+    public HybridVectorStore.WarmupProgress getWarmupProgress() {
+        HybridVectorStore.WarmupState state = warmupState;
+        long live = 0;
+        long tombstones = 0;
+        if (state == HybridVectorStore.WarmupState.READY) {
+            Placement current = placement;
+            for (int shard = 0; shard < shardCount; shard++) {
+                HybridVectorStore.WarmupProgress progress = read(current, shard, VectorNode::progress);
+                if (progress != null) {
+                    live += progress.liveDocuments();
+                    tombstones += progress.tombstones();
+                }
+            }
+        }
+        long total = snapshotBytes;
+        long bytes = state == HybridVectorStore.WarmupState.READY ? Math.max(total, loadedBytes.get()) : loadedBytes.get();
+        double percent = state == HybridVectorStore.WarmupState.READY ? 100 : total > 0 ? Math.min(100, bytes * 100.0 / total) : 0;
+        long elapsedMillis = switch (state) {
+            case PENDING -> 0;
+            case LOADING -> (System.nanoTime() - warmupStartNanos) / 1_000_000;
+            default -> warmupStartNanos == 0 ? 0 : (warmupEndNanos - warmupStartNanos) / 1_000_000;
+        };
+        return new HybridVectorStore.WarmupProgress(state, loadedDocuments.get(), bytes, total,
+                Math.round(percent * 10) / 10.0, elapsedMillis, live, tombstones, warmupError);
+    }
+
+    /**
+     * 放置表：分片 -> 副本节点，按rendezvous hashing计算，同一组节点总是得到同样的结果
+     * @param nodes 节点
+     * @param shards 每个分片的副本节点，第一个为该分片写入时的首个副本
+     */
+    private record Placement(List<VectorNode> nodes, List<List<VectorNode>> shards) {
+
+        static Placement of(List<VectorNode> nodes, int shardCount, int replicas) {
+            List<List<VectorNode>> shards = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                int target = shard;
+                shards.add(nodes.stream()
+                        .sorted(Comparator.comparingLong((VectorNode node) -> weight(node.id(), target)).reversed())
+                        .limit(Math.min(replicas, nodes.size()))
+                        .toList());
+            }
+            return new Placement(List.copyOf(nodes), shards);
+        }
+
+        List<VectorNode> replicas(int shard) {
+            return shards.get(shard);
+        }
+
+        private static long weight(String nodeId, int shard) {
+            // FNV-1a，节点id与分片号一起哈希，再用murmur3的fmix64打散（FNV的高位只取决于前面的字节）
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : (nodeId + '#' + shard).getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+
+    public static class Builder {
+
+        private final EmbeddingModel embeddingModel;
+
+        private final List<VectorNode> nodes = new ArrayList<>();
+
+        private int shardCount = 12;
+
+        private int replicas = 2;
+
+        private Executor searchExecutor = Runnable::run;
+
+        private Builder(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+        }
+
+        /**
+         * @param node 节点，节点id不能重复
+         */
+        public Builder node(VectorNode node) {
+            this.nodes.add(node);
+            return this;
+        }
+
+        public Builder nodes(List<? extends VectorNode> nodes) {
+            this.nodes.addAll(nodes);
+            return this;
+        }
+
+        /**
+         * @param shardCount 分片数量，创建后不变（改变分片数需要重新加载快照）；应明显多于节点数，再平衡时按分片移动
+         */
+        public Builder shardCount(int shardCount) {
+            this.shardCount = shardCount;
+            return this;
+        }
+
+        /**
+         * @param replicas 每个分片的副本数，不超过节点数
+         */
+        public Builder replicas(int replicas) {
+            this.replicas = replicas;
+            return this;
+        }
+
+        /**
+         * @param searchExecutor 各分片并行检索的线程池，默认在调用线程上依次检索
+         */
+        public Builder searchExecutor(Executor searchExecutor) {
+            this.searchExecutor = searchExecutor;
+            return this;
+        }
+
+        public ShardedVectorStore build() {
+            return new ShardedVectorStore(this);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.jacky.ai.repository;
+
+import com.jacky.ai.util.TenantContext;
+
+import java.util.List;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 01:30
+ * @description： 会话历史-保存在共享存储中，按当前请求的租户隔离，多个实例部署时替代InMemoryChatHistoryRepository
+ * 每个租户、业务类型一个列表；会话数量配额与SharedChatMemory共用同一个租户会话集合。
+ */
+public class SharedChatHistoryRepository implements ChatHistoryRepository {
+
+    private static final String HISTORY_KEY = "chat-history:";
+
+    private final SessionStore store;
+
+    private final int maxConversations;
+
+    /**
+     * @param store 共享存储
+     * @param maxConversations 单个租户的会话数量上限
+     */
+    public SharedChatHistoryRepository(SessionStore store, int maxConversations) {
+        this.store = store;
+        this.maxConversations = maxConversations;
+    }
+
+    @Override
+    public void save(String type, String chatId) {
+        String tenant = TenantContext.current();
+        String key = key(tenant, type);
+        if (store.range(key).values().contains(chatId)) {
+            return;
+        }
+        // 新会话在请求模型之前检查租户的会话数量上限
+        if (!store.addMember(SharedChatMemory.CONVERSATIONS_KEY + tenant, TenantContext.conversationId(chatId),
+                maxConversations)) {
+            throw new TenantQuotaExceededException("Tenant " + tenant + " exceeds conversation quota: " + maxConversations);
+        }
+        store.append(key, List.of(chatId), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<String> getChatIds(String type) {
+        // 两个实例同时保存同一个新会话时可能重复写入，读取时去重
+        return store.range(key(TenantContext.current(), type)).values().stream().distinct().toList();
+    }
+
+    @Override
+    public void delete(String type, String chatId) {
+        store.remove(key(TenantContext.current(), type), chatId);
+    }
+
+    private static String key(String tenant, String type) {
+        return HISTORY_KEY + tenant + ":" + type;
+    }
+}
@@ -0,0 +1,160 @@
+package com.jacky.ai.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacky.ai.util.TenantContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 01:25
+ * @description： 保存在共享存储中的会话记忆，多个实例部署时替代TenantChatMemory
+ * 每个会话是共享存储中的一个列表（一条消息一个JSON元素），任何实例都可以处理会话的下一轮请求。
+ * 近端缓存：每个实例缓存最近访问的会话与其版本号，读取时先取版本号（一次GET），版本号未变直接使用缓存，
+ * 变了（其他实例写入过）再读取整个列表；本实例写入后版本号连续时直接在缓存上追加，不需要再读。
+ * 配额与TenantChatMemory一致：单个会话最多保留maxMessagesPerConversation条消息，单个租户最多maxConversations个会话。
+ */
+public class SharedChatMemory implements ChatMemory {
+
+    // 会话消息列表的key前缀，后接会话id（租户id:chatId）
+    private static final String MEMORY_KEY = "chat-memory:";
+
+    // 租户会话集合的key前缀，后接租户id，用于会话数量配额
+    static final String CONVERSATIONS_KEY = "conversations:";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final SessionStore store;
+
+    private final int maxConversations;
+
+    private final int maxMessagesPerConversation;
+
+    // 访问顺序的LinkedHashMap实现LRU，读写都在synchronized(cache)中
+    private final LinkedHashMap<String, CachedConversation> cache;
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    /**
+     * @param store 共享存储
+     * @param maxConversations 单个租户的会话数量上限
+     * @param maxMessagesPerConversation 单个会话保留的消息数量上限
+     * @param nearCacheSize 近端缓存的会话数量上限
+     * @param meterRegistry 指标注册中心
+     */
+    public SharedChatMemory(SessionStore store, int maxConversations, int maxMessagesPerConversation, int nearCacheSize,
+                            MeterRegistry meterRegistry) {
+        this.store = store;
+        this.maxConversations = maxConversations;
+        this.maxMessagesPerConversation = maxMessagesPerConversation;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedConversation> eldest) {
+                return size() > nearCacheSize;
+            }
+        };
+        this.hitCounter = Counter.builder("ai.chat.memory.cache")
+                .description("会话记忆近端缓存命中次数")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("ai.chat.memory.cache")
+                .description("会话记忆近端缓存未命中次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @throws TenantQuotaExceededException 新会话超出租户的会话数量上限
+     */
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        String tenant = TenantContext.tenantOf(conversationId);
+        if (!store.addMember(CONVERSATIONS_KEY + tenant, conversationId, maxConversations)) {
+            throw new TenantQuotaExceededException("Tenant " + tenant + " exceeds conversation quota: " + maxConversations);
+        }
+        List<String> values = messages.stream().map(this::serialize).toList();
+        long version = store.append(MEMORY_KEY + conversationId, values, maxMessagesPerConversation);
+        synchronized (cache) {
+            CachedConversation cached = cache.get(conversationId);
+            if (cached != null && cached.version() == version - 1) {
+                // 两次写入之间没有其他实例写入，缓存加上新消息即为最新内容
+                List<Message> updated = new ArrayList<>(cached.messages());
+                updated.addAll(messages);
+                int overflow = updated.size() - maxMessagesPerConversation;
+                cache.put(conversationId, new CachedConversation(version,
+                        List.copyOf(overflow > 0 ? updated.subList(overflow, updated.size()) : updated)));
+            } else {
+                cache.remove(conversationId);
+            }
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        String key = MEMORY_KEY + conversationId;
+        long version = store.version(key);
+        CachedConversation cached;
+        synchronized (cache) {
+            cached = cache.get(conversationId);
+        }
+        if (cached != null && cached.version() == version) {
+            hitCounter.increment();
+        } else {
+            missCounter.increment();
+            SessionStore.Versioned versioned = store.range(key);
+            cached = new CachedConversation(versioned.version(),
+                    versioned.values().stream().map(this::deserialize).toList());
+            synchronized (cache) {
+                CachedConversation current = cache.get(conversationId);
+                if (current == null || current.version() < cached.version()) {
+                    cache.put(conversationId, cached);
+                }
+            }
+        }
+        List<Message> messages = cached.messages();
+        return new ArrayList<>(messages.subList(Math.max(0, messages.size() - lastN), messages.size()));
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        store.delete(MEMORY_KEY + conversationId);
+        store.removeMember(CONVERSATIONS_KEY + TenantContext.tenantOf(conversationId), conversationId);
+        synchronized (cache) {
+            cache.remove(conversationId);
+        }
+    }
+
+    private String serialize(Message message) {
+        try {
+            return objectMapper.writeValueAsString(StoredMessage.of(message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Message deserialize(String value) {
+        try {
+            return objectMapper.readValue(value, StoredMessage.class).toMessage();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 近端缓存的会话
+     * @param version 共享存储中的版本号
+     * @param messages 不可变的消息列表
+     */
+    private record CachedConversation(long version, List<Message> messages) {
+    }
+}
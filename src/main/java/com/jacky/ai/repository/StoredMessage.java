@@ -0,0 +1,42 @@
+package com.jacky.ai.repository;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 01:20
+ * @description： 会话记忆中序列化保存的消息（TenantChatMemory的交换文件、SharedChatMemory的共享存储）
+ * 只保存类型、文本与简单类型的元数据（如中断标记），工具调用等结构不保存
+ * @param type 消息类型
+ * @param text 文本
+ * @param metadata 字符串、数字、布尔类型的元数据
+ */
+record StoredMessage(MessageType type, String text, Map<String, Object> metadata) {
+
+    static StoredMessage of(Message message) {
+        Map<String, Object> metadata = new HashMap<>();
+        message.getMetadata().forEach((key, value) -> {
+            if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+                metadata.put(key, value);
+            }
+        });
+        return new StoredMessage(message.getMessageType(), message.getText(), metadata);
+    }
+
+    Message toMessage() {
+        Map<String, Object> metadata = this.metadata == null ? Map.of() : this.metadata;
+        return switch (type) {
+            case USER -> new UserMessage(text, List.of(), metadata);
+            case SYSTEM -> new SystemMessage(text);
+            default -> new AssistantMessage(text, metadata);
+        };
+    }
+}
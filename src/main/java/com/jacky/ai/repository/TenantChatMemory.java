@@ -0,0 +1,218 @@
+package com.jacky.ai.repository;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacky.ai.util.TenantContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 23:55
+ * @description： 按租户分片的会话记忆，替代InMemoryChatMemory
+ * 会话id的格式为 租户id:chatId（见TenantContext.conversationId），按前缀路由到租户自己的分片：
+ * - 配额：单个会话最多保留maxMessagesPerConversation条消息（丢弃最早的），单个租户最多maxConversations个会话
+ * - 冷租户：超过idleTimeout未访问的分片写入swapDir/{租户id}.json后从内存中移除，再次访问时读回
+ * 交换文件只用于腾出内存，会话记忆与之前一样只在进程内有效，启动时清空交换目录。
+ * 消息只保存类型、文本与简单类型的元数据（如中断标记），工具调用等结构不保存，与MessageChatMemoryAdvisor写入的内容一致。
+ */
+@Slf4j
+public class TenantChatMemory implements ChatMemory, AutoCloseable {
+
+    private static final TypeReference<Map<String, List<StoredMessage>>> SWAP_TYPE = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path swapDir;
+
+    private final int maxConversations;
+
+    private final int maxMessagesPerConversation;
+
+    private final Duration idleTimeout;
+
+    private final Map<String, Shard> shards = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService evictionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-memory-eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param swapDir 冷租户的交换目录
+     * @param maxConversations 单个租户的会话数量上限
+     * @param maxMessagesPerConversation 单个会话保留的消息数量上限
+     * @param idleTimeout 冷租户的判定时间
+     * @param evictInterval 检查冷租户的间隔
+     */
+    public TenantChatMemory(Path swapDir, int maxConversations, int maxMessagesPerConversation,
+                            Duration idleTimeout, Duration evictInterval) {
+        this.swapDir = swapDir;
+        this.maxConversations = maxConversations;
+        this.maxMessagesPerConversation = maxMessagesPerConversation;
+        this.idleTimeout = idleTimeout;
+        try {
+            FileSystemUtils.deleteRecursively(swapDir);
+            Files.createDirectories(swapDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long interval = evictInterval.toMillis();
+        evictionExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                evictIdle();
+            } catch (Exception e) {
+                log.error("Failed to evict idle chat memory.", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @throws TenantQuotaExceededException 新会话超出租户的会话数量上限
+     */
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        Shard shard = shard(TenantContext.tenantOf(conversationId));
+        List<Message> conversation = shard.conversations.get(conversationId);
+        if (conversation == null) {
+            // 新会话的数量检查与创建在同一个锁内，并发创建会话时不会超过上限
+            synchronized (shard) {
+                conversation = shard.conversations.get(conversationId);
+                if (conversation == null) {
+                    if (shard.conversations.size() >= maxConversations) {
+                        throw new TenantQuotaExceededException("Tenant " + TenantContext.tenantOf(conversationId)
+                                + " exceeds conversation quota: " + maxConversations);
+                    }
+                    conversation = new ArrayList<>();
+                    shard.conversations.put(conversationId, conversation);
+                }
+            }
+        }
+        synchronized (conversation) {
+            conversation.addAll(messages);
+            int overflow = conversation.size() - maxMessagesPerConversation;
+            if (overflow > 0) {
+                conversation.subList(0, overflow).clear();
+            }
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        List<Message> conversation = shard(TenantContext.tenantOf(conversationId)).conversations.get(conversationId);
+        if (conversation == null) {
+            return List.of();
+        }
+        synchronized (conversation) {
+            return new ArrayList<>(conversation.subList(Math.max(0, conversation.size() - lastN), conversation.size()));
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        shard(TenantContext.tenantOf(conversationId)).conversations.remove(conversationId);
+    }
+
+    /**
+     * @param tenant 租户id
+     * @return 租户在内存中的会话数量，已移出内存的租户为0
+     */
+    public int conversationCount(String tenant) {
+        Shard shard = shards.get(tenant);
+        return shard == null ? 0 : shard.conversations.size();
+    }
+
+    /**
+     * 移除冷租户：写入交换文件后从内存中移除，写文件与移除在同一个compute中完成
+     * @return 移除的租户数量
+     */
+    public int evictIdle() {
+        long deadline = System.nanoTime() - idleTimeout.toNanos();
+        int evicted = 0;
+        for (String tenant : shards.keySet()) {
+            Shard removed = shards.computeIfPresent(tenant, (key, shard) -> {
+                if (shard.lastAccess - deadline > 0) {
+                    return shard;
+                }
+                try {
+                    swapOut(key, shard);
+                } catch (IOException e) {
+                    log.error("Failed to swap out chat memory of tenant {}.", key, e);
+                    return shard;
+                }
+                return null;
+            });
+            if (removed == null) {
+                evicted++;
+                log.info("冷租户会话记忆已写入磁盘并移出内存, tenant: {}", tenant);
+            }
+        }
+        return evicted;
+    }
+
+    @Override
+    public void close() {
+        evictionExecutor.shutdownNow();
+    }
+
+    private Shard shard(String tenant) {
+        Shard shard = shards.computeIfAbsent(tenant, this::swapIn);
+        shard.lastAccess = System.nanoTime();
+        return shard;
+    }
+
+    private void swapOut(String tenant, Shard shard) throws IOException {
+        if (shard.conversations.isEmpty()) {
+            return;
+        }
+        Map<String, List<StoredMessage>> stored = new HashMap<>();
+        shard.conversations.forEach((conversationId, conversation) -> {
+            synchronized (conversation) {
+                stored.put(conversationId, conversation.stream().map(StoredMessage::of).toList());
+            }
+        });
+        objectMapper.writeValue(swapFile(tenant).toFile(), stored);
+    }
+
+    private Shard swapIn(String tenant) {
+        Shard shard = new Shard();
+        Path file = swapFile(tenant);
+        if (!Files.exists(file)) {
+            return shard;
+        }
+        try {
+            Map<String, List<StoredMessage>> stored = objectMapper.readValue(file.toFile(), SWAP_TYPE);
+            stored.forEach((conversationId, messages) -> shard.conversations.put(conversationId,
+                    new ArrayList<>(messages.stream().map(StoredMessage::toMessage).toList())));
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return shard;
+    }
+
+    private Path swapFile(String tenant) {
+        return swapDir.resolve(tenant + ".json");
+    }
+
+    private static final class Shard {
+
+        private final Map<String, List<Message>> conversations = new ConcurrentHashMap<>();
+
+        private volatile long lastAccess = System.nanoTime();
+    }
+}
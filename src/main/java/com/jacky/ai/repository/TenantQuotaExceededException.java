@@ -0,0 +1,17 @@
+package com.jacky.ai.repository;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 23:45
+ * @description： 租户超出配额（向量数量、会话数量），接口返回429
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class TenantQuotaExceededException extends RuntimeException {
+
+    public TenantQuotaExceededException(String message) {
+        super(message);
+    }
+}
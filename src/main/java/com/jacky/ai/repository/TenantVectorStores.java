@@ -0,0 +1,251 @@
+package com.jacky.ai.repository;
+
+import com.jacky.ai.util.TenantContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 23:50
+ * @description： 按租户分片的向量库：每个租户一个独立的HybridSearchStore（单机的HybridVectorStore或分片的ShardedVectorStore）
+ * - 检索只扫描当前租户的数据，大租户的数据量不影响小租户的检索耗时与预热
+ * - 租户首次访问时创建，有快照时从快照加载；超过idleTimeout未访问的租户压缩后写入快照并从内存中移除
+ * - 默认租户的数据在storageDir下（与引入多租户之前一致），其他租户在storageDir/tenants/{租户id}下
+ */
+@Slf4j
+public class TenantVectorStores implements AutoCloseable {
+
+    private static final String VECTOR_SNAPSHOT = "chat-pdf.json";
+
+    private final Supplier<? extends HybridSearchStore> factory;
+
+    private final Path root;
+
+    private final int maxDocuments;
+
+    private final Duration idleTimeout;
+
+    private final boolean backgroundWarmup;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService evictionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "vector-store-eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param factory 创建租户向量库，各租户共用同一个向量模型（与查询向量缓存）
+     * @param root 数据根目录
+     * @param maxDocuments 单个租户的向量数量上限
+     * @param idleTimeout 冷租户的判定时间
+     * @param evictInterval 检查冷租户的间隔
+     * @param backgroundWarmup 租户向量库创建后是否立即在后台加载快照
+     */
+    public TenantVectorStores(Supplier<? extends HybridSearchStore> factory, Path root, int maxDocuments, Duration idleTimeout,
+                              Duration evictInterval, boolean backgroundWarmup) {
+        this.factory = factory;
+        this.root = root.toAbsolutePath().normalize();
+        this.maxDocuments = maxDocuments;
+        this.idleTimeout = idleTimeout;
+        this.backgroundWarmup = backgroundWarmup;
+        long interval = evictInterval.toMillis();
+        evictionExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                evictIdle();
+            } catch (Exception e) {
+                log.error("Failed to evict idle tenants.", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param tenant 租户id
+     * @return 租户的数据目录：默认租户为根目录，其他租户为 tenants/{租户id}
+     */
+    public Path tenantDir(String tenant) {
+        return TenantContext.DEFAULT_TENANT.equals(tenant) ? root : root.resolve("tenants").resolve(tenant);
+    }
+
+    /**
+     * @return 当前请求租户的向量库
+     */
+    public HybridSearchStore current() {
+        return get(TenantContext.current());
+    }
+
+    /**
+     * 获取租户的向量库，不在内存中时创建并登记快照预热
+     * @param tenant 租户id
+     * @return 向量库
+     */
+    public HybridSearchStore get(String tenant) {
+        Entry entry = entries.computeIfAbsent(tenant, this::open);
+        entry.lastAccess = System.nanoTime();
+        return entry.store;
+    }
+
+    /**
+     * 在配额内写入向量，只统计有效向量（已打墓碑的不计入）
+     * 检查配额时预留本次写入的数量，写入（向量化）完成后释放；同一租户并发上传时，正在写入的向量也计入配额，不会超过上限
+     * @param tenant 租户id
+     * @param documents 准备写入的文档
+     * @throws TenantQuotaExceededException 超出配额，没有写入任何文档
+     */
+    public void add(String tenant, List<Document> documents) {
+        Entry entry = entries.computeIfAbsent(tenant, this::open);
+        entry.lastAccess = System.nanoTime();
+        HybridSearchStore store = entry.store;
+        store.awaitWarmup();
+        int additional = documents.size();
+        synchronized (entry) {
+            long live = store.getWarmupProgress().liveDocuments();
+            if (live + entry.reserved + additional > maxDocuments) {
+                throw new TenantQuotaExceededException("Tenant " + tenant + " exceeds vector quota: "
+                        + live + " + " + entry.reserved + " + " + additional + " > " + maxDocuments);
+            }
+            entry.reserved += additional;
+        }
+        try {
+            store.add(documents);
+        } finally {
+            synchronized (entry) {
+                entry.reserved -= additional;
+            }
+        }
+    }
+
+    /**
+     * 压缩租户的向量库并重写快照，快照先写临时文件再原子替换，中途失败不会破坏原快照
+     * 向量快照尚未加载（或加载失败）时向量库没有任何变化，不需要重写
+     * @param tenant 租户id
+     * @return 压缩移除的向量数量
+     */
+    public int persist(String tenant) throws IOException {
+        Entry entry = entries.get(tenant);
+        return entry == null ? 0 : persist(tenant, entry.store);
+    }
+
+    private int persist(String tenant, HybridSearchStore store) throws IOException {
+        if (!store.isReady()) {
+            return 0;
+        }
+        // 后台压缩与冷租户移除可能同时写同一个租户的快照
+        synchronized (store) {
+            return compactAndSave(tenant, store);
+        }
+    }
+
+    private int compactAndSave(String tenant, HybridSearchStore store) throws IOException {
+        int removed = store.compact();
+        Path snapshot = tenantDir(tenant).resolve(VECTOR_SNAPSHOT);
+        Files.createDirectories(snapshot.getParent());
+        Path temp = Files.createTempFile(snapshot.getParent(), VECTOR_SNAPSHOT, ".tmp");
+        try {
+            store.save(temp.toFile());
+            try {
+                Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return removed;
+    }
+
+    /**
+     * 移除冷租户：写入快照后从内存中移除，下次访问时重新从快照加载
+     * 写快照与移除在同一个compute中完成，期间同一租户的get会等待，不会读到旧快照
+     * @return 移除的租户数量
+     */
+    public int evictIdle() {
+        long deadline = System.nanoTime() - idleTimeout.toNanos();
+        int evicted = 0;
+        for (String tenant : entries.keySet()) {
+            Entry removed = entries.computeIfPresent(tenant, (key, entry) -> {
+                if (entry.lastAccess - deadline > 0) {
+                    return entry;
+                }
+                try {
+                    persist(key, entry.store);
+                } catch (IOException e) {
+                    // 写快照失败时保留在内存中，下次再试
+                    log.error("Failed to persist vector store of tenant {}.", key, e);
+                    return entry;
+                }
+                return null;
+            });
+            if (removed == null) {
+                evicted++;
+                log.info("冷租户向量库已写入快照并移出内存, tenant: {}", tenant);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return 内存中各租户向量库的预热进度与文档数
+     */
+    public Map<String, HybridVectorStore.WarmupProgress> progress() {
+        Map<String, HybridVectorStore.WarmupProgress> progress = new TreeMap<>();
+        entries.forEach((tenant, entry) -> progress.put(tenant, entry.store.getWarmupProgress()));
+        return progress;
+    }
+
+    /**
+     * @return 内存中的租户id
+     */
+    public Iterable<String> tenants() {
+        return entries.keySet();
+    }
+
+    @Override
+    public void close() {
+        evictionExecutor.shutdownNow();
+    }
+
+    private Entry open(String tenant) {
+        // 租户id会作为目录名
+        if (!TenantContext.isValid(tenant)) {
+            throw new IllegalArgumentException("Invalid tenant id: " + tenant);
+        }
+        HybridSearchStore store = factory.get();
+        Path snapshot = tenantDir(tenant).resolve(VECTOR_SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            store.warmUp(new FileSystemResource(snapshot), backgroundWarmup);
+        }
+        return new Entry(store);
+    }
+
+    private static final class Entry {
+
+        private final HybridSearchStore store;
+
+        private volatile long lastAccess = System.nanoTime();
+
+        // 已通过配额检查、正在写入的向量数量，读写都在synchronized (entry)中
+        private long reserved;
+
+        private Entry(HybridSearchStore store) {
+            this.store = store;
+        }
+    }
+}
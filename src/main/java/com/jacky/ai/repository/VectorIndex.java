@@ -0,0 +1,239 @@
+package com.jacky.ai.repository;
+
+import com.jacky.ai.util.VectorKernels;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 22:05
+ * @description： 向量检索的内存索引：保存归一化后的向量，检索时用批量点积打分
+ * - 写入时归一化一次，检索时余弦相似度就是点积，不再逐个计算两边的范数
+ * - 向量放在连续的数组中，按块调用VectorKernels.dotBatch，先得到分数，只有分数进入前topK的候选才做墓碑、过滤判断并构建Document
+ * - 读写分离：写入在锁内进行，写完发布新的快照（volatile），检索读取快照时不加锁；
+ *   追加写入只写快照可见范围之外的位置，删除时整体重建数组
+ * SimpleVectorStoreContent.getEmbedding()每次返回拷贝，这里额外保存一份归一化向量（每个文档 维度 x 4 字节）。
+ */
+class VectorIndex {
+
+    // 每次批量打分的向量数量，分数数组可以留在L1缓存中
+    private static final int BLOCK_SIZE = 256;
+
+    private final Object writeLock = new Object();
+
+    // 文档id -> 在数组中的位置，只在writeLock内访问
+    private final Map<String, Integer> ordinals = new HashMap<>();
+
+    // 文档id -> 归一化向量，供重排等按id读取向量的场景，读取不加锁
+    private final Map<String, float[]> vectorsById = new ConcurrentHashMap<>();
+
+    private volatile Segment segment = new Segment(new SimpleVectorStoreContent[64], new float[64][], 0);
+
+    /**
+     * 添加或替换文档
+     * @param contents 文档
+     */
+    void add(Collection<SimpleVectorStoreContent> contents) {
+        synchronized (writeLock) {
+            Segment current = segment;
+            SimpleVectorStoreContent[] documents = current.contents;
+            float[][] vectors = current.vectors;
+            int size = current.size;
+            for (SimpleVectorStoreContent content : contents) {
+                float[] vector = VectorKernels.normalize(content.getEmbedding());
+                Integer ordinal = ordinals.get(content.getId());
+                if (ordinal != null) {
+                    // 替换：正在检索的线程可能读到新旧两个版本之一，两者都是完整的对象
+                    vectors[ordinal] = vector;
+                    documents[ordinal] = content;
+                    vectorsById.put(content.getId(), vector);
+                    continue;
+                }
+                if (size == documents.length) {
+                    documents = Arrays.copyOf(documents, size * 2);
+                    vectors = Arrays.copyOf(vectors, size * 2);
+                }
+                documents[size] = content;
+                vectors[size] = vector;
+                ordinals.put(content.getId(), size);
+                vectorsById.put(content.getId(), vector);
+                size++;
+            }
+            segment = new Segment(documents, vectors, size);
+        }
+    }
+
+    /**
+     * 删除文档，重建数组
+     * @param ids 文档id
+     */
+    void remove(Collection<String> ids) {
+        synchronized (writeLock) {
+            Segment current = segment;
+            Set<String> removed = new HashSet<>(ids);
+            List<SimpleVectorStoreContent> retained = new ArrayList<>(current.size);
+            List<float[]> retainedVectors = new ArrayList<>(current.size);
+            for (int i = 0; i < current.size; i++) {
+                if (!removed.contains(current.contents[i].getId())) {
+                    retained.add(current.contents[i]);
+                    retainedVectors.add(current.vectors[i]);
+                }
+            }
+            if (retained.size() == current.size) {
+                return;
+            }
+            // publish会清空vectorsById，重建期间按id读取可能短暂返回null，调用方按文档不存在处理
+            publish(retained, retainedVectors);
+        }
+    }
+
+    /**
+     * 清空后重新构建，例如加载快照后
+     * @param contents 全部文档
+     */
+    void reset(Collection<SimpleVectorStoreContent> contents) {
+        synchronized (writeLock) {
+            List<SimpleVectorStoreContent> documents = new ArrayList<>(contents);
+            List<float[]> vectors = new ArrayList<>(documents.size());
+            for (SimpleVectorStoreContent content : documents) {
+                vectors.add(VectorKernels.normalize(content.getEmbedding()));
+            }
+            publish(documents, vectors);
+        }
+    }
+
+    private void publish(List<SimpleVectorStoreContent> documents, List<float[]> vectors) {
+        int capacity = Math.max(64, documents.size());
+        SimpleVectorStoreContent[] contentArray = documents.toArray(new SimpleVectorStoreContent[capacity]);
+        float[][] vectorArray = vectors.toArray(new float[capacity][]);
+        ordinals.clear();
+        vectorsById.clear();
+        for (int i = 0; i < documents.size(); i++) {
+            ordinals.put(documents.get(i).getId(), i);
+            vectorsById.put(documents.get(i).getId(), vectors.get(i));
+        }
+        segment = new Segment(contentArray, vectorArray, documents.size());
+    }
+
+    /**
+     * @param id 文档id
+     * @return 归一化后的文档向量（只读，不要修改），文档不存在时返回null
+     */
+    float[] vector(String id) {
+        return vectorsById.get(id);
+    }
+
+    /**
+     * 检索余弦相似度最高的topK个文档
+     * @param queryEmbedding 查询向量，不要求归一化
+     * @param topK 返回的文档数量
+     * @param threshold 相似度阈值
+     * @param accept 候选文档是否可以返回（墓碑、过滤条件），只对可能进入前topK的候选调用
+     * @return 按相似度降序的文档，score为余弦相似度
+     */
+    List<Document> search(float[] queryEmbedding, int topK, double threshold, Predicate<SimpleVectorStoreContent> accept) {
+        Segment current = segment;
+        if (topK <= 0 || current.size == 0) {
+            return List.of();
+        }
+        float[] query = VectorKernels.normalize(queryEmbedding);
+        float[] scores = new float[Math.min(BLOCK_SIZE, current.size)];
+        TopK heap = new TopK(topK);
+        for (int start = 0; start < current.size; start += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, current.size - start);
+            VectorKernels.dotBatch(query, current.vectors, start, count, scores);
+            for (int i = 0; i < count; i++) {
+                float score = scores[i];
+                if (score < threshold || !heap.accepts(score)) {
+                    continue;
+                }
+                if (accept.test(current.contents[start + i])) {
+                    heap.offer(score, start + i);
+                }
+            }
+        }
+        return heap.toDocuments(current.contents);
+    }
+
+    /**
+     * 只读快照：contents、vectors的前size个元素有效
+     */
+    private record Segment(SimpleVectorStoreContent[] contents, float[][] vectors, int size) {
+    }
+
+    /**
+     * 保留分数最高的k个位置的小顶堆，分数与位置用基本类型数组保存
+     */
+    private static final class TopK {
+
+        private final float[] scores;
+
+        private final int[] ordinals;
+
+        private int size;
+
+        TopK(int k) {
+            this.scores = new float[k];
+            this.ordinals = new int[k];
+        }
+
+        boolean accepts(float score) {
+            return size < scores.length || score > scores[0];
+        }
+
+        void offer(float score, int ordinal) {
+            if (size < scores.length) {
+                int i = size++;
+                // 上浮
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (scores[parent] <= score) {
+                        break;
+                    }
+                    scores[i] = scores[parent];
+                    ordinals[i] = ordinals[parent];
+                    i = parent;
+                }
+                scores[i] = score;
+                ordinals[i] = ordinal;
+                return;
+            }
+            // 替换堆顶后下沉
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && scores[child + 1] < scores[child]) {
+                    child++;
+                }
+                if (scores[child] >= score) {
+                    break;
+                }
+                scores[i] = scores[child];
+                ordinals[i] = ordinals[child];
+                i = child;
+            }
+            scores[i] = score;
+            ordinals[i] = ordinal;
+        }
+
+        List<Document> toDocuments(SimpleVectorStoreContent[] contents) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+            List<Document> documents = new ArrayList<>(size);
+            for (int i : order) {
+                documents.add(contents[ordinals[i]].toDocument((double) scores[i]));
+            }
+            return documents;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.jacky.ai.repository;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 00:35
+ * @description： 分片向量库的一个节点，可以持有多个分片的副本
+ * ShardedVectorStore只通过这个接口访问节点：向量在协调方计算好后随文档一起写入，节点不调用向量模型；
+ * 参数与返回值（SimpleVectorStoreContent、Document、SearchRequest）都可以序列化，跨进程的节点实现同样的接口即可。
+ * 节点不可用时各方法抛出IllegalStateException，由协调方切换到其他副本。
+ */
+public interface VectorNode {
+
+    /**
+     * @return 节点id，参与分片副本的放置（rendezvous hashing），需要稳定且唯一
+     */
+    String id();
+
+    /**
+     * @return 节点当前是否可用，不可用的副本不参与检索
+     */
+    boolean isAvailable();
+
+    /**
+     * 写入（或替换）分片中的文档
+     */
+    void add(int shard, List<SimpleVectorStoreContent> contents);
+
+    /**
+     * 删除分片中的文档，不存在的id忽略
+     */
+    void delete(int shard, List<String> ids);
+
+    List<Document> vectorSearch(int shard, float[] queryEmbedding, SearchRequest request);
+
+    List<Document> keywordSearch(int shard, SearchRequest request);
+
+    /**
+     * @return 归一化后的文档向量，文档不在该分片时返回null
+     */
+    float[] getEmbedding(int shard, String id);
+
+    int tombstone(int shard, Filter.Expression filterExpression);
+
+    int compact(int shard);
+
+    /**
+     * 导出分片的有效文档，用于再平衡时复制副本、写快照
+     */
+    List<SimpleVectorStoreContent> export(int shard);
+
+    /**
+     * 移除分片副本，再平衡后节点不再负责该分片时调用
+     */
+    void drop(int shard);
+
+    /**
+     * @return 分片的有效文档数与墓碑数
+     */
+    HybridVectorStore.WarmupProgress progress(int shard);
+}
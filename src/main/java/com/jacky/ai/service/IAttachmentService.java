@@ -0,0 +1,41 @@
+package com.jacky.ai.service;
+
+import org.springframework.ai.model.Media;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 01:55
+ * @description： 多模态附件预处理：发送给模型之前压缩图片、去掉会话中已发送过的附件
+ */
+public interface IAttachmentService {
+
+    /**
+     * 并行处理本轮的附件
+     * @param conversationId 会话id（租户id:chatId）
+     * @param files 上传的附件
+     * @return 需要发送的附件，以及会话中已发送过、本轮只引用的附件
+     */
+    PreparedAttachments prepare(String conversationId, List<MultipartFile> files);
+
+    /**
+     * 预处理后的附件
+     * @param media 需要发送给模型的附件，id为原始文件的SHA-256摘要
+     * @param reused 会话中已发送过的附件文件名，不再重复发送
+     */
+    record PreparedAttachments(List<Media> media, List<String> reused) {
+
+        /**
+         * @param prompt 用户的提示词
+         * @return 提示词，有重复附件时说明这些附件与之前发送的相同
+         */
+        public String annotate(String prompt) {
+            if (reused.isEmpty()) {
+                return prompt;
+            }
+            return prompt + "\n（附件 " + String.join("、", reused) + " 与本会话之前发送的附件相同，请参考之前的附件）";
+        }
+    }
+}
@@ -2,7 +2,16 @@ package com.jacky.ai.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.jacky.ai.entity.po.Course;
+import com.jacky.ai.entity.query.CourseQuery;
+import com.jacky.ai.entity.vo.CoursePage;
 
 public interface ICourseService extends IService<Course> {
 
-}
\ No newline at end of file
+    /**
+     * 按条件分页查询课程
+     * @param query 查询条件，可以为null
+     * @return 一页课程
+     * @throws IllegalArgumentException 查询条件不合法，不会查询数据库
+     */
+    CoursePage search(CourseQuery query);
+}
@@ -0,0 +1,353 @@
+package com.jacky.ai.service.impl;
+
+import com.jacky.ai.config.AttachmentProperties;
+import com.jacky.ai.config.SessionProperties;
+import com.jacky.ai.service.IAttachmentService;
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.model.Media;
+import org.springframework.ai.model.MediaContent;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 02:00
+ * @description： 多模态附件预处理
+ * - 图片：长边超过maxDimension时等比缩小（逐级减半后再插值，避免一次缩小过多产生锯齿），按EXIF方向摆正后重新编码
+ *   （有透明通道的输出PNG，其余输出JPEG）；尺寸未超限但文件较大时只重新编码；结果不比原图小时发送原图
+ * - 去重：附件的id为原始文件的SHA-256摘要。会话记忆中保存的用户消息带有附件（MessageChatMemoryAdvisor会把它们一起发给模型），
+ *   会话记忆窗口（ai.session.memory-window，与MessageChatMemoryAdvisor取出的消息数相同）内已有相同摘要的附件时本轮不再发送，只在提示词中引用；会话记忆不保存附件时（如SharedChatMemory）照常发送
+ * - 多个附件在线程池中并行处理，全部完成后再请求模型
+ * 音频、视频及ImageIO不支持的图片格式（如WebP）原样发送。
+ */
+@Slf4j
+@Service
+public class AttachmentServiceImpl implements IAttachmentService {
+
+    // 需要处理的图片格式，GIF可能是动图，不处理
+    private static final Set<String> RESIZABLE_TYPES = Set.of("jpeg", "jpg", "png", "bmp");
+
+    private final AttachmentProperties properties;
+
+    private final ChatMemory chatMemory;
+
+    // 在会话最近多少条消息中查找已发送过的附件，与会话记忆Advisor发给模型的消息数一致
+    private final int memoryWindow;
+
+    private final ExecutorService executor;
+
+    private final Counter resizeSavedCounter;
+
+    private final Counter dedupSavedCounter;
+
+    /**
+     * @param properties 附件预处理配置
+     * @param chatMemory 会话记忆，用于查找会话中已发送过的附件
+     * @param sessionProperties 会话配置，取会话记忆的窗口大小
+     * @param meterRegistry 指标注册中心
+     */
+    public AttachmentServiceImpl(AttachmentProperties properties, ChatMemory chatMemory, SessionProperties sessionProperties,
+                                 MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.chatMemory = chatMemory;
+        this.memoryWindow = sessionProperties.getMemoryWindow();
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "attachment-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        // 处理附件时恢复请求的trace上下文
+        this.executor = ContextExecutorService.wrap(pool, ContextSnapshotFactory.builder().build());
+        this.resizeSavedCounter = Counter.builder("ai.attachment.bytes.saved")
+                .description("附件预处理减少的发送字节数")
+                .baseUnit("bytes")
+                .tag("reason", "resize")
+                .register(meterRegistry);
+        this.dedupSavedCounter = Counter.builder("ai.attachment.bytes.saved")
+                .description("附件预处理减少的发送字节数")
+                .baseUnit("bytes")
+                .tag("reason", "dedup")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public PreparedAttachments prepare(String conversationId, List<MultipartFile> files) {
+        List<CompletableFuture<Attachment>> futures = files.stream()
+                .map(file -> CompletableFuture.supplyAsync(() -> process(file), executor))
+                .toList();
+        Set<String> sent = sentMediaIds(conversationId);
+        List<Media> media = new ArrayList<>();
+        List<String> reused = new ArrayList<>();
+        for (CompletableFuture<Attachment> future : futures) {
+            Attachment attachment;
+            try {
+                attachment = future.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+            // 会话中已发送过，或本轮上传了两份相同的文件
+            if (!sent.add(attachment.id())) {
+                reused.add(attachment.name());
+                dedupSavedCounter.increment(attachment.data().length);
+                continue;
+            }
+            resizeSavedCounter.increment(attachment.originalSize() - attachment.data().length);
+            media.add(Media.builder()
+                    .id(attachment.id())
+                    .name(attachment.name())
+                    .mimeType(attachment.mimeType())
+                    .data(attachment.data())
+                    .build());
+        }
+        return new PreparedAttachments(media, reused);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return 会话记忆窗口内的消息中附件的id
+     */
+    private Set<String> sentMediaIds(String conversationId) {
+        Set<String> ids = new HashSet<>();
+        for (Message message : chatMemory.get(conversationId, memoryWindow)) {
+            if (message instanceof MediaContent content) {
+                content.getMedia().stream().map(Media::getId).filter(Objects::nonNull).forEach(ids::add);
+            }
+        }
+        return ids;
+    }
+
+    private Attachment process(MultipartFile file) {
+        byte[] original;
+        try {
+            original = file.getBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String name = Objects.requireNonNullElse(file.getOriginalFilename(), file.getName());
+        MimeType mimeType = file.getContentType() == null
+                ? MimeTypeUtils.APPLICATION_OCTET_STREAM : MimeType.valueOf(file.getContentType());
+        Attachment attachment = new Attachment(sha256(original), name, mimeType, original, original.length);
+        if (!"image".equals(mimeType.getType()) || !RESIZABLE_TYPES.contains(mimeType.getSubtype())) {
+            return attachment;
+        }
+        try {
+            return resize(attachment);
+        } catch (IOException | RuntimeException e) {
+            // 图片损坏或格式不支持时发送原图，由模型接口决定是否接受
+            log.warn("附件预处理失败，发送原文件, name: {}, error: {}", name, e.getMessage());
+            return attachment;
+        }
+    }
+
+    private Attachment resize(Attachment attachment) throws IOException {
+        byte[] original = attachment.data();
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+        if (image == null) {
+            return attachment;
+        }
+        int maxDimension = properties.getMaxDimension();
+        boolean oversized = Math.max(image.getWidth(), image.getHeight()) > maxDimension;
+        if (!oversized && original.length <= properties.getRecompressAboveBytes()) {
+            return attachment;
+        }
+        boolean alpha = image.getColorModel().hasAlpha();
+        image = orient(image, exifOrientation(original));
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage resized = scale(image, width, height, alpha);
+        byte[] encoded = alpha ? encodePng(resized) : encodeJpeg(resized);
+        if (encoded.length >= original.length) {
+            return attachment;
+        }
+        log.debug("附件已压缩, name: {}, {}x{} {}B -> {}x{} {}B", attachment.name(), image.getWidth(), image.getHeight(),
+                original.length, width, height, encoded.length);
+        return new Attachment(attachment.id(), attachment.name(),
+                alpha ? MimeTypeUtils.IMAGE_PNG : MimeTypeUtils.IMAGE_JPEG, encoded, original.length);
+    }
+
+    /**
+     * 缩放到目标尺寸：每次减半直到不足目标的2倍，最后一次双线性插值
+     */
+    private static BufferedImage scale(BufferedImage image, int width, int height, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            if (currentWidth < width * 2 || currentHeight < height * 2) {
+                currentWidth = width;
+                currentHeight = height;
+            }
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+            Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            graphics.dispose();
+            current = next;
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    /**
+     * 按EXIF方向摆正：重新编码会丢掉EXIF，手机竖拍的照片需要先旋转
+     * 只处理旋转（3：180°，6：顺时针90°，8：逆时针90°），镜像方向很少见，不处理
+     */
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        int quadrants = switch (orientation) {
+            case 3 -> 2;
+            case 6 -> 1;
+            case 8 -> 3;
+            default -> 0;
+        };
+        if (quadrants == 0) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swap = quadrants % 2 == 1;
+        BufferedImage rotated = new BufferedImage(swap ? height : width, swap ? width : height,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        AffineTransform transform = new AffineTransform();
+        transform.translate(rotated.getWidth() / 2.0, rotated.getHeight() / 2.0);
+        transform.quadrantRotate(quadrants);
+        transform.translate(-width / 2.0, -height / 2.0);
+        Graphics2D graphics = rotated.createGraphics();
+        graphics.drawImage(image, transform, null);
+        graphics.dispose();
+        return rotated;
+    }
+
+    /**
+     * 从JPEG的APP1（Exif）段读取方向标签（0x0112）
+     * @return 方向，1~8；不是JPEG或没有方向标签时为1
+     */
+    static int exifOrientation(byte[] jpeg) {
+        if (jpeg.length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8) {
+            return 1;
+        }
+        int offset = 2;
+        while (offset + 4 <= jpeg.length && (jpeg[offset] & 0xFF) == 0xFF) {
+            int marker = jpeg[offset + 1] & 0xFF;
+            int length = ((jpeg[offset + 2] & 0xFF) << 8) | (jpeg[offset + 3] & 0xFF);
+            if (marker == 0xDA) {
+                break; // 图像数据开始，后面没有元数据段
+            }
+            int segment = offset + 4;
+            if (marker == 0xE1 && segment + 14 <= jpeg.length
+                    && new String(jpeg, segment, 4, StandardCharsets.US_ASCII).equals("Exif")) {
+                int tiff = segment + 6;
+                boolean littleEndian = jpeg[tiff] == 'I';
+                int ifd = tiff + readInt(jpeg, tiff + 4, littleEndian);
+                if (ifd + 2 > jpeg.length) {
+                    return 1;
+                }
+                int entries = readShort(jpeg, ifd, littleEndian);
+                for (int i = 0; i < entries; i++) {
+                    int entry = ifd + 2 + i * 12;
+                    if (entry + 12 > jpeg.length) {
+                        return 1;
+                    }
+                    if (readShort(jpeg, entry, littleEndian) == 0x0112) {
+                        return readShort(jpeg, entry + 8, littleEndian);
+                    }
+                }
+                return 1;
+            }
+            offset += 2 + length;
+        }
+        return 1;
+    }
+
+    private static int readShort(byte[] bytes, int offset, boolean littleEndian) {
+        int b0 = bytes[offset] & 0xFF;
+        int b1 = bytes[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] bytes, int offset, boolean littleEndian) {
+        int high = readShort(bytes, offset + (littleEndian ? 2 : 0), littleEndian);
+        int low = readShort(bytes, offset + (littleEndian ? 0 : 2), littleEndian);
+        return (high << 16) | low;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(properties.getJpegQuality());
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 处理后的附件
+     * @param id 原始文件的SHA-256摘要
+     * @param name 文件名
+     * @param mimeType 处理后的类型
+     * @param data 处理后的内容
+     * @param originalSize 原始文件的字节数
+     */
+    private record Attachment(String id, String name, MimeType mimeType, byte[] data, int originalSize) {
+    }
+}
@@ -1,15 +1,48 @@
 package com.jacky.ai.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.jacky.ai.config.CourseQueryProperties;
 import com.jacky.ai.entity.po.Course;
+import com.jacky.ai.entity.query.CourseQuery;
+import com.jacky.ai.entity.query.CourseQueryPlan;
+import com.jacky.ai.entity.vo.CoursePage;
 import com.jacky.ai.mapper.CourseMapper;
 import com.jacky.ai.service.ICourseService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 /**
  * 学科表 服务实现类
  */
 @Service
+@RequiredArgsConstructor
 public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> implements ICourseService {
 
+    private final CourseQueryProperties properties;
+
+    @Override
+    public CoursePage search(CourseQuery query) {
+        CourseQueryPlan plan = CourseQueryPlan.of(query, properties.getDefaultPageSize(),
+                properties.getMaxPageSize(), properties.getMaxOffset());
+        LambdaQueryWrapper<Course> wrapper = Wrappers.lambdaQuery(Course.class)
+                .eq(plan.type() != null, Course::getType, plan.type())
+                .le(plan.edu() != null, Course::getEdu, plan.edu());
+        for (CourseQueryPlan.Order order : plan.orders()) {
+            wrapper.orderBy(true, order.asc(), order.field().getColumn());
+        }
+        // 排序值相同的课程按id排序，翻页时不重复、不遗漏
+        wrapper.orderByAsc(Course::getId);
+        // 多查一条判断是否还有下一页；LIMIT中的数字由计划计算，不来自大模型的原始输入
+        wrapper.last("LIMIT " + (plan.size() + 1) + " OFFSET " + plan.offset());
+        List<Course> courses = list(wrapper);
+        boolean hasMore = courses.size() > plan.size();
+        if (hasMore) {
+            courses = courses.subList(0, plan.size());
+        }
+        return new CoursePage(courses, plan.page(), plan.size(), hasMore);
+    }
 }
@@ -1,10 +1,9 @@
 package com.jacky.ai.tools;
 
-import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
-import com.jacky.ai.entity.po.Course;
 import com.jacky.ai.entity.po.CourseReservation;
 import com.jacky.ai.entity.po.School;
 import com.jacky.ai.entity.query.CourseQuery;
+import com.jacky.ai.entity.vo.CoursePage;
 import com.jacky.ai.service.ICourseReservationService;
 import com.jacky.ai.service.ICourseService;
 import com.jacky.ai.service.ISchoolService;
@@ -26,19 +25,10 @@ public class CourseTools {
     private final ICourseReservationService courseReservationService;
     private final static Logger logger = LoggerFactory.getLogger(CourseTools.class);
 
-    @Tool(description = "根据条件查询课程")
-    public List<Course> queryCourse(@ToolParam(required = false, description = "课程查询条件") CourseQuery query) {
+    @Tool(description = "根据条件分页查询课程，只能按price或duration排序；结果中hasMore为true时可以增加page查询下一页")
+    public CoursePage queryCourse(@ToolParam(required = false, description = "课程查询条件") CourseQuery query) {
         logger.info("[LLM-Tool]CourseTools.queryCourse根据条件查询课程: {}", query);
-        QueryChainWrapper<Course> wrapper = courseService.query();
-        wrapper
-                .eq(query.getType() != null, "type", query.getType())
-                .le(query.getEdu() != null, "edu", query.getEdu());
-        if(query.getSorts() != null) {
-            for (CourseQuery.Sort sort : query.getSorts()) {
-                wrapper.orderBy(true, sort.getAsc(), sort.getField());
-            }
-        }
-        return wrapper.list();
+        return courseService.search(query);
     }
 
     @Tool(description = "查询所有校区")
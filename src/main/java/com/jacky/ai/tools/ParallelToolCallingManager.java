@@ -0,0 +1,214 @@
+package com.jacky.ai.tools;
+
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 14:20
+ * @description： 并行执行同一轮模型回复中的多个工具调用
+ * 模型一次返回多个tool call（如queryAllSchools + queryCourse）时，默认的ToolCallingManager逐个串行执行。
+ * 这里把每个tool call拆成单独的请求交给原ToolCallingManager，在有界线程池中并发执行（只有一个tool call时也经过线程池），
+ * 最后按模型给出的顺序重新组装ToolResponseMessage，下一轮模型请求的等待时间取决于最慢的工具，而不是所有工具耗时之和。
+ * 每个工具单独计算超时（toolTimeout），从开始执行时起计时；在队列中等待超过toolTimeout仍未开始的工具不再执行，
+ * 因此一轮工具调用最长等待约2倍toolTimeout。
+ * 线程池队列满时不在调用线程中执行（那样不受超时限制），直接告诉模型工具繁忙。
+ */
+@Slf4j
+public class ParallelToolCallingManager implements ToolCallingManager, AutoCloseable {
+
+    // 工具超时时返回给模型的内容
+    private static final String TIMEOUT_RESPONSE = "工具执行超时，请稍后重试";
+
+    // 线程池已满或排队超时、工具未执行时返回给模型的内容
+    private static final String BUSY_RESPONSE = "工具繁忙，请稍后重试";
+
+    // PendingCall.startedAt的初始值，表示还在队列中
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private final ToolCallingManager delegate;
+
+    private final ExecutorService executor;
+
+    private final Duration toolTimeout;
+
+    /**
+     * @param delegate 实际解析、执行单个工具调用的ToolCallingManager
+     * @param maxThreads 并发执行工具的最大线程数
+     * @param queueCapacity 等待队列长度，队列满时新的工具调用直接返回繁忙
+     * @param toolTimeout 单个工具调用的超时时间，从开始执行时起计算；排队等待也不超过该时间
+     */
+    public ParallelToolCallingManager(ToolCallingManager delegate, int maxThreads, int queueCapacity, Duration toolTimeout) {
+        this.delegate = delegate;
+        this.toolTimeout = toolTimeout;
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "tool-exec-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        // 提交任务时捕获当前线程的上下文（trace、MDC等），工具在线程池中执行时恢复，SQL的span仍挂在本次请求下
+        this.executor = ContextExecutorService.wrap(pool, ContextSnapshotFactory.builder().build());
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+
+        // 1.每个tool call单独提交执行（只有一个时也一样，保证受超时限制）；队列已满的工具不执行，call.future为null
+        List<PendingCall> calls = new ArrayList<>(toolCalls.size());
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            ChatResponse single = new ChatResponse(List.of(new Generation(
+                    new AssistantMessage(assistantMessage.getText(), assistantMessage.getMetadata(), List.of(toolCall)))));
+            AtomicLong startedAt = new AtomicLong(NOT_STARTED);
+            long submittedAt = System.nanoTime();
+            Future<ToolExecutionResult> future;
+            try {
+                future = executor.submit(() -> {
+                    startedAt.set(System.nanoTime());
+                    return delegate.executeToolCalls(prompt, single);
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("工具线程池已满, tool: {}", toolCall.name());
+                future = null;
+            }
+            calls.add(new PendingCall(toolCall, future, submittedAt, startedAt));
+        }
+
+        // 2.按原顺序收集结果，每个工具从开始执行时起单独计算超时
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolCalls.size());
+        boolean returnDirect = true;
+        for (PendingCall call : calls) {
+            AssistantMessage.ToolCall toolCall = call.toolCall();
+            ToolExecutionResult result;
+            try {
+                result = await(call);
+            } catch (ExecutionException e) {
+                cancelAll(calls);
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException("Tool execution failed: " + toolCall.name(), e.getCause());
+            } catch (InterruptedException e) {
+                cancelAll(calls);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while executing tool: " + toolCall.name(), e);
+            }
+            if (result == null) {
+                String response = call.started() ? TIMEOUT_RESPONSE : BUSY_RESPONSE;
+                responses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), response));
+                returnDirect = false;
+                continue;
+            }
+            responses.addAll(toolResponsesOf(result));
+            returnDirect = returnDirect && result.returnDirect();
+        }
+
+        // 3.与默认实现一致：历史消息 + 带全部tool call的助手消息 + 合并后的工具结果
+        List<Message> conversationHistory = new ArrayList<>(prompt.copy().getInstructions());
+        conversationHistory.add(new AssistantMessage(assistantMessage.getText(), assistantMessage.getMetadata(), toolCalls));
+        conversationHistory.add(new ToolResponseMessage(responses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    /**
+     * 停止线程池，正在执行的工具被中断
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 等待一个工具的结果：开始执行后最多等待toolTimeout；在队列中等待超过toolTimeout仍未开始时不再执行
+     * @return 工具结果；未执行（线程池已满或排队超时）或执行超时时返回null，并取消任务
+     */
+    private ToolExecutionResult await(PendingCall call) throws ExecutionException, InterruptedException {
+        if (call.future() == null) {
+            return null;
+        }
+        long timeout = toolTimeout.toNanos();
+        while (true) {
+            boolean started = call.started();
+            long deadline = (started ? call.startedAt().get() : call.submittedAt()) + timeout;
+            try {
+                return call.future().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (!started && call.started()) {
+                    // 排队期间开始执行，改为从开始执行时计时
+                    continue;
+                }
+                call.future().cancel(true);
+                if (started) {
+                    log.warn("工具执行超时, tool: {}, timeout: {}", call.toolCall().name(), toolTimeout);
+                } else {
+                    log.warn("工具排队超时未执行, tool: {}, timeout: {}", call.toolCall().name(), toolTimeout);
+                }
+                return null;
+            }
+        }
+    }
+
+    private static void cancelAll(List<PendingCall> calls) {
+        calls.stream().map(PendingCall::future).filter(Objects::nonNull).forEach(f -> f.cancel(true));
+    }
+
+    /**
+     * 已提交的工具调用
+     * @param future 线程池已满时为null
+     * @param submittedAt 提交时间
+     * @param startedAt 开始执行时间，未开始时为NOT_STARTED
+     */
+    private record PendingCall(AssistantMessage.ToolCall toolCall, Future<ToolExecutionResult> future,
+                               long submittedAt, AtomicLong startedAt) {
+
+        boolean started() {
+            return startedAt.get() != NOT_STARTED;
+        }
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> toolResponsesOf(ToolExecutionResult result) {
+        List<Message> history = result.conversationHistory();
+        if (!history.isEmpty() && history.get(history.size() - 1) instanceof ToolResponseMessage toolResponseMessage) {
+            return toolResponseMessage.getResponses();
+        }
+        return List.of();
+    }
+}
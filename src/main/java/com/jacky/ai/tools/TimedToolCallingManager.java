@@ -0,0 +1,85 @@
+package com.jacky.ai.tools;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 20:10
+ * @description： 记录工具执行耗时的ToolCallingManager
+ * 指标ai.tool.duration按工具名（tool）和结果（outcome=ok|error）打标签。
+ * 包在ParallelToolCallingManager内层时，每个工具单独计时；串行执行多个工具时tool为逗号拼接的工具名。
+ * 同时创建span（tool <工具名>），工具内的MyBatis查询挂在该span下。
+ */
+public class TimedToolCallingManager implements ToolCallingManager {
+
+    private final ToolCallingManager delegate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ObservationRegistry observationRegistry;
+
+    public TimedToolCallingManager(ToolCallingManager delegate, MeterRegistry meterRegistry) {
+        this(delegate, meterRegistry, ObservationRegistry.NOOP);
+    }
+
+    public TimedToolCallingManager(ToolCallingManager delegate, MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        String tool = toolNamesOf(chatResponse);
+        long start = System.nanoTime();
+        String outcome = "error";
+        Observation observation = Observation.createNotStarted("ai.tool.call", observationRegistry)
+                .contextualName("tool " + tool)
+                .lowCardinalityKeyValue("tool", tool)
+                .start();
+        try (Observation.Scope ignored = observation.openScope()) {
+            ToolExecutionResult result = delegate.executeToolCalls(prompt, chatResponse);
+            outcome = "ok";
+            return result;
+        } catch (RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+            Timer.builder("ai.tool.duration")
+                    .description("工具执行耗时")
+                    .tags("tool", tool, "outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String toolNamesOf(ChatResponse chatResponse) {
+        return chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .flatMap(message -> message.getToolCalls().stream())
+                .map(AssistantMessage.ToolCall::name)
+                .collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,82 @@
+package com.jacky.ai.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 16:10
+ * @description： 关键词检索使用的分词器
+ * - 中日韩文字：连续的字按相邻两字切分（bigram），如"线程安全" -> 线程、程安、安全；只有一个字时保留单字
+ * - 字母、数字、下划线：连续部分作为一个词并转为小写，如"ArrayList"、"java"、"HashMap_v2"
+ * - 其他字符（空白、标点）作为分隔符
+ * 不依赖词典，建索引和查询使用同一套规则，标识符、专有名词能够精确命中。
+ */
+public class CjkBigramTokenizer {
+
+    // 防止实例化
+    private CjkBigramTokenizer() {}
+
+    /**
+     * 分词
+     * @param text 文本，可以为null
+     * @return 词列表，保留重复的词，便于统计词频
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                // 1.中日韩文字：相邻两字组成一个词
+                int start = i;
+                int previous = -1;
+                int count = 0;
+                while (i < length && isCjk(codePoint = text.codePointAt(i))) {
+                    int next = i + Character.charCount(codePoint);
+                    if (previous >= 0) {
+                        tokens.add(text.substring(previous, next));
+                    }
+                    previous = i;
+                    count++;
+                    i = next;
+                }
+                if (count == 1) {
+                    tokens.add(text.substring(start, i));
+                }
+            } else if (isWordChar(codePoint)) {
+                // 2.字母、数字、下划线：整体作为一个词
+                int start = i;
+                while (i < length && isWordChar(codePoint = text.codePointAt(i)) && !isCjk(codePoint)) {
+                    i += Character.charCount(codePoint);
+                }
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+            } else {
+                // 3.分隔符
+                i += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isWordChar(int codePoint) {
+        return Character.isLetterOrDigit(codePoint) || codePoint == '_';
+    }
+
+    /**
+     * @param codePoint 字符
+     * @return 是否为中日韩文字
+     */
+    public static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
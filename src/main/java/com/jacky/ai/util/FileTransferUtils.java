@@ -0,0 +1,198 @@
+package com.jacky.ai.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 文件传输工具
+ * 下载：支持ETag/If-None-Match、HTTP Range（单段）与零拷贝传输
+ * - Tomcat NIO连接器支持sendfile时，只设置请求属性，由Tomcat直接调用sendfile把文件写入socket
+ * - 否则使用FileChannel.transferTo写入响应流
+ * 上传：用固定大小的直接内存缓冲区把输入流写入文件，同时计算摘要、校验文件头、限制大小，内存占用与文件大小无关
+ */
+public class FileTransferUtils {
+
+    // 防止实例化
+    private FileTransferUtils() {}
+
+    // Tomcat sendfile相关的请求属性
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    // 上传时每次读写的缓冲区大小
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // 文件内容由摘要决定，缓存后每次使用前用ETag校验
+    private static final String CACHE_CONTROL = CacheControl.maxAge(Duration.ofHours(1)).cachePrivate().mustRevalidate().getHeaderValue();
+
+    /**
+     * 发送文件
+     * @param file 文件路径
+     * @param digest 文件内容摘要，作为强ETag
+     * @param contentType 响应类型
+     * @param request 请求
+     * @param response 响应
+     * @throws IOException 读取文件或写响应失败时抛出
+     */
+    public static void send(Path file, String digest, String contentType,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = Files.size(file);
+        String etag = "\"" + digest + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        // 1.内容未变化，返回304
+        if (etagMatches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        // 2.解析Range，If-Range与当前ETag不一致时返回整个文件
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && length > 0 && (ifRange == null || ifRange.equals(etag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // 多段Range较少见，按整个文件返回
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                start = range.getRangeStart(length);
+                end = Math.min(range.getRangeEnd(length), length - 1);
+                if (start >= length || start > end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentType(contentType);
+        response.setContentLengthLong(count);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        // 3.零拷贝写出
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+
+    /**
+     * 把输入流写入文件，同时更新摘要并校验文件头
+     * @param inputStream 输入流，例如请求体
+     * @param target 目标文件，会被覆盖
+     * @param digest 摘要计算器，写入的每个字节都会参与计算
+     * @param magic 文件头应有的字节，例如PDF的"%PDF-"；为空时不校验
+     * @param maxBytes 最多写入的字节数，超过时停止读取并删除目标文件
+     * @return 写入的字节数
+     * @throws IllegalArgumentException 文件头与magic不一致时抛出
+     * @throws MaxUploadSizeExceededException 输入超过maxBytes时抛出
+     * @throws IOException 读写失败时抛出
+     */
+    public static long receive(InputStream inputStream, Path target, MessageDigest digest, byte[] magic,
+                               long maxBytes) throws IOException {
+        // 直接内存缓冲区，FileChannel写入时不再经过JDK内部的临时直接缓冲区复制一次
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        byte[] header = new byte[magic.length];
+        int headerLength = 0;
+        long total = 0;
+        // 不关闭in，输入流由调用方负责
+        ReadableByteChannel in = Channels.newChannel(inputStream);
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int read;
+            while ((read = in.read(buffer.clear())) >= 0) {
+                // 1.超过大小上限，不再读取剩余内容
+                if (total + read > maxBytes) {
+                    out.close();
+                    Files.deleteIfExists(target);
+                    throw new MaxUploadSizeExceededException(maxBytes);
+                }
+                buffer.flip();
+                // 2.文件头可能分布在前几次读取中，凑够magic长度后再校验
+                if (headerLength < magic.length) {
+                    int n = Math.min(magic.length - headerLength, read);
+                    buffer.get(0, header, headerLength, n);
+                    headerLength += n;
+                    if (headerLength == magic.length && !MessageDigest.isEqual(header, magic)) {
+                        throw new IllegalArgumentException("Unexpected file header");
+                    }
+                }
+                // 3.更新摘要并写入文件，摘要使用副本，不移动buffer的position
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    total += out.write(buffer);
+                }
+            }
+        }
+        if (headerLength < magic.length) {
+            throw new IllegalArgumentException("File is too short");
+        }
+        return total;
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            // 忽略弱校验前缀
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+package com.jacky.ai.util;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 19:35
+ * @description： 日志内容格式化工具
+ * 直接追加到调用方的StringBuilder，不经过ObjectMapper序列化：
+ * - 字符串按最大长度截断，超出部分只记录原始长度
+ * - 集合、Map、数组只记录类型和元素数量，不展开元素（例如会话历史的消息列表）
+ * - 上传文件只记录文件名和大小
+ */
+public class LogFormatUtils {
+
+    // 防止实例化
+    private LogFormatUtils() {}
+
+    /**
+     * 追加截断后的值
+     * @param builder 日志内容
+     * @param value 参数或返回值，可以为null
+     * @param maxLength 最大字符数
+     */
+    public static void appendTruncated(StringBuilder builder, Object value, int maxLength) {
+        if (value == null) {
+            builder.append("null");
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Enum<?>) {
+            builder.append(value);
+        } else if (value instanceof CharSequence text) {
+            appendText(builder, text, maxLength);
+        } else if (value instanceof MultipartFile file) {
+            builder.append("MultipartFile(");
+            appendText(builder, String.valueOf(file.getOriginalFilename()), maxLength);
+            builder.append(", ").append(file.getSize()).append(" bytes)");
+        } else if (value instanceof Collection<?> collection) {
+            builder.append(value.getClass().getSimpleName()).append("(size=").append(collection.size()).append(')');
+        } else if (value instanceof Map<?, ?> map) {
+            builder.append(value.getClass().getSimpleName()).append("(size=").append(map.size()).append(')');
+        } else if (value.getClass().isArray()) {
+            builder.append(value.getClass().getComponentType().getSimpleName())
+                    .append("[](length=").append(java.lang.reflect.Array.getLength(value)).append(')');
+        } else {
+            appendText(builder, String.valueOf(value), maxLength);
+        }
+    }
+
+    /**
+     * 计算字符串按UTF-8编码后的字节数，不实际编码
+     * @param text 文本
+     * @return 字节数
+     */
+    public static long utf8Length(CharSequence text) {
+        long bytes = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static void appendText(StringBuilder builder, CharSequence text, int maxLength) {
+        builder.append('"');
+        if (text.length() <= maxLength) {
+            appendEscaped(builder, text, text.length());
+            builder.append('"');
+        } else {
+            appendEscaped(builder, text, maxLength);
+            builder.append("...\"(").append(text.length()).append(" chars)");
+        }
+    }
+
+    // 换行、引号转义，保证一条访问日志只占一行
+    private static void appendEscaped(StringBuilder builder, CharSequence text, int end) {
+        for (int i = 0; i < end; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '"' -> builder.append("\\\"");
+                default -> builder.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.jacky.ai.util;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 21:45
+ * @description： 标量实现：4路展开、4个独立的float累加器，减少循环依赖，JIT可以流水线执行；余弦同时累加3个和，只展开2路
+ */
+final class ScalarVectorKernel implements VectorKernel {
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        int length = a.length;
+        int upper = length & ~3;
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i < upper; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float squaredEuclidean(float[] a, float[] b) {
+        int length = a.length;
+        int upper = length & ~3;
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i < upper; i += 4) {
+            float d0 = a[i] - b[i];
+            float d1 = a[i + 1] - b[i + 1];
+            float d2 = a[i + 2] - b[i + 2];
+            float d3 = a[i + 3] - b[i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < length; i++) {
+            float d = a[i] - b[i];
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        int length = a.length;
+        int upper = length & ~1;
+        float dot0 = 0, dot1 = 0, aa0 = 0, aa1 = 0, bb0 = 0, bb1 = 0;
+        int i = 0;
+        for (; i < upper; i += 2) {
+            float a0 = a[i], a1 = a[i + 1], b0 = b[i], b1 = b[i + 1];
+            dot0 += a0 * b0;
+            dot1 += a1 * b1;
+            aa0 += a0 * a0;
+            aa1 += a1 * a1;
+            bb0 += b0 * b0;
+            bb1 += b1 * b1;
+        }
+        for (; i < length; i++) {
+            dot0 += a[i] * b[i];
+            aa0 += a[i] * a[i];
+            bb0 += b[i] * b[i];
+        }
+        return VectorKernels.cosine(dot0 + dot1, aa0 + aa1, bb0 + bb1);
+    }
+
+    @Override
+    public void dotBatch(float[] query, float[][] vectors, int offset, int count, float[] scores) {
+        for (int j = 0; j < count; j++) {
+            scores[j] = dot(query, vectors[offset + j]);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
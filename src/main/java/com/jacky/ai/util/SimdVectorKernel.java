@@ -0,0 +1,133 @@
+package com.jacky.ai.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 21:50
+ * @description： 基于JDK Vector API的实现，按CPU支持的最宽SIMD寄存器（AVX2为8个float，AVX-512为16个）批量计算
+ * - 乘加使用fma，每个lane独立累加，循环结束后再横向求和
+ * - 批量点积每次处理4个向量，查询向量的每一段只加载一次，供4个累加器共用
+ * 只由VectorKernels通过反射加载，jdk.incubator.vector模块不可用时不会触发本类的加载。
+ */
+final class SimdVectorKernel implements VectorKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    SimdVectorKernel() {
+        // 不支持SIMD的平台上Vector API退化为逐元素模拟，比标量循环还慢
+        if (SPECIES.vectorBitSize() < 128) {
+            throw new UnsupportedOperationException("SIMD width too small: " + SPECIES.vectorBitSize());
+        }
+    }
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        int length = a.length;
+        int upper = SPECIES.loopBound(length);
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            acc = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float squaredEuclidean(float[] a, float[] b) {
+        int length = a.length;
+        int upper = SPECIES.loopBound(length);
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, i).sub(FloatVector.fromArray(SPECIES, b, i));
+            acc = diff.fma(diff, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        int length = a.length;
+        int upper = SPECIES.loopBound(length);
+        FloatVector dotAcc = FloatVector.zero(SPECIES);
+        FloatVector aaAcc = FloatVector.zero(SPECIES);
+        FloatVector bbAcc = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+            dotAcc = va.fma(vb, dotAcc);
+            aaAcc = va.fma(va, aaAcc);
+            bbAcc = vb.fma(vb, bbAcc);
+        }
+        float dot = dotAcc.reduceLanes(VectorOperators.ADD);
+        float aa = aaAcc.reduceLanes(VectorOperators.ADD);
+        float bb = bbAcc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dot += a[i] * b[i];
+            aa += a[i] * a[i];
+            bb += b[i] * b[i];
+        }
+        return VectorKernels.cosine(dot, aa, bb);
+    }
+
+    @Override
+    public void dotBatch(float[] query, float[][] vectors, int offset, int count, float[] scores) {
+        int length = query.length;
+        int upper = SPECIES.loopBound(length);
+        int j = 0;
+        for (; j + 4 <= count; j += 4) {
+            float[] v0 = vectors[offset + j];
+            float[] v1 = vectors[offset + j + 1];
+            float[] v2 = vectors[offset + j + 2];
+            float[] v3 = vectors[offset + j + 3];
+            FloatVector acc0 = FloatVector.zero(SPECIES);
+            FloatVector acc1 = FloatVector.zero(SPECIES);
+            FloatVector acc2 = FloatVector.zero(SPECIES);
+            FloatVector acc3 = FloatVector.zero(SPECIES);
+            int i = 0;
+            for (; i < upper; i += SPECIES.length()) {
+                FloatVector q = FloatVector.fromArray(SPECIES, query, i);
+                acc0 = q.fma(FloatVector.fromArray(SPECIES, v0, i), acc0);
+                acc1 = q.fma(FloatVector.fromArray(SPECIES, v1, i), acc1);
+                acc2 = q.fma(FloatVector.fromArray(SPECIES, v2, i), acc2);
+                acc3 = q.fma(FloatVector.fromArray(SPECIES, v3, i), acc3);
+            }
+            float s0 = acc0.reduceLanes(VectorOperators.ADD);
+            float s1 = acc1.reduceLanes(VectorOperators.ADD);
+            float s2 = acc2.reduceLanes(VectorOperators.ADD);
+            float s3 = acc3.reduceLanes(VectorOperators.ADD);
+            for (; i < length; i++) {
+                float q = query[i];
+                s0 += q * v0[i];
+                s1 += q * v1[i];
+                s2 += q * v2[i];
+                s3 += q * v3[i];
+            }
+            scores[j] = s0;
+            scores[j + 1] = s1;
+            scores[j + 2] = s2;
+            scores[j + 3] = s3;
+        }
+        for (; j < count; j++) {
+            scores[j] = dot(query, vectors[offset + j]);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "simd(" + SPECIES.vectorBitSize() + " bits)";
+    }
+}
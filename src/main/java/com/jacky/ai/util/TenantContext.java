@@ -0,0 +1,72 @@
+package com.jacky.ai.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 23:40
+ * @description： 当前请求的租户id，由TenantFilter在请求线程上设置
+ * 只在请求线程上读取（保存会话、上传文件等同步操作）；流式输出在其他线程执行，
+ * 需要租户的Advisor通过会话id（租户id:chatId）或Advisor参数拿到租户，不依赖线程变量。
+ */
+public final class TenantContext {
+
+    // 未携带租户id的请求、后台任务都属于默认租户，默认租户的数据目录与引入多租户之前一致
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final Pattern TENANT_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private static final char SEPARATOR = ':';
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private TenantContext() {}
+
+    /**
+     * @return 当前租户id，未设置时为默认租户
+     */
+    public static String current() {
+        String tenant = CURRENT.get();
+        return tenant == null ? DEFAULT_TENANT : tenant;
+    }
+
+    public static void set(String tenant) {
+        if (!isValid(tenant)) {
+            throw new IllegalArgumentException("Invalid tenant id: " + tenant);
+        }
+        CURRENT.set(tenant);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 租户id会作为目录名，只允许字母、数字、下划线和短横线
+     */
+    public static boolean isValid(String tenant) {
+        return tenant != null && TENANT_PATTERN.matcher(tenant).matches();
+    }
+
+    /**
+     * 会话记忆中的会话id：租户id:chatId，不同租户使用相同的chatId不会互相读到
+     * @param chatId 前端传入的会话id
+     * @return 当前租户下的会话id
+     */
+    public static String conversationId(String chatId) {
+        return current() + SEPARATOR + chatId;
+    }
+
+    /**
+     * @param conversationId 会话id，没有租户前缀时属于默认租户
+     * @return 会话所属的租户id
+     */
+    public static String tenantOf(String conversationId) {
+        int index = conversationId.indexOf(SEPARATOR);
+        if (index <= 0) {
+            return DEFAULT_TENANT;
+        }
+        String tenant = conversationId.substring(0, index);
+        return isValid(tenant) ? tenant : DEFAULT_TENANT;
+    }
+}
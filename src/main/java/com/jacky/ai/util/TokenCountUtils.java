@@ -0,0 +1,40 @@
+package com.jacky.ai.util;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 17:30
+ * @description： token数量估算工具
+ * 不加载模型的分词器，按经验值估算：中日韩文字约1个字1个token，其他字符约4个字符1个token。
+ * 用于控制放入提示词的上下文长度，误差在一两成以内即可。
+ */
+public class TokenCountUtils {
+
+    // 防止实例化
+    private TokenCountUtils() {}
+
+    // 非中日韩字符平均每个token的字符数
+    private static final int CHARS_PER_TOKEN = 4;
+
+    /**
+     * 估算文本的token数量
+     * @param text 文本，可以为null
+     * @return 估算的token数量
+     */
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (CjkBigramTokenizer.isCjk(codePoint)) {
+                cjk++;
+            } else {
+                other++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return cjk + (other + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+}
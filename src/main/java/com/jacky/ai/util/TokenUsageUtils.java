@@ -0,0 +1,63 @@
+package com.jacky.ai.util;
+
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.metadata.UsageUtils;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.openai.api.OpenAiApi;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 02:20
+ * @description： 模型返回的token用量工具
+ * OpenAI兼容接口在usage.prompt_tokens_details.cached_tokens中返回命中服务端提示词缓存的token数（百炼、OpenAI），
+ * DeepSeek为usage.prompt_cache_hit_tokens；Usage接口没有这个字段，只能从原始用量（getNativeUsage）中读取。
+ */
+public class TokenUsageUtils {
+
+    // 防止实例化
+    private TokenUsageUtils() {}
+
+    /**
+     * 命中提示词缓存的prompt token数量
+     * @param usage 用量，可以为null
+     * @return token数量，模型没有返回时为0
+     */
+    public static int cachedTokens(Usage usage) {
+        if (usage == null || !(usage.getNativeUsage() instanceof OpenAiApi.Usage nativeUsage)) {
+            return 0;
+        }
+        if (nativeUsage.promptTokensDetails() != null && nativeUsage.promptTokensDetails().cachedTokens() != null) {
+            return nativeUsage.promptTokensDetails().cachedTokens();
+        }
+        return nativeUsage.promptCacheHitTokens() != null ? nativeUsage.promptCacheHitTokens() : 0;
+    }
+
+    /**
+     * 累加工具调用多轮请求的用量
+     * UsageUtils.getCumulativeUsage累加后丢弃了原始用量，这里把累加的缓存token数放在新的原始用量中
+     * @param current 本轮请求的用量
+     * @param previous 上一轮的响应，没有时为null
+     * @return 累加后的用量
+     */
+    public static Usage cumulative(Usage current, ChatResponse previous) {
+        Usage previousUsage = previous != null && previous.getMetadata() != null ? previous.getMetadata().getUsage() : null;
+        if (previousUsage == null || UsageUtils.isEmpty(previousUsage)) {
+            return current;
+        }
+        if (UsageUtils.isEmpty(current)) {
+            return previousUsage;
+        }
+        int promptTokens = valueOf(current.getPromptTokens()) + valueOf(previousUsage.getPromptTokens());
+        int completionTokens = valueOf(current.getCompletionTokens()) + valueOf(previousUsage.getCompletionTokens());
+        int totalTokens = valueOf(current.getTotalTokens()) + valueOf(previousUsage.getTotalTokens());
+        int cachedTokens = cachedTokens(current) + cachedTokens(previousUsage);
+        OpenAiApi.Usage nativeUsage = new OpenAiApi.Usage(completionTokens, promptTokens, totalTokens,
+                new OpenAiApi.Usage.PromptTokensDetails(null, cachedTokens), null, null, null);
+        return new DefaultUsage(promptTokens, completionTokens, totalTokens, nativeUsage);
+    }
+
+    private static int valueOf(Integer tokens) {
+        return tokens != null ? tokens : 0;
+    }
+}
@@ -5,8 +5,8 @@ public class VectorDistanceUtils {
     // 防止实例化
     private VectorDistanceUtils() {}
 
-    // 浮点数计算精度阈值
-    private static final double EPSILON = 1e-12;
+    // 以下方法保留参数校验与异常语义，计算委托给VectorKernels；检索等热点路径直接使用VectorKernels
+    // 精度：VectorKernels全程float累加（SIMD时使用fma），不再逐元素转double，结果与原来的double累加相差约1e-6（相对误差）
 
     /**
      * 计算欧氏距离
@@ -17,13 +17,7 @@ public class VectorDistanceUtils {
      */
     public static double euclideanDistance(float[] vectorA, float[] vectorB) {
         validateVectors(vectorA, vectorB);
-        
-        double sum = 0.0;
-        for (int i = 0; i < vectorA.length; i++) {
-            double diff = vectorA[i] - vectorB[i];
-            sum += diff * diff;
-        }
-        return Math.sqrt(sum);
+        return VectorKernels.euclidean(vectorA, vectorB);
     }
 
     /**
@@ -35,29 +29,12 @@ public class VectorDistanceUtils {
      */
     public static double cosineDistance(float[] vectorA, float[] vectorB) {
         validateVectors(vectorA, vectorB);
-        
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        
-        for (int i = 0; i < vectorA.length; i++) {
-            dotProduct += vectorA[i] * vectorB[i];
-            normA += vectorA[i] * vectorA[i];
-            normB += vectorB[i] * vectorB[i];
-        }
-        
-        normA = Math.sqrt(normA);
-        normB = Math.sqrt(normB);
-        
-        // 处理零向量情况
-        if (normA < EPSILON || normB < EPSILON) {
+
+        // 一次遍历同时得到点积和两个范数，零向量时返回NaN
+        float similarity = VectorKernels.cosineOrNaN(vectorA, vectorB);
+        if (Float.isNaN(similarity)) {
             throw new IllegalArgumentException("Vectors cannot be zero vectors");
         }
-        
-        // 处理浮点误差，确保结果在[-1,1]范围内
-        double similarity =  dotProduct / (normA * normB);
-        similarity = Math.max(Math.min(similarity, 1.0), -1.0);
-        
         return similarity;
     }
 
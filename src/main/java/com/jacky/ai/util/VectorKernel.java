@@ -0,0 +1,37 @@
+package com.jacky.ai.util;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 21:40
+ * @description： 向量计算内核，由VectorKernels在启动时选择实现：
+ * - SimdVectorKernel：基于jdk.incubator.vector，需要启动参数 --add-modules jdk.incubator.vector
+ * - ScalarVectorKernel：普通循环，任何JVM都可用
+ * 全部使用float累加，调用方保证向量非空且等长。
+ */
+interface VectorKernel {
+
+    float dot(float[] a, float[] b);
+
+    float squaredEuclidean(float[] a, float[] b);
+
+    /**
+     * 余弦相似度，一次遍历同时累加点积和两个向量的平方和
+     * @return 余弦相似度，未截断到[-1, 1]；任一向量为零向量时返回NaN
+     */
+    float cosine(float[] a, float[] b);
+
+    /**
+     * 一个查询向量与多个向量逐一求点积
+     * @param query 查询向量
+     * @param vectors 向量数组
+     * @param offset 起始下标
+     * @param count 数量
+     * @param scores 输出，scores[i]为query与vectors[offset + i]的点积
+     */
+    void dotBatch(float[] query, float[][] vectors, int offset, int count, float[] scores);
+
+    /**
+     * @return 实现名称，用于日志
+     */
+    String name();
+}
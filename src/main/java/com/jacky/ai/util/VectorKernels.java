@@ -0,0 +1,150 @@
+package com.jacky.ai.util;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 21:55
+ * @description： 向量计算的统一入口，项目中所有向量库、重排的打分都经过这里
+ * 类加载时检测运行环境选择实现：
+ * - 启动参数包含 --add-modules jdk.incubator.vector 且CPU支持SIMD时，使用Vector API实现
+ * - 否则（或 -Dai.vector.kernel=scalar）使用标量实现，结果一致，只是更慢
+ * 与VectorDistanceUtils的区别：全程float累加，不逐元素转double；余弦相似度可以对预先归一化的向量直接用点积，
+ * 批量接口一次计算一个查询向量与一批向量的分数，向量库检索时不必每次重复计算范数。
+ */
+public final class VectorKernels {
+
+    private static final VectorKernel KERNEL = loadKernel();
+
+    // 防止实例化
+    private VectorKernels() {}
+
+    private static VectorKernel loadKernel() {
+        if ("scalar".equalsIgnoreCase(System.getProperty("ai.vector.kernel"))) {
+            return new ScalarVectorKernel();
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarVectorKernel();
+        }
+        try {
+            return (VectorKernel) Class.forName("com.jacky.ai.util.SimdVectorKernel")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return new ScalarVectorKernel();
+        }
+    }
+
+    /**
+     * @return 当前使用的实现，如"simd(256 bits)"、"scalar"
+     */
+    public static String implementation() {
+        return KERNEL.name();
+    }
+
+    /**
+     * 点积
+     * @param a 向量A
+     * @param b 向量B，与A等长
+     * @return 点积
+     */
+    public static float dot(float[] a, float[] b) {
+        checkLength(a, b);
+        return KERNEL.dot(a, b);
+    }
+
+    /**
+     * 欧氏距离的平方，比较远近时不需要开方
+     * @param a 向量A
+     * @param b 向量B，与A等长
+     * @return 欧氏距离的平方
+     */
+    public static float squaredEuclidean(float[] a, float[] b) {
+        checkLength(a, b);
+        return KERNEL.squaredEuclidean(a, b);
+    }
+
+    /**
+     * @param a 向量A
+     * @param b 向量B，与A等长
+     * @return 欧氏距离
+     */
+    public static float euclidean(float[] a, float[] b) {
+        return (float) Math.sqrt(squaredEuclidean(a, b));
+    }
+
+    /**
+     * @param vector 向量
+     * @return L2范数
+     */
+    public static float norm(float[] vector) {
+        return (float) Math.sqrt(KERNEL.dot(vector, vector));
+    }
+
+    /**
+     * 余弦相似度，两个向量都未归一化时使用；已归一化的向量直接用dot
+     * @param a 向量A
+     * @param b 向量B，与A等长
+     * @return 余弦相似度，范围[-1, 1]；任一向量为零向量时返回0
+     */
+    public static float cosine(float[] a, float[] b) {
+        float cosine = cosineOrNaN(a, b);
+        return Float.isNaN(cosine) ? 0 : cosine;
+    }
+
+    /**
+     * 与cosine相同，任一向量为零向量时返回NaN，供需要区分零向量的调用方使用
+     */
+    static float cosineOrNaN(float[] a, float[] b) {
+        checkLength(a, b);
+        return Math.max(-1f, Math.min(1f, KERNEL.cosine(a, b)));
+    }
+
+    /**
+     * 由点积和两个向量的平方和计算余弦相似度，供各实现共用
+     * @return 余弦相似度，未截断；任一平方和为0时返回NaN
+     */
+    static float cosine(float dot, float aa, float bb) {
+        double normProduct = Math.sqrt((double) aa * bb);
+        return normProduct == 0 ? Float.NaN : (float) (dot / normProduct);
+    }
+
+    /**
+     * 归一化为单位向量
+     * @param vector 向量，不会被修改
+     * @return 新的单位向量；零向量返回等长的零向量
+     */
+    public static float[] normalize(float[] vector) {
+        float[] normalized = vector.clone();
+        float norm = norm(vector);
+        if (norm > 0) {
+            float scale = 1 / norm;
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * 批量点积：一个查询向量与一批向量逐一求点积，向量都已归一化时即为余弦相似度
+     * @param query 查询向量
+     * @param vectors 向量数组，每个向量与查询向量等长
+     * @param offset 起始下标
+     * @param count 数量
+     * @param scores 输出，scores[i]为query与vectors[offset + i]的点积，长度不小于count
+     */
+    public static void dotBatch(float[] query, float[][] vectors, int offset, int count, float[] scores) {
+        if (offset < 0 || count < 0 || offset + count > vectors.length || count > scores.length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", count: " + count);
+        }
+        for (int j = offset; j < offset + count; j++) {
+            checkLength(query, vectors[j]);
+        }
+        KERNEL.dotBatch(query, vectors, offset, count, scores);
+    }
+
+    private static void checkLength(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Vectors must have same dimension: " + a.length + " != " + b.length);
+        }
+    }
+}
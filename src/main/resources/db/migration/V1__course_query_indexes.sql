@@ -0,0 +1,3 @@
+-- 课程查询工具：type等值、edu范围过滤后按price或duration排序
+CREATE INDEX idx_course_type_edu_price ON course (type, edu, price);
+CREATE INDEX idx_course_type_edu_duration ON course (type, edu, duration);
@@ -1,7 +1,12 @@
 package com.jacky.ai;
 
+import com.jacky.ai.loadtest.StubModelTestSupport;
+import com.jacky.ai.loadtest.TestPdfFactory;
+import com.jacky.ai.repository.TenantVectorStores;
+import com.jacky.ai.util.TenantContext;
 import com.jacky.ai.util.VectorDistanceUtils;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.ai.reader.ExtractedTextFormatter;
@@ -14,23 +19,30 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// 大模型与数据库使用本地模拟服务和H2，不需要外部服务
 @SpringBootTest
-class AiDemoApplicationTests {
+class AiDemoApplicationTests extends StubModelTestSupport {
 
     @Autowired
-    private VectorStore vectorStore;
+    private TenantVectorStores vectorStores;
 
     // 自动注入向量模型
     @Autowired
     private OpenAiEmbeddingModel embeddingModel;
 
     @Test
-    public void testVectorStore(){
-        Resource resource = new FileSystemResource("/Users/zhangjianqi/Code/IdeaProjects/AI/spring-ai" +
-                "/storage/pdf/pdf_1771568501127_知识笔记.pdf");
+    public void testVectorStore(@TempDir Path tempDir) throws IOException {
+        Path pdf = Files.write(tempDir.resolve("知识笔记.pdf"), TestPdfFactory.create(5));
+        Resource resource = new FileSystemResource(pdf);
         // 1.创建PDF的读取器
         PagePdfDocumentReader reader = new PagePdfDocumentReader(
                 resource, // 文件源
@@ -41,20 +53,18 @@ class AiDemoApplicationTests {
         );
         // 2.读取PDF文档，拆分为Document
         List<Document> documents = reader.read();
-        // 3.写入向量库
+        // 3.写入默认租户的向量库
+        VectorStore vectorStore = vectorStores.get(TenantContext.DEFAULT_TENANT);
         vectorStore.add(documents);
         // 4.搜索
         SearchRequest request = SearchRequest.builder()
-                .query("论语中教育的目的是什么")
+                .query("Which campus offers weekend classes?")
                 .topK(1)
-                .similarityThreshold(0.6)
-                .filterExpression("file_name == '中二知识笔记.pdf'")
+                .similarityThreshold(0.5)
+                .filterExpression("file_name == '知识笔记.pdf'")
                 .build();
         List<Document> docs = vectorStore.similaritySearch(request);
-        if (docs == null) {
-            System.out.println("没有搜索到任何内容");
-            return;
-        }
+        assertEquals(1, docs.size());
         for (Document doc : docs) {
             System.out.println(doc.getId());
             System.out.println(doc.getScore());
@@ -81,6 +91,7 @@ class AiDemoApplicationTests {
         // 2.向量化
         // 2.1.先将查询文本向量化
         float[] queryVector = embeddingModel.embed(query);
+        assertFalse(queryVector.length == 0);
 
         // 2.2.再将比较文本向量化，放到一个数组
         List<float[]> textVectors = embeddingModel.embed(Arrays.asList(texts));
@@ -0,0 +1,80 @@
+package com.jacky.ai.advisor;
+
+import com.jacky.ai.util.TokenUsageUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChatMetricsAdvisorTest {
+
+    @Test
+    void recordsTtftAndUsageFromLastChunk() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ChatMetricsAdvisor advisor = new ChatMetricsAdvisor("pdf", registry);
+        AdvisedRequest request = AdvisedRequest.builder()
+                .chatModel(prompt -> { throw new UnsupportedOperationException(); })
+                .userText("你好")
+                .chatOptions(ChatOptions.builder().model("qwen-max-latest").build())
+                .build();
+
+        advisor.aroundStream(request, advisedRequest -> Flux.just(
+                chunk("你", null),
+                chunk("好", null),
+                chunk("", new DefaultUsage(12, 30)))).blockLast();
+
+        assertEquals(1, registry.get("ai.chat.ttft").tags("client", "pdf", "model", "qwen-max-latest").timer().count());
+        assertEquals(12, registry.get("ai.chat.tokens").tags("type", "prompt").counter().count());
+        assertEquals(30, registry.get("ai.chat.tokens").tags("type", "completion").counter().count());
+        assertEquals(1, registry.get("ai.chat.duration").tags("mode", "stream", "outcome", "ok").timer().count());
+    }
+
+    @Test
+    void recordsCachedTokensAcrossToolRounds() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ChatMetricsAdvisor advisor = new ChatMetricsAdvisor("service", registry);
+        AdvisedRequest request = AdvisedRequest.builder()
+                .chatModel(prompt -> { throw new UnsupportedOperationException(); })
+                .userText("查课程")
+                .chatOptions(ChatOptions.builder().model("qwen-max-latest").build())
+                .build();
+        // 第一轮请求调用工具，第二轮回答；两轮都命中了系统提示词与工具定义的缓存
+        ChatResponse toolRound = new ChatResponse(List.of(),
+                ChatResponseMetadata.builder().usage(openAiUsage(1000, 20, 896)).build());
+        DefaultUsage answerUsage = openAiUsage(1100, 40, 1024);
+        DefaultUsage usage = (DefaultUsage) TokenUsageUtils.cumulative(answerUsage, toolRound);
+
+        advisor.aroundStream(request, advisedRequest -> Flux.just(chunk("有", null), chunk("", usage))).blockLast();
+
+        assertEquals(2100, registry.get("ai.chat.tokens").tags("type", "prompt").counter().count());
+        assertEquals(1920, registry.get("ai.chat.tokens").tags("type", "cached").counter().count());
+    }
+
+    private static DefaultUsage openAiUsage(int promptTokens, int completionTokens, int cachedTokens) {
+        OpenAiApi.Usage nativeUsage = new OpenAiApi.Usage(completionTokens, promptTokens, promptTokens + completionTokens,
+                new OpenAiApi.Usage.PromptTokensDetails(null, cachedTokens), null, null, null);
+        return new DefaultUsage(promptTokens, completionTokens, promptTokens + completionTokens, nativeUsage);
+    }
+
+    private static AdvisedResponse chunk(String text, DefaultUsage usage) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder();
+        if (usage != null) {
+            metadata.usage(usage);
+        }
+        ChatResponse response = new ChatResponse(List.of(new Generation(new AssistantMessage(text))), metadata.build());
+        return new AdvisedResponse(response, Map.of());
+    }
+}
@@ -0,0 +1,37 @@
+package com.jacky.ai.advisor;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LocalRerankerTest {
+
+    @Test
+    void lexicalOverlapBreaksCosineTies() {
+        LocalReranker reranker = new LocalReranker(0.5);
+        float[] query = {1, 0};
+        Map<String, float[]> embeddings = Map.of("a", new float[]{1, 0}, "b", new float[]{1, 0});
+
+        List<Document> reranked = reranker.rerank("ThreadLocal 内存泄漏", query,
+                List.of(new Document("a", "线程池的核心参数", Map.of()), new Document("b", "ThreadLocal 可能导致内存泄漏", Map.of())),
+                embeddings::get);
+
+        assertEquals(List.of("b", "a"), reranked.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void packSkipsDocumentsOverBudgetButKeepsTheBest() {
+        List<Document> ranked = List.of(
+                new Document("1", "一".repeat(80), Map.of()),
+                new Document("2", "二".repeat(50), Map.of()),
+                new Document("3", "三".repeat(10), Map.of()));
+
+        assertEquals(List.of("1", "3"), LocalReranker.pack(ranked, 4, 100).stream().map(Document::getId).toList());
+        assertEquals(List.of("1"), LocalReranker.pack(ranked, 4, 10).stream().map(Document::getId).toList());
+        assertEquals(List.of("1"), LocalReranker.pack(ranked, 1, 1000).stream().map(Document::getId).toList());
+    }
+}
@@ -0,0 +1,54 @@
+package com.jacky.ai.advisor;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PromptPrefixAdvisorTest {
+
+    @Test
+    void placesSystemPromptBeforeHistory() {
+        AdvisedRequest request = request("你是小星星", Map.of(), List.of(new UserMessage("q1"), new AssistantMessage("a1")));
+
+        List<Message> messages = PromptPrefixAdvisor.systemFirst(request).toPrompt().getInstructions();
+
+        assertEquals(List.of(MessageType.SYSTEM, MessageType.USER, MessageType.ASSISTANT, MessageType.USER),
+                messages.stream().map(Message::getMessageType).toList());
+        assertEquals("你是小星星", messages.get(0).getText());
+        assertEquals("q2", messages.get(3).getText());
+        // 不调整时系统提示词在历史之后
+        assertEquals(MessageType.SYSTEM, request.toPrompt().getInstructions().get(2).getMessageType());
+    }
+
+    @Test
+    void rendersSystemParamsOnlyWhenPresent() {
+        // 游戏提示词中的{女友心情}不是模板参数，没有参数时原样保留
+        AdvisedRequest literal = request("{女友心情}", Map.of(), List.of());
+        assertEquals("{女友心情}", PromptPrefixAdvisor.systemFirst(literal).toPrompt().getInstructions().get(0).getText());
+
+        AdvisedRequest templated = request("你是{name}", Map.of("name", "小星星"), List.of());
+        assertEquals("你是小星星", PromptPrefixAdvisor.systemFirst(templated).toPrompt().getInstructions().get(0).getText());
+
+        AdvisedRequest noSystem = request(null, Map.of(), List.of());
+        assertSame(noSystem, PromptPrefixAdvisor.systemFirst(noSystem));
+    }
+
+    private static AdvisedRequest request(String systemText, Map<String, Object> systemParams, List<Message> history) {
+        return AdvisedRequest.builder()
+                .chatModel(prompt -> { throw new UnsupportedOperationException(); })
+                .systemText(systemText)
+                .systemParams(systemParams)
+                .messages(history)
+                .userText("q2")
+                .build();
+    }
+}
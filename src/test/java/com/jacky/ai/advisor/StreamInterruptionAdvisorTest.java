@@ -0,0 +1,58 @@
+package com.jacky.ai.advisor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreamInterruptionAdvisorTest {
+
+    @Test
+    void tokensSavedAreEstimatedFromUsage() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StreamInterruptionAdvisor advisor = new StreamInterruptionAdvisor("pdf", new InMemoryChatMemory(), registry);
+        AdvisedRequest request = AdvisedRequest.builder()
+                .chatModel(prompt -> { throw new UnsupportedOperationException(); })
+                .userText("你好")
+                .build();
+
+        // 没有usage样本时中断，只记录次数
+        advisor.aroundStream(request, advisedRequest -> Flux.concat(Flux.just(chunk("你好", null)), Flux.never()))
+                .take(1).blockLast();
+        assertEquals(0, registry.get("ai.stream.tokens.saved").counter().count());
+
+        // 正常结束：4个字符，usage中completion为20，每字符5个token
+        advisor.aroundStream(request, advisedRequest -> Flux.just(
+                chunk("你好", null),
+                chunk("世界", null),
+                chunk("", new DefaultUsage(10, 20)))).blockLast();
+
+        // 输出2个字符后中断，估算已输出10个token，节省20 - 10
+        advisor.aroundStream(request, advisedRequest -> Flux.concat(Flux.just(chunk("你", null), chunk("好", null)), Flux.never()))
+                .take(2).blockLast();
+
+        assertEquals(2, registry.get("ai.stream.interrupted").counter().count());
+        assertEquals(10, registry.get("ai.stream.tokens.saved").counter().count());
+    }
+
+    private static AdvisedResponse chunk(String text, DefaultUsage usage) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder();
+        if (usage != null) {
+            metadata.usage(usage);
+        }
+        ChatResponse response = new ChatResponse(List.of(new Generation(new AssistantMessage(text))), metadata.build());
+        return new AdvisedResponse(response, Map.of());
+    }
+}
@@ -0,0 +1,129 @@
+package com.jacky.ai.config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.netty.handler.timeout.ReadTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用本地mock服务验证连接池复用与超时：服务端按客户端端口统计实际建立的连接数
+ */
+class ModelHttpClientConfigurationTest {
+
+    private HttpServer server;
+
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    private ConnectionProvider connectionProvider;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/v1/slow", exchange -> {
+            try {
+                Thread.sleep(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/v1/embeddings", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+    }
+
+    @Test
+    void sequentialRequestsReuseOneConnection() throws InterruptedException {
+        HttpClient client = newClient(4);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("{\"ok\":true}", get(client));
+            // 响应体读完后连接才异步归还连接池，立即发下一个请求会新建连接
+            Thread.sleep(50);
+        }
+
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    void concurrentRequestsAreBoundedByMaxConnections() {
+        HttpClient client = newClient(2);
+
+        Flux.range(0, 20).flatMap(i -> client.get().uri(url()).responseContent().aggregate().asString(), 20).blockLast();
+
+        assertTrue(clientPorts.size() <= 2, "opened " + clientPorts.size() + " connections");
+    }
+
+    @Test
+    void slowResponseHeadersHitFirstByteTimeout() {
+        ModelHttpClientProperties properties = properties(1);
+        properties.setFirstByteTimeout(Duration.ofMillis(200));
+        HttpClient client = newClient(properties);
+
+        Mono<String> slow = client.get().uri(url("/v1/slow")).responseContent().aggregate().asString();
+
+        assertThrows(ReadTimeoutException.class, () -> slow.block(Duration.ofSeconds(5)));
+    }
+
+    private HttpClient newClient(int maxConnections) {
+        return newClient(properties(maxConnections));
+    }
+
+    private HttpClient newClient(ModelHttpClientProperties properties) {
+        ModelHttpClientConfiguration configuration = new ModelHttpClientConfiguration();
+        connectionProvider = configuration.modelConnectionProvider(properties);
+        return configuration.modelHttpClient(connectionProvider, properties);
+    }
+
+    private static ModelHttpClientProperties properties(int maxConnections) {
+        ModelHttpClientProperties properties = new ModelHttpClientProperties();
+        properties.setMaxConnections(maxConnections);
+        // 本地mock服务是明文HTTP/1.1
+        properties.setHttp2(false);
+        properties.setMetricsEnabled(false);
+        return properties;
+    }
+
+    private String get(HttpClient client) {
+        return client.get().uri(url()).responseContent().aggregate().asString().block();
+    }
+
+    private String url() {
+        return url("/v1/embeddings");
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
@@ -0,0 +1,66 @@
+package com.jacky.ai.entity.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CourseQueryPlanTest {
+
+    @Test
+    void normalizesQuery() {
+        CourseQuery query = new CourseQuery();
+        query.setType(" 编程 ");
+        query.setEdu(2);
+        query.setSorts(List.of(sort(" Price ", false), sort("时长", null)));
+        query.setPage(3);
+        query.setSize(100);
+
+        CourseQueryPlan plan = CourseQueryPlan.of(query, 10, 20, 200);
+        assertEquals("编程", plan.type());
+        assertEquals(2, (int) plan.edu());
+        assertEquals(List.of(new CourseQueryPlan.Order(CourseSortField.PRICE, false),
+                new CourseQueryPlan.Order(CourseSortField.DURATION, true)), plan.orders());
+        // 每页数量按上限返回
+        assertEquals(20, plan.size());
+        assertEquals(40, plan.offset());
+
+        CourseQueryPlan defaults = CourseQueryPlan.of(null, 10, 20, 200);
+        assertNull(defaults.type());
+        assertEquals(List.of(), defaults.orders());
+        assertEquals(1, defaults.page());
+        assertEquals(10, defaults.size());
+    }
+
+    @Test
+    void rejectsInvalidQuery() {
+        assertThrows(IllegalArgumentException.class, () -> plan(q -> q.setSorts(List.of(sort("id; DROP TABLE course", true)))));
+        assertThrows(IllegalArgumentException.class, () -> plan(q -> q.setSorts(List.of(sort("name", true)))));
+        assertThrows(IllegalArgumentException.class, () -> plan(q -> q.setSorts(List.of(sort(null, true)))));
+        assertThrows(IllegalArgumentException.class, () -> plan(q -> q.setSorts(List.of(sort("price", true), sort("价格", false)))));
+        assertThrows(IllegalArgumentException.class, () -> plan(q -> q.setEdu(5)));
+        assertThrows(IllegalArgumentException.class, () -> plan(q -> q.setType("编".repeat(51))));
+        assertThrows(IllegalArgumentException.class, () -> plan(q -> q.setPage(0)));
+        assertThrows(IllegalArgumentException.class, () -> plan(q -> q.setSize(0)));
+        // 偏移量 (22 - 1) * 10 = 210 超过上限
+        assertThrows(IllegalArgumentException.class, () -> plan(q -> q.setPage(22)));
+        assertEquals(200, plan(q -> q.setPage(21)).offset());
+    }
+
+    private static CourseQueryPlan plan(Consumer<CourseQuery> customizer) {
+        CourseQuery query = new CourseQuery();
+        customizer.accept(query);
+        return CourseQueryPlan.of(query, 10, 20, 200);
+    }
+
+    private static CourseQuery.Sort sort(String field, Boolean asc) {
+        CourseQuery.Sort sort = new CourseQuery.Sort();
+        sort.setField(field);
+        sort.setAsc(asc);
+        return sort;
+    }
+}
@@ -0,0 +1,169 @@
+package com.jacky.ai.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 23:20
+ * @description： 接口压测：测量服务自身（会话记忆、检索、工具调用、日志、指标等）在模拟模型下的吞吐量与延迟
+ * 运行：mvn -Ploadtest test，参数：
+ * - loadtest.users：并发用户数，默认8
+ * - loadtest.warmup / loadtest.duration：预热与统计时间，默认5s / 20s
+ * - stub.*：模拟模型的速度，见StubModelTestSupport
+ * 每个场景输出一行结果，全部结果写入target/loadtest-report.json；场景中有失败的请求时测试失败。
+ */
+@Slf4j
+@Tag("loadtest")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ApiLoadTest extends StubModelTestSupport {
+
+    private static final int USERS = Integer.getInteger("loadtest.users", 8);
+
+    private static final Duration WARMUP = durationProperty("loadtest.warmup", "5s");
+
+    private static final Duration DURATION = durationProperty("loadtest.duration", "20s");
+
+    private static final byte[] PDF = TestPdfFactory.create(5);
+
+    private static final List<LoadRunner.ScenarioResult> RESULTS = new ArrayList<>();
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    @Order(1)
+    void chat() throws Exception {
+        run("chat", (user, iteration) ->
+                get("/ai/chat?prompt=" + encode("你好，介绍一下你自己") + "&chatId=load-chat-" + user));
+    }
+
+    @Test
+    @Order(2)
+    void service() throws Exception {
+        run("service", (user, iteration) ->
+                get("/ai/service?prompt=" + encode("有哪些适合本科生的编程课程？在哪些校区上课？") + "&chatId=load-service-" + user));
+    }
+
+    @Test
+    @Order(3)
+    void pdfUpload() throws Exception {
+        run("pdf-upload", (user, iteration) -> uploadPdf("load-upload-" + user + "-" + iteration));
+    }
+
+    @Test
+    @Order(4)
+    void pdfChat() throws Exception {
+        for (int user = 0; user < USERS; user++) {
+            uploadPdf("load-pdf-" + user);
+        }
+        run("pdf-chat", (user, iteration) ->
+                get("/ai/pdf/chat?prompt=" + encode("Which campus offers weekend classes?") + "&chatId=load-pdf-" + user));
+    }
+
+    @AfterAll
+    static void writeReport() throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("users", USERS);
+        report.put("warmupMillis", WARMUP.toMillis());
+        report.put("durationMillis", DURATION.toMillis());
+        report.put("stub", Map.of(
+                "firstTokenLatency", System.getProperty("stub.first-token-latency", "300ms"),
+                "tokensPerSecond", System.getProperty("stub.tokens-per-second", "50"),
+                "completionTokens", System.getProperty("stub.completion-tokens", "64"),
+                "embeddingLatency", System.getProperty("stub.embedding-latency", "20ms")));
+        report.put("scenarios", RESULTS);
+        Path file = Path.of("target", "loadtest-report.json");
+        Files.createDirectories(file.getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+        log.info("Load test report written to {}", file.toAbsolutePath());
+    }
+
+    private void run(String scenario, LoadRunner.Request request) throws InterruptedException {
+        LoadRunner.ScenarioResult result = LoadRunner.run(scenario, USERS, WARMUP, DURATION, request);
+        RESULTS.add(result);
+        log.info("{}", result);
+        assertEquals(0, result.errors(), scenario + " has failed requests");
+    }
+
+    /**
+     * GET请求，读取完整响应体
+     * @return 首字节耗时（纳秒）
+     */
+    private long get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+                .timeout(Duration.ofMinutes(2))
+                .GET()
+                .build();
+        return exchange(request);
+    }
+
+    /**
+     * 上传PDF（请求体即文件内容，走流式上传接口）
+     * @return 耗时（纳秒），上传接口在保存并向量化后才返回，首字节耗时即总耗时
+     */
+    private long uploadPdf(String chatId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/ai/pdf/upload/" + chatId + "?filename=handbook.pdf"))
+                .timeout(Duration.ofMinutes(2))
+                .header("Content-Type", "application/pdf")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(PDF))
+                .build();
+        long start = System.nanoTime();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200 || !response.body().contains("\"ok\":1")) {
+            throw new IOException("Upload failed: " + response.statusCode() + " " + response.body());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long exchange(HttpRequest request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + ": " + new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            // 流式接口的响应头在首个分片之前就已发出，首字节以读到响应体的第一个字节为准
+            int first = body.read();
+            long firstByte = System.nanoTime() - start;
+            if (first < 0) {
+                throw new IOException("Empty response body");
+            }
+            body.transferTo(OutputStream.nullOutputStream());
+            return firstByte;
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
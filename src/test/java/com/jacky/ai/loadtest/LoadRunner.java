@@ -0,0 +1,144 @@
+package com.jacky.ai.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 23:05
+ * @description： 闭环压测：users个虚拟用户各自循环发请求（上一个请求结束才发下一个），持续warmup + duration
+ * 预热阶段的请求不计入结果；统计吞吐量、首字节耗时（TTFB）与总耗时的p50/p90/p99。
+ */
+@Slf4j
+public class LoadRunner {
+
+    /**
+     * 单个请求
+     */
+    @FunctionalInterface
+    public interface Request {
+
+        /**
+         * @param user 虚拟用户编号，从0开始
+         * @param iteration 该用户的第几次请求，从0开始
+         * @return 首字节耗时（纳秒），没有响应体时返回总耗时
+         * @throws Exception 请求失败
+         */
+        long execute(int user, long iteration) throws Exception;
+    }
+
+    private LoadRunner() {}
+
+    /**
+     * 运行一个场景
+     * @param name 场景名
+     * @param users 并发用户数
+     * @param warmup 预热时间
+     * @param duration 统计时间
+     * @param request 请求
+     * @return 结果
+     */
+    public static ScenarioResult run(String name, int users, Duration warmup, Duration duration, Request request)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        LatencyRecorder latency = new LatencyRecorder();
+        LatencyRecorder firstByte = new LatencyRecorder();
+        AtomicLong errors = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        List<Future<?>> futures = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            int user = i;
+            futures.add(executor.submit(() -> {
+                for (long iteration = 0; System.nanoTime() < end; iteration++) {
+                    long requestStart = System.nanoTime();
+                    boolean measured = requestStart >= measureFrom;
+                    try {
+                        long ttfb = request.execute(user, iteration);
+                        long elapsed = System.nanoTime() - requestStart;
+                        // 预热阶段发出、统计阶段结束的请求也不计入
+                        if (measured && requestStart + elapsed <= end) {
+                            latency.record(elapsed);
+                            firstByte.record(ttfb);
+                        }
+                    } catch (Exception e) {
+                        if (measured) {
+                            errors.incrementAndGet();
+                            log.warn("[{}] user {} request {} failed: {}", name, user, iteration, e.toString());
+                        }
+                    }
+                }
+            }));
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(duration.toNanos() + warmup.toNanos() + TimeUnit.MINUTES.toNanos(5), TimeUnit.NANOSECONDS)) {
+            executor.shutdownNow();
+        }
+        futures.forEach(future -> future.cancel(true));
+        return new ScenarioResult(name, users, duration.toMillis(), latency.count(), errors.get(),
+                latency.count() * 1000.0 / duration.toMillis(),
+                firstByte.percentileMillis(50), firstByte.percentileMillis(99),
+                latency.percentileMillis(50), latency.percentileMillis(90), latency.percentileMillis(99),
+                latency.percentileMillis(100));
+    }
+
+    /**
+     * 场景结果，耗时单位为毫秒
+     */
+    public record ScenarioResult(String scenario, int users, long durationMillis, long requests, long errors,
+                                 double throughput, double ttfbP50, double ttfbP99,
+                                 double p50, double p90, double p99, double max) {
+
+        @Override
+        public String toString() {
+            return String.format("%-12s users=%-4d requests=%-6d errors=%-4d throughput=%8.2f/s ttfb(p50/p99)=%8.1f/%8.1fms latency(p50/p90/p99/max)=%8.1f/%8.1f/%8.1f/%8.1fms",
+                    scenario, users, requests, errors, throughput, ttfbP50, ttfbP99, p50, p90, p99, max);
+        }
+    }
+
+    /**
+     * 记录全部耗时，结束后排序取分位数；压测的请求量不大，不需要直方图近似
+     */
+    static final class LatencyRecorder {
+
+        private long[] values = new long[1024];
+
+        private int size;
+
+        synchronized void record(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        synchronized long count() {
+            return size;
+        }
+
+        /**
+         * @param percentile 分位，如50、99；100为最大值
+         * @return 耗时（毫秒），没有数据时为0
+         */
+        synchronized double percentileMillis(double percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            // nearest-rank
+            int rank = (int) Math.ceil(percentile / 100 * size);
+            return sorted[Math.max(0, Math.min(size, rank) - 1)] / 1e6;
+        }
+    }
+}
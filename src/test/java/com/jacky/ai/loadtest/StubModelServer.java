@@ -0,0 +1,543 @@
+package com.jacky.ai.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 22:40
+ * @description： 本地模拟的大模型服务，压测与集成测试时替代百炼（OpenAI兼容接口）和Ollama
+ * 支持的接口：
+ * - OpenAI兼容：POST /v1/chat/completions（含SSE流式、stream_options.include_usage、工具调用），POST /v1/embeddings
+ * - Ollama：POST /api/chat（NDJSON流式），POST /api/embed
+ * 生成速度可配置：首个token前等待firstTokenLatency，之后按tokensPerSecond逐个输出；向量接口等待embeddingLatency。
+ * 请求带有工具定义、且最后一条消息不是工具结果时，按toolCalls返回工具调用（只返回请求中存在的工具），工具结果回传后再输出文本。
+ * 向量由文本切分后的片段哈希得到（见embed），相同文本的向量相同，有相同片段的文本相似度更高，检索结果稳定。
+ */
+@Slf4j
+public class StubModelServer implements AutoCloseable {
+
+    private static final String[] VOCABULARY = {"这是", "一段", "用于", "压测", "的", "模拟", "回答", "，", "内容", "没有", "实际", "含义", "。"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Duration firstTokenLatency;
+
+    private final double tokensPerSecond;
+
+    private final int completionTokens;
+
+    private final Duration embeddingLatency;
+
+    private final int dimensions;
+
+    private final Map<String, String> toolCalls;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    private StubModelServer(Builder builder) {
+        this.firstTokenLatency = builder.firstTokenLatency;
+        this.tokensPerSecond = builder.tokensPerSecond;
+        this.completionTokens = builder.completionTokens;
+        this.embeddingLatency = builder.embeddingLatency;
+        this.dimensions = builder.dimensions;
+        this.toolCalls = builder.toolCalls;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 在随机端口启动
+     * @return 当前实例
+     */
+    public StubModelServer start() {
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to start stub model server", e);
+        }
+        // 流式输出期间一直占用线程，按请求数扩展
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "stub-model");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, this::openAiChat));
+        server.createContext("/v1/embeddings", exchange -> handle(exchange, this::openAiEmbeddings));
+        server.createContext("/api/chat", exchange -> handle(exchange, this::ollamaChat));
+        server.createContext("/api/embed", exchange -> handle(exchange, this::ollamaEmbed));
+        server.start();
+        log.info("Stub model server started at {}", baseUrl());
+        return this;
+    }
+
+    /**
+     * @return 服务地址，如 http://127.0.0.1:12345
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return 已处理的请求数
+     */
+    public long requestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Handler {
+        void handle(JsonNode request, HttpExchange exchange) throws IOException, InterruptedException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) {
+        requests.incrementAndGet();
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            handler.handle(request, exchange);
+        } catch (IOException e) {
+            // 调用方取消流式输出时连接被关闭
+            log.debug("Stub response aborted: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---------------------------------------------------------------- OpenAI兼容接口
+
+    private void openAiChat(JsonNode request, HttpExchange exchange) throws IOException, InterruptedException {
+        String model = request.path("model").asText("stub");
+        boolean stream = request.path("stream").asBoolean(false);
+        boolean includeUsage = request.path("stream_options").path("include_usage").asBoolean(false);
+        int promptTokens = estimatePromptTokens(request.path("messages"));
+        List<ToolCall> calls = toolCallsFor(request);
+        String id = "chatcmpl-" + UUID.randomUUID();
+        long created = Instant.now().getEpochSecond();
+
+        if (!stream) {
+            sleep(firstTokenLatency);
+            ObjectNode message = objectMapper.createObjectNode().put("role", "assistant");
+            String finishReason = "stop";
+            int completion = 0;
+            if (!calls.isEmpty()) {
+                message.putNull("content");
+                message.set("tool_calls", openAiToolCalls(calls));
+                finishReason = "tool_calls";
+            } else {
+                sleepForTokens(completionTokens);
+                message.put("content", String.join("", tokens()));
+                completion = completionTokens;
+            }
+            ObjectNode response = openAiEnvelope(id, created, model, "chat.completion");
+            response.putArray("choices").addObject()
+                    .put("index", 0)
+                    .put("finish_reason", finishReason)
+                    .set("message", message);
+            response.set("usage", openAiUsage(promptTokens, completion));
+            writeJson(exchange, response);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        sleep(firstTokenLatency);
+        int completion = 0;
+        String finishReason = "stop";
+        if (!calls.isEmpty()) {
+            ObjectNode delta = objectMapper.createObjectNode().put("role", "assistant");
+            delta.set("tool_calls", openAiToolCalls(calls));
+            writeEvent(out, openAiChunk(id, created, model, delta, null));
+            finishReason = "tool_calls";
+        } else {
+            long interval = tokenIntervalNanos();
+            for (String token : tokens()) {
+                ObjectNode delta = objectMapper.createObjectNode().put("role", "assistant").put("content", token);
+                writeEvent(out, openAiChunk(id, created, model, delta, null));
+                completion++;
+                TimeUnit.NANOSECONDS.sleep(interval);
+            }
+        }
+        writeEvent(out, openAiChunk(id, created, model, objectMapper.createObjectNode(), finishReason));
+        if (includeUsage) {
+            // 与百炼一致：最后一个分片的choices为空，只带usage
+            ObjectNode usageChunk = openAiEnvelope(id, created, model, "chat.completion.chunk");
+            usageChunk.putArray("choices");
+            usageChunk.set("usage", openAiUsage(promptTokens, completion));
+            writeEvent(out, usageChunk);
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void openAiEmbeddings(JsonNode request, HttpExchange exchange) throws IOException, InterruptedException {
+        List<String> inputs = textsOf(request.path("input"));
+        int requestDimensions = request.path("dimensions").asInt(dimensions);
+        sleep(embeddingLatency);
+        ObjectNode response = objectMapper.createObjectNode()
+                .put("object", "list")
+                .put("model", request.path("model").asText("stub-embedding"));
+        ArrayNode data = response.putArray("data");
+        int tokens = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            ObjectNode item = data.addObject().put("object", "embedding").put("index", i);
+            writeVector(item.putArray("embedding"), embed(inputs.get(i), requestDimensions));
+            tokens += inputs.get(i).length();
+        }
+        response.putObject("usage").put("prompt_tokens", tokens).put("total_tokens", tokens);
+        writeJson(exchange, response);
+    }
+
+    private ObjectNode openAiEnvelope(String id, long created, String model, String object) {
+        return objectMapper.createObjectNode()
+                .put("id", id)
+                .put("object", object)
+                .put("created", created)
+                .put("model", model);
+    }
+
+    private ObjectNode openAiChunk(String id, long created, String model, ObjectNode delta, String finishReason) {
+        ObjectNode chunk = openAiEnvelope(id, created, model, "chat.completion.chunk");
+        ObjectNode choice = chunk.putArray("choices").addObject().put("index", 0);
+        choice.set("delta", delta);
+        if (finishReason != null) {
+            choice.put("finish_reason", finishReason);
+        } else {
+            choice.putNull("finish_reason");
+        }
+        return chunk;
+    }
+
+    private ObjectNode openAiUsage(int promptTokens, int completion) {
+        return objectMapper.createObjectNode()
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", completion)
+                .put("total_tokens", promptTokens + completion);
+    }
+
+    private ArrayNode openAiToolCalls(List<ToolCall> calls) {
+        ArrayNode array = objectMapper.createArrayNode();
+        for (int i = 0; i < calls.size(); i++) {
+            ObjectNode call = array.addObject()
+                    .put("index", i)
+                    .put("id", "call_" + UUID.randomUUID().toString().replace("-", ""))
+                    .put("type", "function");
+            call.putObject("function")
+                    .put("name", calls.get(i).name())
+                    .put("arguments", calls.get(i).arguments());
+        }
+        return array;
+    }
+
+    // ---------------------------------------------------------------- Ollama接口
+
+    private void ollamaChat(JsonNode request, HttpExchange exchange) throws IOException, InterruptedException {
+        String model = request.path("model").asText("stub");
+        // Ollama默认流式输出
+        boolean stream = request.path("stream").asBoolean(true);
+        int promptTokens = estimatePromptTokens(request.path("messages"));
+        long start = System.nanoTime();
+
+        if (!stream) {
+            sleep(firstTokenLatency);
+            sleepForTokens(completionTokens);
+            ObjectNode response = ollamaMessage(model, String.join("", tokens()));
+            finishOllama(response, promptTokens, completionTokens, start);
+            writeJson(exchange, response);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        sleep(firstTokenLatency);
+        long interval = tokenIntervalNanos();
+        int completion = 0;
+        for (String token : tokens()) {
+            ObjectNode chunk = ollamaMessage(model, token).put("done", false);
+            writeLine(out, chunk);
+            completion++;
+            TimeUnit.NANOSECONDS.sleep(interval);
+        }
+        ObjectNode last = ollamaMessage(model, "");
+        finishOllama(last, promptTokens, completion, start);
+        writeLine(out, last);
+    }
+
+    private void ollamaEmbed(JsonNode request, HttpExchange exchange) throws IOException, InterruptedException {
+        List<String> inputs = textsOf(request.path("input"));
+        sleep(embeddingLatency);
+        ObjectNode response = objectMapper.createObjectNode().put("model", request.path("model").asText("stub-embedding"));
+        ArrayNode embeddings = response.putArray("embeddings");
+        for (String input : inputs) {
+            writeVector(embeddings.addArray(), embed(input, dimensions));
+        }
+        writeJson(exchange, response);
+    }
+
+    private ObjectNode ollamaMessage(String model, String content) {
+        ObjectNode node = objectMapper.createObjectNode()
+                .put("model", model)
+                .put("created_at", Instant.now().toString());
+        node.putObject("message").put("role", "assistant").put("content", content);
+        return node;
+    }
+
+    private void finishOllama(ObjectNode node, int promptTokens, int completion, long start) {
+        long duration = System.nanoTime() - start;
+        node.put("done", true)
+                .put("done_reason", "stop")
+                .put("total_duration", duration)
+                .put("load_duration", 0)
+                .put("prompt_eval_count", promptTokens)
+                .put("prompt_eval_duration", 0)
+                .put("eval_count", completion)
+                .put("eval_duration", duration);
+    }
+
+    // ---------------------------------------------------------------- 公共
+
+    /**
+     * 请求带有工具定义，且最后一条消息不是工具结果时，返回配置中请求里存在的工具调用
+     */
+    private List<ToolCall> toolCallsFor(JsonNode request) {
+        JsonNode tools = request.path("tools");
+        JsonNode messages = request.path("messages");
+        if (toolCalls.isEmpty() || !tools.isArray() || tools.isEmpty() || !messages.isArray() || messages.isEmpty()) {
+            return List.of();
+        }
+        if ("tool".equals(messages.get(messages.size() - 1).path("role").asText())) {
+            return List.of();
+        }
+        List<ToolCall> calls = new ArrayList<>();
+        for (JsonNode tool : tools) {
+            String name = tool.path("function").path("name").asText();
+            if (toolCalls.containsKey(name)) {
+                calls.add(new ToolCall(name, toolCalls.get(name)));
+            }
+        }
+        return calls;
+    }
+
+    private List<String> tokens() {
+        List<String> tokens = new ArrayList<>(completionTokens);
+        for (int i = 0; i < completionTokens; i++) {
+            tokens.add(VOCABULARY[i % VOCABULARY.length]);
+        }
+        return tokens;
+    }
+
+    private long tokenIntervalNanos() {
+        return tokensPerSecond > 0 ? (long) (1e9 / tokensPerSecond) : 0;
+    }
+
+    private void sleepForTokens(int count) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(tokenIntervalNanos() * count);
+    }
+
+    private static void sleep(Duration duration) throws InterruptedException {
+        if (!duration.isZero() && !duration.isNegative()) {
+            TimeUnit.NANOSECONDS.sleep(duration.toNanos());
+        }
+    }
+
+    // 粗略估算：每个字符一个token
+    private static int estimatePromptTokens(JsonNode messages) {
+        int tokens = 0;
+        for (JsonNode message : messages) {
+            tokens += message.path("content").asText("").length();
+        }
+        return tokens;
+    }
+
+    private static List<String> textsOf(JsonNode input) {
+        List<String> texts = new ArrayList<>();
+        if (input.isArray()) {
+            input.forEach(node -> texts.add(node.asText()));
+        } else {
+            texts.add(input.asText());
+        }
+        return texts;
+    }
+
+    /**
+     * 文本的确定性向量：英文按单词、中文按相邻两字切分，每个片段哈希到一个维度计数后归一化，
+     * 再加上所有文本共有的分量，使两个向量的余弦相似度 = 0.4 + 0.6 * 片段重合度，接近真实向量模型的分布
+     */
+    static float[] embed(String text, int dimensions) {
+        float[] vector = new float[dimensions];
+        List<String> pieces = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        char previous = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+                previous = 0;
+                continue;
+            }
+            if (!word.isEmpty()) {
+                pieces.add(word.toString());
+                word.setLength(0);
+            }
+            if (Character.isLetterOrDigit(c)) {
+                pieces.add(previous != 0 ? "" + previous + c : String.valueOf(c));
+                previous = c;
+            } else {
+                previous = 0;
+            }
+        }
+        for (String piece : pieces) {
+            int hash = piece.hashCode();
+            hash ^= hash >>> 16;
+            hash *= 0x45d9f3b;
+            hash ^= hash >>> 16;
+            // 第0维留给公共分量
+            vector[1 + Math.floorMod(hash, dimensions - 1)] += 1;
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float scale = norm > 0 ? (float) (Math.sqrt(0.6) / Math.sqrt(norm)) : 0;
+        for (int i = 1; i < dimensions; i++) {
+            vector[i] *= scale;
+        }
+        vector[0] = (float) (norm > 0 ? Math.sqrt(0.4) : 1);
+        return vector;
+    }
+
+    private static void writeVector(ArrayNode array, float[] vector) {
+        for (float value : vector) {
+            array.add(value);
+        }
+    }
+
+    private void writeJson(HttpExchange exchange, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private void writeEvent(OutputStream out, JsonNode data) throws IOException {
+        out.write(("data: " + objectMapper.writeValueAsString(data) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void writeLine(OutputStream out, JsonNode data) throws IOException {
+        out.write((objectMapper.writeValueAsString(data) + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private record ToolCall(String name, String arguments) {
+    }
+
+    public static class Builder {
+
+        private Duration firstTokenLatency = Duration.ofMillis(300);
+
+        private double tokensPerSecond = 50;
+
+        private int completionTokens = 64;
+
+        private Duration embeddingLatency = Duration.ofMillis(20);
+
+        private int dimensions = 1024;
+
+        private final Map<String, String> toolCalls = new LinkedHashMap<>();
+
+        /**
+         * @param firstTokenLatency 首个token前的等待时间（模拟排队与prefill）
+         */
+        public Builder firstTokenLatency(Duration firstTokenLatency) {
+            this.firstTokenLatency = firstTokenLatency;
+            return this;
+        }
+
+        /**
+         * @param tokensPerSecond 生成速度，0表示不限速
+         */
+        public Builder tokensPerSecond(double tokensPerSecond) {
+            this.tokensPerSecond = tokensPerSecond;
+            return this;
+        }
+
+        /**
+         * @param completionTokens 每次回答输出的token数
+         */
+        public Builder completionTokens(int completionTokens) {
+            this.completionTokens = completionTokens;
+            return this;
+        }
+
+        /**
+         * @param embeddingLatency 向量接口的耗时
+         */
+        public Builder embeddingLatency(Duration embeddingLatency) {
+            this.embeddingLatency = embeddingLatency;
+            return this;
+        }
+
+        /**
+         * @param dimensions 向量维度，OpenAI兼容接口优先使用请求中的dimensions
+         */
+        public Builder dimensions(int dimensions) {
+            this.dimensions = dimensions;
+            return this;
+        }
+
+        /**
+         * 请求中存在该工具时先返回工具调用
+         * @param name 工具名
+         * @param arguments 参数JSON
+         */
+        public Builder toolCall(String name, String arguments) {
+            this.toolCalls.put(name, arguments);
+            return this;
+        }
+
+        public StubModelServer build() {
+            return new StubModelServer(this);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.jacky.ai.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 22:55
+ * @description： 不依赖外部服务的Spring Boot测试基类：启动本地模拟的大模型服务，并把百炼、Ollama的地址指向它
+ * 数据库使用H2内嵌数据库（application-stub.yaml），PDF与向量快照写入target/stub-storage，每次运行前清空。
+ * 模拟服务的速度可以用系统属性调整：stub.first-token-latency、stub.tokens-per-second、stub.completion-tokens、stub.embedding-latency
+ */
+@ActiveProfiles("stub")
+public abstract class StubModelTestSupport {
+
+    protected static final StubModelServer STUB_MODEL_SERVER = StubModelServer.builder()
+            .firstTokenLatency(durationProperty("stub.first-token-latency", "300ms"))
+            .tokensPerSecond(Double.parseDouble(System.getProperty("stub.tokens-per-second", "50")))
+            .completionTokens(Integer.getInteger("stub.completion-tokens", 64))
+            .embeddingLatency(durationProperty("stub.embedding-latency", "20ms"))
+            // 客服对话先调用工具查询课程与校区（H2），再输出回答
+            .toolCall("queryCourse", "{\"query\":{\"type\":\"编程\",\"edu\":4}}")
+            .toolCall("queryAllSchools", "{}")
+            .build()
+            .start();
+
+    static {
+        try {
+            FileSystemUtils.deleteRecursively(Path.of("target", "stub-storage"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void stubModelProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.ai.openai.base-url", STUB_MODEL_SERVER::baseUrl);
+        registry.add("spring.ai.ollama.base-url", STUB_MODEL_SERVER::baseUrl);
+    }
+
+    protected static Duration durationProperty(String name, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(name, defaultValue));
+    }
+}
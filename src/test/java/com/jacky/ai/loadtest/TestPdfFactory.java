@@ -0,0 +1,55 @@
+package com.jacky.ai.loadtest;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/19 23:10
+ * @description： 生成测试用的PDF，每页一段不同主题的英文（标准字体不含中文字形）
+ */
+public final class TestPdfFactory {
+
+    private static final String[] TOPICS = {
+            "The course schedule covers Java programming, Spring Boot and database design over one hundred days.",
+            "Campus locations include Beijing, Hangzhou and Shanghai, each offering evening and weekend classes.",
+            "Tuition fees can be paid in installments and a refund is available within the first seven days.",
+            "Graduates receive career coaching, mock interviews and referrals to partner companies.",
+            "The artificial intelligence track teaches retrieval augmented generation and vector databases.",
+    };
+
+    private TestPdfFactory() {}
+
+    /**
+     * @param pages 页数
+     * @return PDF文件内容
+     */
+    public static byte[] create(int pages) {
+        try (PDDocument document = new PDDocument();
+             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int i = 0; i < pages; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 11);
+                    content.newLineAtOffset(50, 700);
+                    content.showText("Page " + (i + 1) + ". " + TOPICS[i % TOPICS.length]);
+                    content.endText();
+                }
+            }
+            document.save(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.jacky.ai.model;
+
+import com.jacky.ai.tools.CourseTools;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.SimpleApiKey;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbacks;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AlibabaOpenAiChatModelTest {
+
+    private final OpenAiChatOptions defaultOptions = OpenAiChatOptions.builder()
+            .model("qwen-max-latest")
+            .temperature(0.7)
+            .maxTokens(1024)
+            .streamUsage(true)
+            .build();
+
+    private final ToolCallingManager toolCallingManager = ToolCallingManager.builder().build();
+
+    private final AlibabaOpenAiChatModel model = AlibabaOpenAiChatModel.builder()
+            .openAiApi(new DashScopeOpenAiApi("http://localhost", new SimpleApiKey("stub")))
+            .defaultOptions(defaultOptions)
+            .toolCallingManager(toolCallingManager)
+            .build();
+
+    // 与ChatClient一样，工具回调只在构建时生成一次
+    private final List<ToolCallback> toolCallbacks = List.of(ToolCallbacks.from(new CourseTools(null, null, null)));
+
+    @Test
+    void compiledRequestMatchesLegacyMerge() {
+        List<Message> messages = List.of(
+                new SystemMessage("你是客服"),
+                new UserMessage("有哪些编程课"),
+                new AssistantMessage("", Map.of(), List.of(
+                        new AssistantMessage.ToolCall("call-1", "function", "queryCourse", "{\"query\":{\"type\":\"编程\"}}"))),
+                new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call-1", "queryCourse", "[]"))),
+                new UserMessage("那校区呢"));
+        for (boolean stream : new boolean[]{true, false}) {
+            Prompt prompt = new Prompt(messages, runtimeOptions());
+            String expected = ModelOptionsUtils.toJsonString(
+                    LegacyChatRequests.createRequest(model, defaultOptions, toolCallingManager, prompt, stream));
+            // 第二次走缓存，结果相同
+            for (int i = 0; i < 2; i++) {
+                OpenAiApi.ChatCompletionRequest request = model.createRequest(
+                        model.buildRequestPrompt(new Prompt(messages, runtimeOptions())), stream);
+                assertEquals(expected, ModelOptionsUtils.toJsonString(request));
+            }
+        }
+    }
+
+    @Test
+    void reusesCompiledToolsAcrossRequests() {
+        Prompt first = model.buildRequestPrompt(new Prompt(List.of(new UserMessage("a")), runtimeOptions()));
+        Prompt second = model.buildRequestPrompt(new Prompt(List.of(new UserMessage("b")), runtimeOptions()));
+        // 合并后的选项每次是副本，调用方修改不影响缓存
+        assertNotSame(first.getOptions(), second.getOptions());
+        assertEquals(first.getOptions(), second.getOptions());
+
+        OpenAiApi.ChatCompletionRequest a = model.createRequest(first, true);
+        OpenAiApi.ChatCompletionRequest b = model.createRequest(second, true);
+        assertSame(a.tools(), b.tools());
+        assertEquals(List.of("generateCourseReservation", "queryAllSchools", "queryCourse"),
+                a.tools().stream().map(tool -> tool.getFunction().getName()).toList());
+        assertEquals("b", b.messages().get(0).content());
+    }
+
+    @Test
+    void mergesInterleavedStreamedToolCallsByIndex() throws Exception {
+        // 两个并行的tool call分片交错到达，只有第一个分片带id
+        List<String> chunks = List.of(
+                toolCallChunk("{\"index\":0,\"id\":\"call-a\",\"type\":\"function\",\"function\":{\"name\":\"queryAllSchools\",\"arguments\":\"\"}}"),
+                toolCallChunk("{\"index\":1,\"id\":\"call-b\",\"type\":\"function\",\"function\":{\"name\":\"queryCourse\",\"arguments\":\"{\\\"type\\\"\"}}"),
+                toolCallChunk("{\"index\":0,\"id\":\"\",\"function\":{\"arguments\":\"{}\"}}"),
+                toolCallChunk("{\"index\":1,\"function\":{\"arguments\":\":\\\"编程\\\"}\"}}"),
+                "{\"id\":\"chunk\",\"object\":\"chat.completion.chunk\",\"model\":\"qwen-max-latest\","
+                        + "\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"tool_calls\"}]}");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (String chunk : chunks) {
+                    out.write(("data: " + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+        try {
+            AlibabaOpenAiChatModel streamingModel = AlibabaOpenAiChatModel.builder()
+                    .openAiApi(new DashScopeOpenAiApi("http://127.0.0.1:" + server.getAddress().getPort(), new SimpleApiKey("stub")))
+                    .defaultOptions(defaultOptions)
+                    .toolCallingManager(toolCallingManager)
+                    .build();
+            OpenAiChatOptions options = OpenAiChatOptions.builder().internalToolExecutionEnabled(false).build();
+
+            List<AssistantMessage.ToolCall> calls = streamingModel.stream(new Prompt("有哪些校区和编程课", options))
+                    .collectList()
+                    .block(Duration.ofSeconds(10))
+                    .stream()
+                    .filter(ChatResponse::hasToolCalls)
+                    .findFirst()
+                    .orElseThrow()
+                    .getResult()
+                    .getOutput()
+                    .getToolCalls();
+
+            assertEquals(List.of(
+                    new AssistantMessage.ToolCall("call-a", "function", "queryAllSchools", "{}"),
+                    new AssistantMessage.ToolCall("call-b", "function", "queryCourse", "{\"type\":\"编程\"}")), calls);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String toolCallChunk(String toolCall) {
+        return "{\"id\":\"chunk\",\"object\":\"chat.completion.chunk\",\"model\":\"qwen-max-latest\","
+                + "\"choices\":[{\"index\":0,\"delta\":{\"tool_calls\":[" + toolCall + "]}}]}";
+    }
+
+    private OpenAiChatOptions runtimeOptions() {
+        OpenAiChatOptions options = (OpenAiChatOptions) model.getDefaultOptions();
+        options.setToolCallbacks(List.copyOf(toolCallbacks));
+        return options;
+    }
+}
@@ -0,0 +1,122 @@
+package com.jacky.ai.model;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingEmbeddingModelTest {
+
+    @Test
+    void repeatedQueryIsServedFromCache() {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel(0);
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "test", 10, 5, 16, new SimpleMeterRegistry());
+
+        float[] first = model.embed("什么是ThreadLocal");
+        float[] second = model.embed("什么是ThreadLocal");
+
+        assertArrayEquals(first, second);
+        assertNotSame(first, second);
+        assertEquals(1, delegate.calls.get());
+    }
+
+    @Test
+    void mutatingReturnedEmbeddingDoesNotCorruptCache() {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel(0);
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "test", 10, 5, 16, new SimpleMeterRegistry());
+
+        float[] first = model.embed("什么是ThreadLocal");
+        float[] expected = first.clone();
+        Arrays.fill(first, 0f);
+
+        assertArrayEquals(expected, model.embed("什么是ThreadLocal"));
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel(0);
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "test", 2, 5, 16, new SimpleMeterRegistry());
+
+        model.embed("a");
+        model.embed("b");
+        model.embed("a");
+        model.embed("c");
+        model.embed("a");
+        model.embed("b");
+
+        assertEquals(4, delegate.calls.get());
+    }
+
+    @Test
+    void concurrentQueriesAreBatched() throws Exception {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel(50);
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "test", 100, 20, 16, new SimpleMeterRegistry());
+        ExecutorService executor = Executors.newFixedThreadPool(9);
+        try {
+            // 第一个请求在途时，后续8个请求合并为一批
+            Future<float[]> first = executor.submit(() -> model.embed("q0"));
+            Thread.sleep(10);
+            List<Future<float[]>> futures = new ArrayList<>();
+            for (int i = 1; i <= 8; i++) {
+                String text = "q" + i;
+                futures.add(executor.submit(() -> model.embed(text)));
+            }
+            assertEquals(2, first.get(5, TimeUnit.SECONDS).length);
+            for (Future<float[]> future : futures) {
+                assertEquals(2, future.get(5, TimeUnit.SECONDS).length);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(delegate.calls.get() <= 3, "expected batched calls, got " + delegate.calls.get());
+        assertEquals(9, delegate.texts.get());
+    }
+
+    /**
+     * 统计调用次数与文本数量，每次调用休眠指定毫秒模拟网络耗时
+     */
+    private static class CountingEmbeddingModel implements EmbeddingModel {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final AtomicInteger texts = new AtomicInteger();
+
+        private final long latencyMillis;
+
+        CountingEmbeddingModel(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            calls.incrementAndGet();
+            texts.addAndGet(request.getInstructions().size());
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(new float[]{i, 1}, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.jacky.ai.model;
+
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 02:55
+ * @description： 预编译之前的请求生成方式（每次请求都经过ModelOptionsUtils合并选项、解析工具Schema），
+ * 作为ChatRequestTemplates的对照：测试比较两者生成的请求是否一致，基准测试比较两者的耗时与内存分配。
+ */
+public class LegacyChatRequests {
+
+    // 防止实例化
+    private LegacyChatRequests() {}
+
+    public static OpenAiApi.ChatCompletionRequest createRequest(AlibabaOpenAiChatModel model,
+                                                                OpenAiChatOptions defaultOptions,
+                                                                ToolCallingManager toolCallingManager,
+                                                                Prompt prompt, boolean stream) {
+        OpenAiChatOptions requestOptions = mergeOptions((ToolCallingChatOptions) prompt.getOptions(), defaultOptions);
+        OpenAiApi.ChatCompletionRequest request = new OpenAiApi.ChatCompletionRequest(
+                model.toChatCompletionMessages(prompt.getInstructions()), stream);
+        request = ModelOptionsUtils.merge(requestOptions, request, OpenAiApi.ChatCompletionRequest.class);
+        List<ToolDefinition> toolDefinitions = toolCallingManager.resolveToolDefinitions(requestOptions)
+                .stream()
+                .sorted(Comparator.comparing(ToolDefinition::name))
+                .toList();
+        if (!toolDefinitions.isEmpty()) {
+            List<OpenAiApi.FunctionTool> tools = toolDefinitions.stream()
+                    .map(definition -> new OpenAiApi.FunctionTool(new OpenAiApi.FunctionTool.Function(
+                            definition.description(), definition.name(), definition.inputSchema())))
+                    .toList();
+            request = ModelOptionsUtils.merge(OpenAiChatOptions.builder().tools(tools).build(), request,
+                    OpenAiApi.ChatCompletionRequest.class);
+        }
+        if (request.streamOptions() != null && !stream) {
+            request = request.streamOptions(null);
+        }
+        return request;
+    }
+
+    private static OpenAiChatOptions mergeOptions(ToolCallingChatOptions options, OpenAiChatOptions defaultOptions) {
+        OpenAiChatOptions runtimeOptions = ModelOptionsUtils.copyToTarget(options, ToolCallingChatOptions.class,
+                OpenAiChatOptions.class);
+        OpenAiChatOptions requestOptions = ModelOptionsUtils.merge(runtimeOptions, defaultOptions, OpenAiChatOptions.class);
+        HashMap<String, String> httpHeaders = new HashMap<>(defaultOptions.getHttpHeaders());
+        httpHeaders.putAll(runtimeOptions.getHttpHeaders());
+        requestOptions.setHttpHeaders(httpHeaders);
+        requestOptions.setInternalToolExecutionEnabled(ModelOptionsUtils.mergeOption(
+                runtimeOptions.isInternalToolExecutionEnabled(), defaultOptions.isInternalToolExecutionEnabled()));
+        requestOptions.setToolNames(ToolCallingChatOptions.mergeToolNames(runtimeOptions.getToolNames(),
+                defaultOptions.getToolNames()));
+        requestOptions.setToolCallbacks(ToolCallingChatOptions.mergeToolCallbacks(runtimeOptions.getToolCallbacks(),
+                defaultOptions.getToolCallbacks()));
+        requestOptions.setToolContext(ToolCallingChatOptions.mergeToolContext(runtimeOptions.getToolContext(),
+                defaultOptions.getToolContext()));
+        ToolCallingChatOptions.validateToolCallbacks(requestOptions.getToolCallbacks());
+        return requestOptions;
+    }
+}
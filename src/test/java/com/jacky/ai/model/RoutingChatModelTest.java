@@ -0,0 +1,108 @@
+package com.jacky.ai.model;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoutingChatModelTest {
+
+    @Test
+    void cheapestHealthyPrefersLocalBackend() {
+        RoutingChatModel model = RoutingChatModel.builder()
+                .backend("cloud", stub("cloud", Duration.ZERO, false), 10)
+                .backend("local", stub("local", Duration.ZERO, false), 0)
+                .hedgeEnabled(false)
+                .build();
+
+        assertEquals("local", textOf(model.call(new Prompt("hi"))));
+    }
+
+    @Test
+    void fallsBackWhenPrimaryFails() {
+        RoutingChatModel model = RoutingChatModel.builder()
+                .backend("local", stub("local", Duration.ZERO, true), 0)
+                .backend("cloud", stub("cloud", Duration.ZERO, false), 10)
+                .hedgeEnabled(false)
+                .build();
+
+        assertEquals("cloud", textOf(model.call(new Prompt("hi"))));
+        assertEquals("cloud", textOf(model.stream(new Prompt("hi")).blockLast()));
+    }
+
+    @Test
+    void hedgesSlowStreamToSecondary() {
+        RoutingChatModel model = RoutingChatModel.builder()
+                .backend("local", stub("local", Duration.ofSeconds(2), false), 0)
+                .backend("cloud", stub("cloud", Duration.ofMillis(10), false), 10)
+                .hedgeInitialDelay(Duration.ofMillis(50))
+                .build();
+
+        assertEquals("cloud", textOf(model.stream(new Prompt("hi")).blockFirst(Duration.ofSeconds(1))));
+    }
+
+    @Test
+    void hedgeTriggersImmediatelyWhenPrimaryFails() {
+        RoutingChatModel model = RoutingChatModel.builder()
+                .backend("local", stub("local", Duration.ZERO, true), 0)
+                .backend("cloud", stub("cloud", Duration.ZERO, false), 10)
+                .hedgeInitialDelay(Duration.ofSeconds(30))
+                .build();
+
+        assertEquals("cloud", textOf(model.stream(new Prompt("hi")).blockFirst(Duration.ofSeconds(1))));
+    }
+
+    @Test
+    void demotedBackendRecoversWithoutTraffic() throws InterruptedException {
+        RoutingChatModel model = RoutingChatModel.builder()
+                .backend("local", stub("local", Duration.ZERO, true), 0)
+                .backend("cloud", stub("cloud", Duration.ZERO, false), 10)
+                .hedgeEnabled(false)
+                .errorDecayHalfLife(Duration.ofMillis(50))
+                .build();
+        for (int i = 0; i < 5; i++) {
+            model.call(new Prompt("hi"));
+        }
+        assertEquals("cloud", model.rank().get(0).getName());
+
+        // 没有流量分到local，错误率随时间衰减到阈值以下后重新成为主后端
+        Thread.sleep(300);
+        assertEquals("local", model.rank().get(0).getName());
+    }
+
+    private static String textOf(ChatResponse response) {
+        return response.getResult().getOutput().getText();
+    }
+
+    private static ChatModel stub(String text, Duration delay, boolean fail) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                if (fail) {
+                    throw new IllegalStateException(text + " unavailable");
+                }
+                return response(text);
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                if (fail) {
+                    return Flux.error(new IllegalStateException(text + " unavailable"));
+                }
+                return Flux.just(response(text)).delaySubscription(delay);
+            }
+        };
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
@@ -0,0 +1,61 @@
+package com.jacky.ai.repository;
+
+import com.jacky.ai.util.CjkBigramTokenizer;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Bm25IndexTest {
+
+    @Test
+    void tokenizesCjkAsBigramsAndIdentifiersAsWholeWords() {
+        assertEquals(List.of("线程", "程安", "安全", "concurrenthashmap", "的", "put_if_absent"),
+                CjkBigramTokenizer.tokenize("线程安全：ConcurrentHashMap 的 put_if_absent"));
+    }
+
+    @Test
+    void exactIdentifierRanksFirst() {
+        Bm25Index index = new Bm25Index();
+        index.add(List.of(
+                new Document("1", "集合框架概述，介绍常用的集合类", Map.of("file_name", "java手册.pdf")),
+                new Document("2", "ConcurrentHashMap 是线程安全的哈希表", Map.of("file_name", "java手册.pdf")),
+                new Document("3", "ConcurrentHashMap 在其他文件中", Map.of("file_name", "other.pdf"))));
+
+        List<Document> results = index.search("ConcurrentHashMap怎么用", 5,
+                document -> "java手册.pdf".equals(document.getMetadata().get("file_name")));
+
+        assertEquals("2", results.get(0).getId());
+        assertTrue(results.stream().noneMatch(document -> document.getId().equals("3")));
+    }
+
+    @Test
+    void removedDocumentsAreNotReturned() {
+        Bm25Index index = new Bm25Index();
+        index.add(List.of(new Document("1", "线程池参数", Map.of()), new Document("2", "线程池拒绝策略", Map.of())));
+
+        index.remove(List.of("1"));
+
+        assertEquals(List.of("2"), index.search("线程池", 5, document -> true).stream().map(Document::getId).toList());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void removedDocumentsDoNotSkewIdf() {
+        Bm25Index index = new Bm25Index();
+        index.add(List.of(new Document("1", "线程池参数", Map.of()), new Document("2", "线程池拒绝策略", Map.of()),
+                new Document("3", "集合框架概述", Map.of())));
+        index.remove(List.of("1"));
+
+        // 删除的文档还在倒排表中（未压缩），分数应与压缩后一致
+        double beforeCompact = index.search("线程池", 5, document -> true).get(0).getScore();
+        index.compact();
+        double afterCompact = index.search("线程池", 5, document -> true).get(0).getScore();
+
+        assertEquals(afterCompact, beforeCompact, 1e-9);
+    }
+}
@@ -0,0 +1,256 @@
+package com.jacky.ai.repository;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author: Jacky.Z
+ * @date: 2026/10/20 01:40
+ * @description： 进程内的Redis替身，测试共享会话存储时代替Redis
+ * 只实现RedisSessionStore用到的命令（GET、INCR、DEL、RPUSH、LTRIM、LRANGE、LREM、SADD、SREM、SCARD、MULTI、EXEC、AUTH、SELECT），
+ * 命令在一把锁下逐个执行，MULTI之后的命令排队到EXEC时一起执行；按命令名统计执行次数，用于验证近端缓存减少的读取。
+ */
+public class InProcessRedisServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "redis-stand-in");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, String> strings = new HashMap<>();
+
+    private final Map<String, List<String>> lists = new HashMap<>();
+
+    private final Map<String, Set<String>> sets = new HashMap<>();
+
+    private final Map<String, AtomicLong> commandCounts = new ConcurrentHashMap<>();
+
+    public InProcessRedisServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return 命令（大写）的执行次数，MULTI中的命令在EXEC时计数
+     */
+    public long commandCount(String command) {
+        AtomicLong count = commandCounts.get(command);
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+            List<List<String>> queued = null;
+            while (true) {
+                List<String> command = readCommand(input);
+                if (command == null) {
+                    return;
+                }
+                String name = command.get(0).toUpperCase(Locale.ROOT);
+                if (name.equals("MULTI")) {
+                    queued = new ArrayList<>();
+                    write(output, "OK");
+                } else if (name.equals("EXEC")) {
+                    List<Object> results = new ArrayList<>();
+                    synchronized (this) {
+                        for (List<String> queuedCommand : queued) {
+                            results.add(execute(queuedCommand));
+                        }
+                    }
+                    queued = null;
+                    write(output, results);
+                } else if (queued != null) {
+                    queued.add(command);
+                    write(output, "QUEUED");
+                } else {
+                    Object result;
+                    synchronized (this) {
+                        result = execute(command);
+                    }
+                    write(output, result);
+                }
+                if (input.available() == 0) {
+                    output.flush();
+                }
+            }
+        } catch (IOException e) {
+            // 客户端断开
+        }
+    }
+
+    private Object execute(List<String> command) {
+        String name = command.get(0).toUpperCase(Locale.ROOT);
+        commandCounts.computeIfAbsent(name, k -> new AtomicLong()).incrementAndGet();
+        List<String> args = command.subList(1, command.size());
+        switch (name) {
+            case "AUTH":
+            case "SELECT":
+                return "OK";
+            case "GET":
+                return new Bulk(strings.get(args.get(0)));
+            case "INCR": {
+                long value = Long.parseLong(strings.getOrDefault(args.get(0), "0")) + 1;
+                strings.put(args.get(0), String.valueOf(value));
+                return value;
+            }
+            case "DEL": {
+                long removed = 0;
+                for (String key : args) {
+                    if (strings.remove(key) != null | lists.remove(key) != null | sets.remove(key) != null) {
+                        removed++;
+                    }
+                }
+                return removed;
+            }
+            case "RPUSH": {
+                List<String> list = lists.computeIfAbsent(args.get(0), k -> new ArrayList<>());
+                list.addAll(args.subList(1, args.size()));
+                return (long) list.size();
+            }
+            case "LTRIM": {
+                List<String> list = lists.getOrDefault(args.get(0), new ArrayList<>());
+                int[] range = range(args.get(1), args.get(2), list.size());
+                List<String> trimmed = range[0] > range[1] ? new ArrayList<>() : new ArrayList<>(list.subList(range[0], range[1] + 1));
+                setList(args.get(0), trimmed);
+                return "OK";
+            }
+            case "LRANGE": {
+                List<String> list = lists.getOrDefault(args.get(0), List.of());
+                int[] range = range(args.get(1), args.get(2), list.size());
+                return range[0] > range[1] ? List.of() : new ArrayList<Object>(list.subList(range[0], range[1] + 1));
+            }
+            case "LREM": {
+                List<String> list = lists.getOrDefault(args.get(0), new ArrayList<>());
+                long removed = list.stream().filter(args.get(2)::equals).count();
+                list.removeIf(args.get(2)::equals);
+                setList(args.get(0), list);
+                return removed;
+            }
+            case "SADD":
+                return sets.computeIfAbsent(args.get(0), k -> new HashSet<>()).add(args.get(1)) ? 1L : 0L;
+            case "SREM": {
+                Set<String> set = sets.getOrDefault(args.get(0), new HashSet<>());
+                return set.remove(args.get(1)) ? 1L : 0L;
+            }
+            case "SCARD":
+                return (long) sets.getOrDefault(args.get(0), Set.of()).size();
+            default:
+                return new Error("ERR unknown command '" + name + "'");
+        }
+    }
+
+    private void setList(String key, List<String> list) {
+        if (list.isEmpty()) {
+            lists.remove(key);
+        } else {
+            lists.put(key, list);
+        }
+    }
+
+    // 与Redis一致：负数下标从末尾计数，超出范围的截断；返回的from > to时为空
+    private static int[] range(String start, String stop, int size) {
+        int from = Integer.parseInt(start);
+        int to = Integer.parseInt(stop);
+        if (from < 0) {
+            from = Math.max(0, size + from);
+        }
+        if (to < 0) {
+            to = size + to;
+        }
+        return new int[]{from, Math.min(to, size - 1)};
+    }
+
+    private static List<String> readCommand(DataInputStream input) throws IOException {
+        int type = input.read();
+        if (type == -1) {
+            return null;
+        }
+        int count = Integer.parseInt(readLine(input));
+        List<String> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            input.read(); // $
+            byte[] bytes = new byte[Integer.parseInt(readLine(input))];
+            input.readFully(bytes);
+            readLine(input);
+            command.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return command;
+    }
+
+    private static String readLine(DataInputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = input.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            line.append((char) b);
+        }
+        input.read();
+        return line.toString();
+    }
+
+    private static void write(OutputStream output, Object value) throws IOException {
+        if (value instanceof Bulk bulk) {
+            if (bulk.value() == null) {
+                output.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+            } else {
+                byte[] bytes = bulk.value().getBytes(StandardCharsets.UTF_8);
+                output.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                output.write(bytes);
+                output.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+            }
+        } else if (value instanceof String simple) {
+            output.write(("+" + simple + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Long number) {
+            output.write((":" + number + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        } else if (value instanceof Error error) {
+            output.write(("-" + error.message() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof List<?> list) {
+            output.write(("*" + list.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (Object element : list) {
+                write(output, element instanceof String string ? new Bulk(string) : element);
+            }
+        }
+    }
+
+    private record Bulk(String value) {
+    }
+
+    private record Error(String message) {
+    }
+}
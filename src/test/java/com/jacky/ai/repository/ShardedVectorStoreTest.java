@@ -0,0 +1,167 @@
+package com.jacky.ai.repository;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedVectorStoreTest {
+
+    private static final EmbeddingModel EMBEDDING_MODEL = new HashingEmbeddingModel();
+
+    private static final List<String> QUERIES = List.of("线程池 拒绝策略", "Redis 持久化 AOF", "JVM 垃圾回收 G1", "索引 回表");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void scatterGatherMatchesSingleStore() {
+        HybridVectorStore single = new HybridVectorStore(EMBEDDING_MODEL);
+        single.add(documents());
+        ShardedVectorStore sharded = newStore(nodes(3), 6);
+        sharded.add(documents());
+
+        assertEquals(single.getWarmupProgress().liveDocuments(), sharded.getWarmupProgress().liveDocuments());
+        for (String query : QUERIES) {
+            SearchRequest request = SearchRequest.builder().query(query).topK(5).build();
+            assertEquals(scores(single.similaritySearch(request)), scores(sharded.similaritySearch(request)));
+        }
+    }
+
+    @Test
+    void samePartitionKeyLandsOnSameShard() {
+        ShardedVectorStore sharded = newStore(nodes(3), 6);
+        Map<String, Object> metadata = Map.of(ShardedVectorStore.PARTITION_KEY, "digest-1");
+        assertEquals(sharded.shardOf(metadata, "a"), sharded.shardOf(metadata, "b"));
+    }
+
+    @Test
+    void readsFailOverToAnotherReplica() {
+        List<LocalVectorNode> nodes = nodes(3);
+        ShardedVectorStore sharded = newStore(nodes, 6);
+        sharded.add(documents());
+        SearchRequest request = SearchRequest.builder().query(QUERIES.get(0)).topK(5).build();
+        List<Double> expected = scores(sharded.similaritySearch(request));
+
+        nodes.get(0).setAvailable(false);
+        // 每个分片有两个副本，轮询到不可用的副本时跳过
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expected, scores(sharded.similaritySearch(request)));
+        }
+        // 写入需要全部副本可用
+        assertThrows(IllegalStateException.class, () -> sharded.add(documents()));
+    }
+
+    @Test
+    void rebalanceMovesShardsToNewNodes() {
+        List<LocalVectorNode> nodes = nodes(4);
+        ShardedVectorStore sharded = newStore(nodes.subList(0, 3), 12);
+        sharded.add(documents());
+        SearchRequest request = SearchRequest.builder().query(QUERIES.get(1)).topK(5).build();
+        List<Double> expected = scores(sharded.similaritySearch(request));
+
+        int copied = sharded.rebalance(List.copyOf(nodes));
+        assertTrue(copied > 0);
+        assertTrue(sharded.placement().values().stream().anyMatch(ids -> ids.contains("node-3")));
+        sharded.placement().values().forEach(ids -> assertEquals(2, new HashSet<>(ids).size()));
+        assertEquals(expected, scores(sharded.similaritySearch(request)));
+
+        // 移除宕机的节点：缺失的副本从另一个副本复制
+        nodes.get(0).setAvailable(false);
+        sharded.rebalance(List.copyOf(nodes.subList(1, 4)));
+        sharded.placement().values().forEach(ids -> assertFalse(ids.contains("node-0")));
+        assertEquals(expected, scores(sharded.similaritySearch(request)));
+        sharded.add(documents());
+    }
+
+    @Test
+    void snapshotIsCompatibleWithSingleStore() {
+        ShardedVectorStore sharded = newStore(nodes(3), 6);
+        sharded.add(documents());
+        File snapshot = tempDir.resolve("chat-pdf.json").toFile();
+        sharded.save(snapshot);
+
+        // 分片的快照可以由单机向量库加载，也可以按不同的分片数重新加载
+        HybridVectorStore single = new HybridVectorStore(EMBEDDING_MODEL);
+        single.warmUp(new FileSystemResource(snapshot), false);
+        ShardedVectorStore resharded = newStore(nodes(2), 4);
+        resharded.warmUp(new FileSystemResource(snapshot), false);
+        resharded.awaitWarmup();
+
+        assertEquals(documents().size(), resharded.getWarmupProgress().liveDocuments());
+        for (String query : QUERIES) {
+            SearchRequest request = SearchRequest.builder().query(query).topK(5).build();
+            assertEquals(scores(single.similaritySearch(request)), scores(resharded.similaritySearch(request)));
+        }
+    }
+
+    private static ShardedVectorStore newStore(List<LocalVectorNode> nodes, int shards) {
+        return ShardedVectorStore.builder(EMBEDDING_MODEL).nodes(nodes).shardCount(shards).replicas(2).build();
+    }
+
+    private static List<LocalVectorNode> nodes(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new LocalVectorNode("node-" + i, EMBEDDING_MODEL, ObservationRegistry.NOOP))
+                .toList();
+    }
+
+    private static List<Document> documents() {
+        String[] topics = {"线程池 核心线程 拒绝策略 队列", "Redis 持久化 AOF RDB", "JVM 垃圾回收 G1 停顿",
+                "MySQL 索引 回表 覆盖索引", "Spring 事务 传播 隔离"};
+        List<Document> documents = new ArrayList<>();
+        for (int file = 0; file < 8; file++) {
+            for (int page = 0; page < 5; page++) {
+                String text = topics[(file + page) % topics.length] + " 第" + page + "页 文件" + file;
+                documents.add(new Document("doc-" + file + "-" + page, text,
+                        Map.of(ShardedVectorStore.PARTITION_KEY, "digest-" + file, "file_name", file + ".pdf")));
+            }
+        }
+        return documents;
+    }
+
+    private static List<Double> scores(List<Document> documents) {
+        return documents.stream().map(Document::getScore).toList();
+    }
+
+    /**
+     * 按空格分词，把每个词哈希到一个维度，结果只取决于文本
+     */
+    private static class HashingEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(embed(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(String text) {
+            float[] vector = new float[32];
+            for (String token : text.split("\\s+")) {
+                vector[Math.floorMod(token.hashCode(), vector.length)] += 1;
+            }
+            return vector;
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}
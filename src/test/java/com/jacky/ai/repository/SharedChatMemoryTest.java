@@ -0,0 +1,96 @@
+package com.jacky.ai.repository;
+
+import com.jacky.ai.util.TenantContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedChatMemoryTest {
+
+    private InProcessRedisServer server;
+
+    private final List<RedisSessionStore> stores = new ArrayList<>();
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new InProcessRedisServer();
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        stores.forEach(RedisSessionStore::close);
+        server.close();
+        TenantContext.clear();
+    }
+
+    @Test
+    void anyInstanceServesAnyTurn() {
+        SharedChatMemory first = newMemory(10, 10);
+        SharedChatMemory second = newMemory(10, 10);
+
+        first.add("a:1", List.of(new UserMessage("q1")));
+        second.get("a:1", 10);
+        second.add("a:1", List.of(new AssistantMessage("partial", Map.of("interrupted", true))));
+
+        // 第一个实例缓存的是写入q1后的版本，第二个实例写入后版本号变化，重新读取
+        List<Message> messages = first.get("a:1", 10);
+        assertEquals(List.of("q1", "partial"), messages.stream().map(Message::getText).toList());
+        assertEquals(true, messages.get(1).getMetadata().get("interrupted"));
+        assertEquals(0, first.get("b:1", 10).size());
+    }
+
+    @Test
+    void nearCacheSkipsReadsWhenVersionIsUnchanged() {
+        SharedChatMemory memory = newMemory(10, 3);
+        for (int i = 0; i < 5; i++) {
+            memory.add("a:1", List.of(new UserMessage("q" + i)));
+            memory.get("a:1", 10);
+        }
+        // 只有第一次读取整个列表，之后本实例的写入直接追加到缓存
+        assertEquals(1, server.commandCount("LRANGE"));
+        List<Message> messages = memory.get("a:1", 10);
+        assertEquals(List.of("q2", "q3", "q4"), messages.stream().map(Message::getText).toList());
+        assertEquals(List.of("q4"), memory.get("a:1", 1).stream().map(Message::getText).toList());
+    }
+
+    @Test
+    void conversationQuotaIsSharedAcrossInstances() {
+        SharedChatHistoryRepository history = new SharedChatHistoryRepository(newStore(), 2);
+        SharedChatMemory memory = newMemory(2, 10);
+        TenantContext.set("a");
+
+        history.save("chat", "1");
+        history.save("chat", "1");
+        memory.add("a:2", List.of(new UserMessage("q")));
+        assertThrows(TenantQuotaExceededException.class, () -> history.save("pdf", "3"));
+        assertEquals(List.of("1"), history.getChatIds("chat"));
+
+        memory.clear("a:2");
+        history.save("pdf", "3");
+        assertEquals(List.of("3"), history.getChatIds("pdf"));
+        history.delete("pdf", "3");
+        assertEquals(List.of(), history.getChatIds("pdf"));
+    }
+
+    private SharedChatMemory newMemory(int maxConversations, int maxMessages) {
+        return new SharedChatMemory(newStore(), maxConversations, maxMessages, 100, new SimpleMeterRegistry());
+    }
+
+    private RedisSessionStore newStore() {
+        RedisSessionStore store = new RedisSessionStore("127.0.0.1", server.port(), null, 0, "test:", 4,
+                Duration.ofSeconds(2));
+        stores.add(store);
+        return store;
+    }
+}
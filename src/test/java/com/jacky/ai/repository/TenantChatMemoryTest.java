@@ -0,0 +1,106 @@
+package com.jacky.ai.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TenantChatMemoryTest {
+
+    @TempDir
+    Path swapDir;
+
+    @Test
+    void isolatesTenantsWithSameChatId() {
+        try (TenantChatMemory memory = newMemory(10, 10, Duration.ofMinutes(30))) {
+            memory.add("a:1", List.of(new UserMessage("from a")));
+            memory.add("b:1", List.of(new UserMessage("from b")));
+
+            assertEquals("from a", memory.get("a:1", 10).get(0).getText());
+            assertEquals("from b", memory.get("b:1", 10).get(0).getText());
+            memory.clear("a:1");
+            assertEquals(0, memory.get("a:1", 10).size());
+            assertEquals(1, memory.get("b:1", 10).size());
+        }
+    }
+
+    @Test
+    void enforcesConversationAndMessageQuotas() {
+        try (TenantChatMemory memory = newMemory(2, 3, Duration.ofMinutes(30))) {
+            for (int i = 0; i < 5; i++) {
+                memory.add("a:1", List.of(new UserMessage("q" + i)));
+            }
+            List<Message> messages = memory.get("a:1", 10);
+            assertEquals(3, messages.size());
+            assertEquals("q2", messages.get(0).getText());
+
+            memory.add("a:2", List.of(new UserMessage("q")));
+            assertThrows(TenantQuotaExceededException.class, () -> memory.add("a:3", List.of(new UserMessage("q"))));
+            // 其他租户的配额单独计算
+            memory.add("b:3", List.of(new UserMessage("q")));
+        }
+    }
+
+    @Test
+    void concurrentNewConversationsStayWithinQuota() throws Exception {
+        try (TenantChatMemory memory = newMemory(10, 10, Duration.ofMinutes(30))) {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String conversationId = "a:" + i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        memory.add(conversationId, List.of(new UserMessage("q")));
+                    } catch (TenantQuotaExceededException e) {
+                        // 超出上限的会话被拒绝
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            assertEquals(10, memory.conversationCount("a"));
+        }
+    }
+
+    @Test
+    void swapsIdleTenantsToDiskAndBack() {
+        try (TenantChatMemory memory = newMemory(10, 10, Duration.ZERO)) {
+            memory.add("a:1", List.of(new UserMessage("question"),
+                    new AssistantMessage("partial", Map.of("interrupted", true))));
+
+            assertEquals(1, memory.evictIdle());
+            assertEquals(0, memory.conversationCount("a"));
+
+            List<Message> messages = memory.get("a:1", 10);
+            assertEquals(2, messages.size());
+            assertEquals("question", messages.get(0).getText());
+            assertEquals(true, messages.get(1).getMetadata().get("interrupted"));
+            assertEquals(1, memory.conversationCount("a"));
+        }
+    }
+
+    private TenantChatMemory newMemory(int maxConversations, int maxMessages, Duration idleTimeout) {
+        return new TenantChatMemory(swapDir.resolve("chat-memory"), maxConversations, maxMessages, idleTimeout, Duration.ofHours(1));
+    }
+}
@@ -0,0 +1,122 @@
+package com.jacky.ai.service.impl;
+
+import com.jacky.ai.config.AttachmentProperties;
+import com.jacky.ai.config.SessionProperties;
+import com.jacky.ai.repository.TenantChatMemory;
+import com.jacky.ai.service.IAttachmentService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.model.Media;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AttachmentServiceImplTest {
+
+    @TempDir
+    Path swapDir;
+
+    @Test
+    void downscalesLargeImages() throws Exception {
+        byte[] jpeg = noiseJpeg(3000, 2000);
+        try (TenantChatMemory memory = newMemory()) {
+            AttachmentServiceImpl service = newService(memory);
+            IAttachmentService.PreparedAttachments prepared = service.prepare("a:1",
+                    List.of(new MockMultipartFile("files", "photo.jpg", "image/jpeg", jpeg)));
+            service.close();
+
+            Media media = prepared.media().get(0);
+            byte[] data = (byte[]) media.getData();
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+            assertEquals(1568, image.getWidth());
+            assertEquals(1045, image.getHeight());
+            assertTrue(data.length < jpeg.length);
+            // id为原图摘要，与压缩结果无关
+            assertEquals(sha256(jpeg), media.getId());
+            assertEquals(MimeTypeUtils.IMAGE_JPEG, media.getMimeType());
+        }
+    }
+
+    @Test
+    void skipsAttachmentsAlreadyInConversation() throws Exception {
+        byte[] sent = "page one".getBytes(StandardCharsets.UTF_8);
+        byte[] fresh = "page two".getBytes(StandardCharsets.UTF_8);
+        try (TenantChatMemory memory = newMemory()) {
+            memory.add("a:1", List.of(new UserMessage("看看这个", List.of(Media.builder()
+                    .id(sha256(sent)).mimeType(MimeTypeUtils.TEXT_PLAIN).data(sent).build()))));
+            AttachmentServiceImpl service = newService(memory);
+            IAttachmentService.PreparedAttachments prepared = service.prepare("a:1", List.of(
+                    new MockMultipartFile("files", "a.txt", "text/plain", sent),
+                    new MockMultipartFile("files", "b.txt", "text/plain", fresh),
+                    new MockMultipartFile("files", "c.txt", "text/plain", fresh)));
+            // 其他会话中没有发送过
+            IAttachmentService.PreparedAttachments other = service.prepare("a:2",
+                    List.of(new MockMultipartFile("files", "a.txt", "text/plain", sent)));
+            service.close();
+
+            assertEquals(1, prepared.media().size());
+            assertEquals("b.txt", prepared.media().get(0).getName());
+            assertEquals(List.of("a.txt", "c.txt"), prepared.reused());
+            assertTrue(prepared.annotate("总结").contains("a.txt、c.txt"));
+            assertEquals(1, other.media().size());
+            assertEquals("总结", other.annotate("总结"));
+        }
+    }
+
+    @Test
+    void readsExifOrientation() {
+        // SOI + APP1(Exif, 大端, IFD0中一个条目：Orientation=6) + SOS
+        byte[] jpeg = {
+                (byte) 0xFF, (byte) 0xD8,
+                (byte) 0xFF, (byte) 0xE1, 0x00, 0x22,
+                'E', 'x', 'i', 'f', 0x00, 0x00,
+                'M', 'M', 0x00, 0x2A, 0x00, 0x00, 0x00, 0x08,
+                0x00, 0x01,
+                0x01, 0x12, 0x00, 0x03, 0x00, 0x00, 0x00, 0x01, 0x00, 0x06, 0x00, 0x00,
+                0x00, 0x00, 0x00, 0x00,
+                (byte) 0xFF, (byte) 0xDA, 0x00, 0x02};
+        assertEquals(6, AttachmentServiceImpl.exifOrientation(jpeg));
+        assertEquals(1, AttachmentServiceImpl.exifOrientation(new byte[]{(byte) 0x89, 'P', 'N', 'G'}));
+    }
+
+    private TenantChatMemory newMemory() {
+        return new TenantChatMemory(swapDir, 10, 10, Duration.ofMinutes(30), Duration.ofMinutes(30));
+    }
+
+    private static AttachmentServiceImpl newService(TenantChatMemory memory) {
+        return new AttachmentServiceImpl(new AttachmentProperties(), memory, new SessionProperties(), new SimpleMeterRegistry());
+    }
+
+    private static byte[] noiseJpeg(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", output);
+        return output.toByteArray();
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
@@ -0,0 +1,128 @@
+package com.jacky.ai.tools;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelToolCallingManagerTest {
+
+    @Test
+    void executesToolCallsConcurrentlyAndKeepsOrder() {
+        ParallelToolCallingManager manager = new ParallelToolCallingManager(new SleepingToolCallingManager(), 4, 16, Duration.ofSeconds(5));
+
+        long start = System.nanoTime();
+        ToolExecutionResult result = manager.executeToolCalls(new Prompt("hi"), toolCalls("queryAllSchools:300", "queryCourse:300", "queryCourse:300"));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 800, "tools should run concurrently, took " + elapsedMillis + "ms");
+        List<ToolResponseMessage.ToolResponse> responses = responsesOf(result);
+        assertEquals(List.of("id-0", "id-1", "id-2"), responses.stream().map(ToolResponseMessage.ToolResponse::id).toList());
+    }
+
+    @Test
+    void timedOutToolReturnsTimeoutResponse() {
+        ParallelToolCallingManager manager = new ParallelToolCallingManager(new SleepingToolCallingManager(), 4, 16, Duration.ofMillis(200));
+
+        ToolExecutionResult result = manager.executeToolCalls(new Prompt("hi"), toolCalls("queryAllSchools:10", "queryCourse:2000"));
+
+        List<ToolResponseMessage.ToolResponse> responses = responsesOf(result);
+        assertEquals("queryAllSchools-done", responses.get(0).responseData());
+        assertTrue(responses.get(1).responseData().contains("超时"));
+    }
+
+    @Test
+    void singleHungToolCallTimesOut() {
+        try (ParallelToolCallingManager manager = new ParallelToolCallingManager(new SleepingToolCallingManager(), 4, 16, Duration.ofMillis(200))) {
+            long start = System.nanoTime();
+            ToolExecutionResult result = manager.executeToolCalls(new Prompt("hi"), toolCalls("queryCourse:5000"));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue(responsesOf(result).get(0).responseData().contains("超时"));
+            assertTrue(elapsedMillis < 1000, "single tool call must be bounded by the timeout, took " + elapsedMillis + "ms");
+        }
+    }
+
+    @Test
+    void eachToolCallGetsItsOwnTimeoutFromWhenItStarts() {
+        // 单线程：b排队等a执行完才开始，两个工具各自都在超时内完成
+        try (ParallelToolCallingManager manager = new ParallelToolCallingManager(new SleepingToolCallingManager(), 1, 4, Duration.ofMillis(300))) {
+            ToolExecutionResult result = manager.executeToolCalls(new Prompt("hi"), toolCalls("a:200", "b:200"));
+
+            List<ToolResponseMessage.ToolResponse> responses = responsesOf(result);
+            assertEquals("a-done", responses.get(0).responseData());
+            assertEquals("b-done", responses.get(1).responseData());
+        }
+    }
+
+    @Test
+    void fullQueueReturnsBusyResponseInsteadOfRunningInline() {
+        try (ParallelToolCallingManager manager = new ParallelToolCallingManager(new SleepingToolCallingManager(), 1, 1, Duration.ofMillis(300))) {
+            long start = System.nanoTime();
+            ToolExecutionResult result = manager.executeToolCalls(new Prompt("hi"), toolCalls("a:100", "b:100", "c:2000"));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            List<ToolResponseMessage.ToolResponse> responses = responsesOf(result);
+            assertEquals("a-done", responses.get(0).responseData());
+            assertEquals("b-done", responses.get(1).responseData());
+            assertTrue(responses.get(2).responseData().contains("繁忙"));
+            assertTrue(elapsedMillis < 1000, "rejected tool must not run on the caller thread, took " + elapsedMillis + "ms");
+        }
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> responsesOf(ToolExecutionResult result) {
+        List<Message> history = result.conversationHistory();
+        return ((ToolResponseMessage) history.get(history.size() - 1)).getResponses();
+    }
+
+    /**
+     * @param specs 形如 "工具名:耗时毫秒"，耗时通过参数传给桩实现
+     */
+    private static ChatResponse toolCalls(String... specs) {
+        List<AssistantMessage.ToolCall> calls = new ArrayList<>();
+        for (int i = 0; i < specs.length; i++) {
+            String[] parts = specs[i].split(":");
+            calls.add(new AssistantMessage.ToolCall("id-" + i, "function", parts[0], parts[1]));
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), calls))));
+    }
+
+    /**
+     * 按参数中的毫秒数休眠后返回 "工具名-done"
+     */
+    private static class SleepingToolCallingManager implements ToolCallingManager {
+
+        @Override
+        public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+            return List.of();
+        }
+
+        @Override
+        public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+            AssistantMessage.ToolCall call = chatResponse.getResult().getOutput().getToolCalls().get(0);
+            try {
+                Thread.sleep(Long.parseLong(call.arguments()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<Message> history = new ArrayList<>(prompt.getInstructions());
+            history.add(new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse(call.id(), call.name(), call.name() + "-done"))));
+            return ToolExecutionResult.builder().conversationHistory(history).build();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.jacky.ai.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileTransferUtilsTest {
+
+    private static final byte[] PDF_MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void receivesWithinLimit() throws Exception {
+        byte[] content = "%PDF-1.7 hello".getBytes(StandardCharsets.US_ASCII);
+        Path target = dir.resolve("a.pdf");
+
+        long written = FileTransferUtils.receive(new ByteArrayInputStream(content), target,
+                MessageDigest.getInstance("SHA-256"), PDF_MAGIC, content.length);
+
+        assertEquals(content.length, written);
+        assertEquals(content.length, Files.size(target));
+    }
+
+    @Test
+    void abortsEndlessBodyOverLimit() {
+        Path target = dir.resolve("b.pdf");
+        // 不会结束的请求体：读到上限后就应中止，不能一直写盘
+        InputStream endless = new InputStream() {
+            private int position;
+
+            @Override
+            public int read() {
+                return position < PDF_MAGIC.length ? PDF_MAGIC[position++] : 'x';
+            }
+        };
+
+        assertThrows(MaxUploadSizeExceededException.class, () -> FileTransferUtils.receive(endless, target,
+                MessageDigest.getInstance("SHA-256"), PDF_MAGIC, 1024 * 1024));
+        assertFalse(Files.exists(target));
+    }
+}
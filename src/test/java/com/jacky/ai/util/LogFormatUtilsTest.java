@@ -0,0 +1,30 @@
+package com.jacky.ai.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogFormatUtilsTest {
+
+    @Test
+    void truncatesLongTextAndEscapesNewlines() {
+        StringBuilder builder = new StringBuilder();
+        LogFormatUtils.appendTruncated(builder, "第一行\n第二行很长很长", 5);
+        assertEquals("\"第一行\\n第...\"(11 chars)", builder.toString());
+    }
+
+    @Test
+    void collectionsOnlyLogSize() {
+        StringBuilder builder = new StringBuilder();
+        LogFormatUtils.appendTruncated(builder, new ArrayList<>(List.of("a", "b", "c")), 256);
+        assertEquals("ArrayList(size=3)", builder.toString());
+    }
+
+    @Test
+    void countsUtf8Bytes() {
+        assertEquals(1 + 3 + 4, LogFormatUtils.utf8Length("a中😀"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.jacky.ai.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VectorKernelsTest {
+
+    private static final ScalarVectorKernel SCALAR = new ScalarVectorKernel();
+
+    @Test
+    void matchesDoubleReferenceForOddDimensions() {
+        Random random = new Random(7);
+        for (int dimensions : new int[]{1, 3, 17, 384, 1023}) {
+            float[] a = randomVector(random, dimensions);
+            float[] b = randomVector(random, dimensions);
+            double dot = 0;
+            double distance = 0;
+            double aa = 0;
+            double bb = 0;
+            for (int i = 0; i < dimensions; i++) {
+                dot += (double) a[i] * b[i];
+                distance += ((double) a[i] - b[i]) * ((double) a[i] - b[i]);
+                aa += (double) a[i] * a[i];
+                bb += (double) b[i] * b[i];
+            }
+            double cosine = dot / Math.sqrt(aa * bb);
+            assertEquals(dot, VectorKernels.dot(a, b), 1e-3);
+            assertEquals(dot, SCALAR.dot(a, b), 1e-3);
+            assertEquals(distance, VectorKernels.squaredEuclidean(a, b), 1e-3);
+            assertEquals(distance, SCALAR.squaredEuclidean(a, b), 1e-3);
+            assertEquals(cosine, VectorKernels.cosine(a, b), 1e-5);
+            assertEquals(cosine, SCALAR.cosine(a, b), 1e-5);
+            assertEquals(cosine, VectorDistanceUtils.cosineDistance(a, b), 1e-5);
+        }
+    }
+
+    @Test
+    void batchScoresEqualSingleDotProducts() {
+        Random random = new Random(11);
+        float[] query = VectorKernels.normalize(randomVector(random, 100));
+        float[][] vectors = new float[11][];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = VectorKernels.normalize(randomVector(random, 100));
+        }
+        float[] scores = new float[9];
+        VectorKernels.dotBatch(query, vectors, 2, 9, scores);
+        for (int i = 0; i < 9; i++) {
+            assertEquals(VectorKernels.cosine(query, vectors[i + 2]), scores[i], 1e-5);
+        }
+    }
+
+    @Test
+    void cosineOfZeroVectorIsZero() {
+        assertEquals(0, VectorKernels.cosine(new float[]{0, 0}, new float[]{1, 2}));
+        assertThrows(IllegalArgumentException.class,
+                () -> VectorDistanceUtils.cosineDistance(new float[]{0, 0}, new float[]{1, 2}));
+        assertThrows(IllegalArgumentException.class, () -> VectorKernels.dot(new float[2], new float[3]));
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+}
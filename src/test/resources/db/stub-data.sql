@@ -0,0 +1,23 @@
+DELETE FROM course;
+DELETE FROM school;
+DELETE FROM course_reservation;
+
+INSERT INTO course (name, edu, type, price, duration) VALUES
+    ('JavaEE', 4, '编程', 21999, 108),
+    ('鸿蒙应用开发', 3, '编程', 20999, 98),
+    ('AI人工智能', 4, '编程', 24999, 100),
+    ('Python大数据开发', 4, '编程', 23999, 102),
+    ('跨境电商', 0, '自媒体', 12999, 68),
+    ('新媒体运营', 0, '自媒体', 10999, 61),
+    ('UI设计', 2, '设计', 11999, 66);
+
+INSERT INTO school (name, city) VALUES
+    ('昌平校区', '北京'),
+    ('顺义校区', '北京'),
+    ('杭州校区', '杭州'),
+    ('上海校区', '上海'),
+    ('南京校区', '南京'),
+    ('西安校区', '西安'),
+    ('郑州校区', '郑州'),
+    ('广东校区', '广州'),
+    ('深圳校区', '深圳');
@@ -0,0 +1,27 @@
+-- 测试与压测使用的H2内嵌数据库（MySQL兼容模式），表结构与itheima库一致
+CREATE TABLE IF NOT EXISTS course
+(
+    id       INT AUTO_INCREMENT PRIMARY KEY,
+    name     VARCHAR(50) NOT NULL COMMENT '学科名称',
+    edu      INT         NOT NULL DEFAULT 0 COMMENT '学历背景要求：0-无，1-初中，2-高中、3-大专、4-本科以上',
+    type     VARCHAR(50) NOT NULL COMMENT '类型: 编程、非编程',
+    price    BIGINT      NOT NULL DEFAULT 0 COMMENT '课程价格',
+    duration INT         NOT NULL DEFAULT 0 COMMENT '学习时长，单位: 天'
+);
+
+CREATE TABLE IF NOT EXISTS school
+(
+    id   INT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(50) NOT NULL COMMENT '校区名称',
+    city VARCHAR(50) NOT NULL COMMENT '校区所在城市'
+);
+
+CREATE TABLE IF NOT EXISTS course_reservation
+(
+    id           INT AUTO_INCREMENT PRIMARY KEY,
+    course       VARCHAR(50)  NOT NULL COMMENT '预约课程',
+    student_name VARCHAR(50)  NOT NULL COMMENT '学生姓名',
+    contact_info VARCHAR(50)  NOT NULL COMMENT '联系方式',
+    school       VARCHAR(50)  NOT NULL COMMENT '预约校区',
+    remark       VARCHAR(200) COMMENT '备注'
+);